@@ -25,6 +25,8 @@ object Constants {
     const val NOTIFICATION_CHANNEL_ID_ALARM = "alarm"
     const val NOTIFICATION_ALARM_BG_IO_WORK = 2
     const val NOTIFICATION_CHANNEL_ID_BG_IO = "bg_io"
+    const val NOTIFICATION_ALARM_SUMMARY = 3
+    const val NOTIFICATION_GROUP_ALARM = "com.lambdasoup.quickfit.alarm.GROUP"
     const val PENDING_INTENT_ALARM_RECEIVER = 0
     const val PENDING_INTENT_WORKOUT_LIST = 1
     const val PENDING_INTENT_DID_IT = 2
@@ -32,8 +34,18 @@ object Constants {
     const val PENDING_INTENT_DISMISS_ALARM = 4
     const val JOB_ID_FIT_ACTIVITY_SERVICE = 100
 
+    /**
+     * What syncing requires.
+     */
     val FITNESS_API_OPTIONS = FitnessOptions.builder()
             .addDataType(DataType.TYPE_ACTIVITY_SEGMENT, FitnessOptions.ACCESS_WRITE)
             .addDataType(DataType.TYPE_CALORIES_EXPENDED, FitnessOptions.ACCESS_WRITE)
             .build()
+
+    /**
+     * Asked for separately, only when importing history. Syncing never needs it.
+     */
+    val FITNESS_READ_OPTIONS = FitnessOptions.builder()
+            .addDataType(DataType.TYPE_ACTIVITY_SEGMENT, FitnessOptions.ACCESS_READ)
+            .build()
 }
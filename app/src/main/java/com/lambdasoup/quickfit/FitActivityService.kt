@@ -25,13 +25,19 @@ import android.widget.Toast
 import androidx.annotation.StringRes
 import androidx.annotation.WorkerThread
 import androidx.core.app.JobIntentService
-import androidx.work.*
 import com.lambdasoup.quickfit.Constants.JOB_ID_FIT_ACTIVITY_SERVICE
+import com.lambdasoup.quickfit.model.DaysOfWeek
+import com.lambdasoup.quickfit.model.Recurrence
+import com.lambdasoup.quickfit.persist.BackfillSchedule
+import com.lambdasoup.quickfit.persist.IdempotencyKey
 import com.lambdasoup.quickfit.persist.QuickFitContentProvider
+import com.lambdasoup.quickfit.persist.QuickFitContract.ScheduleEntry
 import com.lambdasoup.quickfit.persist.QuickFitContract.SessionEntry
 import com.lambdasoup.quickfit.persist.QuickFitContract.WorkoutEntry
-import com.lambdasoup.quickfit.persist.SyncWorker
+import com.lambdasoup.quickfit.persist.ScheduleBackfill
+import com.lambdasoup.quickfit.persist.SyncScheduler
 import timber.log.Timber
+import java.util.*
 import java.util.concurrent.TimeUnit
 
 class FitActivityService : JobIntentService() {
@@ -40,98 +46,227 @@ class FitActivityService : JobIntentService() {
         when(val action = intent.action) {
             ACTION_INSERT_SESSION -> {
                 val workoutId = intent.getLongExtra(EXTRA_WORKOUT_ID, -1)
-                handleInsertSession(workoutId)
+                handleInsertSession(workoutId, intent.getSource(), intent.getTriggerTime())
+            }
+            ACTION_INSERT_SESSIONS -> {
+                val workoutIds = intent.getLongArrayExtra(EXTRA_WORKOUT_IDS) ?: longArrayOf()
+                handleInsertSessions(workoutIds, intent.getSource(), intent.getTriggerTime())
+            }
+            ACTION_BACKFILL_SESSIONS -> {
+                val workoutIds = intent.getLongArrayExtra(EXTRA_WORKOUT_IDS) ?: longArrayOf()
+                handleBackfillSessions(workoutIds, intent.getLongExtra(EXTRA_FROM, 0), intent.getLongExtra(EXTRA_TO, 0))
+            }
+            ACTION_SESSION_SYNC -> SyncScheduler.requestSync(applicationContext)
+            ACTION_SET_PERIODIC_SYNC -> {
+                SyncScheduler.ensureSafetyNet(applicationContext)
+                SyncScheduler.requestSyncIfPending(applicationContext)
             }
-            ACTION_SESSION_SYNC -> requestSync()
-            ACTION_SET_PERIODIC_SYNC -> setPeriodicSync()
             else -> throw IllegalArgumentException("Action $action not supported.")
         }
     }
 
+    private fun Intent.getSource() = getStringExtra(EXTRA_SOURCE) ?: IdempotencyKey.SOURCE_LIST
+
+    private fun Intent.getTriggerTime() = getLongExtra(EXTRA_TRIGGER_TIME, System.currentTimeMillis())
+
     @WorkerThread
-    private fun handleInsertSession(workoutId: Long) {
-        val cursor = contentResolver.query(
-                QuickFitContentProvider.getUriWorkoutsId(workoutId),
-                WorkoutEntry.COLUMNS_WORKOUT_ONLY,
-                null,
-                null,
-                null
-        )
-        if (cursor == null || !cursor.moveToFirst()) {
-            Timber.w("Workout missing with id: %d", workoutId)
+    private fun handleInsertSession(workoutId: Long, source: String, triggerTime: Long) {
+        handleInsertSessions(longArrayOf(workoutId), source, triggerTime)
+    }
+
+    /**
+     * Inserts one session per workout, back to back in the given order and ending now, in a single transaction.
+     * Requests one sync for all of them.
+     *
+     * Sessions are keyed by workout, [source] and [triggerTime]; a workout that was already done for the same trigger
+     * within the idempotency window is skipped, so that double taps and redelivered intents insert and upload only
+     * once.
+     */
+    @WorkerThread
+    private fun handleInsertSessions(workoutIds: LongArray, source: String, triggerTime: Long) {
+        val windowMillis = TimeUnit.SECONDS.toMillis(resources.getInteger(R.integer.did_it_idempotency_window_seconds).toLong())
+        val sessions = workoutIds.mapNotNull { workoutId ->
+            readSessionValues(workoutId)?.also { (values, _) ->
+                values.put(SessionEntry.IDEMPOTENCY_KEY, IdempotencyKey.of(workoutId, source, triggerTime, windowMillis))
+            }
+        }
+        if (sessions.isEmpty()) {
             return
         }
 
-        val durationInMinutes = cursor.getInt(cursor.getColumnIndex(WorkoutEntry.DURATION_MINUTES))
-        val endTime = System.currentTimeMillis()
-        val startTime = endTime - TimeUnit.MINUTES.toMillis(durationInMinutes.toLong())
-
-        val values = ContentValues(6).apply {
-            put(SessionEntry.ACTIVITY_TYPE, cursor.getString(cursor.getColumnIndex(WorkoutEntry.ACTIVITY_TYPE)))
-            put(SessionEntry.START_TIME, startTime)
-            put(SessionEntry.END_TIME, endTime)
-            put(SessionEntry.STATUS, SessionEntry.SessionStatus.NEW.name)
-            put(SessionEntry.NAME, cursor.getString(cursor.getColumnIndex(WorkoutEntry.LABEL)))
-            put(SessionEntry.CALORIES, cursor.getInt(cursor.getColumnIndex(WorkoutEntry.CALORIES)))
+        var endTime = System.currentTimeMillis()
+        for ((values, durationInMinutes) in sessions.asReversed()) {
+            val startTime = endTime - TimeUnit.MINUTES.toMillis(durationInMinutes.toLong())
+            values.put(SessionEntry.START_TIME, startTime)
+            values.put(SessionEntry.END_TIME, endTime)
+            endTime = startTime
+        }
+
+        val inserted = contentResolver.bulkInsert(QuickFitContentProvider.getUriSessionsList(), sessions.map { it.first }.toTypedArray())
+        if (inserted == 0) {
+            Timber.d("Duplicate trigger from %s at %d, nothing inserted", source, triggerTime)
+            return
+        }
+        SyncScheduler.requestSync(applicationContext)
+        if (inserted == 1) {
+            showToast(R.string.success_session_insert)
+        } else {
+            showToast(resources.getQuantityString(R.plurals.success_sessions_insert, inserted, inserted))
         }
+    }
 
-        cursor.close()
+    /**
+     * Logs every scheduled occurrence of the workouts between [from] and [to] as a session. The occurrences are
+     * generated lazily and inserted in batches of [BACKFILL_BATCH_SIZE], one transaction each. Their identifiers are
+     * derived from schedule and start time, so that logging an overlapping range again does not duplicate them.
+     */
+    @WorkerThread
+    private fun handleBackfillSessions(workoutIds: LongArray, from: Long, to: Long) {
+        val timeZone = TimeZone.getDefault()
+        var inserted = 0
+        for (workoutId in workoutIds) {
+            val (template, durationInMinutes) = readSessionValues(workoutId) ?: continue
+            ScheduleBackfill.occurrences(
+                    readBackfillSchedules(workoutId),
+                    TimeUnit.MINUTES.toMillis(durationInMinutes.toLong()),
+                    from,
+                    to,
+                    timeZone
+            )
+                    .map { occurrence ->
+                        ContentValues(template).apply {
+                            put(SessionEntry.START_TIME, occurrence.startTime)
+                            put(SessionEntry.END_TIME, occurrence.endTime)
+                            put(SessionEntry.IDENTIFIER, "backfill-${occurrence.scheduleId}-${occurrence.startTime}")
+                        }
+                    }
+                    .chunked(BACKFILL_BATCH_SIZE)
+                    .forEach { batch ->
+                        inserted += contentResolver.bulkInsert(QuickFitContentProvider.getUriSessionsList(), batch.toTypedArray())
+                    }
+        }
+        Timber.d("Backfilled %d sessions", inserted)
 
-        contentResolver.insert(QuickFitContentProvider.getUriSessionsList(), values)
-        requestSync()
-        showToast(R.string.success_session_insert)
+        if (inserted == 0) {
+            showToast(R.string.backfill_none)
+            return
+        }
+        SyncScheduler.requestSync(applicationContext)
+        showToast(resources.getQuantityString(R.plurals.success_sessions_backfill, inserted, inserted))
     }
 
     @WorkerThread
-    private fun showToast(@StringRes resId: Int) {
-        Handler(mainLooper).post { Toast.makeText(applicationContext, resId, Toast.LENGTH_SHORT).show() }
+    private fun readBackfillSchedules(workoutId: Long): List<BackfillSchedule> {
+        val schedules = mutableListOf<BackfillSchedule>()
+        contentResolver.query(
+                QuickFitContentProvider.getUriWorkoutsIdSchedules(workoutId),
+                ScheduleEntry.COLUMNS,
+                null,
+                null,
+                null
+        )?.use { cursor ->
+            while (cursor.moveToNext()) {
+                schedules.add(BackfillSchedule(
+                        cursor.getLong(cursor.getColumnIndex(ScheduleEntry.COL_ID)),
+                        Recurrence.of(
+                                DaysOfWeek.fromMask(cursor.getInt(cursor.getColumnIndex(ScheduleEntry.COL_DAYS_OF_WEEK))),
+                                Recurrence.Unit.valueOf(cursor.getString(cursor.getColumnIndex(ScheduleEntry.COL_REPEAT_UNIT))),
+                                cursor.getInt(cursor.getColumnIndex(ScheduleEntry.COL_REPEAT_INTERVAL)),
+                                cursor.getLong(cursor.getColumnIndex(ScheduleEntry.COL_REPEAT_FROM_DAY))
+                        ),
+                        cursor.getInt(cursor.getColumnIndex(ScheduleEntry.COL_HOUR)),
+                        cursor.getInt(cursor.getColumnIndex(ScheduleEntry.COL_MINUTE))
+                ))
+            }
+        }
+        return schedules
     }
 
+    /**
+     * @return session values without start and end time, and the workout duration in minutes
+     */
     @WorkerThread
-    private fun requestSync() {
-        Timber.d("About to enqueue one-time sync:")
-        val workRequest = OneTimeWorkRequest.Builder(SyncWorker::class.java)
-                .setConstraints(Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
-                .build()
-        WorkManager.getInstance(applicationContext)
-                .beginUniqueWork(
-                        "sync",
-                        ExistingWorkPolicy.REPLACE,
-                        workRequest
-                )
-                .enqueue()
-                .result
-                .get()
-        Timber.d("enqueue done")
+    private fun readSessionValues(workoutId: Long): Pair<ContentValues, Int>? {
+        contentResolver.query(
+                QuickFitContentProvider.getUriWorkoutsId(workoutId),
+                WorkoutEntry.COLUMNS_WORKOUT_ONLY,
+                null,
+                null,
+                null
+        ).use { cursor ->
+            if (cursor == null || !cursor.moveToFirst()) {
+                Timber.w("Workout missing with id: %d", workoutId)
+                return null
+            }
+
+            val values = ContentValues(6).apply {
+                put(SessionEntry.ACTIVITY_TYPE, cursor.getString(cursor.getColumnIndex(WorkoutEntry.ACTIVITY_TYPE)))
+                put(SessionEntry.STATUS, SessionEntry.SessionStatus.NEW.name)
+                put(SessionEntry.NAME, cursor.getString(cursor.getColumnIndex(WorkoutEntry.LABEL)))
+                put(SessionEntry.CALORIES, cursor.getInt(cursor.getColumnIndex(WorkoutEntry.CALORIES)))
+            }
+            return Pair(values, cursor.getInt(cursor.getColumnIndex(WorkoutEntry.DURATION_MINUTES)))
+        }
+    }
+
+    @WorkerThread
+    private fun showToast(@StringRes resId: Int) {
+        showToast(getString(resId))
     }
 
     @WorkerThread
-    private fun setPeriodicSync() {
-        val workRequest = PeriodicWorkRequest.Builder(
-                SyncWorker::class.java,
-                3, TimeUnit.HOURS,
-                3, TimeUnit.HOURS
-        )
-                .setConstraints(Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
-                .build()
-
-        WorkManager.getInstance(applicationContext)
-                .enqueueUniquePeriodicWork(
-                        "periodicsync",
-                        ExistingPeriodicWorkPolicy.KEEP,
-                        workRequest
-                )
+    private fun showToast(text: String) {
+        Handler(mainLooper).post { Toast.makeText(applicationContext, text, Toast.LENGTH_SHORT).show() }
     }
 
     companion object {
         private const val ACTION_INSERT_SESSION = "com.lambdasoup.quickfit.action.INSERT_SESSION"
+        private const val ACTION_INSERT_SESSIONS = "com.lambdasoup.quickfit.action.INSERT_SESSIONS"
+        private const val ACTION_BACKFILL_SESSIONS = "com.lambdasoup.quickfit.action.BACKFILL_SESSIONS"
         private const val ACTION_SESSION_SYNC = "com.lambdasoup.quickfit.action.SESSION_SYNC"
         private const val ACTION_SET_PERIODIC_SYNC = "com.lambdasoup.quickfit.action.SET_PERIODIC_SYNC"
 
         private const val EXTRA_WORKOUT_ID = "com.lambdasoup.quickfit.alarm.WORKOUT_ID"
+        private const val EXTRA_WORKOUT_IDS = "com.lambdasoup.quickfit.alarm.WORKOUT_IDS"
+        private const val EXTRA_SOURCE = "com.lambdasoup.quickfit.SOURCE"
+        private const val EXTRA_TRIGGER_TIME = "com.lambdasoup.quickfit.TRIGGER_TIME"
+        private const val EXTRA_FROM = "com.lambdasoup.quickfit.FROM"
+        private const val EXTRA_TO = "com.lambdasoup.quickfit.TO"
+
+        // rows per transaction when backfilling; bounds both the transaction count and the memory held at once
+        private const val BACKFILL_BATCH_SIZE = 200
+
+        /**
+         * @param source one of the [IdempotencyKey] sources
+         * @param triggerTime when the user said "did it", or a time that is the same for all deliveries of the trigger
+         */
+        fun enqueueInsertSession(context: Context, workoutId: Long, source: String, triggerTime: Long) {
+            val intent = Intent(ACTION_INSERT_SESSION)
+                    .putExtra(EXTRA_WORKOUT_ID, workoutId)
+                    .putExtra(EXTRA_SOURCE, source)
+                    .putExtra(EXTRA_TRIGGER_TIME, triggerTime)
+            enqueueWork(context, FitActivityService::class.java, JOB_ID_FIT_ACTIVITY_SERVICE, intent)
+        }
+
+        /**
+         * Inserts sessions for all workouts in one go; they are laid out back to back in the given order.
+         */
+        fun enqueueInsertSessions(context: Context, workoutIds: LongArray, triggerTime: Long) {
+            val intent = Intent(ACTION_INSERT_SESSIONS)
+                    .putExtra(EXTRA_WORKOUT_IDS, workoutIds)
+                    .putExtra(EXTRA_SOURCE, IdempotencyKey.SOURCE_LIST)
+                    .putExtra(EXTRA_TRIGGER_TIME, triggerTime)
+            enqueueWork(context, FitActivityService::class.java, JOB_ID_FIT_ACTIVITY_SERVICE, intent)
+        }
 
-        fun enqueueInsertSession(context: Context, workoutId: Long) {
-            val intent = Intent(ACTION_INSERT_SESSION).putExtra(EXTRA_WORKOUT_ID, workoutId)
+        /**
+         * Logs the scheduled occurrences of the workouts between [from] and [to] as done.
+         */
+        fun enqueueBackfillSessions(context: Context, workoutIds: LongArray, from: Long, to: Long) {
+            val intent = Intent(ACTION_BACKFILL_SESSIONS)
+                    .putExtra(EXTRA_WORKOUT_IDS, workoutIds)
+                    .putExtra(EXTRA_FROM, from)
+                    .putExtra(EXTRA_TO, to)
             enqueueWork(context, FitActivityService::class.java, JOB_ID_FIT_ACTIVITY_SERVICE, intent)
         }
 
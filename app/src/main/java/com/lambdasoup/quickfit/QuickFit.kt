@@ -40,8 +40,8 @@ class QuickFit : Application() {
         AlarmService.initNotificationChannels(this)
         FitApiFailureResolution.initNotificationChannels(this)
 
-        // ensure that our we sync periodically, to catch any problems with
-        // missing manual sync requests eventually
+        // sync sessions left over from an earlier process, and make sure that
+        // a rare safety net sync catches any missing sync requests eventually
         FitActivityService.enqueueSetPeriodicSync(applicationContext)
     }
 }
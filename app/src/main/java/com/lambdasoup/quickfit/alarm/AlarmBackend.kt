@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+/**
+ * The system alarms that wake the app when schedules are due: either the one alarm for the next due schedule, or one
+ * alarm per schedule, depending on the mode [Alarms] is in. Setting an alarm replaces the previous one of its kind.
+ */
+interface AlarmBackend {
+    /**
+     * Sets the alarm to go off exactly at [triggerAtMillis], wall clock time, even if the device is idle.
+     */
+    fun setExact(triggerAtMillis: Long)
+
+    /**
+     * Sets the alarm to go off at some time within the given window, wall clock time, leaving it to the system to
+     * deliver it together with other wakeups. Not delivered while the device is idle.
+     */
+    fun setWindow(windowStartMillis: Long, windowLengthMillis: Long)
+
+    fun cancel()
+
+    /**
+     * Like [setExact], for the alarm of one schedule only. When it goes off, [workoutData] is shown right away, for
+     * the [triggerAtMillis] occurrence.
+     */
+    fun setExactForSchedule(scheduleId: Long, workoutData: WorkoutNotificationData, triggerAtMillis: Long)
+
+    /**
+     * Like [setWindow], for the alarm of one schedule only. When it goes off, [workoutData] is shown right away, for
+     * the [occurrence] at the start of the window.
+     */
+    fun setWindowForSchedule(
+            scheduleId: Long,
+            workoutData: WorkoutNotificationData,
+            occurrence: Long,
+            windowStartMillis: Long,
+            windowLengthMillis: Long
+    )
+
+    /**
+     * Cancels the alarm of one schedule, if there is one; also those set by earlier versions.
+     */
+    fun cancelForSchedule(scheduleId: Long)
+}
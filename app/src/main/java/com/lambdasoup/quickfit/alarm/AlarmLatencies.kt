@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import android.content.Context
+import androidx.annotation.WorkerThread
+import com.lambdasoup.quickfit.util.LatencyHistogram
+import timber.log.Timber
+
+private const val PREFS_ALARM_LATENCIES = "com.lambdasoup.quickfit.alarm.AlarmLatencies"
+
+/**
+ * Rolling histograms of how late reminder alarms are delivered, and how long it then takes until the first
+ * notification is posted and until the bookkeeping is committed. Persisted in shared preferences in the compact
+ * [LatencyHistogram.encode] form, so that they span process restarts; once a histogram holds [DECAY_COUNT] values, its
+ * counts are halved, so that the percentiles follow recent behaviour.
+ */
+object AlarmLatencies {
+    /**
+     * Alarms are late by the time from their due time, which starts the window of windowed alarms, until the
+     * receiver runs; the other two are measured from the receiver running.
+     */
+    enum class Kind(internal val prefKey: String) {
+        DELIVERY("delivery"),
+        POSTED("posted"),
+        COMMITTED("committed")
+    }
+
+    private const val DECAY_COUNT = 512L
+
+    // loaded on first use
+    private var histograms: Map<Kind, LatencyHistogram>? = null
+
+    /**
+     * @param lateMillis how late the alarm was delivered; null if not known, as for alarms set by earlier versions
+     * or when handed over to [AlarmService]
+     * @param receivedAt elapsed realtime at which the alarm was received, to compare with the times in [trace]
+     */
+    @WorkerThread
+    @Synchronized
+    fun record(context: Context, lateMillis: Long?, receivedAt: Long, trace: AlarmDueTrace) {
+        val values = mapOf(
+                Kind.DELIVERY to lateMillis,
+                Kind.POSTED to trace.firstPostedAt?.minus(receivedAt),
+                Kind.COMMITTED to trace.committedAt?.minus(receivedAt)
+        )
+        val histograms = load(context)
+        val editor = context.getSharedPreferences(PREFS_ALARM_LATENCIES, Context.MODE_PRIVATE).edit()
+        for ((kind, value) in values) {
+            if (value == null) {
+                continue
+            }
+            val histogram = histograms.getValue(kind)
+            if (histogram.count >= DECAY_COUNT) {
+                histogram.decay()
+            }
+            // clocks may have been adjusted in between
+            histogram.add(maxOf(0L, value))
+            editor.putString(kind.prefKey, histogram.encode())
+        }
+        editor.apply()
+    }
+
+    /**
+     * @return copies of the histograms, which may be empty
+     */
+    @Synchronized
+    fun snapshot(context: Context): Map<Kind, LatencyHistogram> =
+            load(context).mapValues { (_, histogram) -> LatencyHistogram.decode(histogram.encode()) }
+
+    private fun load(context: Context): Map<Kind, LatencyHistogram> {
+        histograms?.let { return it }
+        val preferences = context.getSharedPreferences(PREFS_ALARM_LATENCIES, Context.MODE_PRIVATE)
+        val loaded = Kind.values().associate { kind ->
+            kind to (preferences.getString(kind.prefKey, null)?.let { decodeOrNull(it) } ?: LatencyHistogram())
+        }
+        histograms = loaded
+        return loaded
+    }
+
+    private fun decodeOrNull(encoded: String): LatencyHistogram? =
+            try {
+                LatencyHistogram.decode(encoded)
+            } catch (e: IllegalArgumentException) {
+                Timber.w(e, "Dropping unreadable alarm latencies")
+                null
+            }
+}
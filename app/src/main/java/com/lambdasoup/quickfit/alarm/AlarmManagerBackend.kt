@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import android.app.AlarmManager
+import android.app.PendingIntent
+import android.content.Context
+import androidx.core.app.AlarmManagerCompat
+import com.lambdasoup.quickfit.Constants.PENDING_INTENT_ALARM_RECEIVER
+
+/**
+ * [AlarmBackend] on the system [AlarmManager]; the alarm goes to [AlarmReceiver].
+ */
+class AlarmManagerBackend(private val context: Context) : AlarmBackend {
+    private val alarmManager by lazy { context.getSystemService(Context.ALARM_SERVICE) as AlarmManager }
+
+    override fun setExact(triggerAtMillis: Long) {
+        AlarmManagerCompat.setExactAndAllowWhileIdle(alarmManager, AlarmManager.RTC_WAKEUP, triggerAtMillis, buildDuePendingIntent(triggerAtMillis))
+    }
+
+    override fun setWindow(windowStartMillis: Long, windowLengthMillis: Long) {
+        alarmManager.setWindow(AlarmManager.RTC_WAKEUP, windowStartMillis, windowLengthMillis, buildDuePendingIntent(windowStartMillis))
+    }
+
+    override fun cancel() {
+        alarmManager.cancel(buildDuePendingIntent())
+    }
+
+    override fun setExactForSchedule(scheduleId: Long, workoutData: WorkoutNotificationData, triggerAtMillis: Long) {
+        AlarmManagerCompat.setExactAndAllowWhileIdle(
+                alarmManager,
+                AlarmManager.RTC_WAKEUP,
+                triggerAtMillis,
+                buildSchedulePendingIntent(scheduleId, workoutData, triggerAtMillis)
+        )
+    }
+
+    override fun setWindowForSchedule(
+            scheduleId: Long,
+            workoutData: WorkoutNotificationData,
+            occurrence: Long,
+            windowStartMillis: Long,
+            windowLengthMillis: Long
+    ) {
+        alarmManager.setWindow(
+                AlarmManager.RTC_WAKEUP,
+                windowStartMillis,
+                windowLengthMillis,
+                buildSchedulePendingIntent(scheduleId, workoutData, occurrence)
+        )
+    }
+
+    override fun cancelForSchedule(scheduleId: Long) {
+        alarmManager.cancel(buildSchedulePendingIntent(scheduleId, null, null))
+    }
+
+    /**
+     * @param setForMillis the earliest time the alarm may go off, to tell how late it was; the extras do not take part
+     * in matching the PendingIntent, so cancelling does not need it
+     */
+    private fun buildDuePendingIntent(setForMillis: Long? = null) =
+            PendingIntent.getBroadcast(
+                    context,
+                    PENDING_INTENT_ALARM_RECEIVER,
+                    AlarmReceiver.getDueIntent(context, setForMillis),
+                    PendingIntent.FLAG_UPDATE_CURRENT
+            )
+
+    private fun buildSchedulePendingIntent(scheduleId: Long, workoutData: WorkoutNotificationData?, occurrence: Long?) =
+            PendingIntent.getBroadcast(
+                    context,
+                    PENDING_INTENT_ALARM_RECEIVER, // disambiguation is via Intent data
+                    AlarmReceiver.getNotifyIntent(context, scheduleId, workoutData, occurrence),
+                    PendingIntent.FLAG_UPDATE_CURRENT
+            )
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import androidx.annotation.WorkerThread
+
+/**
+ * One alarm operation, as recorded in the outbox; see [com.lambdasoup.quickfit.persist.QuickFitContract.AlarmOutboxEntry]
+ * for the operations.
+ *
+ * @param workoutId for "did it" only, the workout to record a session for
+ * @param occurrence for "did it" and "shown" only, the occurrence the notification was for
+ */
+data class AlarmOperation(
+        val operation: String,
+        val scheduleId: Long,
+        val workoutId: Long? = null,
+        val occurrence: Long? = null
+)
+
+data class OutboxEntry(val id: Long, val operation: AlarmOperation)
+
+/**
+ * Alarm operations that still need to be applied by [Alarms.drainOutbox]. Schedule changes are added in the same
+ * transaction as the change itself, so that none gets lost when the process dies before [AlarmService] gets to it.
+ */
+interface AlarmOutbox {
+    /**
+     * Adds an operation that does not come with a write of its own, like a notification action.
+     */
+    @WorkerThread
+    fun add(operation: AlarmOperation)
+
+    /**
+     * All pending entries, oldest first.
+     */
+    @WorkerThread
+    fun readAll(): List<OutboxEntry>
+
+    /**
+     * The pending entries of one schedule, oldest first.
+     */
+    @WorkerThread
+    fun readForSchedule(scheduleId: Long): List<OutboxEntry>
+
+    @WorkerThread
+    fun remove(entryId: Long)
+}
+
+/**
+ * Records the session for a "did it" on a workout reminder; repeated calls for the same occurrence record only one.
+ */
+fun interface SessionRecorder {
+    @WorkerThread
+    fun record(workoutId: Long, occurrence: Long)
+}
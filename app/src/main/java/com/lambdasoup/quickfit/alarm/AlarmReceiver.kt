@@ -25,38 +25,174 @@ import android.content.Intent
 import android.media.AudioAttributes
 import android.net.Uri
 import android.os.Build
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
 import android.provider.Settings
 import androidx.preference.PreferenceManager
 import com.lambdasoup.quickfit.Constants
 import com.lambdasoup.quickfit.R
 import com.lambdasoup.quickfit.persist.QuickFitContentProvider
+import com.lambdasoup.quickfit.persist.QuickFitContract.AlarmOutboxEntry
 import com.lambdasoup.quickfit.util.WakefulIntents
+import timber.log.Timber
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
- * Receives broadcasts for PendingIntents scheduled via [android.app.AlarmManager]. Uses the contained info to immediately show the
- * notification, and kicks off the necessary bookkeeping I/O work to (a) persist the notification state, so that it can be restored
- * after boot and (b) register the next alarm.
+ * Receives broadcasts for PendingIntents scheduled via [android.app.AlarmManager].
+ *
+ * Per-schedule alarms, the default, contain the info to immediately show the notification; the necessary bookkeeping
+ * I/O work is done afterwards, which also shows the other schedules due at the same time. The notification is posted
+ * right away only if it was prepared in this process, see [NotificationTemplates]; else it is built and posted first
+ * thing on the background thread.
+ *
+ * The single alarm set by [Alarms] in single alarm mode carries only the time it was set for; the receiver finds and
+ * shows all due schedules and sets the alarm for the next one.
+ *
+ * How late alarms of either kind are delivered, and how long posting and bookkeeping take then, is recorded in
+ * [AlarmLatencies].
+ *
+ * The I/O work is small, so it is done right here, on a background thread while the broadcast is kept pending, and
+ * under the wake lock the system holds for it. Only if that fails or does not finish in time, [AlarmService] is started
+ * to do it instead; starting a foreground service costs a notification, wake locks and threads of its own.
  */
 class AlarmReceiver : BroadcastReceiver() {
     override fun onReceive(context: Context, intent: Intent) {
-        if (intent.action != ACTION_NOTIFY) {
-            return
+        when (intent.action) {
+            ACTION_DUE -> {
+                val receivedAt = SystemClock.elapsedRealtime()
+                val lateMillis = intent.getLongExtra(EXTRA_SET_FOR_MILLIS, -1)
+                        .takeIf { it >= 0 }
+                        ?.let { System.currentTimeMillis() - it }
+                val appContext = context.applicationContext
+                doAsync(context, AlarmService.getOnAlarmDueIntent(context, receivedAt)) {
+                    AlarmLatencies.record(appContext, lateMillis, receivedAt, it.onAlarmDue())
+                }
+            }
+            ACTION_NOTIFY -> {
+                val receivedAt = SystemClock.elapsedRealtime()
+                val scheduleId = QuickFitContentProvider.getScheduleIdFromUriOrThrow(intent.data)
+                val workoutData = WorkoutNotificationData.fromBundle(intent.getBundleExtra(EXTRA_WORKOUT_NOTIFICATION_DATA_BUNDLE)!!)
+                // alarms set by earlier versions carry no occurrence
+                val setFor = intent.getLongExtra(EXTRA_OCCURRENCE, -1).takeIf { it >= 0 }
+                val lateMillis = setFor?.let { System.currentTimeMillis() - it }
+                val occurrence = setFor ?: System.currentTimeMillis()
+
+                val alarms = Alarms(context)
+                val alert = alarms.claimAlert(occurrence)
+                // not prepared if the alarm started the process; building takes too long for the main thread then
+                val posted = alarms.notifyPrepared(scheduleId, workoutData, alert, occurrence)
+                val mainPostedAt = if (posted) SystemClock.elapsedRealtime() else null
+                val appContext = context.applicationContext
+                val fallbackIntent = AlarmService.getOnNotificationShownIntent(
+                        context,
+                        scheduleId,
+                        occurrence,
+                        if (posted) null else workoutData,
+                        alert
+                )
+                doAsync(context, fallbackIntent) {
+                    if (!posted) {
+                        it.notify(scheduleId, workoutData, alert, occurrence)
+                    }
+                    val postedAt = mainPostedAt ?: SystemClock.elapsedRealtime()
+                    it.submit(AlarmOperation(AlarmOutboxEntry.OPERATION_SHOWN, scheduleId, occurrence = occurrence))
+                    val trace = AlarmDueTrace(postedAt, SystemClock.elapsedRealtime())
+                    AlarmLatencies.record(appContext, lateMillis, receivedAt, trace)
+                }
+            }
         }
+    }
 
-        val scheduleId = QuickFitContentProvider.getScheduleIdFromUriOrThrow(intent.data)
-        val workoutData = WorkoutNotificationData.fromBundle(intent.getBundleExtra(EXTRA_WORKOUT_NOTIFICATION_DATA_BUNDLE)!!)
+    /**
+     * Runs [work] on the shared background thread and finishes the broadcast when done. Hands over to [AlarmService]
+     * with [fallbackIntent] if [work] fails or is not done within [ASYNC_BUDGET_MILLIS]; the work is safe to repeat.
+     */
+    private fun doAsync(context: Context, fallbackIntent: Intent, work: (Alarms) -> Unit) {
+        val pendingResult = goAsync()
+        val appContext = context.applicationContext
+        val startMillis = SystemClock.elapsedRealtime()
+        val finished = AtomicBoolean(false)
+        // not ours, but held by the system for as long as the broadcast is pending
+        val accountingToken = WakefulIntents.accounting.acquired(
+                WakefulIntents.accountingTag("broadcast", fallbackIntent),
+                ASYNC_BUDGET_MILLIS
+        )
+
+        fun fallBack(reason: String) {
+            if (finished.compareAndSet(false, true)) {
+                Timber.w("Handing over to AlarmService, $reason: $fallbackIntent")
+                WakefulIntents.startWakefulForegroundService(appContext, fallbackIntent)
+                pendingResult.finish()
+                WakefulIntents.accounting.released(accountingToken)
+            }
+        }
 
-        Alarms(context).notify(scheduleId, workoutData)
-        WakefulIntents.startWakefulForegroundService(context, AlarmService.getOnNotificationShownIntent(context, scheduleId))
+        val watchdog = Runnable { fallBack("not done after $ASYNC_BUDGET_MILLIS ms") }
+        mainHandler.postDelayed(watchdog, ASYNC_BUDGET_MILLIS)
+
+        asyncExecutor.execute {
+            try {
+                val alarms = Alarms(appContext)
+                // left behind by a process that died in the middle of a broadcast; unlike service intents, broadcasts
+                // are not delivered again, and submits drain only the outbox entries of their own schedule
+                if (outboxDrained.compareAndSet(false, true)) {
+                    alarms.drainOutbox()
+                }
+                work(alarms)
+            } catch (e: Throwable) {
+                Timber.e(e, "Failed in receiver: $fallbackIntent")
+                mainHandler.removeCallbacks(watchdog)
+                fallBack("failed")
+                return@execute
+            }
+            mainHandler.removeCallbacks(watchdog)
+            if (finished.compareAndSet(false, true)) {
+                // compare with the AlarmService log line for the same action, which comes on top of the service start
+                Timber.i("Done in receiver after %d ms: %s", SystemClock.elapsedRealtime() - startMillis, fallbackIntent.action)
+                pendingResult.finish()
+                WakefulIntents.accounting.released(accountingToken)
+            }
+        }
     }
 
     companion object {
         private const val EXTRA_WORKOUT_NOTIFICATION_DATA_BUNDLE = "com.lambdasoup.quickfit.alarm.EXTRA_NOTIFICATION_DATA"
         private const val ACTION_NOTIFY = "com.lambdasoup.quickfit.alarm.ACTION_NOTIFY"
+        private const val ACTION_DUE = "com.lambdasoup.quickfit.alarm.ACTION_DUE"
+        private const val EXTRA_SET_FOR_MILLIS = "com.lambdasoup.quickfit.alarm.EXTRA_SET_FOR_MILLIS"
+        private const val EXTRA_OCCURRENCE = "com.lambdasoup.quickfit.alarm.EXTRA_OCCURRENCE"
 
         private val AUDIO_ATTRS_NOTIFICATION = AudioAttributes.Builder().setUsage(AudioAttributes.USAGE_NOTIFICATION_EVENT).build()
 
-        internal fun getNotifyIntent(context: Context, scheduleId: Long, workoutData: WorkoutNotificationData?): Intent =
+        // well within the 10 seconds a pending broadcast may take
+        private val ASYNC_BUDGET_MILLIS = TimeUnit.SECONDS.toMillis(8)
+
+        // shared by all broadcasts, lives as long as the process
+        private val asyncExecutor by lazy { Executors.newSingleThreadExecutor() }
+        private val mainHandler by lazy { Handler(Looper.getMainLooper()) }
+        private val outboxDrained = AtomicBoolean(false)
+
+        internal fun getDueIntent(context: Context, setForMillis: Long?): Intent =
+                Intent(context, AlarmReceiver::class.java)
+                        .setAction(ACTION_DUE)
+                        .apply {
+                            if (setForMillis != null) {
+                                putExtra(EXTRA_SET_FOR_MILLIS, setForMillis)
+                            }
+                        }
+
+        /**
+         * @param workoutData and [occurrence] may be left out for cancelling; extras do not take part in matching
+         */
+        internal fun getNotifyIntent(
+                context: Context,
+                scheduleId: Long,
+                workoutData: WorkoutNotificationData?,
+                occurrence: Long?
+        ): Intent =
                 Intent(context, AlarmReceiver::class.java)
                         .setData(QuickFitContentProvider.getUriSchedulesId(scheduleId)) // for intent disambiguation
                         .setAction(ACTION_NOTIFY)
@@ -65,6 +201,9 @@ class AlarmReceiver : BroadcastReceiver() {
                                 // see there for why as a Bundle
                                 putExtra(EXTRA_WORKOUT_NOTIFICATION_DATA_BUNDLE, workoutData.asBundle())
                             }
+                            if (occurrence != null) {
+                                putExtra(EXTRA_OCCURRENCE, occurrence)
+                            }
                         }
 
         fun initNotificationChannels(context: Context) {
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import com.lambdasoup.quickfit.persist.QuickFitContract.ScheduleEntry
+
+/**
+ * Alarm state of one schedule, as read for reconciliation.
+ */
+data class ReconcileRow(
+        val scheduleId: Long,
+        val nextAlarmMillis: Long?,
+        val currentState: String
+)
+
+/**
+ * What to do for one schedule after a reboot or a time change.
+ *
+ * @param notify whether the notification is to be (re-)displayed
+ * @param alarmMillis when to set the alarm for
+ * @param newState the state to write back, or null if the row stays unchanged
+ */
+data class ReconcileAction(
+        val scheduleId: Long,
+        val notify: Boolean,
+        val alarmMillis: Long,
+        val newState: String?
+)
+
+/**
+ * Decides in one pass, without any I/O, how the alarms of all schedules are to be restored after a reboot or a time
+ * change, so that the caller can read all schedules once and write all changes at once.
+ */
+object AlarmReconciler {
+
+    /**
+     * @param dueUntil alarms up to this time are due now; the current time plus the tolerance within which alarms are
+     * handled together, or plus half the delivery window for windowed alarms
+     * @param nextOccurrence next occurrence after [dueUntil] of the given schedule
+     */
+    fun plan(rows: List<ReconcileRow>, dueUntil: Long, nextOccurrence: (Long) -> Long): List<ReconcileAction> =
+            rows.map { row ->
+                when {
+                    row.nextAlarmMillis == null ->
+                        // not yet scheduled; compute next alert time now
+                        ReconcileAction(row.scheduleId, false, nextOccurrence(row.scheduleId), ScheduleEntry.CURRENT_STATE_ACKNOWLEDGED)
+                    row.nextAlarmMillis <= dueUntil || row.currentState == ScheduleEntry.CURRENT_STATE_DISPLAYING ->
+                        // due, missed while off, or was displaying; show it and move on to the next occurrence
+                        ReconcileAction(row.scheduleId, true, nextOccurrence(row.scheduleId), ScheduleEntry.CURRENT_STATE_DISPLAYING)
+                    else ->
+                        // still in the future, only the alarm registration was lost
+                        ReconcileAction(row.scheduleId, false, row.nextAlarmMillis, null)
+                }
+            }
+}
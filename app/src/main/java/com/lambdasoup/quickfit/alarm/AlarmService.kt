@@ -23,14 +23,19 @@ import android.content.Intent
 import android.os.Build
 import android.os.IBinder
 import android.os.PowerManager
+import android.os.SystemClock
 import androidx.core.app.NotificationCompat
 import com.lambdasoup.quickfit.Constants
 import com.lambdasoup.quickfit.Constants.PENDING_INTENT_WORKOUT_LIST
 import com.lambdasoup.quickfit.R
 import com.lambdasoup.quickfit.persist.QuickFitContentProvider
+import com.lambdasoup.quickfit.persist.QuickFitContract.AlarmOutboxEntry
 import com.lambdasoup.quickfit.ui.WorkoutListActivity
+import com.lambdasoup.quickfit.util.StripedExecutor
 import com.lambdasoup.quickfit.util.WakefulIntents
 import timber.log.Timber
+import java.io.FileDescriptor
+import java.io.PrintWriter
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
@@ -50,10 +55,13 @@ class AlarmService : Service() {
     }
 
     private lateinit var executor: ExecutorService
+    // one schedule at a time, so that the per-schedule transitions of Alarms do not race each other
+    private lateinit var scheduleExecutor: StripedExecutor
 
     override fun onCreate() {
         super.onCreate()
         executor = Executors.newFixedThreadPool(2)
+        scheduleExecutor = StripedExecutor(executor)
     }
 
     override fun onDestroy() {
@@ -67,41 +75,77 @@ class AlarmService : Service() {
         @Suppress("ReplaceGuardClauseWithFunctionCall") // IDE fails then, demands wrong type. New type inference at fault?
         if (intent == null) throw IllegalArgumentException("Should never receive null intents because of START_REDELIVER_INTENT")
 
+        // including the foreground start, to compare with the work done in AlarmReceiver
+        val startMillis = SystemClock.elapsedRealtime()
         startForeground(Constants.NOTIFICATION_ALARM_BG_IO_WORK, buildForegroundNotification())
 
-        runWakeLock.acquire(TimeUnit.SECONDS.toMillis(30))
+        runWakeLock.acquire(RUN_WAKE_LOCK_TIMEOUT_MILLIS)
+        val accountingToken = WakefulIntents.accounting.acquired(
+                WakefulIntents.accountingTag("service", intent),
+                RUN_WAKE_LOCK_TIMEOUT_MILLIS
+        )
         WakefulIntents.completeWakefulIntent(intent)
 
         Timber.d("Done with wakelock handover and foreground start, about to enqueue intent processing. intent=$intent")
 
-        executor.submit {
-            try {
-                fun getScheduleId() = QuickFitContentProvider.getScheduleIdFromUriOrThrow(intent.data!!)
+        fun getScheduleId() = QuickFitContentProvider.getScheduleIdFromUriOrThrow(intent.data!!)
+
+        // actions on all schedules run on a stripe of their own; their writes are conditional on the state they read
+        val stripe = if (intent.data == null) STRIPE_ALL_SCHEDULES else getScheduleId()
 
+        scheduleExecutor.execute(stripe) {
+            try {
                 when (intent.action) {
-                    ACTION_SNOOZE -> alarms.onSnoozed(getScheduleId())
+                    // notification actions come with no write of their own; recorded in the outbox first, after which
+                    // the intent is no longer needed
+                    ACTION_SNOOZE -> alarms.submit(AlarmOperation(AlarmOutboxEntry.OPERATION_SNOOZE, getScheduleId()))
                     ACTION_DIDIT -> {
                         val workoutId = QuickFitContentProvider.getWorkoutIdFromUriOrThrow(intent.data!!)
-                        alarms.onDidIt(getScheduleId(), workoutId)
+                        // the occurrence the notification is for, so a redelivered intent carries the same time
+                        val notifiedAt = intent.getLongExtra(EXTRA_NOTIFIED_AT, System.currentTimeMillis())
+                        alarms.submit(AlarmOperation(AlarmOutboxEntry.OPERATION_DID_IT, getScheduleId(), workoutId, notifiedAt))
+                    }
+                    ACTION_ON_ALARM_DUE -> {
+                        val trace = alarms.onAlarmDue()
+                        // how late the alarm was is recorded by the receiver, if it got that far
+                        if (intent.hasExtra(EXTRA_RECEIVED_AT)) {
+                            AlarmLatencies.record(applicationContext, null, intent.getLongExtra(EXTRA_RECEIVED_AT, 0), trace)
+                        }
+                    }
+                    ACTION_ON_NOTIFICATION_SHOWN -> {
+                        val occurrence = intent.getLongExtra(EXTRA_NOTIFIED_AT, System.currentTimeMillis())
+                        // handed over by the receiver before it got to post the notification
+                        intent.getBundleExtra(EXTRA_WORKOUT_NOTIFICATION_DATA_BUNDLE)?.let {
+                            val alert = intent.getBooleanExtra(EXTRA_ALERT, true)
+                            alarms.notify(getScheduleId(), WorkoutNotificationData.fromBundle(it), alert, occurrence)
+                        }
+                        alarms.submit(AlarmOperation(AlarmOutboxEntry.OPERATION_SHOWN, getScheduleId(), occurrence = occurrence))
                     }
-                    ACTION_ON_NOTIFICATION_SHOWN -> alarms.onNotificationShown(getScheduleId())
-                    ACTION_ON_NOTIFICATION_DISMISSED -> alarms.onNotificationDismissed(getScheduleId())
-                    ACTION_ON_SCHEDULE_CHANGED -> alarms.onScheduleChanged(getScheduleId())
-                    ACTION_ON_SCHEDULE_DELETED -> alarms.onScheduleDeleted(getScheduleId())
+                    ACTION_ON_NOTIFICATION_DISMISSED -> alarms.submit(AlarmOperation(AlarmOutboxEntry.OPERATION_DISMISSED, getScheduleId()))
+                    ACTION_DRAIN_OUTBOX -> alarms.drainOutbox()
+                    ACTION_RECOVER -> alarms.recover()
                     ACTION_TIME_DISCONTINUITY -> alarms.resetAlarms()
+                    ACTION_ON_ALARM_SETTINGS_CHANGED -> alarms.onAlarmSettingsChanged()
                     else -> throw IllegalArgumentException("Unknown action: ${intent.action}")
                 }
             } catch (e: Throwable) {
                 Timber.e(e, "Failed to execute $intent")
             } finally {
+                Timber.i("Done in service after %d ms: %s", SystemClock.elapsedRealtime() - startMillis, intent.action)
                 runWakeLock.release()
+                WakefulIntents.accounting.released(accountingToken)
                 stopSelf(startId)
             }
         }
 
+        // needed only until a notification action is in the outbox; all else is replayed from there after a reboot
         return START_REDELIVER_INTENT
     }
 
+    override fun dump(fd: FileDescriptor?, writer: PrintWriter, args: Array<out String>?) {
+        WakefulIntents.accounting.dump(writer)
+    }
+
     private fun buildForegroundNotification(): Notification =
             NotificationCompat.Builder(this, Constants.NOTIFICATION_CHANNEL_ID_BG_IO)
                     .setContentTitle(getString(R.string.notification_alarm_bg_io_title))
@@ -118,46 +162,96 @@ class AlarmService : Service() {
     companion object {
         private const val ACTION_SNOOZE = "com.lambdasoup.quickfit.alarm.ACTION_SNOOZE"
         private const val ACTION_DIDIT = "com.lambdasoup.quickfit.alarm.ACTION_DIDIT"
+        private const val ACTION_ON_ALARM_DUE = "com.lambdasoup.quickfit.alarm.ACTION_ON_ALARM_DUE"
         private const val ACTION_ON_NOTIFICATION_SHOWN = "com.lambdasoup.quickfit.alarm.ACTION_ON_NOTIFICATION_SHOWN"
         private const val ACTION_ON_NOTIFICATION_DISMISSED = "com.lambdasoup.quickfit.alarm.ACTION_ON_NOTIFICATION_DISMISSED"
-        private const val ACTION_ON_SCHEDULE_CHANGED = "com.lambdasoup.quickfit.alarm.ACTION_ON_SCHEDULE_CHANGED"
-        private const val ACTION_ON_SCHEDULE_DELETED = "com.lambdasoup.quickfit.alarm.ACTION_ON_SCHEDULE_DELETED"
+        private const val ACTION_DRAIN_OUTBOX = "com.lambdasoup.quickfit.alarm.ACTION_DRAIN_OUTBOX"
+        private const val ACTION_RECOVER = "com.lambdasoup.quickfit.alarm.ACTION_RECOVER"
         private const val ACTION_TIME_DISCONTINUITY = "com.lambdasoup.quickfit.alarm.ACTION_TIME_DISCONTINUITY"
+        private const val ACTION_ON_ALARM_SETTINGS_CHANGED = "com.lambdasoup.quickfit.alarm.ACTION_ON_ALARM_SETTINGS_CHANGED"
+
+        private const val EXTRA_NOTIFIED_AT = "com.lambdasoup.quickfit.alarm.NOTIFIED_AT"
+        private const val EXTRA_RECEIVED_AT = "com.lambdasoup.quickfit.alarm.RECEIVED_AT"
+        private const val EXTRA_WORKOUT_NOTIFICATION_DATA_BUNDLE = "com.lambdasoup.quickfit.alarm.WORKOUT_NOTIFICATION_DATA"
+        private const val EXTRA_ALERT = "com.lambdasoup.quickfit.alarm.ALERT"
+        private const val QUERY_OCCURRENCE = "occurrence"
+
+        private val RUN_WAKE_LOCK_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30)
+
+        // schedule ids are positive
+        private const val STRIPE_ALL_SCHEDULES = -1L
 
         fun getSnoozeIntent(context: Context, scheduleId: Long) =
                 Intent(context, AlarmService::class.java)
                         .setData(QuickFitContentProvider.getUriSchedulesId(scheduleId))
                         .setAction(ACTION_SNOOZE)
 
-        fun getDidItIntent(context: Context, workoutId: Long, scheduleId: Long) =
+        fun getDidItIntent(context: Context, workoutId: Long, scheduleId: Long, notifiedAt: Long) =
                 Intent(context, AlarmService::class.java)
-                        .setData(QuickFitContentProvider.getUriWorkoutsIdSchedulesId(workoutId, scheduleId))
+                        // one PendingIntent per occurrence: preparing the notification for the next one must not
+                        // update the extras of the one currently shown. The uri matcher ignores the query.
+                        .setData(QuickFitContentProvider.getUriWorkoutsIdSchedulesId(workoutId, scheduleId)
+                                .buildUpon()
+                                .appendQueryParameter(QUERY_OCCURRENCE, notifiedAt.toString())
+                                .build())
                         .setAction(ACTION_DIDIT)
+                        .putExtra(EXTRA_NOTIFIED_AT, notifiedAt)
+
+        /**
+         * @param receivedAt elapsed realtime at which [AlarmReceiver] got the alarm
+         */
+        fun getOnAlarmDueIntent(context: Context, receivedAt: Long) =
+                Intent(context, AlarmService::class.java)
+                        .setAction(ACTION_ON_ALARM_DUE)
+                        .putExtra(EXTRA_RECEIVED_AT, receivedAt)
 
-        fun getOnNotificationShownIntent(context: Context, scheduleId: Long) =
+        /**
+         * @param workoutData to post the notification first, unless null
+         * @param alert whether that notification is to alert
+         */
+        fun getOnNotificationShownIntent(
+                context: Context,
+                scheduleId: Long,
+                occurrence: Long,
+                workoutData: WorkoutNotificationData?,
+                alert: Boolean
+        ) =
                 Intent(context, AlarmService::class.java)
                         .setData(QuickFitContentProvider.getUriSchedulesId(scheduleId))
                         .setAction(ACTION_ON_NOTIFICATION_SHOWN)
+                        .putExtra(EXTRA_NOTIFIED_AT, occurrence)
+                        .apply {
+                            if (workoutData != null) {
+                                // see there for why as a Bundle
+                                putExtra(EXTRA_WORKOUT_NOTIFICATION_DATA_BUNDLE, workoutData.asBundle())
+                                putExtra(EXTRA_ALERT, alert)
+                            }
+                        }
 
         fun getOnNotificationDismissedIntent(context: Context, scheduleId: Long) =
                 Intent(context, AlarmService::class.java)
                         .setData(QuickFitContentProvider.getUriSchedulesId(scheduleId))
                         .setAction(ACTION_ON_NOTIFICATION_DISMISSED)
 
-        fun getOnScheduleChangedIntent(context: Context, scheduleId: Long) =
+        /**
+         * For after writing to the alarm outbox, see [ContentProviderAlarmOutbox.newInsert].
+         */
+        fun getDrainOutboxIntent(context: Context) =
                 Intent(context, AlarmService::class.java)
-                        .setData(QuickFitContentProvider.getUriSchedulesId(scheduleId))
-                        .setAction(ACTION_ON_SCHEDULE_CHANGED)
+                        .setAction(ACTION_DRAIN_OUTBOX)
 
-        fun getOnScheduleDeletedIntent(context: Context, scheduleId: Long) =
+        fun getOnBootCompletedIntent(context: Context) =
                 Intent(context, AlarmService::class.java)
-                        .setData(QuickFitContentProvider.getUriSchedulesId(scheduleId))
-                        .setAction(ACTION_ON_SCHEDULE_DELETED)
+                        .setAction(ACTION_RECOVER)
 
-        fun getOnBootCompletedIntent(context: Context) =
+        fun getOnTimeDiscontinuityIntent(context: Context) =
                 Intent(context, AlarmService::class.java)
                         .setAction(ACTION_TIME_DISCONTINUITY)
 
+        fun getOnAlarmSettingsChangedIntent(context: Context) =
+                Intent(context, AlarmService::class.java)
+                        .setAction(ACTION_ON_ALARM_SETTINGS_CHANGED)
+
         fun initNotificationChannels(context: Context) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 val bgIoChannel = NotificationChannel(
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import androidx.annotation.WorkerThread
+import com.lambdasoup.quickfit.model.Recurrence
+
+/**
+ * Alarm state of one schedule, together with what is needed to compute its occurrences and to show its notification.
+ */
+data class AlarmSchedule(
+        val scheduleId: Long,
+        val recurrence: Recurrence,
+        val hour: Int,
+        val minute: Int,
+        val nextAlarmMillis: Long?,
+        val currentState: String,
+        val workoutData: WorkoutNotificationData
+)
+
+/**
+ * Moves one schedule to [newState] and its next alarm to [nextAlarmMillis], provided it is still in [expectedState].
+ */
+data class AlarmTransition(
+        val scheduleId: Long,
+        val expectedState: String,
+        val nextAlarmMillis: Long,
+        val newState: String
+)
+
+/**
+ * Moves [schedule] on to [nextAlarmMillis], computed from the days and time that were read, and marks it rescheduled.
+ */
+data class Reschedule(
+        val schedule: AlarmSchedule,
+        val nextAlarmMillis: Long
+)
+
+/**
+ * The reminder-related columns of the schedules, as seen by [Alarms]. All writes are conditional on the state that was
+ * read, so that concurrent transitions of the same schedule do not overwrite each other.
+ */
+interface AlarmStore {
+    /**
+     * All schedules whose next alarm is at or before [dueUntil].
+     */
+    @WorkerThread
+    fun readDue(dueUntil: Long): List<AlarmSchedule>
+
+    /**
+     * All schedules whose next alarm is at or before [dueUntil], and all whose notification is displaying.
+     */
+    @WorkerThread
+    fun readDueOrDisplaying(dueUntil: Long): List<AlarmSchedule>
+
+    @WorkerThread
+    fun readAll(): List<AlarmSchedule>
+
+    /**
+     * All schedules whose days or time changed since their next alarm was computed, including new ones.
+     */
+    @WorkerThread
+    fun readNeedsReschedule(): List<AlarmSchedule>
+
+    /**
+     * The schedule, or null if it does not exist (anymore).
+     */
+    @WorkerThread
+    fun read(scheduleId: Long): AlarmSchedule?
+
+    /**
+     * @return whether the schedule was still in the expected state and has been moved on
+     */
+    @WorkerThread
+    fun transition(transition: AlarmTransition): Boolean
+
+    /**
+     * Applies all transitions in a single write.
+     *
+     * @return the ids of the schedules that were no longer in their expected state and have been left alone
+     */
+    @WorkerThread
+    fun transitionAll(transitions: List<AlarmTransition>): Set<Long>
+
+    /**
+     * Applies all reschedules in a single write, each moving the schedule to acknowledged and clearing its
+     * needs-reschedule mark. Each is conditional on the state, the recurrence and the time that were read, so that neither a
+     * concurrent transition nor another edit gets lost.
+     *
+     * @return the ids of the schedules that changed in the meantime and have been left alone
+     */
+    @WorkerThread
+    fun rescheduleAll(reschedules: List<Reschedule>): Set<Long>
+
+    /**
+     * Changes the state only, keeping the next alarm.
+     *
+     * @return whether the schedule was still in [expectedState]
+     */
+    @WorkerThread
+    fun setState(scheduleId: Long, expectedState: String, newState: String): Boolean
+
+    /**
+     * Workout data of all schedules whose notification is currently displaying.
+     */
+    @WorkerThread
+    fun readDisplaying(): List<WorkoutNotificationData>
+
+    /**
+     * The earliest next alarm of all schedules, or null if there are none.
+     */
+    @WorkerThread
+    fun earliestNextAlarmMillis(): Long?
+
+    /**
+     * Id of the time zone in which the next alarms of all schedules were last computed, or null if not known.
+     */
+    @WorkerThread
+    fun readTimeZoneId(): String?
+
+    @WorkerThread
+    fun writeTimeZoneId(timeZoneId: String)
+}
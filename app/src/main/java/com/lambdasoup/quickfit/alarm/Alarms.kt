@@ -17,424 +17,620 @@
 
 package com.lambdasoup.quickfit.alarm
 
-import android.app.AlarmManager
-import android.app.Notification
-import android.app.NotificationManager
-import android.app.PendingIntent
-import android.content.ContentValues
-import android.content.Context
-import android.content.Intent
-import android.database.Cursor
-import android.media.RingtoneManager
-import android.net.Uri
-import android.os.Build
-import android.os.Bundle
 import androidx.annotation.AnyThread
 import androidx.annotation.WorkerThread
-import androidx.core.app.AlarmManagerCompat
-import androidx.core.app.NotificationCompat
-import androidx.core.app.TaskStackBuilder
-import androidx.core.content.ContextCompat
-import androidx.core.database.getLongOrNull
-import androidx.preference.PreferenceManager
-import com.lambdasoup.quickfit.Constants.NOTIFICATION_ALARM
-import com.lambdasoup.quickfit.Constants.NOTIFICATION_CHANNEL_ID_ALARM
-import com.lambdasoup.quickfit.Constants.PENDING_INTENT_ALARM_RECEIVER
-import com.lambdasoup.quickfit.Constants.PENDING_INTENT_DID_IT
-import com.lambdasoup.quickfit.Constants.PENDING_INTENT_DISMISS_ALARM
-import com.lambdasoup.quickfit.Constants.PENDING_INTENT_SNOOZE
-import com.lambdasoup.quickfit.Constants.PENDING_INTENT_WORKOUT_LIST
-import com.lambdasoup.quickfit.FitActivityService
-import com.lambdasoup.quickfit.R
-import com.lambdasoup.quickfit.model.DayOfWeek
-import com.lambdasoup.quickfit.model.FitActivity
-import com.lambdasoup.quickfit.persist.QuickFitContentProvider
+import com.lambdasoup.quickfit.persist.QuickFitContract.AlarmOutboxEntry
 import com.lambdasoup.quickfit.persist.QuickFitContract.ScheduleEntry
-import com.lambdasoup.quickfit.persist.QuickFitContract.WorkoutEntry
-import com.lambdasoup.quickfit.ui.WorkoutListActivity
-import com.lambdasoup.quickfit.util.DateTimes
+import com.lambdasoup.quickfit.util.NextOccurrences
 import timber.log.Timber
-import java.util.concurrent.TimeUnit
+import java.util.TimeZone
+import java.util.concurrent.ConcurrentHashMap
 
 /**
- * Actual logic for workout reminder alarm tasks. Called by different android components ([AlarmService], [AlarmReceiver],
- * [ResetAlarmsReceiver]) according to the needs of the Android framework.
+ * Actual logic for workout reminder alarm tasks. Called by different android components ([AlarmService],
+ * [AlarmReceiver], [ResetAlarmsReceiver]) according to the needs of the Android framework.
  *
- * Responsible for database interaction as far as the reminder-related columns are concerned and for the related notifications.
+ * Responsible for the reminder-related state of the schedules in [store], the system alarms in [alarmBackend] and the
+ * related notifications in [notificationBackend]. By default, each schedule has a system alarm of its own, which shows
+ * its notification right away; in single alarm mode, there is only the one alarm for the earliest due schedule.
+ * Operations on single schedules come in through [outbox], which is what makes them survive the death of the process;
+ * see [drainOutbox] and [recover].
+ *
+ * Free of Android dependencies, so that the reminder engine can be tested and simulated on the JVM.
+ *
+ * @param sessionRecorder records the session for a "did it"
+ * @param wallClock current time in milliseconds since the epoch
+ * @param elapsedClock monotonic time in milliseconds, for timing only
+ * @param timeZone the time zone schedules are in; read anew by [resetAlarms] and [recover]
+ * @param coalesceToleranceMillis alarms due within this time of each other are handled together
+ * @param snoozeMillis how long to snooze for, as currently configured
+ * @param alarmWindowMillis length of the window from the due time on within which the system may deliver the alarm,
+ * as currently configured; 0 for exact alarms
+ * @param singleAlarm whether to keep one system alarm for the earliest due schedule instead of one per schedule, as
+ * currently configured
+ * @param alertGate shared by all instances within the process, see [claimAlert]
  */
-class Alarms(private val context: Context) {
-    private val notificationManager by lazy { context.getSystemService(Context.NOTIFICATION_SERVICE) as NotificationManager }
-    private val alarmManager by lazy { context.getSystemService(Context.ALARM_SERVICE) as AlarmManager }
+class Alarms(
+        private val store: AlarmStore,
+        private val outbox: AlarmOutbox,
+        private val alarmBackend: AlarmBackend,
+        private val notificationBackend: NotificationBackend,
+        private val sessionRecorder: SessionRecorder,
+        private val wallClock: () -> Long,
+        private val elapsedClock: () -> Long,
+        private val timeZone: () -> TimeZone,
+        private val coalesceToleranceMillis: Long,
+        private val snoozeMillis: () -> Long,
+        private val alarmWindowMillis: () -> Long,
+        private val singleAlarm: () -> Boolean,
+        private val alertGate: AlertGate
+) {
+    // replaced on time zone changes, by resetAlarms
+    @Volatile
+    private var nextOccurrences = NextOccurrences(timeZone())
 
+    /**
+     * Records [operation] in the outbox and applies it, together with anything else still pending there for the same
+     * schedule. Operations on other schedules are left to their own submits, so that those run in parallel.
+     */
     @WorkerThread
-    fun onSnoozed(scheduleId: Long) {
-        notificationManager.cancel(scheduleId.toString(), NOTIFICATION_ALARM)
-        prepareNextAlert(scheduleId, ScheduleEntry.CURRENT_STATE_SNOOZED) { nowPlusSnoozeTime() }
+    fun submit(operation: AlarmOperation) {
+        outbox.add(operation)
+        drainSchedule(operation.scheduleId)
     }
 
+    /**
+     * Applies the pending operations from the outbox for all schedules, one schedule after the other, see
+     * [drainSchedule]. For after a reboot or an update, and after schedule changes, which add to the outbox in the same
+     * transaction as the change.
+     */
     @WorkerThread
-    fun onDidIt(scheduleId: Long, workoutId: Long) {
-        notificationManager.cancel(scheduleId.toString(), NOTIFICATION_ALARM)
-        FitActivityService.enqueueInsertSession(context, workoutId)
-        context.contentResolver.update(
-                QuickFitContentProvider.getUriSchedulesId(scheduleId),
-                ContentValues(1).apply {
-                    put(ScheduleEntry.COL_CURRENT_STATE, ScheduleEntry.CURRENT_STATE_ACKNOWLEDGED)
-                },
-                null,
-                null
-        )
+    fun drainOutbox() {
+        for (scheduleId in outbox.readAll().mapTo(LinkedHashSet()) { it.operation.scheduleId }) {
+            drainSchedule(scheduleId)
+        }
     }
 
-    @AnyThread
-    fun notify(scheduleId: Long, workoutData: WorkoutNotificationData) {
-        val fitActivity = FitActivity.fromKey(workoutData.activityType, context.resources)
-
-        val dismissIntent = getForegroundServicePendingIntentCompat(
-                context,
-                PENDING_INTENT_DISMISS_ALARM,
-                AlarmService.getOnNotificationDismissedIntent(context, scheduleId),
-                PendingIntent.FLAG_UPDATE_CURRENT
-        )
-
-        val showWorkoutPendingIntent = TaskStackBuilder.create(context)
-                .addNextIntentWithParentStack(
-                        Intent(context, WorkoutListActivity::class.java)
-                                // for intent disambiguation
-                                // and for WorkoutListActivity to show correct workout
-                                .setData(QuickFitContentProvider.getUriWorkoutsId(workoutData.workoutId))
-                                // dismiss intent not fired by autocancel
-                                .putExtra(WorkoutListActivity.EXTRA_NOTIFICATIONS_CANCEL_INTENT, dismissIntent)
-                )
-                .getPendingIntent(PENDING_INTENT_WORKOUT_LIST, PendingIntent.FLAG_UPDATE_CURRENT)
-
-        val didItIntent = getForegroundServicePendingIntentCompat(
-                context,
-                PENDING_INTENT_DID_IT,
-                AlarmService.getDidItIntent(context, workoutData.workoutId, scheduleId),
-                PendingIntent.FLAG_UPDATE_CURRENT
-        )
-
-        val snoozeIntent = getForegroundServicePendingIntentCompat(
-                context,
-                PENDING_INTENT_SNOOZE,
-                AlarmService.getSnoozeIntent(context, scheduleId),
-                PendingIntent.FLAG_UPDATE_CURRENT
-        )
-
-        val notificationBuilder = NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_ID_ALARM)
-                .setContentTitle(context.getString(R.string.notification_alarm_title_single, fitActivity.displayName))
-                .setContentText(context.getString(
-                        R.string.notification_alarm_content_single,
-                        context.resources.getQuantityString(
-                                R.plurals.duration_mins_format,
-                                workoutData.durationMinutes,
-                                workoutData.durationMinutes
-                        ),
-                        workoutData.label.orEmpty()
-                ))
-                .setContentIntent(showWorkoutPendingIntent)
-                .addAction(
-                        R.drawable.ic_done_white_24dp,
-                        context.getString(R.string.notification_action_did_it),
-                        didItIntent
-                )
-                .addAction(
-                        R.drawable.ic_alarm_white_24dp,
-                        context.getString(R.string.notification_action_remind_me_later),
-                        snoozeIntent
-                )
-                .setDeleteIntent(dismissIntent)
-                // Only effect is on content-click. cancelIntent is not fired, despite the name. Actions need to cancel the notification
-                // themselves.
-                .setAutoCancel(true)
-                // Notification might be re-displayed after device time corrections. No point in re-alerting the user.
-                // If the user does not dismiss the notification for a week, they won't get noisily alerted about the _next_ occurence.
-                // This is acceptable to me.
-                .setOnlyAlertOnce(true)
-                .setPriority(NotificationCompat.PRIORITY_HIGH)
-                .setSmallIcon(R.drawable.ic_stat_quickfit_icon)
-                .setColor(ContextCompat.getColor(context, R.color.colorPrimary))
-                .setCategory(NotificationCompat.CATEGORY_ALARM)
-
-        // Starting with O, those properties are set on the notification channel
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
-            val preferences = PreferenceManager.getDefaultSharedPreferences(context)
-            val ringtoneUriStr = preferences.getString(context.getString(R.string.pref_key_notification_ringtone), null)
-            notificationBuilder.setSound(
-                    when {
-                        ringtoneUriStr == null -> RingtoneManager.getActualDefaultRingtoneUri(context, RingtoneManager.TYPE_NOTIFICATION)
-                        ringtoneUriStr.isNotEmpty() -> Uri.parse(ringtoneUriStr)
-                        else -> null
-                    }
-            )
+    /**
+     * Applies the pending operations of one schedule in the order they were added, removing each once applied. An
+     * entry whose operation was applied but not yet removed when the process died is applied again later; all
+     * operations are safe to repeat. An entry whose operation fails is logged and removed all the same, so that it does
+     * not hold up the entries behind it on every drain. Only one drain runs at a time per schedule within the process;
+     * entries added meanwhile are drained by whoever added them.
+     */
+    @WorkerThread
+    private fun drainSchedule(scheduleId: Long) {
+        synchronized(drainLocks.getOrPut(scheduleId) { Any() }) {
+            for (entry in outbox.readForSchedule(scheduleId)) {
+                try {
+                    apply(entry.operation)
+                } catch (e: RuntimeException) {
+                    Timber.e(e, "Dropping alarm operation that failed: ${entry.operation}")
+                }
+                outbox.remove(entry.id)
+            }
+        }
+    }
 
-            val ledOn = preferences.getBoolean(context.getString(R.string.pref_key_notification_led), true)
-            val vibrationOn = preferences.getBoolean(context.getString(R.string.pref_key_notification_vibrate), true)
-            notificationBuilder.setDefaults(
-                    (if (ledOn) Notification.DEFAULT_LIGHTS else 0) or if (vibrationOn) Notification.DEFAULT_VIBRATE else 0
-            )
+    @WorkerThread
+    private fun apply(operation: AlarmOperation) {
+        val scheduleId = operation.scheduleId
+        when (operation.operation) {
+            AlarmOutboxEntry.OPERATION_SNOOZE -> onSnoozed(scheduleId)
+            AlarmOutboxEntry.OPERATION_DID_IT -> {
+                val workoutId = operation.workoutId
+                val occurrence = operation.occurrence
+                if (workoutId == null || occurrence == null) {
+                    Timber.w("Not recording a session for did-it without workout or occurrence: $operation")
+                } else {
+                    sessionRecorder.record(workoutId, occurrence)
+                }
+                onDidIt(scheduleId)
+            }
+            AlarmOutboxEntry.OPERATION_SHOWN -> onNotificationShown(scheduleId, operation.occurrence)
+            AlarmOutboxEntry.OPERATION_DISMISSED -> onNotificationDismissed(scheduleId)
+            AlarmOutboxEntry.OPERATION_CHANGED -> onScheduleChanged(scheduleId)
+            AlarmOutboxEntry.OPERATION_DELETED -> onScheduleDeleted(scheduleId)
+            else -> Timber.w("Dropping unknown alarm operation: $operation")
         }
+    }
+
+    @WorkerThread
+    private fun onSnoozed(scheduleId: Long) {
+        notificationBackend.cancel(scheduleId)
+        prepareNextAlert(scheduleId, ScheduleEntry.CURRENT_STATE_SNOOZED) { wallClock() + snoozeMillis() }
+        updateSummary()
+    }
+
+    /**
+     * The session for the workout is recorded by [apply] beforehand.
+     */
+    @WorkerThread
+    private fun onDidIt(scheduleId: Long) {
+        notificationBackend.cancel(scheduleId)
+        acknowledge(scheduleId)
+        updateSummary()
+    }
+
+    /**
+     * Builds the notification if it was not prepared; see [notifyPrepared] for the main thread.
+     *
+     * @param alert whether to make sound and vibrate; false for all but the first of notifications posted together, so
+     * that those alert once
+     * @param occurrence the alarm time the notification is for; the same for repeated deliveries of the alarm
+     */
+    @WorkerThread
+    fun notify(
+            scheduleId: Long,
+            workoutData: WorkoutNotificationData,
+            alert: Boolean = true,
+            occurrence: Long = wallClock()
+    ) {
+        notificationBackend.post(scheduleId, workoutData, occurrence, alert)
+    }
+
+    /**
+     * Like [notify], but only if the notification was prepared, which makes posting it cheap enough for the main
+     * thread.
+     *
+     * @return whether it was posted
+     */
+    @AnyThread
+    fun notifyPrepared(scheduleId: Long, workoutData: WorkoutNotificationData, alert: Boolean, occurrence: Long): Boolean =
+            notificationBackend.postPrepared(scheduleId, workoutData, occurrence, alert)
 
-        // Deliberately not using groups, for the time being, because we'd have to create a summary notification, so we would need to
-        // know about all currently displaying workout schedule notifications.
-        // On API levels >= 24, we could do this by querying the NotificationManager for all those, and construct an inbox-style
-        // summary from the snippets. But on exactly those API levels, the system already does this for us, as long as we do *not*
-        // specify a group.
-        // On API levels < 24, we cannot query the NotificationManager for this information. We could query our own database - and on those
-        // API levels, we can reliably do I/O work on an AlarmManager broadcast, in principle - but this would mean maintaining a separate
-        // implementation for those API levels. Might happen at a later date - or we might raise minSdk to 24 instead.
-        // While it is not nice of us to potentially generate loads of notifications for the same id on those API levels (and was advised
-        // against in the documentation earlier), we can live with this for the time being.
-
-        notificationManager.notify(scheduleId.toString(), NOTIFICATION_ALARM, notificationBuilder.build())
+    /**
+     * Whether the notification of a per-schedule alarm that went off is to alert. Per-schedule alarms set for the same
+     * time go off one after the other; only the first of those alerts, see [onNotificationShown] for the rest of the
+     * coalescing. To be asked once per alarm.
+     */
+    @AnyThread
+    fun claimAlert(occurrence: Long): Boolean = alertGate.claim(occurrence, coalesceToleranceMillis)
+
+    /**
+     * Posts the summary for the group of workout notifications if more than one is displaying, or removes it otherwise.
+     */
+    @WorkerThread
+    fun updateSummary() {
+        val displaying = store.readDisplaying()
+        if (displaying.size < 2) {
+            notificationBackend.cancelSummary()
+        } else {
+            notificationBackend.postSummary(displaying)
+        }
     }
 
     @WorkerThread
-    fun onScheduleChanged(scheduleId: Long) {
+    private fun onScheduleChanged(scheduleId: Long) {
         Timber.d("onScheduleChanged: $scheduleId")
 
-        notificationManager.cancel(scheduleId.toString(), NOTIFICATION_ALARM)
+        notificationBackend.invalidate(scheduleId)
+        notificationBackend.cancel(scheduleId)
 
         prepareNextAlert(scheduleId, ScheduleEntry.CURRENT_STATE_ACKNOWLEDGED, this::nextOccurence)
+        updateSummary()
     }
 
     @WorkerThread
-    fun onScheduleDeleted(scheduleId: Long) {
+    private fun onScheduleDeleted(scheduleId: Long) {
         Timber.d("onScheduleDeleted: $scheduleId")
 
-        notificationManager.cancel(scheduleId.toString(), NOTIFICATION_ALARM)
-        alarmManager.cancel(buildAlarmReceiverPendingIntent(scheduleId, null))
+        notificationBackend.invalidate(scheduleId)
+        notificationBackend.cancel(scheduleId)
+        alarmBackend.cancelForSchedule(scheduleId)
+        arm(emptyList())
+        updateSummary()
     }
 
+    /**
+     * Shows all schedules that are due, or will be within the coalescing tolerance, moves them on to their next
+     * occurrence and sets the alarm for the next one.
+     *
+     * @return when the first notification went out and when the bookkeeping was committed, for latency tracking
+     */
     @WorkerThread
-    fun onNotificationShown(scheduleId: Long) {
-        prepareNextAlert(scheduleId, ScheduleEntry.CURRENT_STATE_DISPLAYING, this::nextOccurence)
+    fun onAlarmDue(): AlarmDueTrace {
+        val now = wallClock()
+        val dueUntil = dueUntil(now)
+        Timber.d("onAlarmDue, now=$now, dueUntil=$dueUntil")
+        val reconciliation = reconcile(store.readDue(dueUntil), now, dueUntil)
+        arm(reconciliation.changedAlarms)
+        return AlarmDueTrace(reconciliation.firstPostedAt, reconciliation.committedAt)
     }
 
+    /**
+     * Sets the system alarms again, as exact or windowed alarms and as single or per-schedule alarms according to the
+     * current settings.
+     */
     @WorkerThread
-    fun onNotificationDismissed(scheduleId: Long) {
-        context.contentResolver.update(
-                QuickFitContentProvider.getUriSchedulesId(scheduleId),
-                ContentValues(1).apply {
-                    put(ScheduleEntry.COL_CURRENT_STATE, ScheduleEntry.CURRENT_STATE_ACKNOWLEDGED)
-                },
-                null,
-                null
-        )
+    fun onAlarmSettingsChanged() {
+        resetAlarms()
     }
 
-    @WorkerThread
-    fun resetAlarms() {
-        val now = System.currentTimeMillis()
-        Timber.d("resetAlarms, now=$now")
+    /**
+     * Schedules due up to the returned time are shown now: those due within the coalescing tolerance. The delivery
+     * window of a windowed alarm opens at the due time, so it never goes off early.
+     */
+    private fun dueUntil(now: Long) = now + coalesceToleranceMillis
 
-        context.contentResolver.query(
-                QuickFitContentProvider.getUriWorkoutsList(),
-                arrayOf(
-                        WorkoutEntry.SCHEDULE_ID,
-                        WorkoutEntry.WORKOUT_ID,
-                        WorkoutEntry.ACTIVITY_TYPE,
-                        WorkoutEntry.LABEL,
-                        WorkoutEntry.DURATION_MINUTES,
-                        WorkoutEntry.DAY_OF_WEEK,
-                        WorkoutEntry.HOUR,
-                        WorkoutEntry.MINUTE,
-                        WorkoutEntry.NEXT_ALARM_MILLIS,
-                        WorkoutEntry.CURRENT_STATE
-                ),
-                "${ScheduleEntry.TABLE_NAME}.${ScheduleEntry.COL_ID} IS NOT NULL",
-                null,
-                null
-        ).use { cursor ->
-            if (cursor == null) {
-                return@resetAlarms
+    /**
+     * In per-schedule mode, the schedules due together with this one are shown along with it, silently, and their own
+     * alarms are moved on to their next occurrence; so those do not wake the device once more if they have not gone off
+     * yet, and alert only once if they have.
+     *
+     * @param occurrence the alarm time the notification is for; a windowed alarm may go off after it
+     */
+    @WorkerThread
+    private fun onNotificationShown(scheduleId: Long, occurrence: Long?) {
+        prepareNextAlert(scheduleId, ScheduleEntry.CURRENT_STATE_DISPLAYING) {
+            nextOccurence(it, maxOf(wallClock(), occurrence ?: 0))
+        }
+        if (!singleAlarm()) {
+            val now = wallClock()
+            val dueUntil = dueUntil(now)
+            val reconciliation = reconcile(store.readDue(dueUntil), now, dueUntil, alertFirst = false)
+            arm(reconciliation.changedAlarms)
+            if (reconciliation.firstPostedAt != null) {
+                // updated already
+                return
             }
+        }
+        updateSummary()
+    }
 
-            while (cursor.moveToNext()) {
-                val scheduleId = cursor.getLong(cursor.getColumnIndexOrThrow(WorkoutEntry.SCHEDULE_ID))
-                val nextAlarmMillis = cursor.getLongOrNull(cursor.getColumnIndexOrThrow(WorkoutEntry.NEXT_ALARM_MILLIS))
-
-                val currentState = cursor.getString(cursor.getColumnIndexOrThrow(WorkoutEntry.CURRENT_STATE))
-                val workoutNotificationData = WorkoutNotificationData.fromRow(cursor)
-                if (nextAlarmMillis == null) {
-                    Timber.d("not yet scheduled: $scheduleId $workoutNotificationData")
-                    // system had no chance yet to compute next alert time, so let's do that now.
-                    prepareNextAlert(scheduleId, ScheduleEntry.CURRENT_STATE_ACKNOWLEDGED, this::nextOccurence)
-                } else if (nextAlarmMillis <= now || currentState == ScheduleEntry.CURRENT_STATE_DISPLAYING) {
-                    Timber.d("already past or was displaying: $scheduleId $workoutNotificationData")
-                    notify(scheduleId, workoutNotificationData)
-                    prepareNextAlert(scheduleId, ScheduleEntry.CURRENT_STATE_DISPLAYING, this::nextOccurence)
-                } else {
-                    Timber.d("re-enqueue: $scheduleId $workoutNotificationData")
-                    enqueueWithAlarmManager(scheduleId, nextAlarmMillis, workoutNotificationData)
+    @WorkerThread
+    private fun onNotificationDismissed(scheduleId: Long) {
+        acknowledge(scheduleId)
+        updateSummary()
+    }
+
+    /**
+     * Moves a displaying schedule to acknowledged; a schedule in any other state was moved on already, by a change of
+     * the schedule or by the alarm for its next occurrence.
+     */
+    @WorkerThread
+    private fun acknowledge(scheduleId: Long) {
+        if (!store.setState(scheduleId, ScheduleEntry.CURRENT_STATE_DISPLAYING, ScheduleEntry.CURRENT_STATE_ACKNOWLEDGED)) {
+            Timber.d("acknowledge: schedule $scheduleId is no longer displaying")
+        }
+    }
+
+    /**
+     * Moves all schedules whose days or time were edited, or which are new, on to their next occurrence in one pass:
+     * one query, one batch of writes and, in single alarm mode, one system alarm registration, however many edits came
+     * in. Notifications displaying for the old times are taken down.
+     */
+    @WorkerThread
+    fun rescheduleDirty() {
+        val rescheduled = rescheduleEdited()
+        if (rescheduled.isEmpty()) {
+            return
+        }
+        arm(rescheduled.map { ScheduledAlarm(it.schedule.scheduleId, it.schedule.workoutData, it.nextAlarmMillis) })
+        updateSummary()
+        prepare(rescheduled)
+    }
+
+    /**
+     * The store part of [rescheduleDirty], for callers that set the system alarm themselves.
+     *
+     * @return the reschedules that have been applied
+     */
+    @WorkerThread
+    private fun rescheduleEdited(): List<Reschedule> {
+        val rescheduled = ArrayList<Reschedule>()
+        for (attempt in 1..MAX_TRANSITION_ATTEMPTS) {
+            val dirty = store.readNeedsReschedule()
+            if (dirty.isEmpty()) {
+                return rescheduled
+            }
+            Timber.d("rescheduleEdited: ${dirty.size} schedules, attempt $attempt")
+
+            val now = wallClock()
+            val reschedules = dirty.map { Reschedule(it, nextOccurence(it, now)) }
+            // edited again or moved on by an alarm meanwhile; still marked, so the next attempt reads them again
+            val lostRaces = store.rescheduleAll(reschedules)
+            for (reschedule in reschedules) {
+                val scheduleId = reschedule.schedule.scheduleId
+                if (scheduleId !in lostRaces) {
+                    notificationBackend.invalidate(scheduleId)
+                    notificationBackend.cancel(scheduleId)
+                    rescheduled.add(reschedule)
                 }
             }
+            if (lostRaces.isEmpty()) {
+                return rescheduled
+            }
         }
+        Timber.w("rescheduleEdited: giving up after $MAX_TRANSITION_ATTEMPTS attempts, left for the next pass")
+        return rescheduled
     }
 
-    private fun nowPlusSnoozeTime(): Long {
-        val durationMinutes = PreferenceManager.getDefaultSharedPreferences(context).getString(
-                context.getString(R.string.pref_key_snooze_duration_mins),
-                "60"
-        )!!.toLong() // Why not an Int pref? Because of the string array resource. There are no Int array resources.
+    private fun prepare(rescheduled: List<Reschedule>) {
+        for (reschedule in rescheduled) {
+            notificationBackend.prepare(reschedule.schedule.scheduleId, reschedule.schedule.workoutData, reschedule.nextAlarmMillis)
+        }
+    }
+
+    /**
+     * Restores the alarms after a reboot: replays what is left in the outbox, reschedules edited schedules, shows the
+     * schedules that are due or were displaying before and sets the one alarm for the earliest. Schedules in the future
+     * keep their next alarm, so only those are read. Falls back to [resetAlarms] if the time zone is not the one the
+     * next alarms were computed in, as after a change while the device was off, and if not in single alarm mode, as all
+     * per-schedule alarms are gone.
+     */
+    @WorkerThread
+    fun recover() {
+        drainOutbox()
 
-        return System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(durationMinutes)
+        if (!singleAlarm()) {
+            resetAlarms()
+            return
+        }
+
+        val timeZone = timeZone()
+        if (timeZone.id != store.readTimeZoneId()) {
+            Timber.i("recover: time zone is ${timeZone.id} now, resetting")
+            resetAlarms()
+            return
+        }
+        nextOccurrences = NextOccurrences(timeZone)
+        val rescheduled = rescheduleEdited()
+
+        val now = wallClock()
+        val dueUntil = dueUntil(now)
+        Timber.d("recover, now=$now, dueUntil=$dueUntil")
+        val reconciliation = reconcile(store.readDueOrDisplaying(dueUntil), now, dueUntil)
+        rearm()
+        if (rescheduled.isNotEmpty()) {
+            if (reconciliation.firstPostedAt == null) {
+                updateSummary()
+            }
+            prepare(rescheduled)
+        }
     }
 
-    private fun nextOccurence(schedule: Schedule) =
-            DateTimes.getNextOccurrence(System.currentTimeMillis(), schedule.dayOfWeek, schedule.hour, schedule.minute)
+    /**
+     * Restores all alarms after a time change or an app update: replays what is left in the outbox, which after a
+     * database upgrade may include cleaning up after merged schedules, reads all schedules with one query, plans in
+     * memory, writes all changed schedules in one transaction and sets the one alarm for the earliest, or the alarms of
+     * all schedules if not in single alarm mode.
+     */
+    @WorkerThread
+    fun resetAlarms() {
+        drainOutbox()
+
+        val now = wallClock()
+        Timber.d("resetAlarms, now=$now")
+        val timeZone = timeZone()
+        nextOccurrences = NextOccurrences(timeZone)
+        // edited ones first, the reconciliation keeps next alarms that are still in the future
+        val rescheduled = rescheduleEdited()
+
+        val reconciliation = reconcile(store.readAll(), now, dueUntil(now))
+        if (singleAlarm()) {
+            // earlier versions and the per-schedule mode set one alarm per schedule
+            reconciliation.alarms.forEach { alarmBackend.cancelForSchedule(it.scheduleId) }
+            rearm()
+        } else {
+            alarmBackend.cancel()
+            reconciliation.alarms.forEach { armSchedule(it) }
+        }
+        store.writeTimeZoneId(timeZone.id)
+        if (rescheduled.isNotEmpty()) {
+            if (reconciliation.firstPostedAt == null) {
+                updateSummary()
+            }
+            prepare(rescheduled)
+        }
+    }
 
+    /**
+     * Brings the given schedules up to date according to [AlarmReconciler], in one batch. Schedules due up to
+     * [dueUntil] are shown together with the ones already due; only the first of those alerts, and none of them
+     * unless [alertFirst]. Each write is conditional on the state that was read, so that a schedule changed in the
+     * meantime by one of the per-schedule actions keeps that change and is not shown. Does not touch the system alarm.
+     */
     @WorkerThread
-    private fun prepareNextAlert(scheduleId: Long, newCurrentState: String, getNextAlarmMillis: (Schedule) -> Long) {
-        Timber.d("prepareNextAlert: $scheduleId")
-        val (schedule, workoutData) = context.contentResolver.query(
-                QuickFitContentProvider.getUriWorkoutsList(),
-                arrayOf(
-                        WorkoutEntry.SCHEDULE_ID,
-                        WorkoutEntry.WORKOUT_ID,
-                        WorkoutEntry.ACTIVITY_TYPE,
-                        WorkoutEntry.LABEL,
-                        WorkoutEntry.DURATION_MINUTES,
-                        WorkoutEntry.DAY_OF_WEEK,
-                        WorkoutEntry.HOUR,
-                        WorkoutEntry.MINUTE
-                ),
-                "${ScheduleEntry.TABLE_NAME}.${ScheduleEntry.COL_ID}=?",
-                arrayOf(scheduleId.toString()),
-                null
-        ).use { cursor ->
-            if (cursor?.moveToNext() == true) {
-                Pair(
-                        Schedule.fromRow(cursor),
-                        WorkoutNotificationData.fromRow(cursor)
+    private fun reconcile(
+            read: List<AlarmSchedule>,
+            now: Long,
+            dueUntil: Long,
+            alertFirst: Boolean = true
+    ): Reconciliation {
+        val schedules = read.associateBy { it.scheduleId }
+        val rows = read.map { ReconcileRow(it.scheduleId, it.nextAlarmMillis, it.currentState) }
+
+        val actions = AlarmReconciler.plan(rows, dueUntil) { scheduleId ->
+            nextOccurence(schedules.getValue(scheduleId), dueUntil)
+        }
+
+        val changing = actions.filter { it.newState != null }
+        var committedAt: Long? = null
+        val lostRaces = if (changing.isEmpty()) {
+            emptySet()
+        } else {
+            store.transitionAll(changing.map { action ->
+                AlarmTransition(
+                        action.scheduleId,
+                        schedules.getValue(action.scheduleId).currentState,
+                        action.alarmMillis,
+                        action.newState!!
                 )
-            } else {
-                Timber.w("Schedule $scheduleId does not exist, aborting prepareNextAlert")
-                return@prepareNextAlert
+            }).also { committedAt = elapsedClock() }
+        }
+
+        var notified = 0
+        var firstPostedAt: Long? = null
+        for (action in actions) {
+            val schedule = schedules.getValue(action.scheduleId)
+            Timber.d("reconciled: $action ${schedule.workoutData}")
+            if (action.scheduleId in lostRaces) {
+                Timber.d("schedule ${action.scheduleId} changed meanwhile, leaving it")
+                continue
+            }
+            if (action.notify) {
+                // the intended time, also when delivered late within the window; a notification that was
+                // displaying already is for an occurrence that is no longer known
+                val occurrence = schedule.nextAlarmMillis?.takeIf { it <= dueUntil } ?: now
+                notify(action.scheduleId, schedule.workoutData, alert = alertFirst && notified == 0, occurrence = occurrence)
+                if (notified == 0) {
+                    firstPostedAt = elapsedClock()
+                }
+                notified++
             }
         }
+        if (notified > 0) {
+            updateSummary()
+        }
+        // after posting, so that the notifications due now go out first
+        for (action in changing) {
+            if (action.scheduleId !in lostRaces) {
+                notificationBackend.prepare(action.scheduleId, schedules.getValue(action.scheduleId).workoutData, action.alarmMillis)
+            }
+        }
+        val alarms = actions
+                .filter { it.scheduleId !in lostRaces }
+                .map { ScheduledAlarm(it.scheduleId, schedules.getValue(it.scheduleId).workoutData, it.alarmMillis) }
+        val changedIds = changing.mapTo(HashSet()) { it.scheduleId }
+        return Reconciliation(alarms, alarms.filter { it.scheduleId in changedIds }, firstPostedAt, committedAt)
+    }
 
-        val nextAlarmMillis = getNextAlarmMillis(schedule)
+    private fun nextOccurence(schedule: AlarmSchedule) = nextOccurence(schedule, wallClock())
 
-        enqueueWithAlarmManager(scheduleId, nextAlarmMillis, workoutData)
+    private fun nextOccurence(schedule: AlarmSchedule, after: Long) =
+            nextOccurrences.getNextOccurrence(after, schedule.recurrence, schedule.hour, schedule.minute)
 
-        context.contentResolver.update(
-                QuickFitContentProvider.getUriSchedulesId(scheduleId),
-                ContentValues(2).apply {
-                    put(ScheduleEntry.COL_NEXT_ALARM_MILLIS, nextAlarmMillis)
-                    put(ScheduleEntry.COL_CURRENT_STATE, newCurrentState)
-                },
-                null,
-                null
-        )
-    }
+    /**
+     * Sets the state and the next alarm of one schedule, as a compare-and-set on the state that was read: retried if
+     * the state changed in between, so that no concurrent transition gets lost.
+     */
+    @WorkerThread
+    private fun prepareNextAlert(scheduleId: Long, newCurrentState: String, getNextAlarmMillis: (AlarmSchedule) -> Long) {
+        Timber.d("prepareNextAlert: $scheduleId")
+        for (attempt in 1..MAX_TRANSITION_ATTEMPTS) {
+            val schedule = store.read(scheduleId)
+            if (schedule == null) {
+                Timber.w("Schedule $scheduleId does not exist, aborting prepareNextAlert")
+                return
+            }
 
-    private fun enqueueWithAlarmManager(scheduleId: Long, nextAlarmMillis: Long, workoutData: WorkoutNotificationData) {
-        val alarmReceiverPendingIntent = buildAlarmReceiverPendingIntent(scheduleId, workoutData)
+            val nextAlarmMillis = getNextAlarmMillis(schedule)
 
-        Timber.d("enqueuing $scheduleId $workoutData at $nextAlarmMillis")
-        AlarmManagerCompat.setExactAndAllowWhileIdle(
-                alarmManager,
-                AlarmManager.RTC_WAKEUP,
-                nextAlarmMillis,
-                alarmReceiverPendingIntent
-        )
+            if (store.transition(AlarmTransition(scheduleId, schedule.currentState, nextAlarmMillis, newCurrentState))) {
+                arm(listOf(ScheduledAlarm(scheduleId, schedule.workoutData, nextAlarmMillis)))
+                notificationBackend.prepare(scheduleId, schedule.workoutData, nextAlarmMillis)
+                return
+            }
+            Timber.d("prepareNextAlert: state of $scheduleId changed from ${schedule.currentState} meanwhile, attempt $attempt")
+        }
+        Timber.w("prepareNextAlert: giving up on $scheduleId after $MAX_TRANSITION_ATTEMPTS attempts")
     }
 
-    private fun buildAlarmReceiverPendingIntent(scheduleId: Long, workoutData: WorkoutNotificationData?) =
-            PendingIntent.getBroadcast(
-                    context,
-                    PENDING_INTENT_ALARM_RECEIVER, // disambiguation is via Intent data
-                    AlarmReceiver.getNotifyIntent(context, scheduleId, workoutData),
-                    PendingIntent.FLAG_UPDATE_CURRENT
-            )
-}
+    /**
+     * Sets the system alarms after the next alarms of the [changed] schedules have been written: in single alarm mode,
+     * the one alarm for the earliest of all schedules, else the alarm of each changed schedule.
+     */
+    @WorkerThread
+    private fun arm(changed: List<ScheduledAlarm>) {
+        if (singleAlarm()) {
+            rearm()
+        } else {
+            changed.forEach { armSchedule(it) }
+        }
+    }
 
-@Suppress("SameParameterValue")
-private fun getForegroundServicePendingIntentCompat(context: Context, requestCode: Int, intent: Intent, flags: Int) =
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            PendingIntent.getForegroundService(context, requestCode, intent, flags)
+    private fun armSchedule(alarm: ScheduledAlarm) {
+        val windowMillis = alarmWindowMillis()
+        if (windowMillis == 0L) {
+            alarmBackend.setExactForSchedule(alarm.scheduleId, alarm.workoutData, alarm.alarmMillis)
         } else {
-            PendingIntent.getService(context, requestCode, intent, flags)
+            alarmBackend.setWindowForSchedule(
+                    alarm.scheduleId,
+                    alarm.workoutData,
+                    alarm.alarmMillis,
+                    alarm.alarmMillis,
+                    windowMillis
+            )
         }
+    }
 
-private data class Schedule constructor(
-        val id: Long,
-        val dayOfWeek: DayOfWeek,
-        val hour: Int,
-        val minute: Int
-) {
-    companion object {
-        internal fun fromRow(cursor: Cursor): Schedule {
-            val dayOfWeek = DayOfWeek.valueOf(cursor.getString(cursor.getColumnIndexOrThrow(WorkoutEntry.DAY_OF_WEEK)))
-            val hour = cursor.getInt(cursor.getColumnIndexOrThrow(WorkoutEntry.HOUR))
-            val minute = cursor.getInt(cursor.getColumnIndexOrThrow(WorkoutEntry.MINUTE))
-            val id = cursor.getLong(cursor.getColumnIndexOrThrow(WorkoutEntry.SCHEDULE_ID))
+    /**
+     * Sets the one system alarm for the earliest next alarm of all schedules, replacing the previous one, or cancels
+     * it if there is none. The system alarm state stays the same size no matter how many schedules there are.
+     *
+     * With a window configured, the alarm may go off anywhere within the window starting at the due time. That lets the
+     * system batch it with the wakeups of other apps, while a reminder is never early, only late.
+     */
+    @WorkerThread
+    private fun rearm() {
+        // served from the index on next_alarm_millis
+        val earliest = store.earliestNextAlarmMillis()
+        if (earliest == null) {
+            Timber.d("no schedules, cancelling alarm")
+            alarmBackend.cancel()
+            return
+        }
 
-            return Schedule(id, dayOfWeek, hour, minute)
+        val windowMillis = alarmWindowMillis()
+        if (windowMillis == 0L) {
+            Timber.d("setting alarm for $earliest")
+            alarmBackend.setExact(earliest)
+        } else {
+            Timber.d("setting alarm for $earliest, window $windowMillis ms")
+            alarmBackend.setWindow(earliest, windowMillis)
         }
     }
-}
 
-data class WorkoutNotificationData constructor(
-        val workoutId: Long,
-        val activityType: String,
-        val label: String?,
-        val durationMinutes: Int
-) {
+    private class ScheduledAlarm(val scheduleId: Long, val workoutData: WorkoutNotificationData, val alarmMillis: Long)
 
-    /*
-     *  Passing custom Parcelables through other processes (e.g. as a PendingIntent extra) fails in general - see
-     * https://commonsware.com/blog/2016/07/22/be-careful-where-you-use-custom-parcelables.html
-     *
-     * In particular, when used as an extra in a PendingIntent for AlarmManager, this never works.
-     *
-     * Tried using the workaround suggested in
-     * https://stackoverflow.com/questions/18000093/how-to-marshall-and-unmarshall-a-parcelable-to-a-byte-array-with-help-of-parcel/18000094#18000094
-     * and gave that avenue up again, because I don't see a way of making properly generic `Bundle.putSafeExtra` and
-     * `<T : Parcelable> Bundle.getSafeParcelableExtra` extension methods - the latter fails, due to the fantastic
-     * design of the CREATOR object which is not part of the Parcelable interface (and cannot be, due to the Java type system).
-     * So there's no way of obtaining it from the (reified) type parameter, so we'd have to pass it in at each use.
-     *
-     * And then we notice that when using @Parcelize for auto-generated Parcelable implementation, this CREATOR object
-     * does not exist (at least not enough for the IDE to see it at compile time).
-     *
-     * So if we have to hand-generate the serialization anyway, going through Bundle is the more readable approach.
+    /**
+     * @param alarms the alarms of all schedules read, without those changed in the meantime
+     * @param changedAlarms the alarms of the schedules that got a new next alarm
+     * @param firstPostedAt [elapsedClock] time at which the first notification was posted; null if there was none
+     * @param committedAt [elapsedClock] time at which the batch of writes was committed; null if there was none
      */
-    fun asBundle(): Bundle = Bundle(4).apply {
-        putLong(KEY_WORKOUT_ID, workoutId)
-        putString(KEY_ACTIVITY_TYPE, activityType)
-        putString(KEY_LABEL, label)
-        putInt(KEY_DURATION_MINUTES, durationMinutes)
-    }
+    private class Reconciliation(
+            val alarms: List<ScheduledAlarm>,
+            val changedAlarms: List<ScheduledAlarm>,
+            val firstPostedAt: Long?,
+            val committedAt: Long?
+    )
 
     companion object {
-        private const val KEY_WORKOUT_ID = "com.lambdasoup.quickfit.alarm.WorkoutNotificationData.KEY_WORKOUT_ID"
-        private const val KEY_ACTIVITY_TYPE = "com.lambdasoup.quickfit.alarm.WorkoutNotificationData.KEY_ACTIVITY_TYPE"
-        private const val KEY_LABEL = "com.lambdasoup.quickfit.alarm.WorkoutNotificationData.KEY_LABEL"
-        private const val KEY_DURATION_MINUTES = "com.lambdasoup.quickfit.alarm.WorkoutNotificationData.KEY_DURATION_MINUTES"
-
-        internal fun fromBundle(bundle: Bundle): WorkoutNotificationData =
-                with(bundle) {
-                    WorkoutNotificationData(
-                            getLong(KEY_WORKOUT_ID),
-                            getString(KEY_ACTIVITY_TYPE)!!,
-                            getString(KEY_LABEL),
-                            getInt(KEY_DURATION_MINUTES)
-                    )
-                }
+        private const val MAX_TRANSITION_ATTEMPTS = 3
 
-        internal fun fromRow(cursor: Cursor): WorkoutNotificationData {
-            val workoutId = cursor.getLong(cursor.getColumnIndexOrThrow(WorkoutEntry.WORKOUT_ID))
-            val activityType = cursor.getString(cursor.getColumnIndexOrThrow(WorkoutEntry.ACTIVITY_TYPE))
-            val label = cursor.getColumnIndexOrThrow(WorkoutEntry.LABEL).let {
-                if (!cursor.isNull(it)) cursor.getString(it) else ""
-            }
-            val durationMinutes = cursor.getInt(cursor.getColumnIndexOrThrow(WorkoutEntry.DURATION_MINUTES))
+        // instances are created per broadcast, the outbox is shared; one lock per schedule, created on first use
+        private val drainLocks = ConcurrentHashMap<Long, Any>()
+    }
+}
 
-            return WorkoutNotificationData(workoutId, activityType, label, durationMinutes)
-        }
+/**
+ * Timing of one [Alarms.onAlarmDue], on its elapsed clock.
+ *
+ * @param firstPostedAt when the first notification was posted; null if nothing was due
+ * @param committedAt when the state changes of all due schedules were committed; null if nothing changed
+ */
+data class AlarmDueTrace(val firstPostedAt: Long?, val committedAt: Long?)
 
+/**
+ * Lets the first of the notifications for occurrences close to each other alert, and none of the others. Kept for the
+ * life of the process, as each alarm that goes off gets an [Alarms] of its own. Thread safe.
+ */
+class AlertGate {
+    private var lastAlerted: Long? = null
+
+    /**
+     * @return whether the notification for [occurrence] is to alert: unless one for an occurrence less than
+     * [toleranceMillis] away has alerted already
+     */
+    @Synchronized
+    fun claim(occurrence: Long, toleranceMillis: Long): Boolean {
+        val last = lastAlerted
+        if (last != null && Math.abs(occurrence - last) < toleranceMillis) {
+            return false
+        }
+        lastAlerted = occurrence
+        return true
     }
 }
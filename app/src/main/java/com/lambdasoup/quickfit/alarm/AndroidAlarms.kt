@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import android.content.Context
+import android.os.SystemClock
+import androidx.preference.PreferenceManager
+import com.lambdasoup.quickfit.FitActivityService
+import com.lambdasoup.quickfit.R
+import com.lambdasoup.quickfit.persist.IdempotencyKey
+import java.util.TimeZone
+import java.util.concurrent.TimeUnit
+
+/**
+ * [Alarms] on the content provider, the system alarm and notification services, [FitActivityService] for the sessions,
+ * the system clocks and the configured settings.
+ */
+fun Alarms(context: Context): Alarms {
+    val appContext = context.applicationContext
+    return Alarms(
+            store = ContentProviderAlarmStore(appContext),
+            outbox = ContentProviderAlarmOutbox(appContext),
+            alarmBackend = AlarmManagerBackend(appContext),
+            notificationBackend = SystemNotificationBackend(appContext),
+            sessionRecorder = SessionRecorder { workoutId, occurrence ->
+                FitActivityService.enqueueInsertSession(appContext, workoutId, IdempotencyKey.SOURCE_ALARM, occurrence)
+            },
+            wallClock = System::currentTimeMillis,
+            elapsedClock = SystemClock::elapsedRealtime,
+            timeZone = TimeZone::getDefault,
+            coalesceToleranceMillis = TimeUnit.SECONDS.toMillis(
+                    appContext.resources.getInteger(R.integer.alarm_coalesce_tolerance_seconds).toLong()
+            ),
+            snoozeMillis = { snoozeMillis(appContext) },
+            alarmWindowMillis = { alarmWindowMillis(appContext) },
+            singleAlarm = { singleAlarm(appContext) },
+            alertGate = alertGate
+    )
+}
+
+private val alertGate = AlertGate()
+
+private fun snoozeMillis(context: Context): Long {
+    val durationMinutes = PreferenceManager.getDefaultSharedPreferences(context).getString(
+            context.getString(R.string.pref_key_snooze_duration_mins),
+            "60"
+    )!!.toLong() // Why not an Int pref? Because of the string array resource. There are no Int array resources.
+
+    return TimeUnit.MINUTES.toMillis(durationMinutes)
+}
+
+private fun alarmWindowMillis(context: Context): Long {
+    val windowMinutes = PreferenceManager.getDefaultSharedPreferences(context).getString(
+            context.getString(R.string.pref_key_alarm_window_mins),
+            "0"
+    )!!.toLong()
+
+    return TimeUnit.MINUTES.toMillis(windowMinutes)
+}
+
+private fun singleAlarm(context: Context) =
+        PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
+                context.getString(R.string.pref_key_single_alarm),
+                false
+        )
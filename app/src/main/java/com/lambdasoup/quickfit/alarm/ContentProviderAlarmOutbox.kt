@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import android.content.ContentProviderOperation
+import android.content.ContentResolver
+import android.content.ContentValues
+import android.content.Context
+import androidx.core.database.getLongOrNull
+import com.lambdasoup.quickfit.persist.QuickFitContentProvider
+import com.lambdasoup.quickfit.persist.QuickFitContract.AlarmOutboxEntry
+
+/**
+ * [AlarmOutbox] backed by [QuickFitContentProvider].
+ */
+class ContentProviderAlarmOutbox(context: Context) : AlarmOutbox {
+    private val contentResolver: ContentResolver = context.contentResolver
+
+    override fun add(operation: AlarmOperation) {
+        contentResolver.insert(QuickFitContentProvider.getUriAlarmOutboxList(), ContentValues(4).apply {
+            put(AlarmOutboxEntry.SCHEDULE_ID, operation.scheduleId)
+            put(AlarmOutboxEntry.OPERATION, operation.operation)
+            put(AlarmOutboxEntry.WORKOUT_ID, operation.workoutId)
+            put(AlarmOutboxEntry.OCCURRENCE, operation.occurrence)
+        })
+    }
+
+    override fun readAll(): List<OutboxEntry> = read(null, null)
+
+    override fun readForSchedule(scheduleId: Long): List<OutboxEntry> =
+            read("${AlarmOutboxEntry.SCHEDULE_ID}=?", arrayOf(scheduleId.toString()))
+
+    private fun read(selection: String?, selectionArgs: Array<String>?): List<OutboxEntry> =
+            contentResolver.query(
+                    QuickFitContentProvider.getUriAlarmOutboxList(),
+                    AlarmOutboxEntry.COLUMNS,
+                    selection,
+                    selectionArgs,
+                    "${AlarmOutboxEntry._ID} ASC"
+            )?.use { cursor ->
+                val entries = ArrayList<OutboxEntry>(cursor.count)
+                while (cursor.moveToNext()) {
+                    entries.add(OutboxEntry(
+                            cursor.getLong(cursor.getColumnIndexOrThrow(AlarmOutboxEntry._ID)),
+                            AlarmOperation(
+                                    cursor.getString(cursor.getColumnIndexOrThrow(AlarmOutboxEntry.OPERATION)),
+                                    cursor.getLong(cursor.getColumnIndexOrThrow(AlarmOutboxEntry.SCHEDULE_ID)),
+                                    cursor.getLongOrNull(cursor.getColumnIndexOrThrow(AlarmOutboxEntry.WORKOUT_ID)),
+                                    cursor.getLongOrNull(cursor.getColumnIndexOrThrow(AlarmOutboxEntry.OCCURRENCE))
+                            )
+                    ))
+                }
+                entries
+            } ?: emptyList()
+
+    override fun remove(entryId: Long) {
+        contentResolver.delete(QuickFitContentProvider.getUriAlarmOutboxId(entryId), null, null)
+    }
+
+    companion object {
+        /**
+         * Adds [operation] for [scheduleId] to the outbox, for a batch together with the change it is about.
+         */
+        fun newInsert(operation: String, scheduleId: Long): ContentProviderOperation =
+                ContentProviderOperation.newInsert(QuickFitContentProvider.getUriAlarmOutboxList())
+                        .withValue(AlarmOutboxEntry.OPERATION, operation)
+                        .withValue(AlarmOutboxEntry.SCHEDULE_ID, scheduleId)
+                        .build()
+    }
+}
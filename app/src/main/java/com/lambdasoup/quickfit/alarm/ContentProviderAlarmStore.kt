@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import android.content.ContentProviderOperation
+import android.content.ContentResolver
+import android.content.ContentValues
+import android.content.Context
+import android.content.SharedPreferences
+import android.database.Cursor
+import androidx.core.database.getLongOrNull
+import com.lambdasoup.quickfit.model.DaysOfWeek
+import com.lambdasoup.quickfit.model.Recurrence
+import com.lambdasoup.quickfit.persist.QuickFitContentProvider
+import com.lambdasoup.quickfit.persist.QuickFitContract.ScheduleEntry
+import com.lambdasoup.quickfit.persist.QuickFitContract.WorkoutEntry
+
+private const val PREFS_ALARMS = "com.lambdasoup.quickfit.alarm.Alarms"
+private const val PREF_KEY_TIME_ZONE_ID = "time_zone_id"
+
+private val COLUMNS = arrayOf(
+        WorkoutEntry.SCHEDULE_ID,
+        WorkoutEntry.WORKOUT_ID,
+        WorkoutEntry.ACTIVITY_TYPE,
+        WorkoutEntry.LABEL,
+        WorkoutEntry.DURATION_MINUTES,
+        WorkoutEntry.DAYS_OF_WEEK,
+        WorkoutEntry.REPEAT_UNIT,
+        WorkoutEntry.REPEAT_INTERVAL,
+        WorkoutEntry.REPEAT_FROM_DAY,
+        WorkoutEntry.HOUR,
+        WorkoutEntry.MINUTE,
+        WorkoutEntry.NEXT_ALARM_MILLIS,
+        WorkoutEntry.CURRENT_STATE
+)
+
+/**
+ * [AlarmStore] backed by [QuickFitContentProvider]; the time zone goes to shared preferences.
+ */
+class ContentProviderAlarmStore(context: Context) : AlarmStore {
+    private val contentResolver: ContentResolver = context.contentResolver
+    private val alarmPreferences: SharedPreferences = context.getSharedPreferences(PREFS_ALARMS, Context.MODE_PRIVATE)
+
+    override fun readDue(dueUntil: Long) =
+            query("${ScheduleEntry.TABLE_NAME}.${ScheduleEntry.COL_NEXT_ALARM_MILLIS} <= ?", arrayOf(dueUntil.toString()))
+
+    override fun readDueOrDisplaying(dueUntil: Long) =
+            query(
+                    "(${ScheduleEntry.TABLE_NAME}.${ScheduleEntry.COL_NEXT_ALARM_MILLIS} <= ? " +
+                            "OR ${ScheduleEntry.TABLE_NAME}.${ScheduleEntry.COL_CURRENT_STATE}=?)",
+                    arrayOf(dueUntil.toString(), ScheduleEntry.CURRENT_STATE_DISPLAYING)
+            )
+
+    override fun readAll() = query("${ScheduleEntry.TABLE_NAME}.${ScheduleEntry.COL_ID} IS NOT NULL", null)
+
+    override fun readNeedsReschedule() =
+            query("${ScheduleEntry.TABLE_NAME}.${ScheduleEntry.COL_NEEDS_RESCHEDULE}=1", null)
+
+    override fun read(scheduleId: Long) =
+            query("${ScheduleEntry.TABLE_NAME}.${ScheduleEntry.COL_ID}=?", arrayOf(scheduleId.toString())).firstOrNull()
+
+    private fun query(selection: String, selectionArgs: Array<String>?): List<AlarmSchedule> =
+            contentResolver.query(
+                    QuickFitContentProvider.getUriWorkoutsList(),
+                    COLUMNS,
+                    selection,
+                    selectionArgs,
+                    null
+            )?.use { cursor ->
+                val schedules = ArrayList<AlarmSchedule>(cursor.count)
+                while (cursor.moveToNext()) {
+                    schedules.add(fromRow(cursor))
+                }
+                schedules
+            } ?: emptyList()
+
+    override fun transition(transition: AlarmTransition) =
+            contentResolver.update(
+                    QuickFitContentProvider.getUriSchedulesId(transition.scheduleId),
+                    ContentValues(2).apply {
+                        put(ScheduleEntry.COL_NEXT_ALARM_MILLIS, transition.nextAlarmMillis)
+                        put(ScheduleEntry.COL_CURRENT_STATE, transition.newState)
+                    },
+                    "${ScheduleEntry.COL_CURRENT_STATE}=?",
+                    arrayOf(transition.expectedState)
+            ) > 0
+
+    override fun transitionAll(transitions: List<AlarmTransition>): Set<Long> {
+        val operations = transitions.mapTo(ArrayList()) { transition ->
+            ContentProviderOperation.newUpdate(QuickFitContentProvider.getUriSchedulesId(transition.scheduleId))
+                    .withValue(ScheduleEntry.COL_NEXT_ALARM_MILLIS, transition.nextAlarmMillis)
+                    .withValue(ScheduleEntry.COL_CURRENT_STATE, transition.newState)
+                    .withSelection("${ScheduleEntry.COL_CURRENT_STATE}=?", arrayOf(transition.expectedState))
+                    .build()
+        }
+        val results = contentResolver.applyBatch(QuickFitContentProvider.AUTHORITY, operations)
+        return transitions.filterIndexed { i, _ -> results[i].count == 0 }.mapTo(HashSet()) { it.scheduleId }
+    }
+
+    override fun rescheduleAll(reschedules: List<Reschedule>): Set<Long> {
+        val operations = reschedules.mapTo(ArrayList()) { reschedule ->
+            val schedule = reschedule.schedule
+            ContentProviderOperation.newUpdate(QuickFitContentProvider.getUriSchedulesId(schedule.scheduleId))
+                    .withValue(ScheduleEntry.COL_NEXT_ALARM_MILLIS, reschedule.nextAlarmMillis)
+                    .withValue(ScheduleEntry.COL_CURRENT_STATE, ScheduleEntry.CURRENT_STATE_ACKNOWLEDGED)
+                    .withValue(ScheduleEntry.COL_NEEDS_RESCHEDULE, 0)
+                    .withSelection(
+                            "${ScheduleEntry.COL_CURRENT_STATE}=? AND ${ScheduleEntry.COL_DAYS_OF_WEEK}=? " +
+                                    "AND ${ScheduleEntry.COL_REPEAT_UNIT}=? AND ${ScheduleEntry.COL_REPEAT_INTERVAL}=? " +
+                                    "AND ${ScheduleEntry.COL_REPEAT_FROM_DAY}=? " +
+                                    "AND ${ScheduleEntry.COL_HOUR}=? AND ${ScheduleEntry.COL_MINUTE}=?",
+                            arrayOf(
+                                    schedule.currentState,
+                                    schedule.recurrence.daysOfWeek.mask.toString(),
+                                    schedule.recurrence.unit.name,
+                                    schedule.recurrence.interval.toString(),
+                                    schedule.recurrence.fromDay.toString(),
+                                    schedule.hour.toString(),
+                                    schedule.minute.toString()
+                            )
+                    )
+                    .build()
+        }
+        val results = contentResolver.applyBatch(QuickFitContentProvider.AUTHORITY, operations)
+        return reschedules.filterIndexed { i, _ -> results[i].count == 0 }.mapTo(HashSet()) { it.schedule.scheduleId }
+    }
+
+    override fun setState(scheduleId: Long, expectedState: String, newState: String) =
+            contentResolver.update(
+                    QuickFitContentProvider.getUriSchedulesId(scheduleId),
+                    ContentValues(1).apply {
+                        put(ScheduleEntry.COL_CURRENT_STATE, newState)
+                    },
+                    "${ScheduleEntry.COL_CURRENT_STATE}=?",
+                    arrayOf(expectedState)
+            ) > 0
+
+    override fun readDisplaying(): List<WorkoutNotificationData> =
+            contentResolver.query(
+                    QuickFitContentProvider.getUriWorkoutsList(),
+                    arrayOf(
+                            WorkoutEntry.SCHEDULE_ID,
+                            WorkoutEntry.WORKOUT_ID,
+                            WorkoutEntry.ACTIVITY_TYPE,
+                            WorkoutEntry.LABEL,
+                            WorkoutEntry.DURATION_MINUTES
+                    ),
+                    "${ScheduleEntry.TABLE_NAME}.${ScheduleEntry.COL_CURRENT_STATE}=?",
+                    arrayOf(ScheduleEntry.CURRENT_STATE_DISPLAYING),
+                    null
+            )?.use { cursor ->
+                val displaying = ArrayList<WorkoutNotificationData>(cursor.count)
+                while (cursor.moveToNext()) {
+                    displaying.add(WorkoutNotificationData.fromRow(cursor))
+                }
+                displaying
+            } ?: emptyList()
+
+    override fun earliestNextAlarmMillis(): Long? =
+            contentResolver.query(
+                    QuickFitContentProvider.getUriSchedulesList(),
+                    arrayOf("MIN(${ScheduleEntry.COL_NEXT_ALARM_MILLIS})"),
+                    null,
+                    null,
+                    null
+            )?.use { cursor ->
+                if (cursor.moveToFirst()) cursor.getLongOrNull(0) else null
+            }
+
+    override fun readTimeZoneId(): String? = alarmPreferences.getString(PREF_KEY_TIME_ZONE_ID, null)
+
+    override fun writeTimeZoneId(timeZoneId: String) {
+        // read back on the next boot, which may be any time
+        alarmPreferences.edit().putString(PREF_KEY_TIME_ZONE_ID, timeZoneId).commit()
+    }
+
+    private fun fromRow(cursor: Cursor) =
+            AlarmSchedule(
+                    cursor.getLong(cursor.getColumnIndexOrThrow(WorkoutEntry.SCHEDULE_ID)),
+                    Recurrence.of(
+                            DaysOfWeek.fromMask(cursor.getInt(cursor.getColumnIndexOrThrow(WorkoutEntry.DAYS_OF_WEEK))),
+                            Recurrence.Unit.valueOf(cursor.getString(cursor.getColumnIndexOrThrow(WorkoutEntry.REPEAT_UNIT))),
+                            cursor.getInt(cursor.getColumnIndexOrThrow(WorkoutEntry.REPEAT_INTERVAL)),
+                            cursor.getLong(cursor.getColumnIndexOrThrow(WorkoutEntry.REPEAT_FROM_DAY))
+                    ),
+                    cursor.getInt(cursor.getColumnIndexOrThrow(WorkoutEntry.HOUR)),
+                    cursor.getInt(cursor.getColumnIndexOrThrow(WorkoutEntry.MINUTE)),
+                    cursor.getLongOrNull(cursor.getColumnIndexOrThrow(WorkoutEntry.NEXT_ALARM_MILLIS)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(WorkoutEntry.CURRENT_STATE)),
+                    WorkoutNotificationData.fromRow(cursor)
+            )
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import androidx.annotation.AnyThread
+import androidx.annotation.WorkerThread
+
+/**
+ * Where the workout notifications go: one per schedule, plus a summary for the group if several are displaying.
+ */
+interface NotificationBackend {
+    /**
+     * Posts the notification for the given occurrence of the schedule, replacing the one that is displaying for it.
+     * Builds it on the spot if it was not prepared.
+     *
+     * @param alert whether to make sound and vibrate
+     */
+    @WorkerThread
+    fun post(scheduleId: Long, workoutData: WorkoutNotificationData, occurrence: Long, alert: Boolean)
+
+    /**
+     * Like [post], but only if the notification was prepared for that occurrence, so that posting it is cheap.
+     *
+     * @return whether it was posted
+     */
+    @AnyThread
+    fun postPrepared(scheduleId: Long, workoutData: WorkoutNotificationData, occurrence: Long, alert: Boolean): Boolean
+
+    fun cancel(scheduleId: Long)
+
+    /**
+     * Posts the summary for the notifications of the given workouts, replacing the previous one.
+     */
+    fun postSummary(displaying: List<WorkoutNotificationData>)
+
+    fun cancelSummary()
+
+    /**
+     * Announces the next occurrence of the schedule, so that its notification can be made ready before it is due.
+     */
+    fun prepare(scheduleId: Long, workoutData: WorkoutNotificationData, occurrence: Long)
+
+    /**
+     * Forgets what was prepared for the schedule.
+     */
+    fun invalidate(scheduleId: Long)
+}
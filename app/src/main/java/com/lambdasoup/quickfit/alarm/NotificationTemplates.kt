@@ -0,0 +1,262 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import android.app.Notification
+import android.app.PendingIntent
+import android.content.Context
+import android.content.Intent
+import android.content.SharedPreferences
+import android.media.RingtoneManager
+import android.net.Uri
+import android.os.Build
+import androidx.annotation.AnyThread
+import androidx.annotation.WorkerThread
+import androidx.core.app.NotificationCompat
+import androidx.core.app.TaskStackBuilder
+import androidx.core.content.ContextCompat
+import androidx.core.os.ConfigurationCompat
+import androidx.preference.PreferenceManager
+import com.lambdasoup.quickfit.Constants.NOTIFICATION_CHANNEL_ID_ALARM
+import com.lambdasoup.quickfit.Constants.NOTIFICATION_GROUP_ALARM
+import com.lambdasoup.quickfit.Constants.PENDING_INTENT_DID_IT
+import com.lambdasoup.quickfit.Constants.PENDING_INTENT_DISMISS_ALARM
+import com.lambdasoup.quickfit.Constants.PENDING_INTENT_SNOOZE
+import com.lambdasoup.quickfit.Constants.PENDING_INTENT_WORKOUT_LIST
+import com.lambdasoup.quickfit.R
+import com.lambdasoup.quickfit.model.FitActivity
+import com.lambdasoup.quickfit.persist.QuickFitContentProvider
+import com.lambdasoup.quickfit.ui.WorkoutListActivity
+import timber.log.Timber
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Ready-made workout notifications, one per schedule, built when the schedule's next alarm is set. Posting one when the
+ * alarm fires then takes no resource lookups, formatting, preference reads or PendingIntent creation.
+ *
+ * A template is used only if it was built for the same workout data, occurrence and locale; otherwise the notification
+ * is built on the spot, which [getPrepared] leaves to the caller, so that it can be done off the main thread.
+ * Templates are dropped when their schedule changes or is deleted, and all of them when the notification preferences
+ * change.
+ *
+ * Lives as long as the process; not persisted, as the PendingIntents in a notification do not outlive it. An alarm that
+ * starts the process finds no template, and [AlarmReceiver] builds its notification on a background thread then.
+ * Thread safe.
+ */
+internal object NotificationTemplates {
+    private val templates = ConcurrentHashMap<Long, Template>()
+
+    // held here, SharedPreferences only keeps a weak reference
+    private var preferenceListener: SharedPreferences.OnSharedPreferenceChangeListener? = null
+
+    /**
+     * Builds the notification for the given occurrence of the schedule ahead of time.
+     */
+    fun prepare(context: Context, scheduleId: Long, workoutData: WorkoutNotificationData, occurrence: Long) {
+        templates[scheduleId] = build(context.applicationContext, scheduleId, workoutData, occurrence)
+    }
+
+    /**
+     * @param alert whether to make sound and vibrate; false for all but the first of notifications posted together, so
+     * that those alert once
+     */
+    @WorkerThread
+    fun get(context: Context, scheduleId: Long, workoutData: WorkoutNotificationData, occurrence: Long, alert: Boolean): Notification {
+        val template = findTemplate(context, scheduleId, workoutData, occurrence)
+                ?: build(context.applicationContext, scheduleId, workoutData, occurrence).also {
+                    Timber.d("No template for schedule $scheduleId at $occurrence, built it now")
+                    templates[scheduleId] = it
+                }
+        return if (alert) template.alerting else template.silent
+    }
+
+    /**
+     * Like [get], but null instead of building the notification if there is no template for it.
+     */
+    @AnyThread
+    fun getPrepared(
+            context: Context,
+            scheduleId: Long,
+            workoutData: WorkoutNotificationData,
+            occurrence: Long,
+            alert: Boolean
+    ): Notification? {
+        val template = findTemplate(context, scheduleId, workoutData, occurrence) ?: return null
+        return if (alert) template.alerting else template.silent
+    }
+
+    private fun findTemplate(context: Context, scheduleId: Long, workoutData: WorkoutNotificationData, occurrence: Long) =
+            templates[scheduleId]
+                    ?.takeIf { it.workoutData == workoutData && it.occurrence == occurrence && it.locale == localeOf(context) }
+
+    fun invalidate(scheduleId: Long) {
+        templates.remove(scheduleId)
+    }
+
+    private fun build(context: Context, scheduleId: Long, workoutData: WorkoutNotificationData, occurrence: Long): Template {
+        listenToPreferences(context)
+
+        val fitActivity = FitActivity.fromKey(workoutData.activityType, context.resources)
+
+        val dismissIntent = getForegroundServicePendingIntentCompat(
+                context,
+                PENDING_INTENT_DISMISS_ALARM,
+                AlarmService.getOnNotificationDismissedIntent(context, scheduleId),
+                PendingIntent.FLAG_UPDATE_CURRENT
+        )
+
+        val showWorkoutPendingIntent = TaskStackBuilder.create(context)
+                .addNextIntentWithParentStack(
+                        Intent(context, WorkoutListActivity::class.java)
+                                // for intent disambiguation
+                                // and for WorkoutListActivity to show correct workout
+                                .setData(QuickFitContentProvider.getUriWorkoutsId(workoutData.workoutId))
+                                // dismiss intent not fired by autocancel
+                                .putExtra(WorkoutListActivity.EXTRA_NOTIFICATIONS_CANCEL_INTENT, dismissIntent)
+                )
+                .getPendingIntent(PENDING_INTENT_WORKOUT_LIST, PendingIntent.FLAG_UPDATE_CURRENT)
+
+        val didItIntent = getForegroundServicePendingIntentCompat(
+                context,
+                PENDING_INTENT_DID_IT,
+                AlarmService.getDidItIntent(context, workoutData.workoutId, scheduleId, occurrence),
+                PendingIntent.FLAG_UPDATE_CURRENT
+        )
+
+        val snoozeIntent = getForegroundServicePendingIntentCompat(
+                context,
+                PENDING_INTENT_SNOOZE,
+                AlarmService.getSnoozeIntent(context, scheduleId),
+                PendingIntent.FLAG_UPDATE_CURRENT
+        )
+
+        val notificationBuilder = NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_ID_ALARM)
+                .setContentTitle(context.getString(R.string.notification_alarm_title_single, fitActivity.displayName))
+                .setContentText(context.getString(
+                        R.string.notification_alarm_content_single,
+                        context.resources.getQuantityString(
+                                R.plurals.duration_mins_format,
+                                workoutData.durationMinutes,
+                                workoutData.durationMinutes
+                        ),
+                        workoutData.label.orEmpty()
+                ))
+                .setContentIntent(showWorkoutPendingIntent)
+                .addAction(
+                        R.drawable.ic_done_white_24dp,
+                        context.getString(R.string.notification_action_did_it),
+                        didItIntent
+                )
+                .addAction(
+                        R.drawable.ic_alarm_white_24dp,
+                        context.getString(R.string.notification_action_remind_me_later),
+                        snoozeIntent
+                )
+                .setDeleteIntent(dismissIntent)
+                // Only effect is on content-click. cancelIntent is not fired, despite the name. Actions need to cancel the notification
+                // themselves.
+                .setAutoCancel(true)
+                // Notification might be re-displayed after device time corrections. No point in re-alerting the user.
+                // If the user does not dismiss the notification for a week, they won't get noisily alerted about the _next_ occurence.
+                // This is acceptable to me.
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setSmallIcon(R.drawable.ic_stat_quickfit_icon)
+                .setColor(ContextCompat.getColor(context, R.color.colorPrimary))
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setGroup(NOTIFICATION_GROUP_ALARM)
+                // the time the workout is scheduled for, not when the alarm happened to be delivered
+                .setWhen(occurrence)
+                .setShowWhen(true)
+
+        // Grouped, with a summary kept up to date by Alarms.updateSummary() from the schedules currently displaying. On
+        // API levels < 24 the system shows only the summary once there is one, and the summary is all the user sees of
+        // several workouts due together.
+
+        setLegacyAlertProperties(context, notificationBuilder)
+        val alerting = notificationBuilder.build()
+
+        notificationBuilder
+                .setSound(null)
+                .setDefaults(0)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+        val silent = notificationBuilder.build()
+
+        return Template(workoutData, occurrence, localeOf(context), alerting, silent)
+    }
+
+    private fun setLegacyAlertProperties(context: Context, notificationBuilder: NotificationCompat.Builder) {
+        // Starting with O, those properties are set on the notification channel
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            val preferences = PreferenceManager.getDefaultSharedPreferences(context)
+            val ringtoneUriStr = preferences.getString(context.getString(R.string.pref_key_notification_ringtone), null)
+            notificationBuilder.setSound(
+                    when {
+                        ringtoneUriStr == null -> RingtoneManager.getActualDefaultRingtoneUri(context, RingtoneManager.TYPE_NOTIFICATION)
+                        ringtoneUriStr.isNotEmpty() -> Uri.parse(ringtoneUriStr)
+                        else -> null
+                    }
+            )
+
+            val ledOn = preferences.getBoolean(context.getString(R.string.pref_key_notification_led), true)
+            val vibrationOn = preferences.getBoolean(context.getString(R.string.pref_key_notification_vibrate), true)
+            notificationBuilder.setDefaults(
+                    (if (ledOn) Notification.DEFAULT_LIGHTS else 0) or if (vibrationOn) Notification.DEFAULT_VIBRATE else 0
+            )
+        }
+    }
+
+    @Synchronized
+    private fun listenToPreferences(context: Context) {
+        // Starting with O, the alert properties are on the notification channel, not in the templates
+        if (preferenceListener != null || Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return
+        }
+        val alertKeys = setOf(
+                context.getString(R.string.pref_key_notification_ringtone),
+                context.getString(R.string.pref_key_notification_led),
+                context.getString(R.string.pref_key_notification_vibrate)
+        )
+        preferenceListener = SharedPreferences.OnSharedPreferenceChangeListener { _, key ->
+            if (key in alertKeys) {
+                templates.clear()
+            }
+        }.also {
+            PreferenceManager.getDefaultSharedPreferences(context).registerOnSharedPreferenceChangeListener(it)
+        }
+    }
+
+    private fun localeOf(context: Context): Locale = ConfigurationCompat.getLocales(context.resources.configuration)[0]
+
+    private class Template(
+            val workoutData: WorkoutNotificationData,
+            val occurrence: Long,
+            val locale: Locale,
+            val alerting: Notification,
+            val silent: Notification
+    )
+}
+
+@Suppress("SameParameterValue")
+private fun getForegroundServicePendingIntentCompat(context: Context, requestCode: Int, intent: Intent, flags: Int) =
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            PendingIntent.getForegroundService(context, requestCode, intent, flags)
+        } else {
+            PendingIntent.getService(context, requestCode, intent, flags)
+        }
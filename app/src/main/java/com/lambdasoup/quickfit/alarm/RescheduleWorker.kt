@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import android.content.Context
+import androidx.annotation.AnyThread
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequest
+import androidx.work.WorkManager
+import androidx.work.Worker
+import androidx.work.WorkerParameters
+import timber.log.Timber
+import java.util.concurrent.TimeUnit
+
+private const val UNIQUE_WORK_RESCHEDULE = "reschedule"
+
+// Edits within this window of each other are rescheduled by the same run.
+private val DEBOUNCE_MILLIS = TimeUnit.SECONDS.toMillis(3)
+
+/**
+ * Runs [Alarms.rescheduleDirty] for schedule edits, once for a burst of edits instead of once per edit. Which
+ * schedules to reschedule is marked in the database by the edits themselves, so a run that never happens, as when the
+ * process dies, is made up for on the next boot.
+ */
+class RescheduleWorker(private val appContext: Context, workerParams: WorkerParameters) : Worker(appContext, workerParams) {
+
+    override fun doWork(): Result {
+        Alarms(appContext).rescheduleDirty()
+        return Result.success()
+    }
+
+    companion object {
+        /**
+         * To be called after editing the days or time of a schedule, or adding one.
+         */
+        @AnyThread
+        fun enqueue(context: Context) {
+            Timber.d("Schedule edited, rescheduling in $DEBOUNCE_MILLIS ms")
+            // REPLACE: each edit pushes the run back; a run in progress completes its pass, the new one takes the rest
+            WorkManager.getInstance(context.applicationContext)
+                    .enqueueUniqueWork(
+                            UNIQUE_WORK_RESCHEDULE,
+                            ExistingWorkPolicy.REPLACE,
+                            OneTimeWorkRequest.Builder(RescheduleWorker::class.java)
+                                    .setInitialDelay(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)
+                                    .build()
+                    )
+        }
+    }
+}
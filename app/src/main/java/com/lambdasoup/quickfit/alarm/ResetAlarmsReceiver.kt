@@ -30,18 +30,27 @@ class ResetAlarmsReceiver : BroadcastReceiver() {
             return
         }
 
+        // after a reboot, the next alarms are still right; after a time change or an update, they may not be
+        val serviceIntent = if (intent.action in BOOT_ACTIONS) {
+            AlarmService.getOnBootCompletedIntent(context)
+        } else {
+            AlarmService.getOnTimeDiscontinuityIntent(context)
+        }
         Timber.d("About to wakeful start foreground AlarmService")
-        WakefulIntents.startWakefulForegroundService(context, AlarmService.getOnBootCompletedIntent(context))
+        WakefulIntents.startWakefulForegroundService(context, serviceIntent)
         Timber.d("AlarmService started.")
     }
 
     companion object {
-        private val ALLOWED_ACTIONS = setOf(
+        private val BOOT_ACTIONS = setOf(
                 Intent.ACTION_BOOT_COMPLETED,
                 "android.intent.action.QUICKBOOT_POWERON",
-                "com.htc.intent.action.QUICKBOOT_POWERON",
+                "com.htc.intent.action.QUICKBOOT_POWERON"
+        )
+        private val ALLOWED_ACTIONS = BOOT_ACTIONS + setOf(
                 Intent.ACTION_TIME_CHANGED,
-                Intent.ACTION_TIMEZONE_CHANGED
+                Intent.ACTION_TIMEZONE_CHANGED,
+                Intent.ACTION_MY_PACKAGE_REPLACED
         )
     }
 }
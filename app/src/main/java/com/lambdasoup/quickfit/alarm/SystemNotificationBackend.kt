@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import android.app.NotificationManager
+import android.app.PendingIntent
+import android.content.Context
+import android.content.Intent
+import androidx.core.app.NotificationCompat
+import androidx.core.app.TaskStackBuilder
+import androidx.core.content.ContextCompat
+import com.lambdasoup.quickfit.Constants.NOTIFICATION_ALARM
+import com.lambdasoup.quickfit.Constants.NOTIFICATION_ALARM_SUMMARY
+import com.lambdasoup.quickfit.Constants.NOTIFICATION_CHANNEL_ID_ALARM
+import com.lambdasoup.quickfit.Constants.NOTIFICATION_GROUP_ALARM
+import com.lambdasoup.quickfit.Constants.PENDING_INTENT_WORKOUT_LIST
+import com.lambdasoup.quickfit.R
+import com.lambdasoup.quickfit.model.FitActivity
+import com.lambdasoup.quickfit.ui.WorkoutListActivity
+
+/**
+ * [NotificationBackend] on the system [NotificationManager], posting from [NotificationTemplates].
+ */
+class SystemNotificationBackend(private val context: Context) : NotificationBackend {
+    private val notificationManager by lazy { context.getSystemService(Context.NOTIFICATION_SERVICE) as NotificationManager }
+
+    override fun post(scheduleId: Long, workoutData: WorkoutNotificationData, occurrence: Long, alert: Boolean) {
+        notificationManager.notify(
+                scheduleId.toString(),
+                NOTIFICATION_ALARM,
+                NotificationTemplates.get(context, scheduleId, workoutData, occurrence, alert)
+        )
+    }
+
+    override fun postPrepared(scheduleId: Long, workoutData: WorkoutNotificationData, occurrence: Long, alert: Boolean): Boolean {
+        val notification = NotificationTemplates.getPrepared(context, scheduleId, workoutData, occurrence, alert)
+                ?: return false
+        notificationManager.notify(scheduleId.toString(), NOTIFICATION_ALARM, notification)
+        return true
+    }
+
+    override fun cancel(scheduleId: Long) {
+        notificationManager.cancel(scheduleId.toString(), NOTIFICATION_ALARM)
+    }
+
+    override fun postSummary(displaying: List<WorkoutNotificationData>) {
+        val summary = context.getString(R.string.notification_alarm_content_summary_multi, displaying.size)
+        val inboxStyle = NotificationCompat.InboxStyle()
+                .setBigContentTitle(context.getString(R.string.notification_alarm_title_multi))
+                .setSummaryText(summary)
+        for (workoutData in displaying) {
+            inboxStyle.addLine(context.getString(
+                    R.string.notification_alarm_content_line_multi,
+                    FitActivity.fromKey(workoutData.activityType, context.resources).displayName,
+                    context.resources.getQuantityString(
+                            R.plurals.duration_mins_format,
+                            workoutData.durationMinutes,
+                            workoutData.durationMinutes
+                    ),
+                    workoutData.label.orEmpty()
+            ))
+        }
+
+        val showWorkoutsPendingIntent = TaskStackBuilder.create(context)
+                .addNextIntentWithParentStack(Intent(context, WorkoutListActivity::class.java))
+                .getPendingIntent(PENDING_INTENT_WORKOUT_LIST, PendingIntent.FLAG_UPDATE_CURRENT)
+
+        val summaryBuilder = NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_ID_ALARM)
+                .setContentTitle(context.getString(R.string.notification_alarm_title_multi))
+                .setContentText(summary)
+                .setNumber(displaying.size)
+                .setStyle(inboxStyle)
+                .setContentIntent(showWorkoutsPendingIntent)
+                .setAutoCancel(true)
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setSmallIcon(R.drawable.ic_stat_quickfit_icon)
+                .setColor(ContextCompat.getColor(context, R.color.colorPrimary))
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setGroup(NOTIFICATION_GROUP_ALARM)
+                .setGroupSummary(true)
+                // the first of the workouts posted together has alerted already
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN)
+
+        notificationManager.notify(NOTIFICATION_ALARM_SUMMARY, summaryBuilder.build())
+    }
+
+    override fun cancelSummary() {
+        notificationManager.cancel(NOTIFICATION_ALARM_SUMMARY)
+    }
+
+    override fun prepare(scheduleId: Long, workoutData: WorkoutNotificationData, occurrence: Long) {
+        NotificationTemplates.prepare(context, scheduleId, workoutData, occurrence)
+    }
+
+    override fun invalidate(scheduleId: Long) {
+        NotificationTemplates.invalidate(scheduleId)
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.alarm
+
+import android.database.Cursor
+import android.os.Bundle
+import com.lambdasoup.quickfit.persist.QuickFitContract.WorkoutEntry
+
+data class WorkoutNotificationData constructor(
+        val workoutId: Long,
+        val activityType: String,
+        val label: String?,
+        val durationMinutes: Int
+) {
+
+    /*
+     *  Passing custom Parcelables through other processes (e.g. as a PendingIntent extra) fails in general - see
+     * https://commonsware.com/blog/2016/07/22/be-careful-where-you-use-custom-parcelables.html
+     *
+     * In particular, when used as an extra in a PendingIntent for AlarmManager, this never works.
+     *
+     * Tried using the workaround suggested in
+     * https://stackoverflow.com/questions/18000093/how-to-marshall-and-unmarshall-a-parcelable-to-a-byte-array-with-help-of-parcel/18000094#18000094
+     * and gave that avenue up again, because I don't see a way of making properly generic `Bundle.putSafeExtra` and
+     * `<T : Parcelable> Bundle.getSafeParcelableExtra` extension methods - the latter fails, due to the fantastic
+     * design of the CREATOR object which is not part of the Parcelable interface (and cannot be, due to the Java type system).
+     * So there's no way of obtaining it from the (reified) type parameter, so we'd have to pass it in at each use.
+     *
+     * And then we notice that when using @Parcelize for auto-generated Parcelable implementation, this CREATOR object
+     * does not exist (at least not enough for the IDE to see it at compile time).
+     *
+     * So if we have to hand-generate the serialization anyway, going through Bundle is the more readable approach.
+     */
+    fun asBundle(): Bundle = Bundle(4).apply {
+        putLong(KEY_WORKOUT_ID, workoutId)
+        putString(KEY_ACTIVITY_TYPE, activityType)
+        putString(KEY_LABEL, label)
+        putInt(KEY_DURATION_MINUTES, durationMinutes)
+    }
+
+    companion object {
+        private const val KEY_WORKOUT_ID = "com.lambdasoup.quickfit.alarm.WorkoutNotificationData.KEY_WORKOUT_ID"
+        private const val KEY_ACTIVITY_TYPE = "com.lambdasoup.quickfit.alarm.WorkoutNotificationData.KEY_ACTIVITY_TYPE"
+        private const val KEY_LABEL = "com.lambdasoup.quickfit.alarm.WorkoutNotificationData.KEY_LABEL"
+        private const val KEY_DURATION_MINUTES = "com.lambdasoup.quickfit.alarm.WorkoutNotificationData.KEY_DURATION_MINUTES"
+
+        internal fun fromBundle(bundle: Bundle): WorkoutNotificationData =
+                with(bundle) {
+                    WorkoutNotificationData(
+                            getLong(KEY_WORKOUT_ID),
+                            getString(KEY_ACTIVITY_TYPE)!!,
+                            getString(KEY_LABEL),
+                            getInt(KEY_DURATION_MINUTES)
+                    )
+                }
+
+        internal fun fromRow(cursor: Cursor): WorkoutNotificationData {
+            val workoutId = cursor.getLong(cursor.getColumnIndexOrThrow(WorkoutEntry.WORKOUT_ID))
+            val activityType = cursor.getString(cursor.getColumnIndexOrThrow(WorkoutEntry.ACTIVITY_TYPE))
+            val label = cursor.getColumnIndexOrThrow(WorkoutEntry.LABEL).let {
+                if (!cursor.isNull(it)) cursor.getString(it) else ""
+            }
+            val durationMinutes = cursor.getInt(cursor.getColumnIndexOrThrow(WorkoutEntry.DURATION_MINUTES))
+
+            return WorkoutNotificationData(workoutId, activityType, label, durationMinutes)
+        }
+
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.model;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of days of the week, stored as a bit mask with bit {@code calendarConst - 1} for each {@link DayOfWeek}; that
+ * is, Sunday is the lowest bit. The mask is what gets persisted.
+ */
+public final class DaysOfWeek {
+    public static final int ALL = 0x7f;
+    public static final DaysOfWeek NONE = new DaysOfWeek(0);
+
+    private final int mask;
+
+    private DaysOfWeek(int mask) {
+        this.mask = mask;
+    }
+
+    @NonNull
+    public static DaysOfWeek of(@NonNull DayOfWeek... days) {
+        int mask = 0;
+        for (DayOfWeek day : days) {
+            mask |= bit(day);
+        }
+        return new DaysOfWeek(mask);
+    }
+
+    @NonNull
+    public static DaysOfWeek fromMask(int mask) {
+        if ((mask & ~ALL) != 0) {
+            throw new IllegalArgumentException("Not a days of week mask: " + mask);
+        }
+        return new DaysOfWeek(mask);
+    }
+
+    public static int bit(@NonNull DayOfWeek day) {
+        return 1 << (day.calendarConst - 1);
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    public boolean contains(@NonNull DayOfWeek day) {
+        return (mask & bit(day)) != 0;
+    }
+
+    public boolean isEmpty() {
+        return mask == 0;
+    }
+
+    public int size() {
+        return Integer.bitCount(mask);
+    }
+
+    @NonNull
+    public DaysOfWeek with(@NonNull DayOfWeek day) {
+        return new DaysOfWeek(mask | bit(day));
+    }
+
+    @NonNull
+    public DaysOfWeek without(@NonNull DayOfWeek day) {
+        return new DaysOfWeek(mask & ~bit(day));
+    }
+
+    /**
+     * @return the contained days, in the order of {@code week}
+     */
+    @NonNull
+    public List<DayOfWeek> inOrder(@NonNull DayOfWeek[] week) {
+        List<DayOfWeek> days = new ArrayList<>(size());
+        for (DayOfWeek day : week) {
+            if (contains(day)) {
+                days.add(day);
+            }
+        }
+        return days;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return mask == ((DaysOfWeek) o).mask;
+    }
+
+    @Override
+    public int hashCode() {
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder days = new StringBuilder("DaysOfWeek{");
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (contains(day)) {
+                if (days.charAt(days.length() - 1) != '{') {
+                    days.append(", ");
+                }
+                days.append(day);
+            }
+        }
+        return days.append('}').toString();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.model;
+
+import androidx.annotation.NonNull;
+
+import java.util.TimeZone;
+
+/**
+ * When a schedule occurs: on some days of the week every {@code interval} weeks, or every {@code interval} days.
+ * Intervals count from {@link #getFromDay()}, a local date as days since 1970-01-01; for weeks, that is the first day
+ * of a week in which the schedule occurs. Weekly schedules occur every week, whatever their start.
+ * <p>
+ * Normalized, so that equal rules are equal: every day is the weekly rule for all days, and weekly rules start at day 0.
+ */
+public final class Recurrence {
+    private static final long DAY = 24 * 60 * 60 * 1000;
+    // 1970-01-01 was a Thursday
+    private static final int EPOCH_DAY_OF_WEEK = 4; // days after Sunday
+
+    public enum Unit {
+        DAYS, WEEKS
+    }
+
+    @NonNull
+    private final DaysOfWeek daysOfWeek;
+    @NonNull
+    private final Unit unit;
+    private final int interval;
+    private final long fromDay;
+
+    private Recurrence(@NonNull DaysOfWeek daysOfWeek, @NonNull Unit unit, int interval, long fromDay) {
+        this.daysOfWeek = daysOfWeek;
+        this.unit = unit;
+        this.interval = interval;
+        this.fromDay = fromDay;
+    }
+
+    @NonNull
+    public static Recurrence weekly(@NonNull DaysOfWeek daysOfWeek) {
+        return everyWeeks(1, daysOfWeek, 0);
+    }
+
+    /**
+     * @param fromDay the first day of a week to occur in
+     */
+    @NonNull
+    public static Recurrence everyWeeks(int weeks, @NonNull DaysOfWeek daysOfWeek, long fromDay) {
+        return of(daysOfWeek, Unit.WEEKS, weeks, fromDay);
+    }
+
+    /**
+     * @param fromDay a day to occur on
+     */
+    @NonNull
+    public static Recurrence everyDays(int days, long fromDay) {
+        return of(DaysOfWeek.fromMask(DaysOfWeek.ALL), Unit.DAYS, days, fromDay);
+    }
+
+    /**
+     * As persisted; the days of the week are ignored for {@link Unit#DAYS}.
+     *
+     * @throws IllegalArgumentException if {@code interval} is not positive, or there are no days of the week to occur
+     *                                  on
+     */
+    @NonNull
+    public static Recurrence of(@NonNull DaysOfWeek daysOfWeek, @NonNull Unit unit, int interval, long fromDay) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Not an interval: " + interval);
+        }
+        if (unit == Unit.DAYS) {
+            if (interval == 1) {
+                return weekly(DaysOfWeek.fromMask(DaysOfWeek.ALL));
+            }
+            return new Recurrence(DaysOfWeek.fromMask(DaysOfWeek.ALL), unit, interval, fromDay);
+        }
+        if (daysOfWeek.isEmpty()) {
+            throw new IllegalArgumentException("No days of week to occur on");
+        }
+        return new Recurrence(daysOfWeek, unit, interval, interval == 1 ? 0 : fromDay);
+    }
+
+    /**
+     * @return the local date of {@code instant} in {@code timeZone}, as days since 1970-01-01
+     */
+    public static long toDay(long instant, @NonNull TimeZone timeZone) {
+        return floorDiv(instant + timeZone.getOffset(instant), DAY);
+    }
+
+    /**
+     * @return the latest day at or before {@code day} that is a {@code firstDayOfWeek}
+     */
+    public static long startOfWeek(long day, @NonNull DayOfWeek firstDayOfWeek) {
+        return day - floorMod(calendarDayOfWeek(day) - firstDayOfWeek.calendarConst, 7);
+    }
+
+    /**
+     * @param day days since 1970-01-01
+     * @return the {@link java.util.Calendar} constant of its day of the week
+     */
+    public static int calendarDayOfWeek(long day) {
+        // Calendar.SUNDAY is 1
+        return floorMod(day + EPOCH_DAY_OF_WEEK, 7) + 1;
+    }
+
+    /**
+     * @param day a local date, as days since 1970-01-01
+     */
+    public boolean occursOn(long day) {
+        if (unit == Unit.DAYS) {
+            return floorMod(day - fromDay, interval) == 0;
+        }
+        // the bit of the day, see DaysOfWeek
+        return (daysOfWeek.getMask() & (1 << (calendarDayOfWeek(day) - 1))) != 0
+                && floorMod(floorDiv(day - fromDay, 7), interval) == 0;
+    }
+
+    /**
+     * @return the same interval on other days of the week; for weeks only
+     */
+    @NonNull
+    public Recurrence withDaysOfWeek(@NonNull DaysOfWeek daysOfWeek) {
+        if (unit != Unit.WEEKS) {
+            throw new IllegalStateException("Not on days of the week: " + this);
+        }
+        return of(daysOfWeek, unit, interval, fromDay);
+    }
+
+    public boolean isWeekly() {
+        return unit == Unit.WEEKS && interval == 1;
+    }
+
+    /**
+     * @return the days of the week to occur on; all of them for {@link Unit#DAYS}
+     */
+    @NonNull
+    public DaysOfWeek getDaysOfWeek() {
+        return daysOfWeek;
+    }
+
+    @NonNull
+    public Unit getUnit() {
+        return unit;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public long getFromDay() {
+        return fromDay;
+    }
+
+    // Math.floorDiv and Math.floorMod need API level 24
+
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        return (dividend % divisor < 0) ? quotient - 1 : quotient;
+    }
+
+    private static int floorMod(long dividend, int divisor) {
+        int remainder = (int) (dividend % divisor);
+        return remainder < 0 ? remainder + divisor : remainder;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Recurrence that = (Recurrence) o;
+        return interval == that.interval
+                && fromDay == that.fromDay
+                && unit == that.unit
+                && daysOfWeek.equals(that.daysOfWeek);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = daysOfWeek.hashCode();
+        result = 31 * result + unit.hashCode();
+        result = 31 * result + interval;
+        result = 31 * result + (int) (fromDay ^ (fromDay >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Recurrence{" + "daysOfWeek=" + daysOfWeek +
+                ", unit=" + unit +
+                ", interval=" + interval +
+                ", fromDay=" + fromDay +
+                '}';
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.lambdasoup.quickfit.persist
+
+import android.content.ContentResolver
+import android.content.ContentValues
+import android.content.Context
+import android.content.SharedPreferences
+import com.lambdasoup.quickfit.persist.QuickFitContract.RemoteSessionEntry
+
+private const val PREFS_IMPORT = "com.lambdasoup.quickfit.persist.ImportWorker"
+private const val PREF_KEY_WATERMARK = "watermark"
+
+/**
+ * [RemoteSessionStore] backed by [QuickFitContentProvider], with the watermark in shared preferences.
+ */
+class ContentProviderRemoteSessionStore(context: Context) : RemoteSessionStore {
+    private val contentResolver: ContentResolver = context.contentResolver
+    private val importPreferences: SharedPreferences = context.getSharedPreferences(PREFS_IMPORT, Context.MODE_PRIVATE)
+
+    override fun upsert(sessions: List<RemoteSession>) {
+        if (sessions.isEmpty()) {
+            return
+        }
+        contentResolver.bulkInsert(
+                QuickFitContentProvider.getUriRemoteSessionsList(),
+                Array(sessions.size) { i ->
+                    val session = sessions[i]
+                    ContentValues(6).apply {
+                        put(RemoteSessionEntry.IDENTIFIER, session.identifier)
+                        put(RemoteSessionEntry.ACTIVITY_TYPE, session.activityType)
+                        put(RemoteSessionEntry.START_TIME, session.startTime)
+                        put(RemoteSessionEntry.END_TIME, session.endTime)
+                        put(RemoteSessionEntry.NAME, session.name)
+                        put(RemoteSessionEntry.APP_PACKAGE_NAME, session.appPackageName)
+                    }
+                }
+        )
+    }
+
+    override fun readWatermark(): Long? =
+            if (importPreferences.contains(PREF_KEY_WATERMARK)) importPreferences.getLong(PREF_KEY_WATERMARK, 0) else null
+
+    override fun saveWatermark(watermark: Long) {
+        importPreferences.edit().putLong(PREF_KEY_WATERMARK, watermark).apply()
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.persist
+
+import android.content.ContentResolver
+import android.content.ContentValues
+import android.content.Context
+import android.content.SharedPreferences
+import android.database.Cursor
+import androidx.core.database.getIntOrNull
+import androidx.core.database.getLongOrNull
+import androidx.core.database.getStringOrNull
+import com.lambdasoup.quickfit.persist.QuickFitContract.SessionEntry
+
+private const val PREFS_SYNC = "com.lambdasoup.quickfit.persist.SyncWorker"
+private const val PREF_KEY_CHECKPOINT_SESSION_ID = "checkpoint_session_id"
+
+private val STATUS_TRANSMITTED = ContentValues().apply {
+    put(SessionEntry.STATUS, SessionEntry.SessionStatus.SYNCED.name)
+}
+
+/**
+ * [PendingSessionStore] backed by [QuickFitContentProvider], with the checkpoint in shared preferences.
+ */
+class ContentProviderSessionStore(context: Context) : PendingSessionStore {
+    private val contentResolver: ContentResolver = context.contentResolver
+    private val syncPreferences: SharedPreferences = context.getSharedPreferences(PREFS_SYNC, Context.MODE_PRIVATE)
+
+    override fun readPage(afterId: Long, now: Long, limit: Int): List<PendingSession> =
+            contentResolver.query(
+                    QuickFitContentProvider.withLimit(QuickFitContentProvider.getUriSessionsList(), limit),
+                    SessionEntry.COLUMNS,
+                    "${SessionEntry.STATUS}=? AND ${SessionEntry._ID}>? AND " +
+                            "(${SessionEntry.NEXT_ATTEMPT_MILLIS} IS NULL OR ${SessionEntry.NEXT_ATTEMPT_MILLIS}<=?)",
+                    arrayOf(SessionEntry.SessionStatus.NEW.name, afterId.toString(), now.toString()),
+                    "${SessionEntry._ID} ASC"
+            )?.use { cursor ->
+                val page = ArrayList<PendingSession>(cursor.count)
+                while (cursor.moveToNext()) {
+                    page.add(fromRow(cursor))
+                }
+                page
+            } ?: emptyList()
+
+    /**
+     * Number of sessions waiting for upload and eligible at [now].
+     */
+    fun countPending(now: Long): Int =
+            contentResolver.query(
+                    QuickFitContentProvider.getUriSessionsList(),
+                    arrayOf("COUNT(*)"),
+                    "${SessionEntry.STATUS}=? AND " +
+                            "(${SessionEntry.NEXT_ATTEMPT_MILLIS} IS NULL OR ${SessionEntry.NEXT_ATTEMPT_MILLIS}<=?)",
+                    arrayOf(SessionEntry.SessionStatus.NEW.name, now.toString()),
+                    null
+            )?.use { cursor ->
+                if (cursor.moveToFirst()) cursor.getInt(0) else 0
+            } ?: 0
+
+    override fun markSynced(sessionId: Long) {
+        contentResolver.update(
+                QuickFitContentProvider.getUriSessionsId(sessionId),
+                STATUS_TRANSMITTED,
+                null,
+                null
+        )
+    }
+
+    override fun recordFailure(sessionId: Long, attemptCount: Int, lastError: String, nextAttemptMillis: Long?) {
+        contentResolver.update(
+                QuickFitContentProvider.getUriSessionsId(sessionId),
+                ContentValues(4).apply {
+                    put(SessionEntry.ATTEMPT_COUNT, attemptCount)
+                    put(SessionEntry.LAST_ERROR, lastError)
+                    if (nextAttemptMillis == null) {
+                        put(SessionEntry.STATUS, SessionEntry.SessionStatus.QUARANTINED.name)
+                        putNull(SessionEntry.NEXT_ATTEMPT_MILLIS)
+                    } else {
+                        put(SessionEntry.NEXT_ATTEMPT_MILLIS, nextAttemptMillis)
+                    }
+                },
+                null,
+                null
+        )
+    }
+
+    override fun earliestNextAttemptAfter(now: Long): Long? =
+            contentResolver.query(
+                    QuickFitContentProvider.getUriSessionsList(),
+                    arrayOf("MIN(${SessionEntry.NEXT_ATTEMPT_MILLIS})"),
+                    "${SessionEntry.STATUS}=? AND ${SessionEntry.NEXT_ATTEMPT_MILLIS}>?",
+                    arrayOf(SessionEntry.SessionStatus.NEW.name, now.toString()),
+                    null
+            )?.use { cursor ->
+                if (cursor.moveToFirst()) cursor.getLongOrNull(0) else null
+            }
+
+    override fun readCheckpoint() = syncPreferences.getLong(PREF_KEY_CHECKPOINT_SESSION_ID, 0L)
+
+    override fun saveCheckpoint(sessionId: Long) {
+        syncPreferences.edit().putLong(PREF_KEY_CHECKPOINT_SESSION_ID, sessionId).apply()
+    }
+
+    override fun clearCheckpoint() {
+        syncPreferences.edit().remove(PREF_KEY_CHECKPOINT_SESSION_ID).apply()
+    }
+
+    private fun fromRow(cursor: Cursor) = PendingSession(
+            id = cursor.getLong(cursor.getColumnIndexOrThrow(SessionEntry._ID)),
+            activityType = cursor.getString(cursor.getColumnIndexOrThrow(SessionEntry.ACTIVITY_TYPE)),
+            startTime = cursor.getLong(cursor.getColumnIndexOrThrow(SessionEntry.START_TIME)),
+            endTime = cursor.getLong(cursor.getColumnIndexOrThrow(SessionEntry.END_TIME)),
+            name = cursor.getStringOrNull(cursor.getColumnIndexOrThrow(SessionEntry.NAME)),
+            calories = cursor.getIntOrNull(cursor.getColumnIndexOrThrow(SessionEntry.CALORIES)),
+            attemptCount = cursor.getInt(cursor.getColumnIndexOrThrow(SessionEntry.ATTEMPT_COUNT)),
+            identifier = cursor.getString(cursor.getColumnIndexOrThrow(SessionEntry.IDENTIFIER))
+    )
+}
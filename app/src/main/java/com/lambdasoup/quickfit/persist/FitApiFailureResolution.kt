@@ -26,6 +26,7 @@ import com.google.android.gms.auth.api.signin.GoogleSignInAccount
 import com.lambdasoup.quickfit.Constants
 import com.lambdasoup.quickfit.Constants.NOTIFICATION_CHANNEL_ID_PLAY_INTERACTION
 import com.lambdasoup.quickfit.R
+import com.lambdasoup.quickfit.ui.FitFailureResolutionActivity.Companion.EXTRA_FIT_READ_ACCESS
 import com.lambdasoup.quickfit.ui.FitFailureResolutionActivity.Companion.EXTRA_PLAY_API_SIGNIN_ACCOUNT
 import com.lambdasoup.quickfit.ui.WorkoutListActivity
 import timber.log.Timber
@@ -43,9 +44,12 @@ object FitApiFailureResolution {
         }
     }
 
-    fun requestFitPermissions(context: Context, account: GoogleSignInAccount) {
+    /**
+     * @param readAccess whether to ask for [Constants.FITNESS_READ_OPTIONS] instead of [Constants.FITNESS_API_OPTIONS]
+     */
+    fun requestFitPermissions(context: Context, account: GoogleSignInAccount, readAccess: Boolean = false) {
         Timber.d("Trying to resolve Fit API error while application in foreground")
-        currentForegroundResolver?.requestFitPermissions(account) ?: run {
+        currentForegroundResolver?.requestFitPermissions(account, readAccess) ?: run {
 
             Timber.d("Resolving Fit API error while application in background")
             // The failure has a resolution. Resolve it.
@@ -53,6 +57,7 @@ object FitApiFailureResolution {
             // authorization dialog is displayed to the user.
             val resultIntent = Intent(context, WorkoutListActivity::class.java)
             resultIntent.putExtra(EXTRA_PLAY_API_SIGNIN_ACCOUNT, account)
+            resultIntent.putExtra(EXTRA_FIT_READ_ACCESS, readAccess)
             val stackBuilder = TaskStackBuilder.create(context)
             stackBuilder.addParentStack(WorkoutListActivity::class.java)
             stackBuilder.addNextIntent(resultIntent)
@@ -89,5 +94,5 @@ object FitApiFailureResolution {
 }
 
 interface FitApiFailureResolver {
-    fun requestFitPermissions(account: GoogleSignInAccount)
+    fun requestFitPermissions(account: GoogleSignInAccount, readAccess: Boolean)
 }
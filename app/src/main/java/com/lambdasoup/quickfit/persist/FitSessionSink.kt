@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.persist
+
+import android.content.Context
+import com.google.android.gms.fitness.SessionsClient
+import com.google.android.gms.fitness.data.*
+import com.google.android.gms.fitness.request.SessionInsertRequest
+import com.google.android.gms.tasks.Task
+import com.google.android.gms.tasks.Tasks
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+/**
+ * The default [SessionSink], uploading to Google Fit. Needs write access only: Fit keeps an app's sessions by
+ * identifier, so inserting a session again under the same identifier replaces it instead of adding a duplicate.
+ */
+class FitSessionSink(
+        private val context: Context,
+        private val sessionsClient: SessionsClient
+) : SessionSink {
+
+    override fun insert(session: PendingSession, timeoutMillis: Long) {
+        val sessionBuilder = Session.Builder()
+                .setIdentifier(session.identifier)
+                .setActivity(session.activityType)
+                .setStartTime(session.startTime, TimeUnit.MILLISECONDS)
+                .setEndTime(session.endTime, TimeUnit.MILLISECONDS)
+        if (session.name != null) {
+            sessionBuilder.setName(session.name)
+        }
+
+        val insertRequest = SessionInsertRequest.Builder()
+                .setSession(sessionBuilder.build())
+
+        if (session.calories != null) {
+            val datasource = DataSource.Builder()
+                    .setAppPackageName(context)
+                    .setDataType(DataType.AGGREGATE_CALORIES_EXPENDED)
+                    .setType(DataSource.TYPE_RAW)
+                    .setDevice(Device.getLocalDevice(context))
+                    .build()
+
+            insertRequest.addAggregateDataPoint(
+                    DataPoint.builder(datasource)
+                            .setField(Field.FIELD_CALORIES, session.calories.toFloat())
+                            // remove 1 ms from end time, so the fit api will accept this data point as nested inside the session
+                            .setTimeInterval(session.startTime, session.endTime - 1, TimeUnit.MILLISECONDS)
+                            .build()
+            )
+        }
+
+        await(sessionsClient.insertSession(insertRequest.build()), timeoutMillis)
+    }
+
+    @Throws(TimeoutException::class)
+    private fun <T> await(task: Task<T>, timeoutMillis: Long): T =
+            try {
+                Tasks.await(task, timeoutMillis, TimeUnit.MILLISECONDS)
+            } catch (e: ExecutionException) {
+                // report the actual api failure, not the wrapper
+                throw e.cause as? Exception ?: e
+            }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.lambdasoup.quickfit.persist
+
+import com.google.android.gms.fitness.SessionsClient
+import com.google.android.gms.fitness.request.SessionReadRequest
+import com.google.android.gms.tasks.Tasks
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+/**
+ * The default [SessionSource], reading the sessions of all apps from Google Fit.
+ */
+class FitSessionSource(private val sessionsClient: SessionsClient) : SessionSource {
+
+    override fun read(startTime: Long, endTime: Long): List<RemoteSession> {
+        val request = SessionReadRequest.Builder()
+                .setTimeInterval(startTime, endTime, TimeUnit.MILLISECONDS)
+                .readSessionsFromAllApps()
+                .build()
+        val response = try {
+            Tasks.await(sessionsClient.readSession(request))
+        } catch (e: ExecutionException) {
+            // report the actual api failure, not the wrapper
+            throw e.cause as? Exception ?: e
+        }
+        return response.sessions.map {
+            RemoteSession(
+                    // identifiers are only unique per app
+                    identifier = "${it.appPackageName}:${it.identifier}",
+                    activityType = it.activity,
+                    startTime = it.getStartTime(TimeUnit.MILLISECONDS),
+                    endTime = it.getEndTime(TimeUnit.MILLISECONDS),
+                    name = it.name,
+                    appPackageName = it.appPackageName
+            )
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.persist
+
+/**
+ * Keys for [QuickFitContract.SessionEntry.IDEMPOTENCY_KEY]. Triggers for the same workout from the same source whose
+ * trigger times fall into the same window of [windowMillis] get the same key; the unique constraint on the column then
+ * lets only the first of them insert a session.
+ *
+ * Windows are fixed buckets, not sliding: two triggers just before and just after a bucket boundary get different
+ * keys. Sources should therefore pass a trigger time that repeats exactly for repeated deliveries, where there is
+ * one, like the time a notification was posted.
+ */
+object IdempotencyKey {
+    const val SOURCE_LIST = "list"
+    const val SOURCE_ALARM = "alarm"
+
+    fun of(workoutId: Long, source: String, triggerTime: Long, windowMillis: Long): String {
+        require(windowMillis > 0) { "Window must be positive: $windowMillis" }
+        return "$workoutId:$source:${triggerTime / windowMillis}"
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.lambdasoup.quickfit.persist
+
+import android.content.Context
+import androidx.work.*
+import com.google.android.gms.auth.api.signin.GoogleSignIn
+import com.google.android.gms.fitness.Fitness
+import com.lambdasoup.quickfit.Constants.FITNESS_READ_OPTIONS
+import timber.log.Timber
+
+/**
+ * Android side of the history import: checks for Fit permissions, then lets [SessionImporter] bring the local cache
+ * up to date.
+ */
+class ImportWorker(private val appContext: Context, workerParams: WorkerParameters) : Worker(appContext, workerParams) {
+
+    override fun doWork(): Result {
+        val account = GoogleSignIn.getAccountForExtension(appContext, FITNESS_READ_OPTIONS)
+        if (!GoogleSignIn.hasPermissions(account, FITNESS_READ_OPTIONS)) {
+            Timber.d("Read access required")
+            FitApiFailureResolution.requestFitPermissions(appContext, account, readAccess = true)
+            return Result.failure()
+        }
+
+        return try {
+            SessionImporter(
+                    source = FitSessionSource(Fitness.getSessionsClient(appContext, account)),
+                    store = ContentProviderRemoteSessionStore(appContext),
+                    wallClock = System::currentTimeMillis
+            ).importHistory()
+            Result.success()
+        } catch (e: Exception) {
+            // the watermark has been kept up to date, so the retry only reads what is still missing
+            Timber.w(e, "Import failed")
+            Result.retry()
+        }
+    }
+
+    companion object {
+        fun enqueue(context: Context) {
+            WorkManager.getInstance(context.applicationContext)
+                    .enqueueUniqueWork(
+                            "import",
+                            ExistingWorkPolicy.KEEP,
+                            OneTimeWorkRequest.Builder(ImportWorker::class.java)
+                                    .setConstraints(Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
+                                    .build()
+                    )
+        }
+    }
+}
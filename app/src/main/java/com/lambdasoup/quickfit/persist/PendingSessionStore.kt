@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.persist
+
+/**
+ * Persistent sync state as seen by [SessionSyncer]: the pending sessions, their retry state and the checkpoint of an
+ * interrupted run.
+ */
+interface PendingSessionStore {
+    /**
+     * At most [limit] sessions that are waiting for upload, have an id greater than [afterId] and are eligible at [now],
+     * in ascending id order.
+     */
+    fun readPage(afterId: Long, now: Long, limit: Int): List<PendingSession>
+
+    /**
+     * Marks the session as uploaded.
+     */
+    fun markSynced(sessionId: Long)
+
+    /**
+     * Stores the retry state after a failed upload. A null [nextAttemptMillis] means the session is quarantined.
+     */
+    fun recordFailure(sessionId: Long, attemptCount: Int, lastError: String, nextAttemptMillis: Long?)
+
+    /**
+     * Earliest next attempt of the sessions that are backing off after [now], or null if there are none.
+     */
+    fun earliestNextAttemptAfter(now: Long): Long?
+
+    /**
+     * Id of the last session handled by an interrupted run, or 0.
+     */
+    fun readCheckpoint(): Long
+
+    fun saveCheckpoint(sessionId: Long)
+
+    fun clearCheckpoint()
+}
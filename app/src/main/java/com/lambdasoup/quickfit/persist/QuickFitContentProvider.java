@@ -17,9 +17,12 @@
 package com.lambdasoup.quickfit.persist;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -27,14 +30,18 @@ import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.text.TextUtils;
 
+import com.lambdasoup.quickfit.persist.QuickFitContract.AlarmOutboxEntry;
+import com.lambdasoup.quickfit.persist.QuickFitContract.RemoteSessionEntry;
 import com.lambdasoup.quickfit.persist.QuickFitContract.ScheduleEntry;
 import com.lambdasoup.quickfit.persist.QuickFitContract.SessionEntry;
+import com.lambdasoup.quickfit.persist.QuickFitContract.SyncRunEntry;
 import com.lambdasoup.quickfit.persist.QuickFitContract.TablesAndAliases;
 import com.lambdasoup.quickfit.persist.QuickFitContract.WorkoutEntry;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -47,9 +54,15 @@ public class QuickFitContentProvider extends ContentProvider {
     private static final String PATH_WORKOUTS = "workouts";
     private static final String PATH_SESSIONS = "sessions";
     private static final String PATH_SCHEDULES = "schedules";
+    private static final String PATH_SYNC_RUNS = "syncruns";
+    private static final String PATH_REMOTE_SESSIONS = "remotesessions";
+    private static final String PATH_ALARM_OUTBOX = "alarmoutbox";
     private static final Uri URI_WORKOUTS = new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(AUTHORITY).path(PATH_WORKOUTS).build();
     private static final Uri URI_SESSIONS = new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(AUTHORITY).path(PATH_SESSIONS).build();
     private static final Uri URI_SCHEDULES = new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(AUTHORITY).path(PATH_SCHEDULES).build();
+    private static final Uri URI_SYNC_RUNS = new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(AUTHORITY).path(PATH_SYNC_RUNS).build();
+    private static final Uri URI_REMOTE_SESSIONS = new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(AUTHORITY).path(PATH_REMOTE_SESSIONS).build();
+    private static final Uri URI_ALARM_OUTBOX = new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(AUTHORITY).path(PATH_ALARM_OUTBOX).build();
     private static final int TYPE_WORKOUTS = 1;
     private static final int TYPE_WORKOUT_ID = 2;
     private static final int TYPE_SESSIONS = 3;
@@ -58,8 +71,13 @@ public class QuickFitContentProvider extends ContentProvider {
     private static final int TYPE_WORKOUT_ID_SCHEDULE_ID = 6;
     private static final int TYPE_SCHEDULES = 7;
     private static final int TYPE_SCHEDULE_ID = 8;
+    private static final int TYPE_SYNC_RUNS = 9;
+    private static final int TYPE_REMOTE_SESSIONS = 10;
+    private static final int TYPE_ALARM_OUTBOX = 11;
+    private static final int TYPE_ALARM_OUTBOX_ID = 12;
     private static final UriMatcher uriMatcher = new UriMatcher(0);
     public static final String VND_PREFIX = "vnd";
+    private static final String QUERY_PARAMETER_LIMIT = "limit";
 
     static {
         uriMatcher.addURI(AUTHORITY, PATH_WORKOUTS, TYPE_WORKOUTS);
@@ -70,6 +88,10 @@ public class QuickFitContentProvider extends ContentProvider {
         uriMatcher.addURI(AUTHORITY, PATH_SESSIONS + "/#", TYPE_SESSION_ID);
         uriMatcher.addURI(AUTHORITY, PATH_SCHEDULES, TYPE_SCHEDULES);
         uriMatcher.addURI(AUTHORITY, PATH_SCHEDULES + "/#", TYPE_SCHEDULE_ID);
+        uriMatcher.addURI(AUTHORITY, PATH_SYNC_RUNS, TYPE_SYNC_RUNS);
+        uriMatcher.addURI(AUTHORITY, PATH_REMOTE_SESSIONS, TYPE_REMOTE_SESSIONS);
+        uriMatcher.addURI(AUTHORITY, PATH_ALARM_OUTBOX, TYPE_ALARM_OUTBOX);
+        uriMatcher.addURI(AUTHORITY, PATH_ALARM_OUTBOX + "/#", TYPE_ALARM_OUTBOX_ID);
     }
 
     private QuickFitDbHelper database;
@@ -141,6 +163,45 @@ public class QuickFitContentProvider extends ContentProvider {
         return ContentUris.withAppendedId(getUriSessionsList(), sessionId);
     }
 
+    public static Uri getUriSyncRunsList() {
+        return URI_SYNC_RUNS;
+    }
+
+    public static Uri getUriRemoteSessionsList() {
+        return URI_REMOTE_SESSIONS;
+    }
+
+    public static Uri getUriAlarmOutboxList() {
+        return URI_ALARM_OUTBOX;
+    }
+
+    public static Uri getUriAlarmOutboxId(long entryId) {
+        return ContentUris.withAppendedId(getUriAlarmOutboxList(), entryId);
+    }
+
+    /**
+     * Restricts queries on the given uri to at most limit rows. Only meaningful together with a sort order.
+     */
+    public static Uri withLimit(Uri uri, int limit) {
+        return uri.buildUpon().appendQueryParameter(QUERY_PARAMETER_LIMIT, Integer.toString(limit)).build();
+    }
+
+    /**
+     * 32 lowercase hex digits, like the identifiers assigned to existing sessions during the database upgrade.
+     */
+    static String newSessionIdentifier() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    private static ContentValues withSessionIdentifier(ContentValues values) {
+        if (values.containsKey(SessionEntry.IDENTIFIER)) {
+            return values;
+        }
+        ContentValues expandedValues = new ContentValues(values);
+        expandedValues.put(SessionEntry.IDENTIFIER, newSessionIdentifier());
+        return expandedValues;
+    }
+
     @Override
     public boolean onCreate() {
         database = new QuickFitDbHelper(getContext());
@@ -193,6 +254,15 @@ public class QuickFitContentProvider extends ContentProvider {
             case TYPE_SESSIONS:
                 queryBuilder.setTables(SessionEntry.TABLE_NAME);
                 break;
+            case TYPE_SYNC_RUNS:
+                queryBuilder.setTables(SyncRunEntry.TABLE_NAME);
+                break;
+            case TYPE_REMOTE_SESSIONS:
+                queryBuilder.setTables(RemoteSessionEntry.TABLE_NAME);
+                break;
+            case TYPE_ALARM_OUTBOX:
+                queryBuilder.setTables(AlarmOutboxEntry.TABLE_NAME);
+                break;
             default:
                 throw new IllegalArgumentException("Invalid content URI:" + uri);
         }
@@ -201,7 +271,7 @@ public class QuickFitContentProvider extends ContentProvider {
 
         SQLiteDatabase db = database.getReadableDatabase();
         Cursor cursor = queryBuilder.query(db, aliasedProjection, selection,
-                expandedSelectionArgs, null, null, sortOrder);
+                expandedSelectionArgs, null, null, sortOrder, uri.getQueryParameter(QUERY_PARAMETER_LIMIT));
         //noinspection ConstantConditions
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
         return cursor;
@@ -225,6 +295,14 @@ public class QuickFitContentProvider extends ContentProvider {
             case TYPE_WORKOUT_ID_SCHEDULE_ID:
             case TYPE_SCHEDULE_ID:
                 return ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + VND_PREFIX + "." + AUTHORITY + ".schedule";
+            case TYPE_SYNC_RUNS:
+                return ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + VND_PREFIX + "." + AUTHORITY + ".syncrun";
+            case TYPE_REMOTE_SESSIONS:
+                return ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + VND_PREFIX + "." + AUTHORITY + ".remotesession";
+            case TYPE_ALARM_OUTBOX:
+                return ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + VND_PREFIX + "." + AUTHORITY + ".alarmoutbox";
+            case TYPE_ALARM_OUTBOX_ID:
+                return ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + VND_PREFIX + "." + AUTHORITY + ".alarmoutbox";
             default:
                 throw new IllegalArgumentException("Invalid content URI:" + uri);
         }
@@ -240,7 +318,7 @@ public class QuickFitContentProvider extends ContentProvider {
                 id = sqlDB.insert(WorkoutEntry.TABLE_NAME, null, values);
                 break;
             case TYPE_SESSIONS:
-                id = sqlDB.insert(SessionEntry.TABLE_NAME, null, values);
+                id = sqlDB.insert(SessionEntry.TABLE_NAME, null, withSessionIdentifier(values));
                 break;
             case TYPE_WORKOUT_ID_SCHEDULES:
                 ContentValues expandedValues = new ContentValues(values);
@@ -250,6 +328,12 @@ public class QuickFitContentProvider extends ContentProvider {
             case TYPE_SCHEDULES:
                 id = sqlDB.insert(ScheduleEntry.TABLE_NAME, null, values);
                 break;
+            case TYPE_SYNC_RUNS:
+                id = sqlDB.insert(SyncRunEntry.TABLE_NAME, null, values);
+                break;
+            case TYPE_ALARM_OUTBOX:
+                id = sqlDB.insert(AlarmOutboxEntry.TABLE_NAME, null, values);
+                break;
             default:
                 throw new IllegalArgumentException("Invalid content URI:" + uri);
         }
@@ -258,6 +342,68 @@ public class QuickFitContentProvider extends ContentProvider {
         return ContentUris.withAppendedId(uri, id);
     }
 
+    /**
+     * Inserts all rows in one transaction. For remote sessions, rows replace existing ones with the same identifier.
+     * Sessions get their identifiers as in {@link #insert(Uri, ContentValues)}; sessions whose identifier is present
+     * already are skipped, so that generated sessions with deterministic identifiers can be inserted repeatedly.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        String table;
+        int conflictAlgorithm;
+        switch (uriMatcher.match(uri)) {
+            case TYPE_SESSIONS:
+                table = SessionEntry.TABLE_NAME;
+                conflictAlgorithm = SQLiteDatabase.CONFLICT_IGNORE;
+                break;
+            case TYPE_REMOTE_SESSIONS:
+                table = RemoteSessionEntry.TABLE_NAME;
+                conflictAlgorithm = SQLiteDatabase.CONFLICT_REPLACE;
+                break;
+            default:
+                return super.bulkInsert(uri, values);
+        }
+
+        SQLiteDatabase sqlDB = database.getWritableDatabase();
+        int inserted = 0;
+        sqlDB.beginTransaction();
+        try {
+            for (ContentValues row : values) {
+                if (table.equals(SessionEntry.TABLE_NAME)) {
+                    row = withSessionIdentifier(row);
+                }
+                if (sqlDB.insertWithOnConflict(table, null, row, conflictAlgorithm) != -1) {
+                    inserted++;
+                }
+            }
+            sqlDB.setTransactionSuccessful();
+        } finally {
+            sqlDB.endTransaction();
+        }
+        if (inserted > 0) {
+            //noinspection ConstantConditions
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return inserted;
+    }
+
+    /**
+     * Applies all operations in one transaction; if one fails, none are applied.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+        SQLiteDatabase sqlDB = database.getWritableDatabase();
+        sqlDB.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            sqlDB.setTransactionSuccessful();
+            return results;
+        } finally {
+            sqlDB.endTransaction();
+        }
+    }
+
     @Override
     public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
         SQLiteDatabase sqlDB = database.getWritableDatabase();
@@ -276,7 +422,7 @@ public class QuickFitContentProvider extends ContentProvider {
                             new String[]{Long.toString(getWorkoutIdFromUriOrThrow(uri))});
                 } else {
                     rowsDeleted = sqlDB.delete(WorkoutEntry.TABLE_NAME,
-                            WorkoutEntry.COL_ID + "=? and " + selection,
+                            "(" + selection + ") and " + WorkoutEntry.COL_ID + "=?",
                             expandSelectionArgs(selectionArgs, Collections.singletonList(Long.toString(getWorkoutIdFromUriOrThrow(uri)))));
                 }
                 break;
@@ -293,7 +439,7 @@ public class QuickFitContentProvider extends ContentProvider {
                             new String[]{Long.toString(getSessionIdFromUriOrThrow(uri))});
                 } else {
                     rowsDeleted = sqlDB.delete(SessionEntry.TABLE_NAME,
-                            SessionEntry._ID + "=? and " + selection,
+                            "(" + selection + ") and " + SessionEntry._ID + "=?",
                             expandSelectionArgs(selectionArgs, Collections.singletonList(Long.toString(getSessionIdFromUriOrThrow(uri)))));
                 }
                 break;
@@ -311,11 +457,17 @@ public class QuickFitContentProvider extends ContentProvider {
                             new String[]{Long.toString(getScheduleIdFromUriOrThrow(uri))});
                 } else {
                     rowsDeleted = sqlDB.delete(ScheduleEntry.TABLE_NAME,
-                            ScheduleEntry.COL_ID + "=? and " + selection,
+                            "(" + selection + ") and " + ScheduleEntry.COL_ID + "=?",
                             expandSelectionArgs(selectionArgs, Collections.singletonList(Long.toString(getScheduleIdFromUriOrThrow(uri)))));
                 }
                 break;
             }
+            case TYPE_ALARM_OUTBOX_ID: {
+                rowsDeleted = sqlDB.delete(AlarmOutboxEntry.TABLE_NAME,
+                        AlarmOutboxEntry._ID + "=?",
+                        new String[]{Long.toString(ContentUris.parseId(uri))});
+                break;
+            }
             default:
                 throw new IllegalArgumentException("Invalid content URI:" + uri);
         }
@@ -345,7 +497,7 @@ public class QuickFitContentProvider extends ContentProvider {
                 } else {
                     rowsUpdated = sqlDB.update(WorkoutEntry.TABLE_NAME,
                             values,
-                            WorkoutEntry.COL_ID + "=? and " + selection,
+                            "(" + selection + ") and " + WorkoutEntry.COL_ID + "=?",
                             expandSelectionArgs(selectionArgs, Collections.singletonList(Long.toString(getWorkoutIdFromUriOrThrow(uri)))));
                 }
                 break;
@@ -364,7 +516,7 @@ public class QuickFitContentProvider extends ContentProvider {
                 } else {
                     rowsUpdated = sqlDB.update(SessionEntry.TABLE_NAME,
                             values,
-                            SessionEntry._ID + "=? and " + selection,
+                            "(" + selection + ") and " + SessionEntry._ID + "=?",
                             expandSelectionArgs(selectionArgs, Collections.singletonList(Long.toString(getSessionIdFromUriOrThrow(uri)))));
                 }
                 break;
@@ -382,7 +534,7 @@ public class QuickFitContentProvider extends ContentProvider {
                 } else {
                     rowsUpdated = sqlDB.update(ScheduleEntry.TABLE_NAME,
                             values,
-                            ScheduleEntry.COL_ID + "=? and " + selection,
+                            "(" + selection + ") and " + ScheduleEntry.COL_ID + "=?",
                             expandSelectionArgs(selectionArgs, Collections.singletonList(Long.toString(getScheduleIdFromUriOrThrow(uri)))));
                 }
                 break;
@@ -37,14 +37,17 @@ public class QuickFitContract {
         public static final String DURATION_MINUTES = "workout_duration_minutes";
         public static final String LABEL = "workout_label";
         public static final String CALORIES = "workout_calories";
-        public static final String DAY_OF_WEEK = "schedule_day_of_week";
+        public static final String DAYS_OF_WEEK = "schedule_days_of_week";
+        public static final String REPEAT_UNIT = "schedule_repeat_unit";
+        public static final String REPEAT_INTERVAL = "schedule_repeat_interval";
+        public static final String REPEAT_FROM_DAY = "schedule_repeat_from_day";
         public static final String HOUR = "schedule_hour";
         public static final String MINUTE = "schedule_minute";
         public static final String NEXT_ALARM_MILLIS = "schedule_next_alarm_millis";
         public static final String CURRENT_STATE = "schedule_current_state";
-        public static final String[] COLUMNS_FULL = {WORKOUT_ID, SCHEDULE_ID, ACTIVITY_TYPE, DURATION_MINUTES, LABEL, CALORIES, DAY_OF_WEEK, HOUR, MINUTE};
+        public static final String[] COLUMNS_FULL = {WORKOUT_ID, SCHEDULE_ID, ACTIVITY_TYPE, DURATION_MINUTES, LABEL, CALORIES, DAYS_OF_WEEK, REPEAT_UNIT, REPEAT_INTERVAL, REPEAT_FROM_DAY, HOUR, MINUTE};
         public static final String[] COLUMNS_WORKOUT_ONLY = {WORKOUT_ID, ACTIVITY_TYPE, DURATION_MINUTES, LABEL, CALORIES};
-        public static final String[] COLUMNS_SCHEDULE_ONLY = {WORKOUT_ID, SCHEDULE_ID, DAY_OF_WEEK, HOUR, MINUTE};
+        public static final String[] COLUMNS_SCHEDULE_ONLY = {WORKOUT_ID, SCHEDULE_ID, DAYS_OF_WEEK, REPEAT_UNIT, REPEAT_INTERVAL, REPEAT_FROM_DAY, HOUR, MINUTE};
 
         private WorkoutEntry() {
             // do not instantiate
@@ -64,7 +67,10 @@ public class QuickFitContract {
                     table = WorkoutEntry.TABLE_NAME;
                     break;
                 case SCHEDULE_ID:
-                case DAY_OF_WEEK:
+                case DAYS_OF_WEEK:
+                case REPEAT_UNIT:
+                case REPEAT_INTERVAL:
+                case REPEAT_FROM_DAY:
                 case HOUR:
                 case MINUTE:
                 case NEXT_ALARM_MILLIS:
@@ -92,8 +98,17 @@ public class QuickFitContract {
                 case SCHEDULE_ID:
                     aliased.append(ScheduleEntry.COL_ID);
                     break;
-                case DAY_OF_WEEK:
-                    aliased.append(ScheduleEntry.COL_DAY_OF_WEEK);
+                case DAYS_OF_WEEK:
+                    aliased.append(ScheduleEntry.COL_DAYS_OF_WEEK);
+                    break;
+                case REPEAT_UNIT:
+                    aliased.append(ScheduleEntry.COL_REPEAT_UNIT);
+                    break;
+                case REPEAT_INTERVAL:
+                    aliased.append(ScheduleEntry.COL_REPEAT_INTERVAL);
+                    break;
+                case REPEAT_FROM_DAY:
+                    aliased.append(ScheduleEntry.COL_REPEAT_FROM_DAY);
                     break;
                 case HOUR:
                     aliased.append(ScheduleEntry.COL_HOUR);
@@ -159,12 +174,39 @@ public class QuickFitContract {
         public static final String TABLE_NAME = "schedule";
         public static final String COL_ID = "_id";
         public static final String COL_WORKOUT_ID = "workout_id";
+        /**
+         * Single {@link com.lambdasoup.quickfit.model.DayOfWeek} name, up to database version 18; only for migrations.
+         */
         public static final String COL_DAY_OF_WEEK = "day_of_week";
+        /**
+         * Mask of {@link com.lambdasoup.quickfit.model.DaysOfWeek}, never 0.
+         */
+        public static final String COL_DAYS_OF_WEEK = "days_of_week";
+        /**
+         * Name of a {@link com.lambdasoup.quickfit.model.Recurrence.Unit}. Together with {@link #COL_DAYS_OF_WEEK},
+         * {@link #COL_REPEAT_INTERVAL} and {@link #COL_REPEAT_FROM_DAY} always written as normalized by
+         * {@link com.lambdasoup.quickfit.model.Recurrence}, so that the values read back compare equal.
+         */
+        public static final String COL_REPEAT_UNIT = "repeat_unit";
+        /**
+         * Every how many days or weeks, at least 1.
+         */
+        public static final String COL_REPEAT_INTERVAL = "repeat_interval";
+        /**
+         * Day the interval counts from, as days since 1970-01-01; see
+         * {@link com.lambdasoup.quickfit.model.Recurrence#getFromDay()}.
+         */
+        public static final String COL_REPEAT_FROM_DAY = "repeat_from_day";
         public static final String COL_HOUR = "hour";
         public static final String COL_MINUTE = "minute";
         public static final String COL_NEXT_ALARM_MILLIS = "next_alarm_millis";
         public static final String COL_CURRENT_STATE = "current_state";
-        public static final String[] COLUMNS = {COL_ID, COL_WORKOUT_ID, COL_DAY_OF_WEEK, COL_HOUR, COL_MINUTE, COL_NEXT_ALARM_MILLIS, COL_CURRENT_STATE};
+        /**
+         * 1 if the days, their repetition or the time changed, or the schedule is new, and the next alarm has not been computed for that yet.
+         * Set by triggers, cleared by {@link com.lambdasoup.quickfit.alarm.Alarms#rescheduleDirty()}.
+         */
+        public static final String COL_NEEDS_RESCHEDULE = "needs_reschedule";
+        public static final String[] COLUMNS = {COL_ID, COL_WORKOUT_ID, COL_DAYS_OF_WEEK, COL_REPEAT_UNIT, COL_REPEAT_INTERVAL, COL_REPEAT_FROM_DAY, COL_HOUR, COL_MINUTE, COL_NEXT_ALARM_MILLIS, COL_CURRENT_STATE, COL_NEEDS_RESCHEDULE};
 
         public static final int SHOW_NOTIFICATION_NO = 0;
         public static final int SHOW_NOTIFICATION_YES = 1;
@@ -186,14 +228,104 @@ public class QuickFitContract {
         public static final String STATUS = "status";
         public static final String NAME = "title";
         public static final String CALORIES = "calories";
-        public static final String[] COLUMNS = {_ID, ACTIVITY_TYPE, START_TIME, END_TIME, STATUS, NAME, CALORIES};
+        public static final String ATTEMPT_COUNT = "attempt_count";
+        public static final String LAST_ERROR = "last_error";
+        public static final String NEXT_ATTEMPT_MILLIS = "next_attempt_millis";
+        /**
+         * Stable identifier, used as the Fit session identifier. Filled in by the provider on insert if missing.
+         */
+        public static final String IDENTIFIER = "identifier";
+        /**
+         * Unique per "did it" trigger, so that repeated triggers within a short window insert only one session.
+         * Null for sessions that need no deduplication.
+         */
+        public static final String IDEMPOTENCY_KEY = "idempotency_key";
+        public static final String[] COLUMNS = {_ID, ACTIVITY_TYPE, START_TIME, END_TIME, STATUS, NAME, CALORIES, ATTEMPT_COUNT, LAST_ERROR, NEXT_ATTEMPT_MILLIS, IDENTIFIER, IDEMPOTENCY_KEY};
 
         private SessionEntry() {
             // do not instantiate
         }
 
         public enum SessionStatus {
-            NEW, SYNCED
+            NEW, SYNCED,
+            /**
+             * Upload failed too often, see {@link SessionRetryPolicy}. Not attempted again automatically.
+             */
+            QUARANTINED
+        }
+    }
+
+    /**
+     * Local cache of the sessions in Google Fit, written by any app. Filled by {@link SessionImporter}.
+     */
+    abstract public static class RemoteSessionEntry implements BaseColumns {
+        public static final String TABLE_NAME = "remote_session";
+        public static final String IDENTIFIER = "identifier";
+        public static final String ACTIVITY_TYPE = "activity_type";
+        public static final String START_TIME = "start_time";
+        public static final String END_TIME = "end_time";
+        public static final String NAME = "name";
+        public static final String APP_PACKAGE_NAME = "app_package_name";
+        public static final String[] COLUMNS = {_ID, IDENTIFIER, ACTIVITY_TYPE, START_TIME, END_TIME, NAME, APP_PACKAGE_NAME};
+
+        private RemoteSessionEntry() {
+            // do not instantiate
+        }
+    }
+
+    /**
+     * One row per sync run, for diagnostics. Only the most recent {@link #MAX_ROWS} runs are kept.
+     */
+    abstract public static class SyncRunEntry implements BaseColumns {
+        public static final String TABLE_NAME = "sync_run";
+        public static final String START_TIME = "start_time";
+        public static final String END_TIME = "end_time";
+        public static final String ATTEMPTED = "attempted";
+        public static final String SUCCEEDED = "succeeded";
+        public static final String FAILED = "failed";
+        public static final String LATENCY_P50 = "latency_p50";
+        public static final String LATENCY_P90 = "latency_p90";
+        public static final String LATENCY_P99 = "latency_p99";
+        public static final String FAILURE_CAUSES = "failure_causes";
+        public static final String RESULT = "result";
+        public static final String[] COLUMNS = {_ID, START_TIME, END_TIME, ATTEMPTED, SUCCEEDED, FAILED, LATENCY_P50, LATENCY_P90, LATENCY_P99, FAILURE_CAUSES, RESULT};
+
+        public static final int MAX_ROWS = 100;
+
+        private SyncRunEntry() {
+            // do not instantiate
+        }
+    }
+
+    /**
+     * Alarm operations not yet applied, oldest first. Written in the same transaction as the change they are about, as
+     * soon as a notification action comes in, or by a database upgrade that merges schedules, and removed once
+     * applied, so that recovery after the process died only needs to replay what is left here. No foreign key on the
+     * schedule, as deletions are entries too.
+     */
+    abstract public static class AlarmOutboxEntry implements BaseColumns {
+        public static final String TABLE_NAME = "alarm_outbox";
+        public static final String SCHEDULE_ID = "schedule_id";
+        public static final String OPERATION = "operation";
+        /**
+         * For {@link #OPERATION_DID_IT} only.
+         */
+        public static final String WORKOUT_ID = "workout_id";
+        /**
+         * For {@link #OPERATION_DID_IT} and {@link #OPERATION_SHOWN} only: the occurrence the notification was for.
+         */
+        public static final String OCCURRENCE = "occurrence";
+        public static final String[] COLUMNS = {_ID, SCHEDULE_ID, OPERATION, WORKOUT_ID, OCCURRENCE};
+
+        public static final String OPERATION_SNOOZE = "snooze";
+        public static final String OPERATION_DID_IT = "did_it";
+        public static final String OPERATION_SHOWN = "shown";
+        public static final String OPERATION_DISMISSED = "dismissed";
+        public static final String OPERATION_CHANGED = "changed";
+        public static final String OPERATION_DELETED = "deleted";
+
+        private AlarmOutboxEntry() {
+            // do not instantiate
         }
     }
 
@@ -20,11 +20,14 @@ package com.lambdasoup.quickfit.persist
 import android.content.Context
 import android.database.sqlite.SQLiteDatabase
 import android.database.sqlite.SQLiteOpenHelper
+import com.lambdasoup.quickfit.model.DayOfWeek
+import com.lambdasoup.quickfit.model.DaysOfWeek
+import com.lambdasoup.quickfit.model.Recurrence
 import com.lambdasoup.quickfit.persist.QuickFitContract.*
 import timber.log.Timber
 
 private const val DATABASE_NAME = "quickfit.db"
-private const val DATABASE_VERSION = 10
+private const val DATABASE_VERSION = 20
 
 class QuickFitDbHelper(context: Context) : SQLiteOpenHelper(context, DATABASE_NAME, null, DATABASE_VERSION) {
 
@@ -178,5 +181,226 @@ class QuickFitDbHelper(context: Context) : SQLiteOpenHelper(context, DATABASE_NA
             database.execSQL("ALTER TABLE TEMPORARY_SCHEDULES RENAME TO ${ScheduleEntry.TABLE_NAME}")
             return
         }
+        if (newVersion == 11) {
+            database.execSQL("ALTER TABLE ${SessionEntry.TABLE_NAME} ADD COLUMN ${SessionEntry.ATTEMPT_COUNT} INTEGER NOT NULL DEFAULT 0")
+            database.execSQL("ALTER TABLE ${SessionEntry.TABLE_NAME} ADD COLUMN ${SessionEntry.LAST_ERROR} TEXT NULL")
+            database.execSQL("ALTER TABLE ${SessionEntry.TABLE_NAME} ADD COLUMN ${SessionEntry.NEXT_ATTEMPT_MILLIS} INTEGER NULL")
+            return
+        }
+        if (newVersion == 12) {
+            database.execSQL("ALTER TABLE ${SessionEntry.TABLE_NAME} ADD COLUMN ${SessionEntry.IDENTIFIER} TEXT NULL")
+            // same format as QuickFitContentProvider.newSessionIdentifier
+            database.execSQL("UPDATE ${SessionEntry.TABLE_NAME} SET ${SessionEntry.IDENTIFIER}=lower(hex(randomblob(16)))")
+            database.execSQL("CREATE UNIQUE INDEX session_identifier ON ${SessionEntry.TABLE_NAME}(${SessionEntry.IDENTIFIER})")
+            return
+        }
+        if (newVersion == 13) {
+            database.execSQL("""
+                CREATE TABLE ${SyncRunEntry.TABLE_NAME} (
+                    ${SyncRunEntry._ID} INTEGER PRIMARY KEY,
+                    ${SyncRunEntry.START_TIME} INTEGER NOT NULL,
+                    ${SyncRunEntry.END_TIME} INTEGER NOT NULL,
+                    ${SyncRunEntry.ATTEMPTED} INTEGER NOT NULL,
+                    ${SyncRunEntry.SUCCEEDED} INTEGER NOT NULL,
+                    ${SyncRunEntry.FAILED} INTEGER NOT NULL,
+                    ${SyncRunEntry.LATENCY_P50} INTEGER NULL,
+                    ${SyncRunEntry.LATENCY_P90} INTEGER NULL,
+                    ${SyncRunEntry.LATENCY_P99} INTEGER NULL,
+                    ${SyncRunEntry.FAILURE_CAUSES} TEXT NULL,
+                    ${SyncRunEntry.RESULT} TEXT NOT NULL
+                )
+            """.trimIndent())
+            // ring buffer: ids are assigned in ascending order, drop everything older than the last MAX_ROWS
+            database.execSQL("""
+                CREATE TRIGGER sync_run_ring AFTER INSERT ON ${SyncRunEntry.TABLE_NAME}
+                BEGIN
+                    DELETE FROM ${SyncRunEntry.TABLE_NAME} WHERE ${SyncRunEntry._ID} <= NEW.${SyncRunEntry._ID} - ${SyncRunEntry.MAX_ROWS};
+                END
+            """.trimIndent())
+            return
+        }
+        if (newVersion == 14) {
+            database.execSQL("""
+                CREATE TABLE ${RemoteSessionEntry.TABLE_NAME} (
+                    ${RemoteSessionEntry._ID} INTEGER PRIMARY KEY,
+                    ${RemoteSessionEntry.IDENTIFIER} TEXT NOT NULL UNIQUE,
+                    ${RemoteSessionEntry.ACTIVITY_TYPE} TEXT NOT NULL,
+                    ${RemoteSessionEntry.START_TIME} INTEGER NOT NULL,
+                    ${RemoteSessionEntry.END_TIME} INTEGER NOT NULL,
+                    ${RemoteSessionEntry.NAME} TEXT NULL,
+                    ${RemoteSessionEntry.APP_PACKAGE_NAME} TEXT NULL
+                )
+            """.trimIndent())
+            // the history is shown newest first
+            database.execSQL("CREATE INDEX remote_session_start_time ON ${RemoteSessionEntry.TABLE_NAME}(${RemoteSessionEntry.START_TIME})")
+            return
+        }
+        if (newVersion == 15) {
+            // existing sessions stay NULL, which the unique index does not restrict
+            database.execSQL("ALTER TABLE ${SessionEntry.TABLE_NAME} ADD COLUMN ${SessionEntry.IDEMPOTENCY_KEY} TEXT NULL")
+            database.execSQL("CREATE UNIQUE INDEX session_idempotency_key ON ${SessionEntry.TABLE_NAME}(${SessionEntry.IDEMPOTENCY_KEY})")
+            return
+        }
+        if (newVersion == 16) {
+            // the single system alarm is set for the earliest next alarm, and due schedules are found by range
+            database.execSQL("CREATE INDEX schedule_next_alarm_millis ON ${ScheduleEntry.TABLE_NAME}(${ScheduleEntry.COL_NEXT_ALARM_MILLIS})")
+            return
+        }
+        if (newVersion == 17) {
+            database.execSQL("""
+                CREATE TABLE ${AlarmOutboxEntry.TABLE_NAME} (
+                    ${AlarmOutboxEntry._ID} INTEGER PRIMARY KEY,
+                    ${AlarmOutboxEntry.SCHEDULE_ID} INTEGER NOT NULL,
+                    ${AlarmOutboxEntry.OPERATION} TEXT NOT NULL,
+                    ${AlarmOutboxEntry.WORKOUT_ID} INTEGER NULL,
+                    ${AlarmOutboxEntry.OCCURRENCE} INTEGER NULL
+                )
+            """.trimIndent())
+            return
+        }
+        if (newVersion == 18) {
+            database.execSQL("ALTER TABLE ${ScheduleEntry.TABLE_NAME} ADD COLUMN ${ScheduleEntry.COL_NEEDS_RESCHEDULE} INTEGER NOT NULL DEFAULT 0")
+            // set in the transaction of the edit itself, so that no edit goes without its reschedule
+            database.execSQL("""
+                CREATE TRIGGER schedule_needs_reschedule_on_insert AFTER INSERT ON ${ScheduleEntry.TABLE_NAME}
+                BEGIN
+                    UPDATE ${ScheduleEntry.TABLE_NAME} SET ${ScheduleEntry.COL_NEEDS_RESCHEDULE}=1 WHERE ${ScheduleEntry.COL_ID}=NEW.${ScheduleEntry.COL_ID};
+                END
+            """.trimIndent())
+            database.execSQL("""
+                CREATE TRIGGER schedule_needs_reschedule_on_update
+                AFTER UPDATE OF ${ScheduleEntry.COL_DAY_OF_WEEK}, ${ScheduleEntry.COL_HOUR}, ${ScheduleEntry.COL_MINUTE} ON ${ScheduleEntry.TABLE_NAME}
+                WHEN OLD.${ScheduleEntry.COL_DAY_OF_WEEK} IS NOT NEW.${ScheduleEntry.COL_DAY_OF_WEEK}
+                    OR OLD.${ScheduleEntry.COL_HOUR} IS NOT NEW.${ScheduleEntry.COL_HOUR}
+                    OR OLD.${ScheduleEntry.COL_MINUTE} IS NOT NEW.${ScheduleEntry.COL_MINUTE}
+                BEGIN
+                    UPDATE ${ScheduleEntry.TABLE_NAME} SET ${ScheduleEntry.COL_NEEDS_RESCHEDULE}=1 WHERE ${ScheduleEntry.COL_ID}=NEW.${ScheduleEntry.COL_ID};
+                END
+            """.trimIndent())
+            // partial: only the few marked schedules are in it, which is all that rescheduleDirty reads
+            database.execSQL("""
+                CREATE INDEX schedule_needs_reschedule ON ${ScheduleEntry.TABLE_NAME}(${ScheduleEntry.COL_NEEDS_RESCHEDULE})
+                WHERE ${ScheduleEntry.COL_NEEDS_RESCHEDULE}=1
+            """.trimIndent())
+            return
+        }
+        if (newVersion == 19) {
+            // one row per workout and time, with a mask of days instead of one row per day
+            database.execSQL("PRAGMA defer_foreign_keys = true") // until end of transaction - controlled by SQLiteOpenHelper
+            database.execSQL("""
+                CREATE TABLE TEMPORARY_SCHEDULES (
+                    ${ScheduleEntry.COL_ID} INTEGER PRIMARY KEY,
+                    ${ScheduleEntry.COL_WORKOUT_ID} INTEGER NOT NULL
+                        REFERENCES ${WorkoutEntry.TABLE_NAME}(${WorkoutEntry.COL_ID}) ON DELETE CASCADE,
+                    ${ScheduleEntry.COL_DAYS_OF_WEEK} INTEGER NOT NULL,
+                    ${ScheduleEntry.COL_HOUR} INTEGER NOT NULL,
+                    ${ScheduleEntry.COL_MINUTE} INTEGER NOT NULL,
+                    ${ScheduleEntry.COL_NEXT_ALARM_MILLIS} INTEGER NULL,
+                    ${ScheduleEntry.COL_CURRENT_STATE} TEXT NOT NULL DEFAULT "${ScheduleEntry.CURRENT_STATE_ACKNOWLEDGED}",
+                    ${ScheduleEntry.COL_NEEDS_RESCHEDULE} INTEGER NOT NULL DEFAULT 0
+                )
+            """.trimIndent())
+            val dayBit = DayOfWeek.values().joinToString(" ") { day ->
+                "WHEN '${day.name}' THEN ${DaysOfWeek.bit(day)}"
+            }
+            // every day is a single bit, so summing the distinct ones ORs them; a merged row keeps the lowest id and
+            // gets its next alarm computed anew, single rows stay as they were
+            database.execSQL("""
+                INSERT INTO TEMPORARY_SCHEDULES
+                    SELECT
+                        MIN(${ScheduleEntry.COL_ID}),
+                        ${ScheduleEntry.COL_WORKOUT_ID},
+                        SUM(DISTINCT CASE ${ScheduleEntry.COL_DAY_OF_WEEK} $dayBit END),
+                        ${ScheduleEntry.COL_HOUR},
+                        ${ScheduleEntry.COL_MINUTE},
+                        MIN(${ScheduleEntry.COL_NEXT_ALARM_MILLIS}),
+                        CASE COUNT(*)
+                            WHEN 1 THEN MAX(${ScheduleEntry.COL_CURRENT_STATE})
+                            ELSE "${ScheduleEntry.CURRENT_STATE_ACKNOWLEDGED}"
+                        END,
+                        CASE COUNT(*)
+                            WHEN 1 THEN MAX(${ScheduleEntry.COL_NEEDS_RESCHEDULE})
+                            ELSE 1
+                        END
+                    FROM ${ScheduleEntry.TABLE_NAME}
+                    GROUP BY ${ScheduleEntry.COL_WORKOUT_ID}, ${ScheduleEntry.COL_HOUR}, ${ScheduleEntry.COL_MINUTE}
+            """.trimIndent())
+            // pending operations of merged away rows go to the row they were merged into; after those, each merged row
+            // gets its notification replaced and its alarm set anew, and each merged away one gets its notification
+            // and alarm cancelled, all as soon as the outbox is drained on the first start
+            database.execSQL("""
+                UPDATE ${AlarmOutboxEntry.TABLE_NAME} SET ${AlarmOutboxEntry.SCHEDULE_ID}=(
+                    SELECT MIN(kept.${ScheduleEntry.COL_ID})
+                    FROM ${ScheduleEntry.TABLE_NAME} AS kept
+                        JOIN ${ScheduleEntry.TABLE_NAME} AS merged
+                            ON kept.${ScheduleEntry.COL_WORKOUT_ID}=merged.${ScheduleEntry.COL_WORKOUT_ID}
+                                AND kept.${ScheduleEntry.COL_HOUR}=merged.${ScheduleEntry.COL_HOUR}
+                                AND kept.${ScheduleEntry.COL_MINUTE}=merged.${ScheduleEntry.COL_MINUTE}
+                    WHERE merged.${ScheduleEntry.COL_ID}=${AlarmOutboxEntry.TABLE_NAME}.${AlarmOutboxEntry.SCHEDULE_ID}
+                )
+                WHERE ${AlarmOutboxEntry.SCHEDULE_ID} IN (SELECT ${ScheduleEntry.COL_ID} FROM ${ScheduleEntry.TABLE_NAME})
+                    AND ${AlarmOutboxEntry.SCHEDULE_ID} NOT IN (SELECT ${ScheduleEntry.COL_ID} FROM TEMPORARY_SCHEDULES)
+            """.trimIndent())
+            database.execSQL("""
+                INSERT INTO ${AlarmOutboxEntry.TABLE_NAME} (${AlarmOutboxEntry.SCHEDULE_ID}, ${AlarmOutboxEntry.OPERATION})
+                    SELECT MIN(${ScheduleEntry.COL_ID}), "${AlarmOutboxEntry.OPERATION_CHANGED}"
+                    FROM ${ScheduleEntry.TABLE_NAME}
+                    GROUP BY ${ScheduleEntry.COL_WORKOUT_ID}, ${ScheduleEntry.COL_HOUR}, ${ScheduleEntry.COL_MINUTE}
+                    HAVING COUNT(*) > 1
+            """.trimIndent())
+            database.execSQL("""
+                INSERT INTO ${AlarmOutboxEntry.TABLE_NAME} (${AlarmOutboxEntry.SCHEDULE_ID}, ${AlarmOutboxEntry.OPERATION})
+                    SELECT ${ScheduleEntry.COL_ID}, "${AlarmOutboxEntry.OPERATION_DELETED}"
+                    FROM ${ScheduleEntry.TABLE_NAME}
+                    WHERE ${ScheduleEntry.COL_ID} NOT IN (SELECT ${ScheduleEntry.COL_ID} FROM TEMPORARY_SCHEDULES)
+            """.trimIndent())
+            // takes its triggers and indices along
+            database.execSQL("DROP TABLE ${ScheduleEntry.TABLE_NAME}")
+            database.execSQL("ALTER TABLE TEMPORARY_SCHEDULES RENAME TO ${ScheduleEntry.TABLE_NAME}")
+
+            database.execSQL("CREATE INDEX schedule_next_alarm_millis ON ${ScheduleEntry.TABLE_NAME}(${ScheduleEntry.COL_NEXT_ALARM_MILLIS})")
+            database.execSQL("""
+                CREATE TRIGGER schedule_needs_reschedule_on_insert AFTER INSERT ON ${ScheduleEntry.TABLE_NAME}
+                BEGIN
+                    UPDATE ${ScheduleEntry.TABLE_NAME} SET ${ScheduleEntry.COL_NEEDS_RESCHEDULE}=1 WHERE ${ScheduleEntry.COL_ID}=NEW.${ScheduleEntry.COL_ID};
+                END
+            """.trimIndent())
+            database.execSQL("""
+                CREATE TRIGGER schedule_needs_reschedule_on_update
+                AFTER UPDATE OF ${ScheduleEntry.COL_DAYS_OF_WEEK}, ${ScheduleEntry.COL_HOUR}, ${ScheduleEntry.COL_MINUTE} ON ${ScheduleEntry.TABLE_NAME}
+                WHEN OLD.${ScheduleEntry.COL_DAYS_OF_WEEK} IS NOT NEW.${ScheduleEntry.COL_DAYS_OF_WEEK}
+                    OR OLD.${ScheduleEntry.COL_HOUR} IS NOT NEW.${ScheduleEntry.COL_HOUR}
+                    OR OLD.${ScheduleEntry.COL_MINUTE} IS NOT NEW.${ScheduleEntry.COL_MINUTE}
+                BEGIN
+                    UPDATE ${ScheduleEntry.TABLE_NAME} SET ${ScheduleEntry.COL_NEEDS_RESCHEDULE}=1 WHERE ${ScheduleEntry.COL_ID}=NEW.${ScheduleEntry.COL_ID};
+                END
+            """.trimIndent())
+            database.execSQL("""
+                CREATE INDEX schedule_needs_reschedule ON ${ScheduleEntry.TABLE_NAME}(${ScheduleEntry.COL_NEEDS_RESCHEDULE})
+                WHERE ${ScheduleEntry.COL_NEEDS_RESCHEDULE}=1
+            """.trimIndent())
+            return
+        }
+        if (newVersion == 20) {
+            // every existing schedule repeats weekly
+            database.execSQL("ALTER TABLE ${ScheduleEntry.TABLE_NAME} ADD COLUMN ${ScheduleEntry.COL_REPEAT_UNIT} TEXT NOT NULL DEFAULT \"${Recurrence.Unit.WEEKS.name}\"")
+            database.execSQL("ALTER TABLE ${ScheduleEntry.TABLE_NAME} ADD COLUMN ${ScheduleEntry.COL_REPEAT_INTERVAL} INTEGER NOT NULL DEFAULT 1")
+            database.execSQL("ALTER TABLE ${ScheduleEntry.TABLE_NAME} ADD COLUMN ${ScheduleEntry.COL_REPEAT_FROM_DAY} INTEGER NOT NULL DEFAULT 0")
+            database.execSQL("DROP TRIGGER schedule_needs_reschedule_on_update")
+            database.execSQL("""
+                CREATE TRIGGER schedule_needs_reschedule_on_update
+                AFTER UPDATE OF ${ScheduleEntry.COL_DAYS_OF_WEEK}, ${ScheduleEntry.COL_REPEAT_UNIT}, ${ScheduleEntry.COL_REPEAT_INTERVAL}, ${ScheduleEntry.COL_REPEAT_FROM_DAY}, ${ScheduleEntry.COL_HOUR}, ${ScheduleEntry.COL_MINUTE} ON ${ScheduleEntry.TABLE_NAME}
+                WHEN OLD.${ScheduleEntry.COL_DAYS_OF_WEEK} IS NOT NEW.${ScheduleEntry.COL_DAYS_OF_WEEK}
+                    OR OLD.${ScheduleEntry.COL_REPEAT_UNIT} IS NOT NEW.${ScheduleEntry.COL_REPEAT_UNIT}
+                    OR OLD.${ScheduleEntry.COL_REPEAT_INTERVAL} IS NOT NEW.${ScheduleEntry.COL_REPEAT_INTERVAL}
+                    OR OLD.${ScheduleEntry.COL_REPEAT_FROM_DAY} IS NOT NEW.${ScheduleEntry.COL_REPEAT_FROM_DAY}
+                    OR OLD.${ScheduleEntry.COL_HOUR} IS NOT NEW.${ScheduleEntry.COL_HOUR}
+                    OR OLD.${ScheduleEntry.COL_MINUTE} IS NOT NEW.${ScheduleEntry.COL_MINUTE}
+                BEGIN
+                    UPDATE ${ScheduleEntry.TABLE_NAME} SET ${ScheduleEntry.COL_NEEDS_RESCHEDULE}=1 WHERE ${ScheduleEntry.COL_ID}=NEW.${ScheduleEntry.COL_ID};
+                END
+            """.trimIndent())
+            return
+        }
     }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.lambdasoup.quickfit.persist
+
+/**
+ * Local cache of the session history, as seen by [SessionImporter].
+ */
+interface RemoteSessionStore {
+    /**
+     * Inserts the sessions, replacing cached sessions with the same identifier. All or nothing.
+     */
+    fun upsert(sessions: List<RemoteSession>)
+
+    /**
+     * End of the interval up to which the history has been imported, or null before the first import.
+     */
+    fun readWatermark(): Long?
+
+    fun saveWatermark(watermark: Long)
+}
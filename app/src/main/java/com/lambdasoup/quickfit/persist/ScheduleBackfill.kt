@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.persist
+
+import com.lambdasoup.quickfit.model.Recurrence
+import java.util.*
+
+/**
+ * A schedule, as needed for expanding it into past occurrences.
+ */
+data class BackfillSchedule(
+        val scheduleId: Long,
+        val recurrence: Recurrence,
+        val hour: Int,
+        val minute: Int
+)
+
+/**
+ * A past occurrence of a [BackfillSchedule].
+ */
+data class BackfillOccurrence(
+        val scheduleId: Long,
+        val startTime: Long,
+        val endTime: Long
+)
+
+/**
+ * Expands schedules into their occurrences in a past time range, for logging workouts that were done before
+ * QuickFit was in use. Free of Android dependencies, so that it can be tested on the JVM.
+ */
+object ScheduleBackfill {
+
+    /**
+     * Occurrences that start at or after [from] and end at or before [to], ordered by start time. Lazy, so that long
+     * ranges can be consumed in batches without holding all occurrences in memory.
+     *
+     * Occurrences keep their wall clock time in [timeZone] across daylight saving time changes; an occurrence that
+     * falls into a skipped hour is moved forward by the length of the gap.
+     */
+    fun occurrences(
+            schedules: List<BackfillSchedule>,
+            durationMillis: Long,
+            from: Long,
+            to: Long,
+            timeZone: TimeZone
+    ): Sequence<BackfillOccurrence> {
+        if (schedules.isEmpty() || from >= to) {
+            return emptySequence()
+        }
+        val byTimeOfDay = schedules.sortedWith(compareBy({ it.hour }, { it.minute }, { it.scheduleId }))
+
+        return sequence {
+            val day = Calendar.getInstance(timeZone).apply {
+                timeInMillis = from
+                set(Calendar.HOUR_OF_DAY, 0)
+                set(Calendar.MINUTE, 0)
+                set(Calendar.SECOND, 0)
+                set(Calendar.MILLISECOND, 0)
+            }
+            val occurrence = Calendar.getInstance(timeZone)
+
+            while (day.timeInMillis < to) {
+                val localDay = Recurrence.toDay(day.timeInMillis, timeZone)
+                for (schedule in byTimeOfDay) {
+                    if (!schedule.recurrence.occursOn(localDay)) {
+                        continue
+                    }
+                    occurrence.timeInMillis = day.timeInMillis
+                    occurrence.set(Calendar.HOUR_OF_DAY, schedule.hour)
+                    occurrence.set(Calendar.MINUTE, schedule.minute)
+                    val startTime = occurrence.timeInMillis
+                    val endTime = startTime + durationMillis
+                    if (startTime >= from && endTime <= to) {
+                        yield(BackfillOccurrence(schedule.scheduleId, startTime, endTime))
+                    }
+                }
+                day.add(Calendar.DATE, 1)
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.lambdasoup.quickfit.persist
+
+import androidx.annotation.WorkerThread
+import timber.log.Timber
+import java.util.concurrent.TimeUnit
+
+/**
+ * Incremental import of the session history from [source] into [store]: reads from the watermark of the previous
+ * import up to now, one window of [windowMillis] at a time, so that memory use does not depend on the length of the
+ * history. The watermark moves after every window, so an interrupted import resumes where it stopped.
+ *
+ * Sessions can show up late in the source, for instance when another app syncs after a while; the last
+ * [overlapMillis] before the watermark are read again. Merging by identifier makes that harmless.
+ *
+ * Free of Android dependencies, so that it can be tested on the JVM.
+ *
+ * @param wallClock current time in milliseconds since the epoch
+ * @param initialHistoryMillis how far back the very first import reaches
+ */
+class SessionImporter(
+        private val source: SessionSource,
+        private val store: RemoteSessionStore,
+        private val wallClock: () -> Long,
+        private val windowMillis: Long = TimeUnit.DAYS.toMillis(7),
+        private val overlapMillis: Long = TimeUnit.DAYS.toMillis(1),
+        private val initialHistoryMillis: Long = TimeUnit.DAYS.toMillis(30)
+) {
+
+    @WorkerThread
+    fun importHistory(): ImportResult {
+        val now = wallClock()
+        var windowStart = store.readWatermark()?.let { it - overlapMillis } ?: now - initialHistoryMillis
+        val result = ImportResult()
+
+        while (windowStart < now) {
+            val windowEnd = minOf(windowStart + windowMillis, now)
+            val sessions = source.read(windowStart, windowEnd)
+            store.upsert(sessions)
+            store.saveWatermark(windowEnd)
+
+            result.windows++
+            result.sessions += sessions.size
+            windowStart = windowEnd
+        }
+
+        Timber.d("Imported %d sessions in %d windows", result.sessions, result.windows)
+        return result
+    }
+}
+
+/**
+ * Outcome of a [SessionImporter.importHistory] run.
+ */
+data class ImportResult(
+        var windows: Int = 0,
+        /** Sessions read, including those read again from the overlap or from two adjacent windows. */
+        var sessions: Int = 0
+)
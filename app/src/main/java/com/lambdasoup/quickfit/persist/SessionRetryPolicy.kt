@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.persist
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Per-session retry rules for uploads to Google Fit. A session that failed to upload is only eligible again after an
+ * exponentially growing delay; after [MAX_ATTEMPTS] failures it is quarantined, so that a single broken row does not keep
+ * costing network and battery on every sync.
+ */
+object SessionRetryPolicy {
+    const val MAX_ATTEMPTS = 8
+
+    @JvmField
+    val BASE_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5)
+
+    @JvmField
+    val MAX_DELAY_MILLIS = TimeUnit.HOURS.toMillis(24)
+
+    /**
+     * @param attemptCount number of failed attempts so far, including the one that just happened
+     */
+    @JvmStatic
+    fun isQuarantined(attemptCount: Int) = attemptCount >= MAX_ATTEMPTS
+
+    /**
+     * Earliest time for the next attempt: 5 minutes after the first failure, doubling with every further failure,
+     * capped at one day.
+     *
+     * @param attemptCount number of failed attempts so far, including the one that just happened
+     */
+    @JvmStatic
+    fun nextAttemptMillis(now: Long, attemptCount: Int): Long {
+        require(attemptCount > 0) { "attemptCount must be positive, was $attemptCount" }
+
+        // large shifts would overflow; the cap is reached long before that anyway
+        val delay = if (attemptCount - 1 >= 20) {
+            MAX_DELAY_MILLIS
+        } else {
+            minOf(BASE_DELAY_MILLIS shl (attemptCount - 1), MAX_DELAY_MILLIS)
+        }
+        return now + delay
+    }
+}
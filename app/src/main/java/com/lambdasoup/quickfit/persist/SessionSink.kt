@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.persist
+
+import androidx.annotation.WorkerThread
+import java.util.concurrent.TimeoutException
+
+/**
+ * Where sessions get uploaded to. Calls block for at most the given timeout, then throw [TimeoutException]; they are
+ * made from the sync worker thread only.
+ */
+interface SessionSink {
+    /**
+     * Uploads the session under its [PendingSession.identifier]. Throws if the upload failed. Inserting an identifier
+     * that is present already either replaces that session or throws [SessionAlreadyPresentException]; it never adds
+     * a second one. That way, an insertion whose response got lost can be retried without reading from the sink.
+     */
+    @WorkerThread
+    @Throws(TimeoutException::class, SessionAlreadyPresentException::class)
+    fun insert(session: PendingSession, timeoutMillis: Long)
+}
+
+/**
+ * Thrown by [SessionSink.insert] when the sink rejects a session because it has one with the same identifier.
+ */
+class SessionAlreadyPresentException(identifier: String, cause: Throwable? = null) :
+        Exception("session $identifier is already present", cause)
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.lambdasoup.quickfit.persist
+
+import androidx.annotation.WorkerThread
+
+/**
+ * Where the session history gets read from. Calls block; they are made from the import worker thread only.
+ */
+interface SessionSource {
+    /**
+     * All sessions overlapping the interval from [startTime] inclusive to [endTime] exclusive. Throws if they cannot
+     * be read.
+     */
+    @WorkerThread
+    fun read(startTime: Long, endTime: Long): List<RemoteSession>
+}
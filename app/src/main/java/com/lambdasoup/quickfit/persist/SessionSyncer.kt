@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.persist
+
+import androidx.annotation.WorkerThread
+import com.lambdasoup.quickfit.util.LatencyHistogram
+import timber.log.Timber
+import java.util.concurrent.TimeoutException
+
+// last_error is diagnostic only, no need to keep huge stack traces around
+private const val MAX_ERROR_LENGTH = 200
+
+/**
+ * One sync run: uploads the eligible pending sessions from [store] to [sink], in pages of [pageSize], until done or
+ * until [timeBudgetMillis] are used up. Failed sessions back off according to [SessionRetryPolicy]; sessions that
+ * the sink rejects as already present count as uploaded. Calls to the sink get the remaining budget as timeout;
+ * a session whose call times out stays untouched and the run stops, to be retried as a whole.
+ *
+ * Each session is marked as synced right after its upload, so a run that dies leaves at most the session in flight
+ * unmarked. The next run inserts that one again under the same identifier, which does not duplicate it.
+ *
+ * Free of Android dependencies, so that the pipeline can be tested and benchmarked on the JVM.
+ *
+ * @param wallClock current time in milliseconds since the epoch, for the retry state
+ * @param elapsedClock monotonic time in milliseconds, for the time budget
+ */
+class SessionSyncer(
+        private val store: PendingSessionStore,
+        private val sink: SessionSink,
+        private val wallClock: () -> Long,
+        private val elapsedClock: () -> Long,
+        private val pageSize: Int,
+        private val timeBudgetMillis: Long
+) {
+
+    @WorkerThread
+    fun sync(): SyncResult {
+        val deadline = elapsedClock() + timeBudgetMillis
+        val runStart = wallClock()
+        val result = SyncResult()
+
+        var lastAttemptedSessionId = store.readCheckpoint()
+        Timber.d("Resuming after session %d", lastAttemptedSessionId)
+
+        while (true) {
+            val page = store.readPage(lastAttemptedSessionId, runStart, pageSize)
+            if (page.isEmpty()) {
+                Timber.d("Done.")
+                store.clearCheckpoint()
+                break
+            }
+
+            for (session in page) {
+                if (elapsedClock() >= deadline) {
+                    // Out of time; the next run resumes after the last session we got to.
+                    Timber.d("Time budget exhausted after session %d", lastAttemptedSessionId)
+                    store.saveCheckpoint(lastAttemptedSessionId)
+                    result.budgetExhausted = true
+                    return result
+                }
+                val uploaded = try {
+                    upload(session, deadline, result)
+                } catch (e: TimeoutException) {
+                    // The sink hangs; the next run starts over with this session.
+                    Timber.w("Sink did not answer for session %d within the time budget", session.id)
+                    countFailureCause(e, result)
+                    store.saveCheckpoint(lastAttemptedSessionId)
+                    result.budgetExhausted = true
+                    return result
+                }
+                if (uploaded) {
+                    store.markSynced(session.id)
+                }
+                lastAttemptedSessionId = session.id
+            }
+        }
+
+        result.earliestNextAttempt = store.earliestNextAttemptAfter(runStart)
+        return result
+    }
+
+    /**
+     * @return whether the session is in the sink now
+     * @throws TimeoutException if the sink did not answer before the [deadline]
+     */
+    private fun upload(session: PendingSession, deadline: Long, result: SyncResult): Boolean {
+        if (session.attemptCount > 0) {
+            result.retried++
+        }
+        val start = elapsedClock()
+        try {
+            sink.insert(session, deadline - elapsedClock())
+            result.uploaded++
+            Timber.d("insertion successful")
+            return true
+        } catch (e: TimeoutException) {
+            throw e
+        } catch (e: SessionAlreadyPresentException) {
+            // A previous run uploaded it and died before marking it as synced.
+            Timber.d("session %d was already uploaded", session.id)
+            result.alreadyPresent++
+            return true
+        } catch (e: Exception) {
+            Timber.w(e, "insertion failed")
+            recordFailure(session, e, result)
+            return false
+        } finally {
+            result.latencies.add(elapsedClock() - start)
+        }
+    }
+
+    private fun countFailureCause(e: Exception, result: SyncResult) {
+        val cause = e.javaClass.simpleName
+        result.failureCauses[cause] = (result.failureCauses[cause] ?: 0) + 1
+    }
+
+    private fun recordFailure(session: PendingSession, e: Exception, result: SyncResult) {
+        countFailureCause(e, result)
+
+        val attemptCount = session.attemptCount + 1
+        val nextAttemptMillis = if (SessionRetryPolicy.isQuarantined(attemptCount)) {
+            Timber.w("Quarantining session %d after %d failed attempts", session.id, attemptCount)
+            result.quarantined++
+            null
+        } else {
+            result.failed++
+            SessionRetryPolicy.nextAttemptMillis(wallClock(), attemptCount)
+        }
+        store.recordFailure(session.id, attemptCount, e.toString().take(MAX_ERROR_LENGTH), nextAttemptMillis)
+    }
+}
+
+/**
+ * Outcome of a [SessionSyncer.sync] run.
+ */
+class SyncResult {
+    var uploaded = 0
+    /** Insertions the sink rejected because it had the session already. */
+    var alreadyPresent = 0
+    /** Failed insertions that will be attempted again later. */
+    var failed = 0
+    var quarantined = 0
+    /** Attempts on sessions that had failed before. */
+    var retried = 0
+    var budgetExhausted = false
+    /** When the earliest session that is backing off becomes eligible again, if any. */
+    var earliestNextAttempt: Long? = null
+    /** Per-session upload latency. */
+    val latencies = LatencyHistogram()
+    /** Number of failed uploads by exception class. */
+    val failureCauses = mutableMapOf<String, Int>()
+
+    val attempted get() = uploaded + alreadyPresent + failed + quarantined
+
+    override fun toString() =
+            "SyncResult(uploaded=$uploaded, alreadyPresent=$alreadyPresent, failed=$failed, quarantined=$quarantined, " +
+                    "retried=$retried, budgetExhausted=$budgetExhausted, earliestNextAttempt=$earliestNextAttempt, " +
+                    "failureCauses=$failureCauses)"
+}
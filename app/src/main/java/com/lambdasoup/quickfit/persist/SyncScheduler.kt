@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.persist
+
+import android.content.Context
+import androidx.annotation.AnyThread
+import androidx.annotation.WorkerThread
+import androidx.work.*
+import timber.log.Timber
+import java.util.concurrent.TimeUnit
+
+private const val UNIQUE_WORK_SYNC = "sync"
+private const val UNIQUE_WORK_SAFETY_NET = "safetynetsync"
+private const val UNIQUE_WORK_DEFERRED = "deferredsync"
+private const val UNIQUE_WORK_FOLLOW_UP = "followupsync"
+// the blind periodic sync that the safety net replaces
+private const val UNIQUE_WORK_PERIODIC_LEGACY = "periodicsync"
+
+private const val TAG_SAFETY_NET = "com.lambdasoup.quickfit.persist.SAFETY_NET"
+private const val TAG_DEFERRED = "com.lambdasoup.quickfit.persist.DEFERRED"
+private const val TAG_FOLLOW_UP = "com.lambdasoup.quickfit.persist.FOLLOW_UP"
+
+private const val PREFS_SYNC_SCHEDULER = "com.lambdasoup.quickfit.persist.SyncScheduler"
+private const val PREF_KEY_SYNC_REQUESTED = "sync_requested"
+
+// Only catches sync requests that got lost; regular syncs are requested when sessions get inserted.
+private const val SAFETY_NET_PERIOD_HOURS = 24L
+
+// Sessions inserted within this window after a request are uploaded by the same run.
+private val DEBOUNCE_MILLIS = TimeUnit.SECONDS.toMillis(10)
+
+/**
+ * Coalesces sync requests into as few [SyncWorker] runs as possible: a request while a run is waiting to start joins
+ * that run, a request while a run is in progress leads to exactly one follow-up run after it. Never blocks.
+ *
+ * All uploading runs go through the one unique work [UNIQUE_WORK_SYNC], so that no two of them upload the same
+ * sessions at once. The safety net, the deferred sync and the follow-up are timed separately, but their runs only
+ * request a sync.
+ *
+ * Requests during a run are remembered in a persistent flag rather than in memory, and the follow-up is independent
+ * work rather than appended to the running one, so that neither a process death nor a failed or cancelled run loses
+ * the request.
+ */
+object SyncScheduler {
+
+    @AnyThread
+    fun requestSync(context: Context) {
+        setSyncRequested(context, true)
+        // KEEP: an enqueued run picks up the new sessions anyway, a running one gets a follow-up in onSyncFinished
+        WorkManager.getInstance(context.applicationContext)
+                .enqueueUniqueWork(
+                        UNIQUE_WORK_SYNC,
+                        ExistingWorkPolicy.KEEP,
+                        OneTimeWorkRequest.Builder(SyncWorker::class.java)
+                                .setInitialDelay(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)
+                                .setConstraints(Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
+                                .build()
+                )
+    }
+
+    /**
+     * Requests a sync if there are sessions waiting for upload, for instance because the app was killed before the
+     * sync requested on insertion ran.
+     */
+    @WorkerThread
+    fun requestSyncIfPending(context: Context) {
+        val pending = ContentProviderSessionStore(context).countPending(System.currentTimeMillis())
+        Timber.d("%d sessions pending", pending)
+        if (pending > 0) {
+            requestSync(context)
+        }
+    }
+
+    /**
+     * Makes sure that the long period safety net sync is scheduled, and that the former 3 hour periodic sync is not.
+     */
+    @AnyThread
+    fun ensureSafetyNet(context: Context) {
+        val workManager = WorkManager.getInstance(context.applicationContext)
+        workManager.cancelUniqueWork(UNIQUE_WORK_PERIODIC_LEGACY)
+        workManager.enqueueUniquePeriodicWork(
+                UNIQUE_WORK_SAFETY_NET,
+                ExistingPeriodicWorkPolicy.KEEP,
+                PeriodicWorkRequest.Builder(SyncWorker::class.java, SAFETY_NET_PERIOD_HOURS, TimeUnit.HOURS)
+                        .addTag(TAG_SAFETY_NET)
+                        .setConstraints(Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
+                        .build()
+        )
+    }
+
+    /**
+     * Makes sure that there is a sync run once [earliestNextAttempt] has passed, instead of waiting for the next
+     * request or the safety net. A later call replaces the timing of an earlier one.
+     */
+    @AnyThread
+    fun requestDeferredSync(context: Context, earliestNextAttempt: Long) {
+        val delay = (earliestNextAttempt - System.currentTimeMillis()).coerceAtLeast(0)
+        Timber.d("Scheduling deferred sync in %d ms", delay)
+        // REPLACE is safe here: deferred runs only request a sync, they never upload themselves
+        WorkManager.getInstance(context.applicationContext)
+                .enqueueUniqueWork(
+                        UNIQUE_WORK_DEFERRED,
+                        ExistingWorkPolicy.REPLACE,
+                        OneTimeWorkRequest.Builder(SyncWorker::class.java)
+                                .addTag(TAG_DEFERRED)
+                                .setInitialDelay(delay, TimeUnit.MILLISECONDS)
+                                .build()
+                )
+    }
+
+    fun isSafetyNetRun(tags: Set<String>) = tags.contains(TAG_SAFETY_NET)
+
+    /**
+     * Whether the run only has to request an uploading run, see [onTriggerRun].
+     */
+    fun isTriggerRun(tags: Set<String>) =
+            isSafetyNetRun(tags) || tags.contains(TAG_DEFERRED) || tags.contains(TAG_FOLLOW_UP)
+
+    /**
+     * Hands a safety net, deferred or follow-up run over to [UNIQUE_WORK_SYNC].
+     *
+     * @return false if an uploading run is still in progress, which would swallow the request; try again later then
+     */
+    @WorkerThread
+    fun onTriggerRun(context: Context, tags: Set<String>): Boolean {
+        Timber.d("%s run", when {
+            isSafetyNetRun(tags) -> "Safety net"
+            tags.contains(TAG_DEFERRED) -> "Deferred"
+            else -> "Follow-up"
+        })
+        val syncRunning = WorkManager.getInstance(context.applicationContext)
+                .getWorkInfosForUniqueWork(UNIQUE_WORK_SYNC)
+                .get()
+                .any { it.state == WorkInfo.State.RUNNING }
+        if (syncRunning) {
+            Timber.d("Sync still running, handing over later")
+            return false
+        }
+        requestSyncIfPending(context)
+        return true
+    }
+
+    /**
+     * Call before an uploading run reads the sessions; requests from then on lead to a follow-up run.
+     */
+    @WorkerThread
+    fun onSyncStarted(context: Context) {
+        setSyncRequested(context, false)
+    }
+
+    /**
+     * Enqueues a follow-up run if sync was requested after the finishing run started; the sessions might have been
+     * inserted after that run read past them. Call whatever the outcome of the run.
+     */
+    @WorkerThread
+    fun onSyncFinished(context: Context) {
+        if (syncPreferences(context).getBoolean(PREF_KEY_SYNC_REQUESTED, false)) {
+            Timber.d("Sync requested during run, enqueueing follow-up")
+            // The finishing run is still RUNNING for WorkManager, so UNIQUE_WORK_SYNC would keep or chain to it, and
+            // a chained run fails or is cancelled along with it. Trigger independently instead.
+            WorkManager.getInstance(context.applicationContext)
+                    .enqueueUniqueWork(
+                            UNIQUE_WORK_FOLLOW_UP,
+                            ExistingWorkPolicy.KEEP,
+                            OneTimeWorkRequest.Builder(SyncWorker::class.java)
+                                    .addTag(TAG_FOLLOW_UP)
+                                    .setInitialDelay(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)
+                                    .build()
+                    )
+        }
+    }
+
+    private fun setSyncRequested(context: Context, requested: Boolean) {
+        syncPreferences(context).edit().putBoolean(PREF_KEY_SYNC_REQUESTED, requested).apply()
+    }
+
+    private fun syncPreferences(context: Context) =
+            context.applicationContext.getSharedPreferences(PREFS_SYNC_SCHEDULER, Context.MODE_PRIVATE)
+}
@@ -17,152 +17,109 @@
 
 package com.lambdasoup.quickfit.persist
 
-import android.content.ContentResolver
 import android.content.ContentValues
 import android.content.Context
-import android.database.Cursor
-import androidx.concurrent.futures.CallbackToFutureAdapter
-import androidx.work.ListenableWorker
-import androidx.work.WorkerParameters
+import android.os.SystemClock
+import androidx.work.*
 import com.google.android.gms.auth.api.signin.GoogleSignIn
-import com.google.android.gms.auth.api.signin.GoogleSignInAccount
 import com.google.android.gms.fitness.Fitness
-import com.google.android.gms.fitness.FitnessOptions
-import com.google.android.gms.fitness.SessionsClient
-import com.google.android.gms.fitness.data.*
-import com.google.android.gms.fitness.request.SessionInsertRequest
-import com.google.android.gms.tasks.SuccessContinuation
-import com.google.android.gms.tasks.Task
-import com.google.android.gms.tasks.Tasks
-import com.google.common.util.concurrent.ListenableFuture
 import com.lambdasoup.quickfit.Constants.FITNESS_API_OPTIONS
+import com.lambdasoup.quickfit.persist.QuickFitContract.SyncRunEntry
 import timber.log.Timber
-import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
 
-private val SYNC_EXECUTOR = Executors.newSingleThreadExecutor { r -> Thread(r, "sync worker thread") }
-private val STATUS_TRANSMITTED = ContentValues().apply {
-    put(QuickFitContract.SessionEntry.STATUS, QuickFitContract.SessionEntry.SessionStatus.SYNCED.name)
-}
+// Sessions are read in pages of this size, so that no cursor needs to stay open while uploading.
+private const val PAGE_SIZE = 50
 
-class SyncWorker(private val appContext: Context, workerParams: WorkerParameters) : ListenableWorker(appContext, workerParams) {
+// WorkManager stops workers after 10 minutes. Stop early enough to leave a checkpoint behind.
+private val TIME_BUDGET_MILLIS = TimeUnit.MINUTES.toMillis(8)
 
-    private val contentResolver: ContentResolver by lazy { appContext.contentResolver }
+/**
+ * Android side of the session upload: checks for Fit permissions, then lets [SessionSyncer] upload to Google Fit.
+ */
+class SyncWorker(private val appContext: Context, workerParams: WorkerParameters) : Worker(appContext, workerParams) {
 
     // Exactly one worker gets instantiated per unit of work, so we use the instance to keep our state around.
-    // Does not apply to cursor, because that is nullable...
-    private lateinit var sessionsClient: SessionsClient
-    private lateinit var cursor: Cursor
-    private var hasFailedInsertions = false
-
-    override fun startWork(): ListenableFuture<Result> = CallbackToFutureAdapter.getFuture { completer ->
-        Tasks.call(SYNC_EXECUTOR, {
-                    val sessionsCursor = contentResolver.query(
-                            QuickFitContentProvider.getUriSessionsList(),
-                            QuickFitContract.SessionEntry.COLUMNS,
-                            QuickFitContract.SessionEntry.STATUS + "=?",
-                            arrayOf(QuickFitContract.SessionEntry.SessionStatus.NEW.name),
-                            null
-                    )
-                    Timber.d("Found %s sessions to sync", sessionsCursor?.count ?: "no")
-                    sessionsCursor
-                })
-                .onSuccessTask (SYNC_EXECUTOR, { sessionsCursor ->
-                    if (sessionsCursor == null || sessionsCursor.isAfterLast) {
-                        sessionsCursor?.close()
-                        Tasks.forResult(null)
-                    } else {
-                        val account = GoogleSignIn.getAccountForExtension(appContext, FITNESS_API_OPTIONS)
+    private var syncResult: SyncResult? = null
 
-                        if (!GoogleSignIn.hasPermissions(account, FITNESS_API_OPTIONS)) {
-                            Timber.d("Sign-in required")
-                            FitApiFailureResolution.requestFitPermissions(appContext, account)
+    override fun doWork(): Result {
+        if (SyncScheduler.isTriggerRun(tags)) {
+            return if (SyncScheduler.onTriggerRun(appContext, tags)) Result.success() else Result.retry()
+        }
 
-                            // will be retried after sign in resolution
-                            completer.set(Result.failure())
-                            return@onSuccessTask Tasks.forCanceled()
-                        }
-                        sessionsClient = Fitness.getSessionsClient(appContext, account)
-                        cursor = sessionsCursor
-                        insertNextSession()
-                    }
-                })
-                .addOnCanceledListener { Timber.d("work got cancelled") }
-                .addOnCompleteListener(SYNC_EXECUTOR, {
-                    completer.set(
-                            it.exception.let { t ->
-                                if (t == null) {
-                                    // task is successful.
-                                    Timber.d("Sync complete")
-                                    if (hasFailedInsertions) {
-                                        Result.retry()
-                                    } else {
-                                        Result.success()
-                                    }
-                                } else {
-                                    completer.setException(t)
-                                    Result.failure() // TODO: or retry? depend on exception? might need to do the signIn thing?
-                                }
-                            }
-                    )
-                })
+        SyncScheduler.onSyncStarted(appContext)
+        val startTime = System.currentTimeMillis()
+        var outcome = Result.failure()
+        try {
+            outcome = sync()
+            return outcome
+        } finally {
+            recordRun(startTime, outcome)
+            SyncScheduler.onSyncFinished(appContext)
+        }
     }
 
-    private fun insertNextSession(): Task<Void> {
-        if (!cursor.moveToNext()) {
-            // done with sessions
-            Timber.d("Done.")
-            cursor.close()
-            // sync finished
-            return Tasks.forResult(null)
+    private fun sync(): Result {
+        val store = ContentProviderSessionStore(appContext)
+        if (store.countPending(System.currentTimeMillis()) == 0) {
+            Timber.d("Nothing to sync")
+            store.clearCheckpoint()
+            return Result.success()
         }
 
-        val startTime = cursor.getLong(cursor.getColumnIndex(QuickFitContract.SessionEntry.START_TIME))
-        val endTime = cursor.getLong(cursor.getColumnIndex(QuickFitContract.SessionEntry.END_TIME))
-        val sessionName = cursor.getString(cursor.getColumnIndex(QuickFitContract.SessionEntry.NAME))
-        val sessionBuilder = Session.Builder()
-                .setActivity(cursor.getString(cursor.getColumnIndex(QuickFitContract.SessionEntry.ACTIVITY_TYPE)))
-                .setStartTime(startTime, TimeUnit.MILLISECONDS)
-                .setEndTime(endTime, TimeUnit.MILLISECONDS)
-        if (sessionName != null) {
-            sessionBuilder.setName(sessionName)
-        }
+        val account = GoogleSignIn.getAccountForExtension(appContext, FITNESS_API_OPTIONS)
+        if (!GoogleSignIn.hasPermissions(account, FITNESS_API_OPTIONS)) {
+            Timber.d("Sign-in required")
+            FitApiFailureResolution.requestFitPermissions(appContext, account)
 
-        val insertRequest = SessionInsertRequest.Builder()
-                .setSession(sessionBuilder.build())
+            // will be retried after sign in resolution
+            return Result.failure()
+        }
 
-        if (cursor.getType(cursor.getColumnIndex(QuickFitContract.SessionEntry.CALORIES)) != Cursor.FIELD_TYPE_NULL) {
-            val datasource = DataSource.Builder()
-                    .setAppPackageName(appContext)
-                    .setDataType(DataType.AGGREGATE_CALORIES_EXPENDED)
-                    .setType(DataSource.TYPE_RAW)
-                    .setDevice(Device.getLocalDevice(appContext))
-                    .build()
+        val result = SessionSyncer(
+                store = store,
+                sink = FitSessionSink(appContext, Fitness.getSessionsClient(appContext, account)),
+                wallClock = System::currentTimeMillis,
+                elapsedClock = SystemClock::elapsedRealtime,
+                pageSize = PAGE_SIZE,
+                timeBudgetMillis = TIME_BUDGET_MILLIS
+        ).sync()
+        syncResult = result
+        Timber.d("Sync complete: %s", result)
 
-            insertRequest.addAggregateDataPoint(
-                    DataPoint.builder(datasource)
-                            .setField(
-                                    Field.FIELD_CALORIES,
-                                    cursor.getInt(cursor.getColumnIndex(QuickFitContract.SessionEntry.CALORIES)).toFloat()
-                            )
-                            // remove 1 ms from end time, so the fit api will accept this data point as nested inside the session
-                            .setTimeInterval(startTime, endTime - 1, TimeUnit.MILLISECONDS)
-                            .build()
-            )
+        if (result.budgetExhausted) {
+            return Result.retry()
         }
+        // Failed sessions are not retried by failing the whole run, but by their own backoff.
+        result.earliestNextAttempt?.let { SyncScheduler.requestDeferredSync(appContext, it) }
+        return Result.success()
+    }
 
-        return sessionsClient.insertSession(insertRequest.build())
-                .addOnSuccessListener(SYNC_EXECUTOR, {
-                    contentResolver.update(
-                            QuickFitContentProvider.getUriSessionsId(cursor.getLong(cursor.getColumnIndex(QuickFitContract.SessionEntry._ID))),
-                            STATUS_TRANSMITTED, null, null
-                    )
-                    Timber.d("insertion successful")
-                })
-                .addOnFailureListener(SYNC_EXECUTOR, { e ->
-                    Timber.w(e, "insertion failed")
-                    hasFailedInsertions = true
-                })
-                .continueWithTask(SYNC_EXECUTOR, { insertNextSession() })
+    /**
+     * Keeps a record of this run for the diagnostics screen.
+     */
+    private fun recordRun(startTime: Long, outcome: Result) {
+        val result = syncResult
+        val values = ContentValues(10).apply {
+            put(SyncRunEntry.START_TIME, startTime)
+            put(SyncRunEntry.END_TIME, System.currentTimeMillis())
+            put(SyncRunEntry.ATTEMPTED, result?.attempted ?: 0)
+            put(SyncRunEntry.SUCCEEDED, result?.let { it.uploaded + it.alreadyPresent } ?: 0)
+            put(SyncRunEntry.FAILED, result?.let { it.failed + it.quarantined } ?: 0)
+            if (result != null && result.latencies.count > 0) {
+                put(SyncRunEntry.LATENCY_P50, result.latencies.getPercentile(50.0))
+                put(SyncRunEntry.LATENCY_P90, result.latencies.getPercentile(90.0))
+                put(SyncRunEntry.LATENCY_P99, result.latencies.getPercentile(99.0))
+            }
+            if (result != null && result.failureCauses.isNotEmpty()) {
+                put(SyncRunEntry.FAILURE_CAUSES, result.failureCauses.entries.joinToString { "${it.key}: ${it.value}" })
+            }
+            put(SyncRunEntry.RESULT, when (outcome) {
+                Result.success() -> "SUCCESS"
+                Result.retry() -> "RETRY"
+                else -> "FAILURE"
+            })
+        }
+        appContext.contentResolver.insert(QuickFitContentProvider.getUriSyncRunsList(), values)
     }
 }
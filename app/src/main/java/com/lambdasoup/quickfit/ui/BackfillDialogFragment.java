@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.ui;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.app.DatePickerDialog;
+import android.app.Dialog;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.DialogFragment;
+import androidx.appcompat.app.AlertDialog;
+import android.text.format.DateFormat;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.Button;
+
+import com.lambdasoup.quickfit.R;
+
+import java.util.Calendar;
+
+/**
+ * Asks for the range of days over which the schedules of the given workouts should be logged as done. Both ends are
+ * inclusive; the range ends now at the latest, so that no workout is logged before its time.
+ */
+public class BackfillDialogFragment extends DialogFragment implements DialogInterface.OnClickListener {
+
+    private static final String KEY_WORKOUT_IDS = "workoutIds";
+    private static final String KEY_FROM_DAY = "fromDay";
+    private static final String KEY_TO_DAY = "toDay";
+    private static final int DEFAULT_WEEKS = 4;
+
+    private OnFragmentInteractionListener listener;
+
+    // start of the first and of the last day of the range, in local time
+    private long fromDay;
+    private long toDay;
+
+    private Button fromButton;
+    private Button toButton;
+
+    public BackfillDialogFragment() {
+        // It's a fragment, it needs a default constructor
+    }
+
+    public static BackfillDialogFragment newInstance(long[] workoutIds) {
+        BackfillDialogFragment fragment = new BackfillDialogFragment();
+        Bundle args = new Bundle();
+        args.putLongArray(KEY_WORKOUT_IDS, workoutIds);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onAttach(Activity activity) {
+        super.onAttach(activity);
+        if (activity instanceof OnFragmentInteractionListener) {
+            listener = (OnFragmentInteractionListener) activity;
+        } else {
+            throw new IllegalArgumentException(activity.toString() + " must implement OnFragmentInteractionListener");
+        }
+    }
+
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        listener = null;
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        if (savedInstanceState != null) {
+            fromDay = savedInstanceState.getLong(KEY_FROM_DAY);
+            toDay = savedInstanceState.getLong(KEY_TO_DAY);
+        } else {
+            Calendar day = startOfDay(System.currentTimeMillis());
+            toDay = day.getTimeInMillis();
+            day.add(Calendar.WEEK_OF_YEAR, -DEFAULT_WEEKS);
+            fromDay = day.getTimeInMillis();
+        }
+
+        @SuppressLint("InflateParams") View dialogContent = LayoutInflater.from(getContext()).inflate(R.layout.dialog_backfill_range, null);
+        fromButton = dialogContent.findViewById(R.id.backfill_from);
+        toButton = dialogContent.findViewById(R.id.backfill_to);
+        fromButton.setOnClickListener(v -> pickDay(fromDay, null, today(), day -> {
+            fromDay = day;
+            toDay = Math.max(toDay, day);
+            updateButtons();
+        }));
+        toButton.setOnClickListener(v -> pickDay(toDay, fromDay, today(), day -> {
+            toDay = day;
+            updateButtons();
+        }));
+        updateButtons();
+
+        return new AlertDialog.Builder(getContext())
+                .setView(dialogContent)
+                .setTitle(R.string.title_backfill)
+                .setPositiveButton(R.string.button_done_backfill, this)
+                .setNegativeButton(R.string.cancel, this)
+                .create();
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putLong(KEY_FROM_DAY, fromDay);
+        outState.putLong(KEY_TO_DAY, toDay);
+    }
+
+    private void pickDay(long selectedDay, @Nullable Long minDay, long maxDay, OnDayPickedListener onDayPicked) {
+        Calendar selected = startOfDay(selectedDay);
+        DatePickerDialog dialog = new DatePickerDialog(
+                requireContext(),
+                (view, year, month, dayOfMonth) -> {
+                    Calendar picked = Calendar.getInstance();
+                    picked.clear();
+                    picked.set(year, month, dayOfMonth);
+                    onDayPicked.onDayPicked(picked.getTimeInMillis());
+                },
+                selected.get(Calendar.YEAR),
+                selected.get(Calendar.MONTH),
+                selected.get(Calendar.DAY_OF_MONTH));
+        if (minDay != null) {
+            dialog.getDatePicker().setMinDate(minDay);
+        }
+        dialog.getDatePicker().setMaxDate(maxDay);
+        dialog.show();
+    }
+
+    private void updateButtons() {
+        java.text.DateFormat format = DateFormat.getMediumDateFormat(getContext());
+        fromButton.setText(format.format(fromDay));
+        toButton.setText(format.format(toDay));
+    }
+
+    @Override
+    public void onClick(DialogInterface dialog, int which) {
+        switch (which) {
+            case DialogInterface.BUTTON_POSITIVE:
+                Calendar end = startOfDay(toDay);
+                end.add(Calendar.DATE, 1);
+                long to = Math.min(end.getTimeInMillis(), System.currentTimeMillis());
+                listener.onBackfillRequested(getArguments().getLongArray(KEY_WORKOUT_IDS), fromDay, to);
+                break;
+            case DialogInterface.BUTTON_NEGATIVE:
+                break;
+            default:
+                throw new IllegalStateException("No such button.");
+        }
+    }
+
+    private static long today() {
+        return startOfDay(System.currentTimeMillis()).getTimeInMillis();
+    }
+
+    private static Calendar startOfDay(long timeMillis) {
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(timeMillis);
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+        return day;
+    }
+
+    private interface OnDayPickedListener {
+        void onDayPicked(long day);
+    }
+
+    interface OnFragmentInteractionListener {
+        /**
+         * @param from start of the range, in milliseconds since the epoch
+         * @param to end of the range, exclusive, not after now
+         */
+        void onBackfillRequested(long[] workoutIds, long from, long to);
+    }
+}
@@ -27,28 +27,35 @@ import androidx.appcompat.app.AlertDialog;
 
 import com.lambdasoup.quickfit.R;
 import com.lambdasoup.quickfit.model.DayOfWeek;
+import com.lambdasoup.quickfit.model.DaysOfWeek;
 import com.lambdasoup.quickfit.util.Arrays;
 
 
-public class DayOfWeekDialogFragment extends DialogFragment implements DialogInterface.OnClickListener {
+/**
+ * Picks the days of the week a schedule occurs on; at least one. Leads on to {@link RepeatDialogFragment} for how
+ * often.
+ */
+public class DayOfWeekDialogFragment extends DialogFragment implements DialogInterface.OnClickListener,
+        DialogInterface.OnMultiChoiceClickListener {
 
     private static final String KEY_SCHEDULE_ID = "scheduleId";
     private static final String KEY_OLD_VALUE = "oldValue";
+    private static final String KEY_CHECKED = "checked";
 
     private OnFragmentInteractionListener listener;
     private DayOfWeek[] week;
 
-    private int checkedItemPosition;
+    private DaysOfWeek checked;
 
     public DayOfWeekDialogFragment() {
         // It's a fragment, it needs a default constructor
     }
 
-    public static DayOfWeekDialogFragment newInstance(long objectId, DayOfWeek oldValue) {
+    public static DayOfWeekDialogFragment newInstance(long objectId, DaysOfWeek oldValue) {
         DayOfWeekDialogFragment fragment = new DayOfWeekDialogFragment();
         Bundle args = new Bundle();
         args.putLong(KEY_SCHEDULE_ID, objectId);
-        args.putParcelable(KEY_OLD_VALUE, oldValue);
+        args.putInt(KEY_OLD_VALUE, oldValue.getMask());
         fragment.setArguments(args);
         return fragment;
     }
@@ -74,38 +81,79 @@ public class DayOfWeekDialogFragment extends DialogFragment implements DialogInt
     public Dialog onCreateDialog(Bundle savedInstanceState) {
         week = DayOfWeek.getWeek();
         //noinspection ConstantConditions
-        checkedItemPosition = Arrays.firstIndexOf(week, getArguments().getParcelable(KEY_OLD_VALUE));
+        int checkedMask = savedInstanceState == null
+                ? getArguments().getInt(KEY_OLD_VALUE)
+                : savedInstanceState.getInt(KEY_CHECKED);
+        checked = DaysOfWeek.fromMask(checkedMask);
+
+        boolean[] checkedItems = new boolean[week.length];
+        for (int i = 0; i < week.length; i++) {
+            checkedItems[i] = checked.contains(week[i]);
+        }
 
         return new AlertDialog.Builder(getContext())
                 .setTitle(R.string.title_schedule_dayOfWeek)
-                .setSingleChoiceItems(Arrays.map(week, String[].class, dayOfWeek -> getResources().getString(dayOfWeek.fullNameResId)), checkedItemPosition, this)
+                .setMultiChoiceItems(Arrays.map(week, String[].class, dayOfWeek -> getResources().getString(dayOfWeek.fullNameResId)), checkedItems, this)
                 .setPositiveButton(R.string.button_done_schedule_dayOfWeek, this)
+                .setNeutralButton(R.string.button_schedule_repeat, this)
                 .setNegativeButton(R.string.cancel, this)
                 .create();
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        updatePositiveButton();
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(KEY_CHECKED, checked.getMask());
+    }
+
+    @Override
+    public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+        checked = isChecked ? checked.with(week[which]) : checked.without(week[which]);
+        updatePositiveButton();
+    }
+
     @Override
     public void onClick(DialogInterface dialog, int which) {
         switch (which) {
             case DialogInterface.BUTTON_POSITIVE:
                 if (listener != null) {
-                    listener.onListItemChanged(getArguments().getLong(KEY_SCHEDULE_ID), week[checkedItemPosition]);
+                    listener.onListItemChanged(getArguments().getLong(KEY_SCHEDULE_ID), checked);
                 }
                 break;
-            case DialogInterface.BUTTON_NEGATIVE:
+            case DialogInterface.BUTTON_NEUTRAL:
+                if (listener != null) {
+                    listener.onRepeatEditRequested(getArguments().getLong(KEY_SCHEDULE_ID), checked);
+                }
                 break;
-            default:
-                checkedItemPosition = which;
+            case DialogInterface.BUTTON_NEGATIVE:
                 break;
         }
 
     }
 
+    private void updatePositiveButton() {
+        // a schedule without days would never occur
+        AlertDialog dialog = (AlertDialog) getDialog();
+        dialog.getButton(DialogInterface.BUTTON_POSITIVE).setEnabled(!checked.isEmpty());
+        dialog.getButton(DialogInterface.BUTTON_NEUTRAL).setEnabled(!checked.isEmpty());
+    }
+
     interface OnFragmentInteractionListenerProvider {
         OnFragmentInteractionListener getOnDayOfWeekDialogFragmentInteractionListener();
     }
 
     public interface OnFragmentInteractionListener {
-        void onListItemChanged(long objectId, DayOfWeek newValue);
+        void onListItemChanged(long objectId, DaysOfWeek newValue);
+
+        /**
+         * @param daysOfWeek the days checked so far, to keep when the repetition is set
+         */
+        void onRepeatEditRequested(long objectId, DaysOfWeek daysOfWeek);
     }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.ui
+
+import android.database.Cursor
+import android.os.Bundle
+import android.text.format.DateUtils
+import androidx.appcompat.app.AppCompatActivity
+import androidx.core.database.getLongOrNull
+import androidx.core.database.getStringOrNull
+import androidx.loader.app.LoaderManager
+import androidx.loader.content.CursorLoader
+import androidx.loader.content.Loader
+import com.lambdasoup.quickfit.R
+import com.lambdasoup.quickfit.alarm.AlarmLatencies
+import com.lambdasoup.quickfit.persist.QuickFitContentProvider
+import com.lambdasoup.quickfit.persist.QuickFitContract.SyncRunEntry
+import com.lambdasoup.quickfit.util.LatencyHistogram
+import com.lambdasoup.quickfit.util.TagSnapshot
+import com.lambdasoup.quickfit.util.WakefulIntents
+import kotlinx.android.synthetic.main.activity_diagnostics.*
+
+/**
+ * Shows the recorded sync runs, newest first, so that slow or failing uploads can be looked into on a user's device.
+ * Also shows the wake locks held since the app process started, to keep an eye on the battery cost of alarms, and how
+ * late reminder alarms go off.
+ */
+class DiagnosticsActivity : AppCompatActivity(), LoaderManager.LoaderCallbacks<Cursor> {
+
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+        setContentView(R.layout.activity_diagnostics)
+
+        LoaderManager.getInstance(this).initLoader(LOADER_SYNC_RUNS, null, this)
+    }
+
+    override fun onCreateLoader(id: Int, args: Bundle?): Loader<Cursor> =
+            CursorLoader(
+                    this,
+                    QuickFitContentProvider.getUriSyncRunsList(),
+                    SyncRunEntry.COLUMNS,
+                    null,
+                    null,
+                    "${SyncRunEntry._ID} DESC"
+            )
+
+    override fun onLoadFinished(loader: Loader<Cursor>, data: Cursor?) {
+        diagnostics_report.text = buildString {
+            appendWakeLocks(WakefulIntents.accounting.snapshot())
+            appendLine()
+            appendAlarmLatencies(AlarmLatencies.snapshot(this@DiagnosticsActivity))
+            appendLine()
+            appendLine(getString(R.string.diagnostics_sync_runs))
+            if (data == null || data.count == 0) {
+                appendLine(getString(R.string.diagnostics_sync_runs_none))
+                return@buildString
+            }
+            data.moveToPosition(-1)
+            while (data.moveToNext()) {
+                appendSyncRun(data)
+            }
+        }
+    }
+
+    override fun onLoaderReset(loader: Loader<Cursor>) {
+        diagnostics_report.text = null
+    }
+
+    private fun StringBuilder.appendWakeLocks(wakeLocks: List<TagSnapshot>) {
+        appendLine(getString(R.string.diagnostics_wake_locks))
+        if (wakeLocks.isEmpty()) {
+            appendLine(getString(R.string.diagnostics_wake_locks_none))
+            return
+        }
+        for (wakeLock in wakeLocks) {
+            appendLine()
+            appendLine(wakeLock.tag)
+            appendLine(getString(
+                    R.string.diagnostics_wake_lock_counts,
+                    wakeLock.count,
+                    wakeLock.totalHeldMillis,
+                    wakeLock.timeouts,
+                    wakeLock.orphaned
+            ))
+            appendLine(getString(R.string.diagnostics_wake_lock_hold_times, wakeLock.p50, wakeLock.p90, wakeLock.p99, wakeLock.max))
+        }
+    }
+
+    private fun StringBuilder.appendAlarmLatencies(latencies: Map<AlarmLatencies.Kind, LatencyHistogram>) {
+        appendLine(getString(R.string.diagnostics_alarms))
+        val delivery = latencies.getValue(AlarmLatencies.Kind.DELIVERY)
+        val posted = latencies.getValue(AlarmLatencies.Kind.POSTED)
+        val committed = latencies.getValue(AlarmLatencies.Kind.COMMITTED)
+        if (delivery.count == 0L && posted.count == 0L && committed.count == 0L) {
+            appendLine(getString(R.string.diagnostics_alarms_none))
+            return
+        }
+        appendLatencies(R.string.diagnostics_alarm_delivery, delivery)
+        appendLatencies(R.string.diagnostics_alarm_posted, posted)
+        appendLatencies(R.string.diagnostics_alarm_committed, committed)
+    }
+
+    private fun StringBuilder.appendLatencies(resId: Int, histogram: LatencyHistogram) {
+        if (histogram.count == 0L) {
+            return
+        }
+        appendLine(getString(
+                resId,
+                histogram.getPercentile(50.0),
+                histogram.getPercentile(90.0),
+                histogram.getPercentile(99.0),
+                histogram.max,
+                histogram.count
+        ))
+    }
+
+    private fun StringBuilder.appendSyncRun(cursor: Cursor) {
+        val startTime = cursor.getLong(cursor.getColumnIndexOrThrow(SyncRunEntry.START_TIME))
+        val endTime = cursor.getLong(cursor.getColumnIndexOrThrow(SyncRunEntry.END_TIME))
+
+        appendLine()
+        append(DateUtils.formatDateTime(
+                this@DiagnosticsActivity,
+                startTime,
+                DateUtils.FORMAT_SHOW_DATE or DateUtils.FORMAT_SHOW_TIME or DateUtils.FORMAT_NUMERIC_DATE
+        ))
+        append(" · ").append(cursor.getString(cursor.getColumnIndexOrThrow(SyncRunEntry.RESULT)))
+        append(" · ").append(endTime - startTime).appendLine(" ms")
+
+        appendLine(getString(
+                R.string.diagnostics_sync_run_counts,
+                cursor.getInt(cursor.getColumnIndexOrThrow(SyncRunEntry.ATTEMPTED)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(SyncRunEntry.SUCCEEDED)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(SyncRunEntry.FAILED))
+        ))
+
+        val p50 = cursor.getLongOrNull(cursor.getColumnIndexOrThrow(SyncRunEntry.LATENCY_P50))
+        if (p50 != null) {
+            appendLine(getString(
+                    R.string.diagnostics_sync_run_latency,
+                    p50,
+                    cursor.getLong(cursor.getColumnIndexOrThrow(SyncRunEntry.LATENCY_P90)),
+                    cursor.getLong(cursor.getColumnIndexOrThrow(SyncRunEntry.LATENCY_P99))
+            ))
+        }
+
+        cursor.getStringOrNull(cursor.getColumnIndexOrThrow(SyncRunEntry.FAILURE_CAUSES))?.let {
+            appendLine(getString(R.string.diagnostics_sync_run_failures, it))
+        }
+    }
+
+    companion object {
+        private const val LOADER_SYNC_RUNS = 0
+    }
+}
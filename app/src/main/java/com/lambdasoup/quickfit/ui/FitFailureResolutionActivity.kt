@@ -21,11 +21,13 @@ import android.os.Bundle
 import com.google.android.gms.auth.api.signin.GoogleSignIn
 import com.google.android.gms.auth.api.signin.GoogleSignInAccount
 import com.lambdasoup.quickfit.Constants.FITNESS_API_OPTIONS
+import com.lambdasoup.quickfit.Constants.FITNESS_READ_OPTIONS
 import com.lambdasoup.quickfit.FitActivityService.Companion.enqueueSyncSession
 import com.lambdasoup.quickfit.persist.FitApiFailureResolution
 import com.lambdasoup.quickfit.persist.FitApiFailureResolution.registerAsCurrentForeground
 import com.lambdasoup.quickfit.persist.FitApiFailureResolution.unregisterAsCurrentForeground
 import com.lambdasoup.quickfit.persist.FitApiFailureResolver
+import com.lambdasoup.quickfit.persist.ImportWorker
 import timber.log.Timber
 
 /**
@@ -64,11 +66,11 @@ abstract class FitFailureResolutionActivity : DialogActivity(), FitApiFailureRes
         // if started from notification (failure occurred while no activity was bound to FitApiFailureResolution)
         val account: GoogleSignInAccount? = intent.getParcelableExtra(EXTRA_PLAY_API_SIGNIN_ACCOUNT)
         if (account != null) {
-            requestFitPermissions(account)
+            requestFitPermissions(account, intent.getBooleanExtra(EXTRA_FIT_READ_ACCESS, false))
         }
     }
 
-    override fun requestFitPermissions(account: GoogleSignInAccount) {
+    override fun requestFitPermissions(account: GoogleSignInAccount, readAccess: Boolean) {
         if (failureResolutionInProgress) {
             // nothing to do
             return
@@ -77,9 +79,9 @@ abstract class FitFailureResolutionActivity : DialogActivity(), FitApiFailureRes
         try {
             GoogleSignIn.requestPermissions(
                     this,
-                    REQUEST_FAILURE_RESOLUTION,
+                    if (readAccess) REQUEST_READ_ACCESS else REQUEST_FAILURE_RESOLUTION,
                     account,
-                    FITNESS_API_OPTIONS
+                    if (readAccess) FITNESS_READ_OPTIONS else FITNESS_API_OPTIONS
             )
         } catch (e: ActivityNotFoundException) {
             Timber.e(e, "Exception while starting resolution activity")
@@ -87,11 +89,16 @@ abstract class FitFailureResolutionActivity : DialogActivity(), FitApiFailureRes
     }
 
     override fun onActivityResult(requestCode: Int, resultCode: Int, data: Intent?) {
-        if (requestCode == REQUEST_FAILURE_RESOLUTION) {
+        if (requestCode == REQUEST_FAILURE_RESOLUTION || requestCode == REQUEST_READ_ACCESS) {
             failureResolutionInProgress = false
             intent.removeExtra(EXTRA_PLAY_API_SIGNIN_ACCOUNT)
+            intent.removeExtra(EXTRA_FIT_READ_ACCESS)
             if (resultCode == RESULT_OK) {
-                enqueueSyncSession(applicationContext)
+                if (requestCode == REQUEST_READ_ACCESS) {
+                    ImportWorker.enqueue(applicationContext)
+                } else {
+                    enqueueSyncSession(applicationContext)
+                }
             }
         } else {
             super.onActivityResult(requestCode, resultCode, data)
@@ -100,7 +107,9 @@ abstract class FitFailureResolutionActivity : DialogActivity(), FitApiFailureRes
 
     companion object {
         const val EXTRA_PLAY_API_SIGNIN_ACCOUNT = "com.lambdasoup.quickfit.play_api_connect_result"
+        const val EXTRA_FIT_READ_ACCESS = "com.lambdasoup.quickfit.fit_read_access"
         private const val REQUEST_FAILURE_RESOLUTION = 0
+        private const val REQUEST_READ_ACCESS = 1
         private const val KEY_FAILURE_RESOLUTION_IN_PROGRESS = "com.lambdasoup.quickfit.failure_resolution_in_progress"
     }
 }
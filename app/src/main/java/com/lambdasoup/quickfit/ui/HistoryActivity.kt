@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.ui
+
+import android.database.Cursor
+import android.os.Bundle
+import android.text.format.DateUtils
+import android.widget.TextView
+import androidx.appcompat.app.AppCompatActivity
+import androidx.core.database.getStringOrNull
+import androidx.cursoradapter.widget.SimpleCursorAdapter
+import androidx.loader.app.LoaderManager
+import androidx.loader.content.CursorLoader
+import androidx.loader.content.Loader
+import com.lambdasoup.quickfit.R
+import com.lambdasoup.quickfit.model.FitActivity
+import com.lambdasoup.quickfit.persist.ImportWorker
+import com.lambdasoup.quickfit.persist.QuickFitContentProvider
+import com.lambdasoup.quickfit.persist.QuickFitContract.RemoteSessionEntry
+import kotlinx.android.synthetic.main.activity_history.*
+
+/**
+ * Sessions from Google Fit, by any app, newest first. Shows the local cache only; opening the screen brings the cache
+ * up to date in the background.
+ */
+class HistoryActivity : AppCompatActivity(), LoaderManager.LoaderCallbacks<Cursor> {
+
+    private val adapter by lazy {
+        SimpleCursorAdapter(
+                this,
+                android.R.layout.simple_list_item_2,
+                null,
+                arrayOf(RemoteSessionEntry.ACTIVITY_TYPE, RemoteSessionEntry.START_TIME),
+                intArrayOf(android.R.id.text1, android.R.id.text2),
+                0
+        ).apply {
+            setViewBinder { view, cursor, columnIndex ->
+                when (cursor.getColumnName(columnIndex)) {
+                    RemoteSessionEntry.ACTIVITY_TYPE -> (view as TextView).text = titleOf(cursor)
+                    RemoteSessionEntry.START_TIME -> (view as TextView).text = timeRangeOf(cursor)
+                    else -> return@setViewBinder false
+                }
+                true
+            }
+        }
+    }
+
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+        setContentView(R.layout.activity_history)
+
+        history_list.adapter = adapter
+        history_list.emptyView = history_empty
+
+        LoaderManager.getInstance(this).initLoader(LOADER_REMOTE_SESSIONS, null, this)
+        ImportWorker.enqueue(this)
+    }
+
+    override fun onCreateLoader(id: Int, args: Bundle?): Loader<Cursor> =
+            CursorLoader(
+                    this,
+                    QuickFitContentProvider.getUriRemoteSessionsList(),
+                    RemoteSessionEntry.COLUMNS,
+                    null,
+                    null,
+                    "${RemoteSessionEntry.START_TIME} DESC"
+            )
+
+    override fun onLoadFinished(loader: Loader<Cursor>, data: Cursor?) {
+        adapter.swapCursor(data)
+    }
+
+    override fun onLoaderReset(loader: Loader<Cursor>) {
+        adapter.swapCursor(null)
+    }
+
+    private fun titleOf(cursor: Cursor): String {
+        val activityType = cursor.getString(cursor.getColumnIndexOrThrow(RemoteSessionEntry.ACTIVITY_TYPE))
+        val activityName = try {
+            FitActivity.fromKey(activityType, resources).displayName
+        } catch (e: IllegalArgumentException) {
+            // other apps record activity types that QuickFit does not offer
+            activityType
+        }
+        val name = cursor.getStringOrNull(cursor.getColumnIndexOrThrow(RemoteSessionEntry.NAME))
+        return if (name.isNullOrEmpty() || name == activityName) activityName else "$activityName · $name"
+    }
+
+    private fun timeRangeOf(cursor: Cursor): String {
+        val timeRange = DateUtils.formatDateRange(
+                this,
+                cursor.getLong(cursor.getColumnIndexOrThrow(RemoteSessionEntry.START_TIME)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(RemoteSessionEntry.END_TIME)),
+                DateUtils.FORMAT_SHOW_DATE or DateUtils.FORMAT_SHOW_TIME
+        )
+        val appPackageName = cursor.getStringOrNull(cursor.getColumnIndexOrThrow(RemoteSessionEntry.APP_PACKAGE_NAME))
+        return if (appPackageName == null || appPackageName == packageName) timeRange else "$timeRange · $appPackageName"
+    }
+
+    companion object {
+        private const val LOADER_REMOTE_SESSIONS = 0
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.ui;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import androidx.annotation.NonNull;
+import androidx.fragment.app.DialogFragment;
+import androidx.appcompat.app.AlertDialog;
+
+import com.lambdasoup.quickfit.R;
+import com.lambdasoup.quickfit.model.DayOfWeek;
+import com.lambdasoup.quickfit.model.DaysOfWeek;
+import com.lambdasoup.quickfit.model.Recurrence;
+
+import java.util.TimeZone;
+
+
+/**
+ * Picks how often a schedule repeats: every few weeks on its days of the week, or every few days. A new interval
+ * counts from the current week or from today.
+ */
+public class RepeatDialogFragment extends DialogFragment implements DialogInterface.OnClickListener {
+
+    private static final String KEY_SCHEDULE_ID = "scheduleId";
+    private static final String KEY_OLD_DAYS_OF_WEEK = "oldDaysOfWeek";
+    private static final String KEY_OLD_UNIT = "oldUnit";
+    private static final String KEY_OLD_INTERVAL = "oldInterval";
+    private static final String KEY_OLD_FROM_DAY = "oldFromDay";
+    private static final String KEY_CHECKED = "checked";
+
+    private static final Recurrence.Unit[] UNITS = {
+            Recurrence.Unit.WEEKS, Recurrence.Unit.WEEKS, Recurrence.Unit.WEEKS, Recurrence.Unit.WEEKS,
+            Recurrence.Unit.DAYS, Recurrence.Unit.DAYS, Recurrence.Unit.DAYS, Recurrence.Unit.DAYS, Recurrence.Unit.DAYS
+    };
+    private static final int[] INTERVALS = {1, 2, 3, 4, 2, 3, 4, 5, 6};
+
+    private OnFragmentInteractionListener listener;
+    private Recurrence oldValue;
+    private int checkedItemPosition;
+
+    public RepeatDialogFragment() {
+        // It's a fragment, it needs a default constructor
+    }
+
+    public static RepeatDialogFragment newInstance(long scheduleId, Recurrence oldValue) {
+        RepeatDialogFragment fragment = new RepeatDialogFragment();
+        Bundle args = new Bundle();
+        args.putLong(KEY_SCHEDULE_ID, scheduleId);
+        args.putInt(KEY_OLD_DAYS_OF_WEEK, oldValue.getDaysOfWeek().getMask());
+        args.putString(KEY_OLD_UNIT, oldValue.getUnit().name());
+        args.putInt(KEY_OLD_INTERVAL, oldValue.getInterval());
+        args.putLong(KEY_OLD_FROM_DAY, oldValue.getFromDay());
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onAttach(Activity activity) {
+        super.onAttach(activity);
+        if (activity instanceof OnFragmentInteractionListenerProvider) {
+            listener = ((OnFragmentInteractionListenerProvider) activity).getOnRepeatDialogFragmentInteractionListener();
+        } else {
+            throw new IllegalArgumentException(activity.toString() + " must implement OnFragmentInteractionListenerProvider");
+        }
+    }
+
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        listener = null;
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        Bundle args = getArguments();
+        //noinspection ConstantConditions
+        oldValue = Recurrence.of(
+                DaysOfWeek.fromMask(args.getInt(KEY_OLD_DAYS_OF_WEEK)),
+                Recurrence.Unit.valueOf(args.getString(KEY_OLD_UNIT)),
+                args.getInt(KEY_OLD_INTERVAL),
+                args.getLong(KEY_OLD_FROM_DAY)
+        );
+        checkedItemPosition = savedInstanceState == null ? indexOf(oldValue) : savedInstanceState.getInt(KEY_CHECKED);
+
+        String[] items = new String[UNITS.length];
+        for (int i = 0; i < items.length; i++) {
+            int names = UNITS[i] == Recurrence.Unit.DAYS ? R.plurals.every_n_days : R.plurals.every_n_weeks;
+            items[i] = getResources().getQuantityString(names, INTERVALS[i], INTERVALS[i]);
+        }
+
+        return new AlertDialog.Builder(getContext())
+                .setTitle(R.string.title_schedule_repeat)
+                .setSingleChoiceItems(items, checkedItemPosition, this)
+                .setPositiveButton(R.string.button_done_schedule_repeat, this)
+                .setNegativeButton(R.string.cancel, this)
+                .create();
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        updatePositiveButton();
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(KEY_CHECKED, checkedItemPosition);
+    }
+
+    @Override
+    public void onClick(DialogInterface dialog, int which) {
+        switch (which) {
+            case DialogInterface.BUTTON_POSITIVE:
+                if (listener != null) {
+                    listener.onRepeatChanged(getArguments().getLong(KEY_SCHEDULE_ID), newValue());
+                }
+                break;
+            case DialogInterface.BUTTON_NEGATIVE:
+                break;
+            default:
+                checkedItemPosition = which;
+                updatePositiveButton();
+                break;
+        }
+    }
+
+    private Recurrence newValue() {
+        Recurrence.Unit unit = UNITS[checkedItemPosition];
+        int interval = INTERVALS[checkedItemPosition];
+        if (unit == oldValue.getUnit() && interval == oldValue.getInterval()) {
+            // keep counting from where it did
+            return oldValue;
+        }
+        long today = Recurrence.toDay(System.currentTimeMillis(), TimeZone.getDefault());
+        if (unit == Recurrence.Unit.DAYS) {
+            return Recurrence.everyDays(interval, today);
+        }
+        // all days, if it was every few days
+        return Recurrence.everyWeeks(interval, oldValue.getDaysOfWeek(), Recurrence.startOfWeek(today, DayOfWeek.getWeek()[0]));
+    }
+
+    private static int indexOf(Recurrence recurrence) {
+        for (int i = 0; i < UNITS.length; i++) {
+            if (UNITS[i] == recurrence.getUnit() && INTERVALS[i] == recurrence.getInterval()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void updatePositiveButton() {
+        ((AlertDialog) getDialog()).getButton(DialogInterface.BUTTON_POSITIVE).setEnabled(checkedItemPosition >= 0);
+    }
+
+    interface OnFragmentInteractionListenerProvider {
+        OnFragmentInteractionListener getOnRepeatDialogFragmentInteractionListener();
+    }
+
+    public interface OnFragmentInteractionListener {
+        void onRepeatChanged(long objectId, Recurrence newValue);
+    }
+}
@@ -35,7 +35,7 @@ import com.lambdasoup.quickfit.util.ui.updatePadding
 
 class SchedulesActivity : FitFailureResolutionActivity(),
         LoaderManager.LoaderCallbacks<Cursor>, TimeDialogFragment.OnFragmentInteractionListenerProvider,
-        DayOfWeekDialogFragment.OnFragmentInteractionListenerProvider
+        DayOfWeekDialogFragment.OnFragmentInteractionListenerProvider, RepeatDialogFragment.OnFragmentInteractionListenerProvider
 {
 
     private lateinit var schedulesFragment: SchedulesFragment
@@ -108,6 +108,10 @@ class SchedulesActivity : FitFailureResolutionActivity(),
         return schedulesFragment
     }
 
+    override fun getOnRepeatDialogFragmentInteractionListener(): RepeatDialogFragment.OnFragmentInteractionListener? {
+        return schedulesFragment
+    }
+
     override fun onCreateLoader(id: Int, args: Bundle?): Loader<Cursor> {
         when (id) {
             LOADER_WORKOUT -> return WorkoutLoader(this, workoutId)
@@ -16,6 +16,7 @@
 
 package com.lambdasoup.quickfit.ui
 
+import android.content.ContentProviderOperation
 import android.content.ContentValues
 import android.database.Cursor
 import android.os.Bundle
@@ -29,9 +30,14 @@ import androidx.loader.content.Loader
 import androidx.recyclerview.widget.ItemTouchHelper
 import androidx.recyclerview.widget.RecyclerView
 import com.lambdasoup.quickfit.alarm.AlarmService
+import com.lambdasoup.quickfit.alarm.ContentProviderAlarmOutbox
+import com.lambdasoup.quickfit.alarm.RescheduleWorker
 import com.lambdasoup.quickfit.databinding.FragmentSchedulesBinding
 import com.lambdasoup.quickfit.model.DayOfWeek
+import com.lambdasoup.quickfit.model.DaysOfWeek
+import com.lambdasoup.quickfit.model.Recurrence
 import com.lambdasoup.quickfit.persist.QuickFitContentProvider
+import com.lambdasoup.quickfit.persist.QuickFitContract.AlarmOutboxEntry
 import com.lambdasoup.quickfit.persist.QuickFitContract.ScheduleEntry
 import com.lambdasoup.quickfit.util.ui.DividerItemDecoration
 import com.lambdasoup.quickfit.util.ui.LeaveBehind
@@ -43,7 +49,8 @@ import java.util.*
 
 class SchedulesFragment : Fragment(),
         LoaderManager.LoaderCallbacks<Cursor>, SchedulesRecyclerViewAdapter.OnScheduleInteractionListener,
-        TimeDialogFragment.OnFragmentInteractionListener, DayOfWeekDialogFragment.OnFragmentInteractionListener
+        TimeDialogFragment.OnFragmentInteractionListener, DayOfWeekDialogFragment.OnFragmentInteractionListener,
+        RepeatDialogFragment.OnFragmentInteractionListener
 {
 
     internal var workoutId: Long = 0
@@ -135,27 +142,51 @@ class SchedulesFragment : Fragment(),
         }
     }
 
-    override fun onDayOfWeekEditRequested(scheduleId: Long, oldValue: DayOfWeek) {
-        (activity as DialogActivity).showDialog(DayOfWeekDialogFragment.newInstance(scheduleId, oldValue))
+    override fun onDayOfWeekEditRequested(scheduleId: Long, oldValue: Recurrence) {
+        // every few days does not go by days of the week
+        val dialog = if (oldValue.unit == Recurrence.Unit.DAYS) {
+            RepeatDialogFragment.newInstance(scheduleId, oldValue)
+        } else {
+            DayOfWeekDialogFragment.newInstance(scheduleId, oldValue.daysOfWeek)
+        }
+        (activity as DialogActivity).showDialog(dialog)
+    }
+
+    override fun onRepeatEditRequested(scheduleId: Long, daysOfWeek: DaysOfWeek) {
+        val oldValue = schedulesAdapter.getById(scheduleId)?.recurrence ?: return
+        // unless changed to every few days in the meantime
+        val withDays = if (oldValue.unit == Recurrence.Unit.WEEKS) oldValue.withDaysOfWeek(daysOfWeek) else oldValue
+        (activity as DialogActivity).showDialog(RepeatDialogFragment.newInstance(scheduleId, withDays))
     }
 
-    override fun onListItemChanged(scheduleId: Long, newDayOfWeek: DayOfWeek) {
+    override fun onRepeatChanged(scheduleId: Long, newValue: Recurrence) {
         requireContext().contentResolver.update(
                 QuickFitContentProvider.getUriWorkoutsIdSchedulesId(workoutId, scheduleId),
-                ContentValues(1).apply {
-                    put(ScheduleEntry.COL_DAY_OF_WEEK, newDayOfWeek.name)
+                ContentValues(4).apply {
+                    put(ScheduleEntry.COL_DAYS_OF_WEEK, newValue.daysOfWeek.mask)
+                    put(ScheduleEntry.COL_REPEAT_UNIT, newValue.unit.name)
+                    put(ScheduleEntry.COL_REPEAT_INTERVAL, newValue.interval)
+                    put(ScheduleEntry.COL_REPEAT_FROM_DAY, newValue.fromDay)
                 },
                 null,
                 null
         )
 
-        ContextCompat.startForegroundService(
-                requireContext(),
-                AlarmService.getOnScheduleChangedIntent(
-                        requireContext(),
-                        scheduleId
-                )
+        RescheduleWorker.enqueue(requireContext())
+    }
+
+    override fun onListItemChanged(scheduleId: Long, newDaysOfWeek: DaysOfWeek) {
+        requireContext().contentResolver.update(
+                QuickFitContentProvider.getUriWorkoutsIdSchedulesId(workoutId, scheduleId),
+                ContentValues(1).apply {
+                    put(ScheduleEntry.COL_DAYS_OF_WEEK, newDaysOfWeek.mask)
+                },
+                null,
+                null
         )
+
+        // the schedule is marked for rescheduling by the update itself
+        RescheduleWorker.enqueue(requireContext())
     }
 
 
@@ -174,13 +205,7 @@ class SchedulesFragment : Fragment(),
                 null
         )
 
-        ContextCompat.startForegroundService(
-                requireContext(),
-                AlarmService.getOnScheduleChangedIntent(
-                        requireContext(),
-                        scheduleId
-                )
-        )
+        RescheduleWorker.enqueue(requireContext())
     }
 
     internal fun onAddNewSchedule() {
@@ -190,32 +215,29 @@ class SchedulesFragment : Fragment(),
         val hour = calendar.get(Calendar.HOUR_OF_DAY)
         val minute = calendar.get(Calendar.MINUTE)
 
-        val scheduleUri = requireContext().contentResolver.insert(
+        requireContext().contentResolver.insert(
                 QuickFitContentProvider.getUriWorkoutsIdSchedules(workoutId),
                 ContentValues(3).apply {
-                    put(ScheduleEntry.COL_DAY_OF_WEEK, dayOfWeek.name)
+                    put(ScheduleEntry.COL_DAYS_OF_WEEK, DaysOfWeek.of(dayOfWeek).mask)
                     put(ScheduleEntry.COL_HOUR, hour)
                     put(ScheduleEntry.COL_MINUTE, minute)
                 }
         )
 
-        ContextCompat.startForegroundService(
-                requireContext(),
-                AlarmService.getOnScheduleChangedIntent(
-                        requireContext(),
-                        QuickFitContentProvider.getScheduleIdFromUriOrThrow(scheduleUri)
-                )
-        )
+        RescheduleWorker.enqueue(requireContext())
     }
 
+    /**
+     * Deletes the schedule together with its alarm outbox entry in one transaction, then has [AlarmService] apply the
+     * entry; should that not happen, it is replayed after the next reboot at the latest. A deleted row cannot carry a
+     * mark for [RescheduleWorker].
+     */
     private fun onRemoveSchedule(scheduleId: Long) {
-        requireContext().contentResolver.delete(
-                QuickFitContentProvider.getUriWorkoutsIdSchedulesId(workoutId, scheduleId),
-                null,
-                null
-        )
-
-        ContextCompat.startForegroundService(requireContext(), AlarmService.getOnScheduleDeletedIntent(requireContext(), scheduleId))
+        requireContext().contentResolver.applyBatch(QuickFitContentProvider.AUTHORITY, arrayListOf(
+                ContentProviderOperation.newDelete(QuickFitContentProvider.getUriWorkoutsIdSchedulesId(workoutId, scheduleId)).build(),
+                ContentProviderAlarmOutbox.newInsert(AlarmOutboxEntry.OPERATION_DELETED, scheduleId)
+        ))
+        ContextCompat.startForegroundService(requireContext(), AlarmService.getDrainOutboxIntent(requireContext()))
     }
 
     companion object {
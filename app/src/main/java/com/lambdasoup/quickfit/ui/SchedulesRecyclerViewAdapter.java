@@ -23,7 +23,7 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.lambdasoup.quickfit.databinding.ScheduleListContentBinding;
-import com.lambdasoup.quickfit.model.DayOfWeek;
+import com.lambdasoup.quickfit.model.Recurrence;
 import com.lambdasoup.quickfit.persist.QuickFitContract;
 import com.lambdasoup.quickfit.util.ui.LeaveBehind;
 import com.lambdasoup.quickfit.viewmodel.ScheduleItem;
@@ -114,7 +114,11 @@ public class SchedulesRecyclerViewAdapter extends RecyclerView.Adapter<Schedules
                     .withScheduleId(cursor.getLong(cursor.getColumnIndex(QuickFitContract.WorkoutEntry.SCHEDULE_ID)))
                     .withHour(cursor.getInt(cursor.getColumnIndex(QuickFitContract.WorkoutEntry.HOUR)))
                     .withMinute(cursor.getInt(cursor.getColumnIndex(QuickFitContract.WorkoutEntry.MINUTE)))
-                    .withDayOfWeekName(cursor.getString(cursor.getColumnIndex(QuickFitContract.WorkoutEntry.DAY_OF_WEEK)))
+                    .withDaysOfWeekMask(cursor.getInt(cursor.getColumnIndex(QuickFitContract.WorkoutEntry.DAYS_OF_WEEK)))
+                    .withRepeat(
+                            cursor.getString(cursor.getColumnIndex(QuickFitContract.WorkoutEntry.REPEAT_UNIT)),
+                            cursor.getInt(cursor.getColumnIndex(QuickFitContract.WorkoutEntry.REPEAT_INTERVAL)),
+                            cursor.getLong(cursor.getColumnIndex(QuickFitContract.WorkoutEntry.REPEAT_FROM_DAY)))
                     .build();
 
             newItems.add(newScheduleItem);
@@ -130,7 +134,7 @@ public class SchedulesRecyclerViewAdapter extends RecyclerView.Adapter<Schedules
 
         void onTimeEditRequested(long scheduleId, int oldHour, int oldMinute);
 
-        void onDayOfWeekEditRequested(long scheduleId, DayOfWeek dayOfWeek);
+        void onDayOfWeekEditRequested(long scheduleId, Recurrence recurrence);
     }
 
     public class ViewHolder extends LeaveBehind.LeaveBehindViewHolder {
@@ -160,7 +164,7 @@ public class SchedulesRecyclerViewAdapter extends RecyclerView.Adapter<Schedules
             @Override
             public void onClick(View v) {
                 if (onScheduleInteractionListener != null) {
-                    onScheduleInteractionListener.onDayOfWeekEditRequested(viewHolder.item.id, viewHolder.item.dayOfWeek);
+                    onScheduleInteractionListener.onDayOfWeekEditRequested(viewHolder.item.id, viewHolder.item.recurrence);
                 }
             }
         };
@@ -26,6 +26,7 @@ import android.provider.Settings
 import android.view.View
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
+import androidx.core.content.ContextCompat
 import androidx.preference.Preference
 import androidx.preference.PreferenceFragmentCompat
 import androidx.preference.PreferenceManager
@@ -36,6 +37,7 @@ import com.google.android.gms.common.api.GoogleApiClient
 import com.google.android.gms.fitness.Fitness
 import com.lambdasoup.quickfit.Constants.FITNESS_API_OPTIONS
 import com.lambdasoup.quickfit.R
+import com.lambdasoup.quickfit.alarm.AlarmService
 import com.lambdasoup.quickfit.util.ui.systemWindowInsetsRelative
 import com.lambdasoup.quickfit.util.ui.updateMargins
 import com.lambdasoup.quickfit.util.ui.updatePadding
@@ -75,6 +77,18 @@ class SettingsActivity : AppCompatActivity() {
             PreferenceManager.getDefaultSharedPreferences(requireActivity().applicationContext)
         }
         private val keyNotificationRingtone by lazy { getString(R.string.pref_key_notification_ringtone) }
+        private val keyAlarmWindow by lazy { getString(R.string.pref_key_alarm_window_mins) }
+        private val keySingleAlarm by lazy { getString(R.string.pref_key_single_alarm) }
+
+        // after the new value is stored, so that the alarm is set with it
+        private val alarmSettingsListener = SharedPreferences.OnSharedPreferenceChangeListener { _, key ->
+            if (key == keyAlarmWindow || key == keySingleAlarm) {
+                ContextCompat.startForegroundService(
+                        requireContext(),
+                        AlarmService.getOnAlarmSettingsChangedIntent(requireContext())
+                )
+            }
+        }
 
         override fun onCreatePreferences(savedInstanceState: Bundle?, rootKey: String?) {
             setPreferencesFromResource(R.xml.preferences, rootKey)
@@ -109,6 +123,8 @@ class SettingsActivity : AppCompatActivity() {
                 disconnectGoogleFit()
                 true
             }
+
+            prefs.registerOnSharedPreferenceChangeListener(alarmSettingsListener)
         }
 
         override fun onStop() {
@@ -117,6 +133,8 @@ class SettingsActivity : AppCompatActivity() {
             notificationRingtonePref?.onPreferenceClickListener = null
 
             disconnectGoogleFitPref.onPreferenceClickListener = null
+
+            prefs.unregisterOnSharedPreferenceChangeListener(alarmSettingsListener)
         }
 
         override fun onActivityResult(requestCode: Int, resultCode: Int, data: Intent?) {
@@ -33,6 +33,7 @@ import com.lambdasoup.quickfit.viewmodel.WorkoutItem
 
 import java.util.ArrayList
 import java.util.HashSet
+import java.util.LinkedHashSet
 import java.util.Objects
 
 import timber.log.Timber
@@ -99,10 +100,55 @@ class WorkoutItemRecyclerViewAdapter(
             }
         }
 
+    // in the order of checking, which is the order in which the batch "did it" lays out the sessions
+    private val checkedIds = LinkedHashSet<Long>()
+
+    /**
+     * Workouts checked for a batch action. Checking starts with a long click; while any item is checked, clicks check
+     * and uncheck items instead of selecting them.
+     */
+    var checkedItemIds: LongArray
+        get() = checkedIds.toLongArray()
+        set(ids) {
+            clearCheckedItemIds()
+            if (ids.isEmpty()) {
+                return
+            }
+            checkedIds.addAll(ids.asList())
+            ids.forEach { notifyCheckedItemChanged(it) }
+            onWorkoutInteractionListener?.onCheckedItemsChanged(checkedIds.size)
+        }
+
     init {
         setHasStableIds(true)
     }
 
+    fun clearCheckedItemIds() {
+        if (checkedIds.isEmpty()) {
+            return
+        }
+        val previouslyChecked = checkedIds.toList()
+        checkedIds.clear()
+        previouslyChecked.forEach { notifyCheckedItemChanged(it) }
+        onWorkoutInteractionListener?.onCheckedItemsChanged(0)
+    }
+
+    private fun toggleChecked(id: Long) {
+        if (!checkedIds.remove(id)) {
+            checkedIds.add(id)
+        }
+        notifyCheckedItemChanged(id)
+        onWorkoutInteractionListener?.onCheckedItemsChanged(checkedIds.size)
+    }
+
+    private fun notifyCheckedItemChanged(id: Long) {
+        // when restoring, the checked ids come back before the workouts are loaded
+        val position = getPosition(id)
+        if (position != SortedList.INVALID_POSITION) {
+            notifyItemChanged(position)
+        }
+    }
+
     override fun getItemId(position: Int): Long {
         return if (position >= 0 && position < dataset.size()) {
             dataset.get(position).id
@@ -164,7 +210,11 @@ class WorkoutItemRecyclerViewAdapter(
                         .withScheduleId(cursor.getLong(cursor.getColumnIndex(WorkoutEntry.SCHEDULE_ID)))
                         .withHour(cursor.getInt(cursor.getColumnIndex(WorkoutEntry.HOUR)))
                         .withMinute(cursor.getInt(cursor.getColumnIndex(WorkoutEntry.MINUTE)))
-                        .withDayOfWeekName(cursor.getString(cursor.getColumnIndex(WorkoutEntry.DAY_OF_WEEK)))
+                        .withDaysOfWeekMask(cursor.getInt(cursor.getColumnIndex(WorkoutEntry.DAYS_OF_WEEK)))
+                        .withRepeat(
+                                cursor.getString(cursor.getColumnIndex(WorkoutEntry.REPEAT_UNIT)),
+                                cursor.getInt(cursor.getColumnIndex(WorkoutEntry.REPEAT_INTERVAL)),
+                                cursor.getLong(cursor.getColumnIndex(WorkoutEntry.REPEAT_FROM_DAY)))
 
                 currentWorkout.addSchedule(newScheduleItem.build())
             }
@@ -178,6 +228,10 @@ class WorkoutItemRecyclerViewAdapter(
             }
         }
         dataset.endBatchedUpdates()
+
+        if (checkedIds.retainAll(newIds)) {
+            onWorkoutInteractionListener?.onCheckedItemsChanged(checkedIds.size)
+        }
     }
 
     fun getPosition(id: Long): Int {
@@ -225,6 +279,8 @@ class WorkoutItemRecyclerViewAdapter(
         fun onSchedulesEditRequested(workoutId: Long)
 
         fun onItemSelected(workoutId: Long)
+
+        fun onCheckedItemsChanged(checkedCount: Int)
     }
 
     inner class ViewHolder internal constructor(private val binding: WorkoutListContentBinding) : RecyclerView.ViewHolder(binding.root) {
@@ -244,15 +300,25 @@ class WorkoutItemRecyclerViewAdapter(
             this.item = item
             binding.workout = item
             binding.root.isActivated = item.id == selectedItemId
+            binding.root.isSelected = checkedIds.contains(item.id)
         }
 
         internal fun onItemClicked() {
+            if (checkedIds.isNotEmpty()) {
+                toggleChecked(item!!.id)
+                return
+            }
             Timber.d("viewholder onItemCLicked selectedItemId: %d, clicked item id: %d", selectedItemId, item!!.id)
             if (selectedItemId != item!!.id) {
                 selectedItemId = item!!.id
             }
         }
 
+        internal fun onItemLongClicked(): Boolean {
+            toggleChecked(item!!.id)
+            return true
+        }
+
     }
 
     // members get used by databinding expressions
@@ -262,6 +328,10 @@ class WorkoutItemRecyclerViewAdapter(
             viewHolder.onItemClicked()
         }
 
+        val listItemLongClickListener: View.OnLongClickListener = View.OnLongClickListener {
+            viewHolder.onItemLongClicked()
+        }
+
         val activityTypeClicked: View.OnClickListener = View.OnClickListener {
             onWorkoutInteractionListener?.onActivityTypeEditRequested(viewHolder.item!!.id, viewHolder.item!!.activityType)
         }
@@ -19,6 +19,7 @@ package com.lambdasoup.quickfit.ui
 import android.animation.ObjectAnimator
 import android.app.LoaderManager
 import android.app.PendingIntent
+import android.content.ContentProviderOperation
 import android.content.ContentUris
 import android.content.ContentValues
 import android.content.Intent
@@ -30,15 +31,21 @@ import android.view.Gravity
 import android.view.Menu
 import android.view.MenuItem
 import android.view.View
+import androidx.appcompat.view.ActionMode
 import androidx.appcompat.widget.Toolbar
+import androidx.core.content.ContextCompat
 import androidx.coordinatorlayout.widget.CoordinatorLayout
 import androidx.recyclerview.widget.RecyclerView.NO_ID
 import androidx.recyclerview.widget.SortedList
 import com.google.android.gms.fitness.FitnessActivities
 import com.lambdasoup.quickfit.FitActivityService
 import com.lambdasoup.quickfit.R
+import com.lambdasoup.quickfit.alarm.AlarmService
+import com.lambdasoup.quickfit.alarm.ContentProviderAlarmOutbox
 import com.lambdasoup.quickfit.model.FitActivity
+import com.lambdasoup.quickfit.persist.IdempotencyKey
 import com.lambdasoup.quickfit.persist.QuickFitContentProvider
+import com.lambdasoup.quickfit.persist.QuickFitContract.AlarmOutboxEntry
 import com.lambdasoup.quickfit.persist.QuickFitContract.WorkoutEntry
 import com.lambdasoup.quickfit.util.ui.*
 import kotlinx.android.synthetic.main.activity_workout_list.*
@@ -52,7 +59,8 @@ class WorkoutListActivity : FitFailureResolutionActivity(), LoaderManager.Loader
         WorkoutItemRecyclerViewAdapter.OnWorkoutInteractionListener, DurationMinutesDialogFragment.OnFragmentInteractionListener,
         LabelDialogFragment.OnFragmentInteractionListener, CaloriesDialogFragment.OnFragmentInteractionListener,
         TimeDialogFragment.OnFragmentInteractionListenerProvider, DayOfWeekDialogFragment.OnFragmentInteractionListenerProvider,
-        ActivityTypeDialogFragment.OnFragmentInteractionListener
+        RepeatDialogFragment.OnFragmentInteractionListenerProvider,
+        ActivityTypeDialogFragment.OnFragmentInteractionListener, BackfillDialogFragment.OnFragmentInteractionListener
 {
 
     private val fabAnimationDuration: Int by lazy { resources.getInteger(R.integer.fab_animation_duration) }
@@ -81,6 +89,41 @@ class WorkoutListActivity : FitFailureResolutionActivity(), LoaderManager.Loader
 
     private lateinit var workoutsAdapter: WorkoutItemRecyclerViewAdapter
 
+    private var checkedItemsActionMode: ActionMode? = null
+    private val checkedItemsActionModeCallback = object : ActionMode.Callback {
+        override fun onCreateActionMode(mode: ActionMode, menu: Menu): Boolean {
+            mode.menuInflater.inflate(R.menu.menu_workout_list_checked, menu)
+            return true
+        }
+
+        override fun onPrepareActionMode(mode: ActionMode, menu: Menu) = false
+
+        override fun onActionItemClicked(mode: ActionMode, item: MenuItem): Boolean {
+            when (item.itemId) {
+                R.id.action_insert_sessions -> {
+                    FitActivityService.enqueueInsertSessions(
+                            applicationContext,
+                            workoutsAdapter.checkedItemIds,
+                            System.currentTimeMillis()
+                    )
+                    mode.finish()
+                    return true
+                }
+                R.id.action_backfill_sessions -> {
+                    showDialog(BackfillDialogFragment.newInstance(workoutsAdapter.checkedItemIds))
+                    mode.finish()
+                    return true
+                }
+                else -> return false
+            }
+        }
+
+        override fun onDestroyActionMode(mode: ActionMode) {
+            checkedItemsActionMode = null
+            workoutsAdapter.clearCheckedItemIds()
+        }
+    }
+
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -154,6 +197,7 @@ class WorkoutListActivity : FitFailureResolutionActivity(), LoaderManager.Loader
             if (idToSelect == NO_ID) {
                 idToSelect = savedInstanceState.getLong(KEY_SELECTED_ITEM_ID, NO_ID)
             }
+            savedInstanceState.getLongArray(KEY_CHECKED_ITEM_IDS)?.let { workoutsAdapter.checkedItemIds = it }
         } else {
             idToSelect = FIRST_ITEM_IF_EXISTS
         }
@@ -204,6 +248,7 @@ class WorkoutListActivity : FitFailureResolutionActivity(), LoaderManager.Loader
         with(outState) {
             putLong(KEY_SHOW_WORKOUT_ID, idToSelect)
             putLong(KEY_SELECTED_ITEM_ID, workoutsAdapter.selectedItemId)
+            putLongArray(KEY_CHECKED_ITEM_IDS, workoutsAdapter.checkedItemIds)
         }
     }
 
@@ -218,6 +263,10 @@ class WorkoutListActivity : FitFailureResolutionActivity(), LoaderManager.Loader
                 startActivity(Intent(baseContext, SettingsActivity::class.java))
                 return true
             }
+            R.id.action_history -> {
+                startActivity(Intent(baseContext, HistoryActivity::class.java))
+                return true
+            }
             R.id.action_about -> {
                 startActivity(Intent(baseContext, AboutActivity::class.java))
                 return true
@@ -419,12 +468,51 @@ class WorkoutListActivity : FitFailureResolutionActivity(), LoaderManager.Loader
     }
 
     override fun onDoneItClick(workoutId: Long) {
-        FitActivityService.enqueueInsertSession(applicationContext, workoutId)
+        FitActivityService.enqueueInsertSession(
+                applicationContext,
+                workoutId,
+                IdempotencyKey.SOURCE_LIST,
+                System.currentTimeMillis()
+        )
+    }
+
+    override fun onBackfillRequested(workoutIds: LongArray, from: Long, to: Long) {
+        FitActivityService.enqueueBackfillSessions(applicationContext, workoutIds, from, to)
+    }
+
+    override fun onCheckedItemsChanged(checkedCount: Int) {
+        if (checkedCount == 0) {
+            checkedItemsActionMode?.finish()
+            return
+        }
+        val actionMode = checkedItemsActionMode
+                ?: startSupportActionMode(checkedItemsActionModeCallback).also { checkedItemsActionMode = it }
+        actionMode?.title = resources.getQuantityString(R.plurals.workouts_checked, checkedCount, checkedCount)
     }
 
     override fun onDeleteClick(workoutId: Long) {
         workoutsAdapter.setSelectedItemIdAfterDeletionOf(workoutId)
-        contentResolver.delete(QuickFitContentProvider.getUriWorkoutsId(workoutId), null, null)
+
+        // the schedules go with the workout; their alarms and notifications are taken down via the alarm outbox
+        val scheduleIds = contentResolver.query(
+                QuickFitContentProvider.getUriWorkoutsIdSchedules(workoutId),
+                arrayOf(WorkoutEntry.SCHEDULE_ID),
+                null,
+                null,
+                null
+        )?.use { cursor ->
+            generateSequence { if (cursor.moveToNext()) cursor.getLong(0) else null }.toList()
+        } ?: emptyList()
+
+        val operations = scheduleIds.mapTo(ArrayList()) { scheduleId ->
+            ContentProviderAlarmOutbox.newInsert(AlarmOutboxEntry.OPERATION_DELETED, scheduleId)
+        }
+        operations.add(ContentProviderOperation.newDelete(QuickFitContentProvider.getUriWorkoutsId(workoutId)).build())
+        contentResolver.applyBatch(QuickFitContentProvider.AUTHORITY, operations)
+
+        if (scheduleIds.isNotEmpty()) {
+            ContextCompat.startForegroundService(this, AlarmService.getDrainOutboxIntent(this))
+        }
     }
 
     override fun onSchedulesEditRequested(workoutId: Long) {
@@ -510,6 +598,10 @@ class WorkoutListActivity : FitFailureResolutionActivity(), LoaderManager.Loader
         return supportFragmentManager.findFragmentById(R.id.schedules_container) as DayOfWeekDialogFragment.OnFragmentInteractionListener
     }
 
+    override fun getOnRepeatDialogFragmentInteractionListener(): RepeatDialogFragment.OnFragmentInteractionListener {
+        return supportFragmentManager.findFragmentById(R.id.schedules_container) as RepeatDialogFragment.OnFragmentInteractionListener
+    }
+
     companion object {
 
         const val EXTRA_NOTIFICATIONS_CANCEL_INTENT = "com.lambdasoup.quickfit.cancel_intent"
@@ -517,6 +609,7 @@ class WorkoutListActivity : FitFailureResolutionActivity(), LoaderManager.Loader
 
         private const val KEY_SHOW_WORKOUT_ID = "com.lambdasoup.quickfit.show_workout_id"
         private const val KEY_SELECTED_ITEM_ID = "com.lambdasoup.quickfit.WorkoutListActivity_selected_item_id"
+        private const val KEY_CHECKED_ITEM_IDS = "com.lambdasoup.quickfit.WorkoutListActivity_checked_item_ids"
         private const val FIRST_ITEM_IF_EXISTS: Long = -2
     }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.util;
+
+/**
+ * Histogram of non-negative durations in fixed memory. Values below 4 are counted exactly; above that, every power of
+ * two is split into 4 buckets, so that percentiles are off by at most 25%, on the high side.
+ * <p>
+ * Not thread safe.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count;
+    private long max;
+
+    public void add(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        counts[bucketOf(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Nearest-rank percentile, as the upper bound of the bucket holding it.
+     *
+     * @param percentile in (0, 100]
+     * @return the percentile, or 0 if the histogram is empty
+     */
+    public long getPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile out of range: " + percentile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Halves all counts, rounding down, so that the values added so far weigh half as much as the ones added from now
+     * on. The max stays, unless no value is left.
+     */
+    public void decay() {
+        count = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts[bucket] >>= 1;
+            count += counts[bucket];
+        }
+        if (count == 0) {
+            max = 0;
+        }
+    }
+
+    /**
+     * Compact text form for persisting: the max, then bucket and count of each non-empty bucket.
+     */
+    public String encode() {
+        StringBuilder encoded = new StringBuilder().append(max);
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            if (counts[bucket] > 0) {
+                encoded.append(';').append(bucket).append(':').append(counts[bucket]);
+            }
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code encoded} did not come from {@link #encode()}
+     */
+    public static LatencyHistogram decode(String encoded) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        try {
+            String[] parts = encoded.split(";");
+            histogram.max = Long.parseLong(parts[0]);
+            for (int i = 1; i < parts.length; i++) {
+                int separator = parts[i].indexOf(':');
+                int bucket = Integer.parseInt(parts[i].substring(0, separator));
+                long bucketCount = Long.parseLong(parts[i].substring(separator + 1));
+                histogram.counts[bucket] = bucketCount;
+                histogram.count += bucketCount;
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Not an encoded histogram: " + encoded, e);
+        }
+        return histogram;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long nextLowerBound = (long) (SUB_BUCKETS + subBucket + 1) << shift;
+        // the last bucket ends at Long.MAX_VALUE, where the shift overflows
+        return nextLowerBound <= 0 ? Long.MAX_VALUE : nextLowerBound - 1;
+    }
+}
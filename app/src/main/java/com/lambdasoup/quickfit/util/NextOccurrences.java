@@ -0,0 +1,260 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.util;
+
+import com.lambdasoup.quickfit.model.DayOfWeek;
+import com.lambdasoup.quickfit.model.DaysOfWeek;
+import com.lambdasoup.quickfit.model.Recurrence;
+
+import java.util.TimeZone;
+
+/**
+ * Next occurrence of a wall clock time, on one or several days of the week or by a {@link Recurrence}, in one time
+ * zone, computed arithmetically from the zone's offsets. Keeps the span around the last lookup in which the offset
+ * stays the same, found from {@link TimeZone#getOffset(long)}, so that repeated calls for about the same time neither
+ * ask the time zone again nor allocate.
+ * <p>
+ * Occurrences fall on the full minute. Around daylight saving time transitions:
+ * <ul>
+ * <li>A wall time skipped by the transition, like 02:30 when clocks go from 02:00 to 03:00, is taken with the offset
+ * from before the transition; that is 03:30 in the example. This is also how a lenient {@link java.util.Calendar}
+ * resolves it.</li>
+ * <li>A wall time that happens twice, like 02:30 when clocks go from 03:00 back to 02:00, occurs only the first
+ * time.</li>
+ * </ul>
+ * Assumes at most one offset transition within two days, which holds for all zones in the tz database.
+ * <p>
+ * Thread safe.
+ */
+public class NextOccurrences {
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    // 1970-01-01 was a Thursday
+    private static final int EPOCH_DAY_OF_WEEK = 4; // days after Sunday
+    // how far to look for transitions around a lookup; covers all lookups for one occurrence
+    private static final int SPAN_DAYS = 14;
+
+    private final TimeZone timeZone;
+    private volatile OffsetSpan span = new OffsetSpan(0, 0, 0);
+
+    public NextOccurrences(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * @return the first instant after {@code now} at which the wall clock shows {@code hour}:{@code minute} on
+     * {@code dayOfWeek}
+     */
+    public long getNextOccurrence(long now, DayOfWeek dayOfWeek, int hour, int minute) {
+        return getNextOccurrence(now, DaysOfWeek.bit(dayOfWeek), hour, minute);
+    }
+
+    /**
+     * @return the first instant after {@code now} at which the wall clock shows {@code hour}:{@code minute} on one of
+     * {@code daysOfWeek}
+     * @throws IllegalArgumentException if {@code daysOfWeek} is empty
+     */
+    public long getNextOccurrence(long now, DaysOfWeek daysOfWeek, int hour, int minute) {
+        if (daysOfWeek.isEmpty()) {
+            throw new IllegalArgumentException("No days of week to occur on");
+        }
+        return getNextOccurrence(now, daysOfWeek.getMask(), hour, minute);
+    }
+
+    /**
+     * @return the first instant after {@code now} at which the wall clock shows {@code hour}:{@code minute} on a day
+     * of {@code recurrence}
+     */
+    public long getNextOccurrence(long now, Recurrence recurrence, int hour, int minute) {
+        if (recurrence.getUnit() == Recurrence.Unit.DAYS) {
+            return getNextOccurrenceEveryDays(now, recurrence.getInterval(), recurrence.getFromDay(), hour, minute);
+        }
+        long occurrence = getNextOccurrence(now, recurrence.getDaysOfWeek().getMask(), hour, minute);
+        if (recurrence.isWeekly()) {
+            return occurrence;
+        }
+        long day = localDay(occurrence);
+        long week = floorDiv(day - recurrence.getFromDay(), 7);
+        int weeksBehind = floorMod(week, recurrence.getInterval());
+        if (weeksBehind == 0) {
+            return occurrence;
+        }
+        // the first day in the mask in the next week to occur in, which starts after now
+        long weekStart = recurrence.getFromDay() + (week + recurrence.getInterval() - weeksBehind) * 7;
+        int mask = recurrence.getDaysOfWeek().getMask();
+        return toInstant((weekStart + daysAhead(weekStart, mask)) * DAY + hour * HOUR + minute * MINUTE);
+    }
+
+    private long getNextOccurrence(long now, int mask, int hour, int minute) {
+        long localDay = localDay(now);
+        int daysAhead = daysAhead(localDay, mask);
+        long timeOfDay = hour * HOUR + minute * MINUTE;
+
+        long occurrence = toInstant((localDay + daysAhead) * DAY + timeOfDay);
+        if (occurrence <= now) {
+            // the next day in the mask after that one, or the same one a week later
+            int later = rotate(localDay, mask) & (-2 << daysAhead);
+            daysAhead = later == 0 ? daysAhead + 7 : Integer.numberOfTrailingZeros(later);
+            occurrence = toInstant((localDay + daysAhead) * DAY + timeOfDay);
+        }
+        return occurrence;
+    }
+
+    private long getNextOccurrenceEveryDays(long now, int days, long fromDay, int hour, int minute) {
+        long localDay = localDay(now);
+        long day = localDay + floorMod(fromDay - localDay, days);
+        long timeOfDay = hour * HOUR + minute * MINUTE;
+
+        long occurrence = toInstant(day * DAY + timeOfDay);
+        if (occurrence <= now) {
+            occurrence = toInstant((day + days) * DAY + timeOfDay);
+        }
+        return occurrence;
+    }
+
+    /**
+     * @return the day shown by the wall clock at {@code instant}, as days since 1970-01-01
+     */
+    private long localDay(long instant) {
+        return floorDiv(instant + getOffset(instant), DAY);
+    }
+
+    /**
+     * @return how many days after {@code localDay} the first day in {@code mask} is, {@code localDay} itself included
+     */
+    private static int daysAhead(long localDay, int mask) {
+        return Integer.numberOfTrailingZeros(rotate(localDay, mask));
+    }
+
+    /**
+     * @return {@code mask} rotated so that bit 0 is {@code localDay}, bit 1 the day after and so on
+     */
+    private static int rotate(long localDay, int mask) {
+        int today = calendarDayOfWeek(localDay) - 1;
+        return ((mask >>> today) | (mask << (7 - today))) & DaysOfWeek.ALL;
+    }
+
+    /**
+     * @param local milliseconds since the epoch as shown by the wall clock
+     */
+    private long toInstant(long local) {
+        int offsetBefore = getOffset(local - DAY);
+        int offsetAfter = getOffset(local + DAY);
+        long instantBefore = local - offsetBefore;
+        if (offsetBefore == offsetAfter) {
+            return instantBefore;
+        }
+
+        long instantAfter = local - offsetAfter;
+        boolean validBefore = getOffset(instantBefore) == offsetBefore;
+        boolean validAfter = getOffset(instantAfter) == offsetAfter;
+        if (validBefore && validAfter) {
+            // overlap: the first time
+            return Math.min(instantBefore, instantAfter);
+        }
+        if (validAfter) {
+            return instantAfter;
+        }
+        // valid before the transition, or a gap: with the offset from before
+        return instantBefore;
+    }
+
+    int getOffset(long instant) {
+        OffsetSpan span = this.span;
+        if (instant < span.from || instant >= span.until) {
+            span = findSpan(instant);
+            this.span = span;
+        }
+        return span.offset;
+    }
+
+    /**
+     * Steps away from {@code instant} a day at a time until the offset changes, then bisects down to the millisecond.
+     */
+    private OffsetSpan findSpan(long instant) {
+        int offset = timeZone.getOffset(instant);
+
+        long from = instant;
+        for (int day = 0; day < SPAN_DAYS; day++) {
+            if (timeZone.getOffset(from - DAY) != offset) {
+                from = bisect(from - DAY, from);
+                break;
+            }
+            from -= DAY;
+        }
+
+        long until = instant;
+        for (int day = 0; day < SPAN_DAYS; day++) {
+            if (timeZone.getOffset(until + DAY) != offset) {
+                until = bisect(until, until + DAY);
+                break;
+            }
+            until += DAY;
+        }
+
+        return new OffsetSpan(from, until, offset);
+    }
+
+    /**
+     * @return the first instant after {@code low} with the offset of {@code high}
+     */
+    private long bisect(long low, long high) {
+        int highOffset = timeZone.getOffset(high);
+        while (high - low > 1) {
+            long middle = low + (high - low) / 2;
+            if (timeZone.getOffset(middle) == highOffset) {
+                high = middle;
+            } else {
+                low = middle;
+            }
+        }
+        return high;
+    }
+
+    private static int calendarDayOfWeek(long epochDay) {
+        // Calendar.SUNDAY is 1
+        return floorMod(epochDay + EPOCH_DAY_OF_WEEK, 7) + 1;
+    }
+
+    // Math.floorDiv and Math.floorMod need API level 24
+
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        return (dividend % divisor < 0) ? quotient - 1 : quotient;
+    }
+
+    private static int floorMod(long dividend, int divisor) {
+        int remainder = (int) (dividend % divisor);
+        return remainder < 0 ? remainder + divisor : remainder;
+    }
+
+    /**
+     * Instants from {@link #from} inclusive to {@link #until} exclusive have the same {@link #offset}.
+     */
+    private static class OffsetSpan {
+        final long from;
+        final long until;
+        final int offset;
+
+        OffsetSpan(long from, long until, int offset) {
+            this.from = from;
+            this.until = until;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import timber.log.Timber;
+
+/**
+ * Runs tasks with the same key one after the other, in the order they were submitted, and tasks with different keys
+ * in parallel on the given executor. Keeps no state for keys without pending tasks. A task that throws is logged and
+ * does not hold up the tasks queued after it.
+ * <p>
+ * Thread safe.
+ */
+public class StripedExecutor {
+    private final Executor executor;
+    // tasks waiting for the running one, by key; a key is present exactly while a task for it is running
+    private final Map<Long, ArrayDeque<Runnable>> pending = new HashMap<>();
+
+    public StripedExecutor(@NonNull Executor executor) {
+        this.executor = executor;
+    }
+
+    public void execute(long key, @NonNull Runnable task) {
+        synchronized (pending) {
+            ArrayDeque<Runnable> queue = pending.get(key);
+            if (queue != null) {
+                queue.add(task);
+                return;
+            }
+            pending.put(key, new ArrayDeque<>());
+        }
+        executor.execute(() -> run(key, task));
+    }
+
+    private void run(long key, Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            Timber.e(e, "Task for key %d failed", key);
+        } finally {
+            runNext(key);
+        }
+    }
+
+    private void runNext(long key) {
+        Runnable next;
+        synchronized (pending) {
+            //noinspection ConstantConditions
+            next = pending.get(key).poll();
+            if (next == null) {
+                pending.remove(key);
+                return;
+            }
+        }
+        executor.execute(() -> run(key, next));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016-2019 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.lambdasoup.quickfit.util
+
+import java.io.PrintWriter
+
+/**
+ * Accounting of the wake locks held by the app, by tag: how long each was held from acquire to release, how many ran
+ * into their timeout, how many releases found no wake lock to release, and the held time in total. In memory, since
+ * the start of the process, and bounded: at most [MAX_TAGS] tags, each with a fixed size [LatencyHistogram], plus the
+ * wake locks currently held.
+ *
+ * A wake lock that is not released before its timeout counts as held for exactly the timeout, which is when the system
+ * released it.
+ *
+ * Thread safe.
+ *
+ * @param clock elapsed realtime
+ */
+class WakeLockAccounting(private val clock: () -> Long) {
+    private val stats = LinkedHashMap<String, TagStats>()
+    private val held = HashMap<Long, Hold>()
+    private var nextToken = 1L
+
+    /**
+     * @return token to pass to [released]
+     */
+    @Synchronized
+    fun acquired(tag: String, timeoutMillis: Long): Long {
+        val now = clock()
+        expire(now)
+        val token = nextToken++
+        held[token] = Hold(statsFor(tag), now, timeoutMillis)
+        return token
+    }
+
+    @Synchronized
+    fun released(token: Long) {
+        val now = clock()
+        val hold = held.remove(token) ?: return
+        hold.stats.add(now - hold.acquiredAt, hold.timeoutMillis)
+    }
+
+    /**
+     * Counts a release for which no wake lock was found.
+     */
+    @Synchronized
+    fun orphaned(tag: String) {
+        statsFor(tag).orphaned++
+    }
+
+    @Synchronized
+    fun snapshot(): List<TagSnapshot> {
+        expire(clock())
+        return stats.map { (tag, tagStats) -> tagStats.snapshot(tag) }
+    }
+
+    fun dump(writer: PrintWriter) {
+        val snapshot = snapshot()
+        writer.println("Wake locks, since process start:")
+        if (snapshot.isEmpty()) {
+            writer.println("  none")
+        }
+        for (tag in snapshot) {
+            writer.println("  $tag")
+        }
+    }
+
+    private fun expire(now: Long) {
+        val iterator = held.values.iterator()
+        while (iterator.hasNext()) {
+            val hold = iterator.next()
+            if (now - hold.acquiredAt >= hold.timeoutMillis) {
+                hold.stats.add(hold.timeoutMillis, hold.timeoutMillis)
+                iterator.remove()
+            }
+        }
+    }
+
+    private fun statsFor(tag: String): TagStats =
+            stats[tag] ?: if (stats.size < MAX_TAGS - 1) {
+                TagStats().also { stats[tag] = it }
+            } else {
+                stats.getOrPut(TAG_OTHER) { TagStats() }
+            }
+
+    private class Hold(val stats: TagStats, val acquiredAt: Long, val timeoutMillis: Long)
+
+    private class TagStats {
+        val holdTimes = LatencyHistogram()
+        var totalHeldMillis = 0L
+        var timeouts = 0
+        var orphaned = 0
+
+        fun add(heldMillis: Long, timeoutMillis: Long) {
+            val effective = minOf(heldMillis, timeoutMillis)
+            holdTimes.add(effective)
+            totalHeldMillis += effective
+            if (heldMillis >= timeoutMillis) {
+                timeouts++
+            }
+        }
+
+        fun snapshot(tag: String) = TagSnapshot(
+                tag,
+                holdTimes.count,
+                totalHeldMillis,
+                holdTimes.getPercentile(50.0),
+                holdTimes.getPercentile(90.0),
+                holdTimes.getPercentile(99.0),
+                holdTimes.max,
+                timeouts,
+                orphaned
+        )
+    }
+
+    companion object {
+        const val MAX_TAGS = 32
+        /** Collects all tags beyond [MAX_TAGS]. */
+        const val TAG_OTHER = "other"
+    }
+}
+
+data class TagSnapshot(
+        val tag: String,
+        val count: Long,
+        val totalHeldMillis: Long,
+        val p50: Long,
+        val p90: Long,
+        val p99: Long,
+        val max: Long,
+        val timeouts: Int,
+        val orphaned: Int
+)
@@ -21,6 +21,7 @@ import android.content.Context
 import android.content.Intent
 import android.os.Build
 import android.os.PowerManager
+import android.os.SystemClock
 import android.util.SparseArray
 import timber.log.Timber
 import java.util.concurrent.TimeUnit
@@ -36,9 +37,21 @@ import java.util.concurrent.TimeUnit
 object WakefulIntents {
     private const val EXTRA_WAKE_LOCK_ID = "com.lambdasoup.quickfit.util.WakefulBroadcastReceiver.WAKE_LOCK_ID"
 
-    private val activeWakeLocks = SparseArray<PowerManager.WakeLock>()
+    private val WAKE_LOCK_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60)
+
+    private val activeWakeLocks = SparseArray<ActiveWakeLock>()
     private var nextId = 1
 
+    /**
+     * All wake locks held by the app, for diagnostics.
+     */
+    val accounting = WakeLockAccounting(SystemClock::elapsedRealtime)
+
+    /**
+     * Tag for [accounting]: what a wake lock is held for, and by which component.
+     */
+    fun accountingTag(holder: String, intent: Intent) = "$holder ${intent.action?.substringAfterLast('.')}"
+
     fun startWakefulForegroundService(context: Context, intent: Intent) {
         synchronized(activeWakeLocks) {
             val id = nextId
@@ -69,8 +82,8 @@ object WakefulIntents {
                             "com.lambdasoup.quickfit:wake:" + componentName.flattenToShortString()
                     )
             wl.setReferenceCounted(false)
-            wl.acquire(TimeUnit.SECONDS.toMillis(60))
-            activeWakeLocks.put(id, wl)
+            wl.acquire(WAKE_LOCK_TIMEOUT_MILLIS)
+            activeWakeLocks.put(id, ActiveWakeLock(wl, accounting.acquired(accountingTag("wakeful", intent), WAKE_LOCK_TIMEOUT_MILLIS)))
         }
     }
 
@@ -81,19 +94,23 @@ object WakefulIntents {
         }
 
         synchronized(activeWakeLocks) {
-            val wl = activeWakeLocks[id]
+            val active = activeWakeLocks[id]
 
-            if (wl == null) {
+            if (active == null) {
                 // We just log a warning here if there is no wake lock found, which could
                 // happen for example if this function is called twice on the same
                 // intent or the process is killed and restarted before processing the intent.
                 Timber.w("No active wake lock id #$id")
+                accounting.orphaned(accountingTag("wakeful", intent))
 
                 return
             }
 
-            wl.release()
+            active.wakeLock.release()
+            accounting.released(active.accountingToken)
             activeWakeLocks.remove(id)
         }
     }
+
+    private class ActiveWakeLock(val wakeLock: PowerManager.WakeLock, val accountingToken: Long)
 }
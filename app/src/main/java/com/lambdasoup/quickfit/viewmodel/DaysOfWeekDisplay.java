@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.viewmodel;
+
+import android.content.res.Resources;
+import androidx.annotation.NonNull;
+
+import com.lambdasoup.quickfit.R;
+import com.lambdasoup.quickfit.model.DayOfWeek;
+import com.lambdasoup.quickfit.model.DaysOfWeek;
+import com.lambdasoup.quickfit.model.Recurrence;
+import com.lambdasoup.quickfit.util.Strings;
+
+import java.text.DateFormatSymbols;
+import java.util.List;
+
+import static com.lambdasoup.quickfit.util.Lists.map;
+
+/**
+ * Display names for sets of days of the week: a single day by its full name, the common sets by their names, and
+ * everything else as short day names in the order of the week. Recurrences other than weekly add their interval.
+ */
+public class DaysOfWeekDisplay {
+    private static final DaysOfWeek WEEKDAYS = DaysOfWeek.of(
+            DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY, DayOfWeek.FRIDAY);
+    private static final DaysOfWeek WEEKENDS = DaysOfWeek.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY);
+
+    private DaysOfWeekDisplay() {
+        // do not instantiate
+    }
+
+    @NonNull
+    public static String format(@NonNull Resources resources, @NonNull Recurrence recurrence) {
+        return format(resources, recurrence, DayOfWeek.getWeek());
+    }
+
+    @NonNull
+    public static String format(@NonNull Resources resources, @NonNull Recurrence recurrence, @NonNull DayOfWeek[] week) {
+        int interval = recurrence.getInterval();
+        if (recurrence.getUnit() == Recurrence.Unit.DAYS) {
+            return resources.getQuantityString(R.plurals.every_n_days, interval, interval);
+        }
+        String days = format(resources, recurrence.getDaysOfWeek(), week);
+        if (recurrence.isWeekly()) {
+            return days;
+        }
+        return resources.getQuantityString(R.plurals.days_every_n_weeks_format, interval, days, interval);
+    }
+
+    @NonNull
+    public static String format(@NonNull Resources resources, @NonNull DaysOfWeek daysOfWeek) {
+        return format(resources, daysOfWeek, DayOfWeek.getWeek());
+    }
+
+    @NonNull
+    public static String format(@NonNull Resources resources, @NonNull DaysOfWeek daysOfWeek, @NonNull DayOfWeek[] week) {
+        if (daysOfWeek.getMask() == DaysOfWeek.ALL) {
+            return resources.getString(R.string.every_day);
+        }
+        if (daysOfWeek.equals(WEEKDAYS)) {
+            return resources.getString(R.string.weekdays);
+        }
+        if (daysOfWeek.equals(WEEKENDS)) {
+            return resources.getString(R.string.weekends);
+        }
+        List<DayOfWeek> days = daysOfWeek.inOrder(week);
+        if (days.size() == 1) {
+            return resources.getString(days.get(0).fullNameResId);
+        }
+        // indexed by the Calendar constants, in the default locale like the full names
+        String[] shortNames = DateFormatSymbols.getInstance().getShortWeekdays();
+        return Strings.join(", ", map(days, day -> shortNames[day.calendarConst]));
+    }
+}
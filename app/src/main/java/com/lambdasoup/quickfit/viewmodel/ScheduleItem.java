@@ -19,10 +19,11 @@ package com.lambdasoup.quickfit.viewmodel;
 import androidx.annotation.NonNull;
 
 import com.lambdasoup.quickfit.model.DayOfWeek;
+import com.lambdasoup.quickfit.model.DaysOfWeek;
+import com.lambdasoup.quickfit.model.Recurrence;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Comparator;
 
@@ -31,7 +32,11 @@ import java.util.Comparator;
  */
 public class ScheduleItem {
     final public long id;
-    final public DayOfWeek dayOfWeek;
+    final public Recurrence recurrence;
+    /**
+     * Those of {@link #recurrence}.
+     */
+    final public DaysOfWeek daysOfWeek;
     final public String time;
     final public int minute;
     final public int hour;
@@ -39,19 +44,27 @@ public class ScheduleItem {
     /**
      * For use by testing and Builder
      * @param id
-     * @param dayOfWeek
+     * @param recurrence
      * @param time
      * @param minute
      * @param hour
      */
-    ScheduleItem(long id, DayOfWeek dayOfWeek, String time, int minute, int hour) {
+    ScheduleItem(long id, Recurrence recurrence, String time, int minute, int hour) {
         this.id = id;
-        this.dayOfWeek = dayOfWeek;
+        this.recurrence = recurrence;
+        this.daysOfWeek = recurrence.getDaysOfWeek();
         this.time = time;
         this.minute = minute;
         this.hour = hour;
     }
 
+    /**
+     * For use by testing, repeating weekly
+     */
+    ScheduleItem(long id, DaysOfWeek daysOfWeek, String time, int minute, int hour) {
+        this(id, Recurrence.weekly(daysOfWeek), time, minute, hour);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -63,7 +76,7 @@ public class ScheduleItem {
         if (minute != that.minute) return false;
         if (hour != that.hour) return false;
         //noinspection SimplifiableIfStatement
-        if (dayOfWeek != that.dayOfWeek) return false;
+        if (recurrence != null ? !recurrence.equals(that.recurrence) : that.recurrence != null) return false;
         return !(time != null ? !time.equals(that.time) : that.time != null);
 
     }
@@ -71,7 +84,7 @@ public class ScheduleItem {
     @Override
     public int hashCode() {
         int result = (int) (id ^ (id >>> 32));
-        result = 31 * result + (dayOfWeek != null ? dayOfWeek.hashCode() : 0);
+        result = 31 * result + (recurrence != null ? recurrence.hashCode() : 0);
         result = 31 * result + (time != null ? time.hashCode() : 0);
         result = 31 * result + minute;
         result = 31 * result + hour;
@@ -81,13 +94,16 @@ public class ScheduleItem {
     @Override
     public String toString() {
         return "ScheduleItem{" + "id=" + id +
-                ", dayOfWeek=" + dayOfWeek +
+                ", recurrence=" + recurrence +
                 ", time='" + time + '\'' +
                 ", minute=" + minute +
                 ", hour=" + hour +
                 '}';
     }
 
+    /**
+     * Orders by the first day in the week, then by time, then by the remaining days.
+     */
     public static class ByCalendar implements Comparator<ScheduleItem> {
         private final DayOfWeek[] week;
 
@@ -97,31 +113,41 @@ public class ScheduleItem {
 
         @Override
         public int compare(ScheduleItem left, ScheduleItem right) {
+            int byFirstDay = Integer.compare(firstDay(left), firstDay(right));
+            if (byFirstDay != 0) {
+                return byFirstDay;
+            }
+            if (left.hour != right.hour) {
+                return Integer.compare(left.hour, right.hour);
+            }
+            if (left.minute != right.minute) {
+                return Integer.compare(left.minute, right.minute);
+            }
             for (DayOfWeek dayOfWeek : week) {
-                if (dayOfWeek == left.dayOfWeek) {
-                    if (dayOfWeek == right.dayOfWeek) {
-                        // compare times
-                        if (left.hour < right.hour) {
-                            return -1;
-                        } else if (left.hour > right.hour) {
-                            return 1;
-                        } else {
-                            return Integer.compare(left.minute, right.minute);
-                        }
-                    } else {
-                        return -1;
-                    }
-                } else if (dayOfWeek == right.dayOfWeek) {
-                    return 1;
+                boolean inLeft = left.daysOfWeek.contains(dayOfWeek);
+                if (inLeft != right.daysOfWeek.contains(dayOfWeek)) {
+                    return inLeft ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+
+        private int firstDay(ScheduleItem item) {
+            for (int i = 0; i < week.length; i++) {
+                if (item.daysOfWeek.contains(week[i])) {
+                    return i;
                 }
             }
-            throw new IllegalStateException("The week seems to be missing days. Week is: " + Arrays.toString(week) + ", trying to find " + left.dayOfWeek + " and " + right.dayOfWeek);
+            return week.length;
         }
     }
 
     public static class Builder {
         private long scheduleId;
-        private String dayOfWeekName;
+        private int daysOfWeekMask;
+        private Recurrence.Unit repeatUnit = Recurrence.Unit.WEEKS;
+        private int repeatInterval = 1;
+        private long repeatFromDay;
         private int minute;
         private int hour;
 
@@ -135,11 +161,9 @@ public class ScheduleItem {
             time.set(Calendar.SECOND, 0); // seconds should not be shown, but just in case
             String timeFormatted = SimpleDateFormat.getTimeInstance(DateFormat.SHORT).format(time.getTime());
 
-            DayOfWeek dayOfWeek = DayOfWeek.valueOf(dayOfWeekName);
-
             return new ScheduleItem(
                     scheduleId,
-                    dayOfWeek,
+                    Recurrence.of(DaysOfWeek.fromMask(daysOfWeekMask), repeatUnit, repeatInterval, repeatFromDay),
                     timeFormatted,
                     minute,
                     hour
@@ -161,8 +185,18 @@ public class ScheduleItem {
             return this;
         }
 
-        public Builder withDayOfWeekName(String dayOfWeekName) {
-            this.dayOfWeekName = dayOfWeekName;
+        public Builder withDaysOfWeekMask(int daysOfWeekMask) {
+            this.daysOfWeekMask = daysOfWeekMask;
+            return this;
+        }
+
+        /**
+         * @param unit name of a {@link Recurrence.Unit}, as persisted
+         */
+        public Builder withRepeat(String unit, int interval, long fromDay) {
+            this.repeatUnit = Recurrence.Unit.valueOf(unit);
+            this.repeatInterval = interval;
+            this.repeatFromDay = fromDay;
             return this;
         }
     }
@@ -85,14 +85,14 @@ public class WorkoutItem {
 
             Collections.sort(scheduleItems, new ScheduleItem.ByCalendar(week));
 
-            String schedulesDisplay = Strings.join(", ", map(scheduleItems, this::formatScheduleShort));
+            String schedulesDisplay = Strings.join(", ", map(scheduleItems, item -> formatScheduleShort(item, week)));
             return new WorkoutItem(workoutId, fitActivity, durationInMinutes, calories, label, schedulesDisplay);
         }
 
-        private String formatScheduleShort(ScheduleItem scheduleItem) {
+        private String formatScheduleShort(ScheduleItem scheduleItem, DayOfWeek[] week) {
             Resources resources = context.getResources();
-            String dayOfWeek = resources.getString(scheduleItem.dayOfWeek.fullNameResId);
-            return resources.getString(R.string.weekday_time_format, dayOfWeek, scheduleItem.time);
+            String days = DaysOfWeekDisplay.format(resources, scheduleItem.recurrence, week);
+            return resources.getString(R.string.weekday_time_format, days, scheduleItem.time);
         }
 
         public void addSchedule(ScheduleItem scheduleItem) {
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.lambdasoup.quickfit.alarm;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.lambdasoup.quickfit.persist.QuickFitContract.ScheduleEntry.CURRENT_STATE_ACKNOWLEDGED;
+import static com.lambdasoup.quickfit.persist.QuickFitContract.ScheduleEntry.CURRENT_STATE_DISPLAYING;
+import static com.lambdasoup.quickfit.persist.QuickFitContract.ScheduleEntry.CURRENT_STATE_SNOOZED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AlarmReconciler}.
+ */
+public class AlarmReconcilerTest {
+    private static final long NOW = 1467370800000L;
+    private static final long NEXT = NOW + 1000000;
+
+    private static List<ReconcileAction> plan(ReconcileRow... rows) {
+        return AlarmReconciler.INSTANCE.plan(Arrays.asList(rows), NOW, scheduleId -> NEXT + scheduleId);
+    }
+
+    @Test
+    public void notYetScheduled() {
+        List<ReconcileAction> actions = plan(new ReconcileRow(1, null, CURRENT_STATE_ACKNOWLEDGED));
+
+        assertEquals(Collections.singletonList(new ReconcileAction(1, false, NEXT + 1, CURRENT_STATE_ACKNOWLEDGED)), actions);
+    }
+
+    @Test
+    public void missedAlarmIsShownAndMovesOn() {
+        List<ReconcileAction> actions = plan(new ReconcileRow(1, NOW - 1, CURRENT_STATE_ACKNOWLEDGED));
+
+        assertEquals(Collections.singletonList(new ReconcileAction(1, true, NEXT + 1, CURRENT_STATE_DISPLAYING)), actions);
+    }
+
+    @Test
+    public void displayingIsShownAgain() {
+        List<ReconcileAction> actions = plan(new ReconcileRow(1, NOW + 1, CURRENT_STATE_DISPLAYING));
+
+        assertEquals(Collections.singletonList(new ReconcileAction(1, true, NEXT + 1, CURRENT_STATE_DISPLAYING)), actions);
+    }
+
+    @Test
+    public void futureAlarmOnlyReRegistered() {
+        List<ReconcileAction> actions = plan(new ReconcileRow(1, NOW + 1, CURRENT_STATE_SNOOZED));
+
+        assertEquals(Collections.singletonList(new ReconcileAction(1, false, NOW + 1, null)), actions);
+    }
+
+    @Test
+    public void alarmWithinToleranceIsCoalesced() {
+        long tolerance = 60000;
+        List<ReconcileAction> actions = AlarmReconciler.INSTANCE.plan(
+                Arrays.asList(
+                        new ReconcileRow(1, NOW, CURRENT_STATE_ACKNOWLEDGED),
+                        new ReconcileRow(2, NOW + tolerance / 2, CURRENT_STATE_ACKNOWLEDGED),
+                        new ReconcileRow(3, NOW + 2 * tolerance, CURRENT_STATE_ACKNOWLEDGED)
+                ),
+                NOW + tolerance,
+                scheduleId -> NEXT + scheduleId
+        );
+
+        assertTrue(actions.get(0).getNotify());
+        assertTrue(actions.get(1).getNotify());
+        assertEquals(new ReconcileAction(3, false, NOW + 2 * tolerance, null), actions.get(2));
+    }
+
+    @Test
+    public void onePassOverAll() {
+        List<ReconcileAction> actions = plan(
+                new ReconcileRow(1, NOW + 1, CURRENT_STATE_ACKNOWLEDGED),
+                new ReconcileRow(2, null, CURRENT_STATE_ACKNOWLEDGED),
+                new ReconcileRow(3, NOW, CURRENT_STATE_ACKNOWLEDGED)
+        );
+
+        assertEquals(3, actions.size());
+        assertEquals(1, actions.get(0).getScheduleId());
+        assertEquals(2, actions.get(1).getScheduleId());
+        assertEquals(3, actions.get(2).getScheduleId());
+        // only rows whose state changes need a write
+        assertNull(actions.get(0).getNewState());
+        assertTrue(actions.get(2).getNotify());
+    }
+}
@@ -0,0 +1,598 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.alarm;
+
+import com.lambdasoup.quickfit.model.DaysOfWeek;
+import com.lambdasoup.quickfit.model.Recurrence;
+import com.lambdasoup.quickfit.persist.FakeClock;
+import com.lambdasoup.quickfit.persist.QuickFitContract.AlarmOutboxEntry;
+import com.lambdasoup.quickfit.util.NextOccurrences;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays schedules through {@link Alarms} on a virtual clock, in as little real time as the bookkeeping takes. The
+ * system alarm goes off exactly when it is set for, or anywhere within its window; a simulated user reacts to the
+ * notifications by doing the workout, snoozing, dismissing or ignoring them; the device reboots and changes time zones
+ * at random, and the process may die between recording a reaction in the outbox and applying it. Schedules may get
+ * edited in bursts, with the rescheduling debounced the way {@link RescheduleWorker} does it.
+ * <p>
+ * Runs in single alarm mode unless {@link #withPerScheduleAlarms()} is used; per-schedule alarms go off the way
+ * {@link AlarmReceiver} handles them, showing the notification before the bookkeeping.
+ * <p>
+ * Throws an {@link AssertionError} as soon as, with the device on, the system alarms are not set for the next alarms of
+ * the schedules, or a schedule has a next alarm that should have been delivered already. Everything else is left to the
+ * {@link Report}.
+ * <p>
+ * Random choices are drawn from a seeded source, so that a run can be repeated.
+ */
+public class AlarmSimulator {
+    public static final long TOLERANCE_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    public static final long SNOOZE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long MAX_REACTION_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final long RESCHEDULE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(3);
+    private static final long MAX_EDIT_PAUSE_MILLIS = TimeUnit.SECONDS.toMillis(2);
+
+    private final FakeClock clock;
+    private final Random random;
+    private final InMemoryAlarmStore store = new InMemoryAlarmStore();
+    private final InMemoryAlarmOutbox outbox = new InMemoryAlarmOutbox();
+    private final FakeAlarmBackend alarmBackend;
+    private final FakeNotificationBackend notificationBackend;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final Set<String> sessionKeys = new HashSet<>();
+    private final Map<Long, Long> lastPostedAt = new HashMap<>();
+    private final Map<Long, Long> offMillisAtLastPost = new HashMap<>();
+
+    private TimeZone timeZone;
+    private Alarms alarms;
+    private boolean on = true;
+    private int seenPosts;
+    private int eventSequence;
+
+    private double didItShare = 1;
+    private double snoozeShare;
+    private double dismissShare;
+    private double rebootsPerDay;
+    private long maxOffMillis;
+    private double timeZoneChangesPerDay;
+    private List<TimeZone> timeZones;
+    private long alarmWindowMillis;
+    private double processDeathShare;
+    private double editBurstsPerDay;
+    private int editsPerBurst;
+    private long rescheduleAt = -1;
+    private boolean singleAlarm = true;
+    private double recorderFailureShare;
+
+    private final Report report = new Report();
+
+    public AlarmSimulator(long start, TimeZone timeZone, long seed) {
+        this.clock = new FakeClock(start);
+        this.timeZone = timeZone;
+        this.random = new Random(seed);
+        this.notificationBackend = new FakeNotificationBackend(clock);
+        this.alarmBackend = new FakeAlarmBackend(random);
+    }
+
+    /**
+     * How the user reacts to a notification; the rest of the notifications is ignored until the next alarm of the
+     * schedule replaces them.
+     */
+    public AlarmSimulator withUser(double didItShare, double snoozeShare, double dismissShare) {
+        this.didItShare = didItShare;
+        this.snoozeShare = snoozeShare;
+        this.dismissShare = dismissShare;
+        return this;
+    }
+
+    /**
+     * Reboots on the given share of days, with the device staying off for up to {@code maxOffMillis}.
+     */
+    public AlarmSimulator withReboots(double rebootsPerDay, long maxOffMillis) {
+        this.rebootsPerDay = rebootsPerDay;
+        this.maxOffMillis = maxOffMillis;
+        return this;
+    }
+
+    /**
+     * Moves to one of the given time zones on the given share of days.
+     */
+    public AlarmSimulator withTimeZoneChanges(double timeZoneChangesPerDay, TimeZone... timeZones) {
+        this.timeZoneChangesPerDay = timeZoneChangesPerDay;
+        this.timeZones = Arrays.asList(timeZones);
+        return this;
+    }
+
+    /**
+     * Uses windowed alarms instead of exact ones.
+     */
+    public AlarmSimulator withAlarmWindow(long alarmWindowMillis) {
+        this.alarmWindowMillis = alarmWindowMillis;
+        return this;
+    }
+
+    /**
+     * Lets the process die on the given share of user reactions, after recording the reaction in the outbox and before
+     * applying it.
+     */
+    public AlarmSimulator withProcessDeaths(double processDeathShare) {
+        this.processDeathShare = processDeathShare;
+        return this;
+    }
+
+    /**
+     * Edits day and time of random schedules on the given share of days, {@code editsPerBurst} times in a row with
+     * pauses shorter than the rescheduling delay.
+     */
+    public AlarmSimulator withEditBursts(double editBurstsPerDay, int editsPerBurst) {
+        this.editBurstsPerDay = editBurstsPerDay;
+        this.editsPerBurst = editsPerBurst;
+        return this;
+    }
+
+    /**
+     * Sets one system alarm per schedule, instead of the single one for the earliest.
+     */
+    public AlarmSimulator withPerScheduleAlarms() {
+        this.singleAlarm = false;
+        return this;
+    }
+
+    /**
+     * Lets recording the session of a did-it throw on the given share of attempts.
+     */
+    public AlarmSimulator withFailingRecorder(double recorderFailureShare) {
+        this.recorderFailureShare = recorderFailureShare;
+        return this;
+    }
+
+    public void addSchedule(long scheduleId, DaysOfWeek daysOfWeek, int hour, int minute) {
+        addSchedule(scheduleId, Recurrence.weekly(daysOfWeek), hour, minute);
+    }
+
+    public void addSchedule(long scheduleId, Recurrence recurrence, int hour, int minute) {
+        store.add(scheduleId, recurrence, hour, minute);
+        lastPostedAt.put(scheduleId, clock.now());
+        offMillisAtLastPost.put(scheduleId, 0L);
+    }
+
+    public InMemoryAlarmStore getStore() {
+        return store;
+    }
+
+    public FakeNotificationBackend getNotificationBackend() {
+        return notificationBackend;
+    }
+
+    /**
+     * Runs for the given time, starting with all schedules being set up as after an app update.
+     */
+    public Report run(long durationMillis) {
+        long startNanos = System.nanoTime();
+        long start = clock.now();
+        long end = start + durationMillis;
+        for (long day = start; day < end; day += DAY) {
+            if (random.nextDouble() < rebootsPerDay) {
+                schedule(new Event(day + (long) (random.nextDouble() * DAY), EventType.REBOOT, 0));
+            }
+            if (random.nextDouble() < timeZoneChangesPerDay) {
+                schedule(new Event(day + (long) (random.nextDouble() * DAY), EventType.TIME_ZONE_CHANGE, 0));
+            }
+            if (random.nextDouble() < editBurstsPerDay) {
+                long time = day + (long) (random.nextDouble() * DAY);
+                for (int i = 0; i < editsPerBurst; i++) {
+                    schedule(new Event(time, EventType.EDIT, 0));
+                    time += 1 + (long) (random.nextDouble() * MAX_EDIT_PAUSE_MILLIS);
+                }
+            }
+        }
+
+        alarms = newAlarms();
+        resetAlarms();
+        afterStep();
+
+        while (true) {
+            Long alarmAt = on ? alarmBackend.getTriggerAtMillis() : null;
+            FakeAlarmBackend.ScheduleAlarm scheduleAlarm = on ? alarmBackend.getFirstScheduleAlarm() : null;
+            Long scheduleAlarmAt = scheduleAlarm == null ? null : scheduleAlarm.triggerAtMillis;
+            Event event = events.peek();
+            // set for a time that has passed already
+            if (alarmAt != null && alarmAt < clock.now()) {
+                alarmAt = clock.now();
+            }
+            if (scheduleAlarmAt != null && scheduleAlarmAt < clock.now()) {
+                scheduleAlarmAt = clock.now();
+            }
+            long next = Math.min(
+                    Math.min(alarmAt == null ? Long.MAX_VALUE : alarmAt, scheduleAlarmAt == null ? Long.MAX_VALUE : scheduleAlarmAt),
+                    event == null ? Long.MAX_VALUE : event.time);
+            if (next > end) {
+                break;
+            }
+            clock.advance(next - clock.now());
+
+            if (alarmAt != null && alarmAt == next) {
+                alarmBackend.fire();
+                int opsBefore = store.getQueries() + store.getWrites();
+                alarms.onAlarmDue();
+                report.dbOpsOnAlarm += store.getQueries() + store.getWrites() - opsBefore;
+                report.alarmsFired++;
+            } else if (scheduleAlarmAt != null && scheduleAlarmAt == next) {
+                alarmBackend.fire(scheduleAlarm);
+                int opsBefore = store.getQueries() + store.getWrites();
+                // as AlarmReceiver does: show first, then the bookkeeping
+                long scheduleId = scheduleAlarm.scheduleId;
+                long occurrence = scheduleAlarm.occurrence;
+                boolean alert = alarms.claimAlert(occurrence);
+                if (!alarms.notifyPrepared(scheduleId, scheduleAlarm.workoutData, alert, occurrence)) {
+                    // built off the main thread
+                    alarms.notify(scheduleId, scheduleAlarm.workoutData, alert, occurrence);
+                }
+                alarms.submit(new AlarmOperation(
+                        AlarmOutboxEntry.OPERATION_SHOWN, scheduleAlarm.scheduleId, null, scheduleAlarm.occurrence));
+                report.dbOpsOnAlarm += store.getQueries() + store.getWrites() - opsBefore;
+                report.alarmsFired++;
+            } else {
+                handle(events.poll());
+            }
+            afterStep();
+        }
+        clock.advance(end - clock.now());
+
+        for (Map.Entry<Long, Long> entry : lastPostedAt.entrySet()) {
+            updateMaxGap(entry.getKey(), end);
+        }
+        report.simulatedMillis = durationMillis;
+        report.dbQueries = store.getQueries() + outbox.getQueries();
+        report.dbWrites = store.getWrites() + outbox.getWrites();
+        report.fullScans = store.getFullScans();
+        report.pendingOperations = outbox.size();
+        report.alarmRegistrations = alarmBackend.getRegistrations();
+        report.notificationPosts = notificationBackend.getPosts().size();
+        report.alertingPosts = notificationBackend.getAlertingPosts();
+        report.preparedPosts = notificationBackend.getPreparedPosts();
+        report.summaryPosts = notificationBackend.getSummaryPosts();
+        report.realMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return report;
+    }
+
+    private Alarms newAlarms() {
+        return new Alarms(
+                store,
+                outbox,
+                alarmBackend,
+                notificationBackend,
+                this::recordSession,
+                clock::now,
+                clock::now,
+                () -> timeZone,
+                TOLERANCE_MILLIS,
+                () -> SNOOZE_MILLIS,
+                () -> alarmWindowMillis,
+                () -> singleAlarm,
+                // one per process
+                new AlertGate()
+        );
+    }
+
+    /**
+     * Resets, counting the provider calls made and those the schedule by schedule loop would have made instead.
+     */
+    private void resetAlarms() {
+        report.perScheduleResetCalls += PerScheduleReset.countCalls(
+                store.copy(), new NextOccurrences(timeZone), clock.now() + TOLERANCE_MILLIS);
+        int callsBefore = store.getQueries() + store.getWrites();
+        alarms.resetAlarms();
+        report.resetCalls += store.getQueries() + store.getWrites() - callsBefore;
+        report.resets++;
+    }
+
+    private void recordSession(long workoutId, long occurrence) {
+        if (recorderFailureShare > 0 && random.nextDouble() < recorderFailureShare) {
+            report.failedSessions++;
+            throw new IllegalStateException("failing to record session of workout " + workoutId);
+        }
+        report.sessionsRecorded++;
+        // the key under which the session gets recorded, see IdempotencyKey; workouts have the ids of their schedules
+        if (!sessionKeys.add(workoutId + "@" + occurrence)) {
+            report.duplicateSessions++;
+        }
+    }
+
+    private void handle(Event event) {
+        switch (event.type) {
+            case REBOOT:
+                if (!on) {
+                    return;
+                }
+                report.reboots++;
+                on = false;
+                alarmBackend.reboot();
+                notificationBackend.reboot();
+                long offMillis = 1 + (long) (random.nextDouble() * maxOffMillis);
+                report.offMillis += offMillis;
+                schedule(new Event(event.time + offMillis, EventType.BOOT, 0));
+                return;
+            case BOOT:
+                on = true;
+                // the process died with the device, nothing held in memory survives
+                alarms = newAlarms();
+                alarms.recover();
+                return;
+            case TIME_ZONE_CHANGE:
+                report.timeZoneChanges++;
+                timeZone = timeZones.get(random.nextInt(timeZones.size()));
+                if (on) {
+                    resetAlarms();
+                }
+                return;
+            case EDIT:
+                if (!on) {
+                    return;
+                }
+                List<AlarmSchedule> all = new ArrayList<>(store.getAll());
+                long scheduleId = all.get(random.nextInt(all.size())).getScheduleId();
+                DaysOfWeek daysOfWeek = DaysOfWeek.fromMask(1 + random.nextInt(DaysOfWeek.ALL));
+                store.edit(scheduleId, Recurrence.weekly(daysOfWeek), random.nextInt(24), random.nextInt(60));
+                report.edits++;
+                // unique work with REPLACE: each edit pushes the pass back
+                rescheduleAt = event.time + RESCHEDULE_DELAY_MILLIS;
+                schedule(new Event(rescheduleAt, EventType.RESCHEDULE, 0));
+                return;
+            case RESCHEDULE:
+                if (event.time != rescheduleAt) {
+                    // replaced by a later edit
+                    return;
+                }
+                rescheduleAt = -1;
+                if (on) {
+                    report.reschedulePasses++;
+                    alarms.rescheduleDirty();
+                }
+                // else the work survives the reboot, but recovering has picked up the edits already
+                return;
+        }
+
+        // the user can only act on the notification they reacted to, if it is still there
+        FakeNotificationBackend.Post displaying = notificationBackend.getDisplaying(event.scheduleId);
+        if (!on || displaying == null || displaying.postedAt != event.postedAt) {
+            return;
+        }
+        AlarmOperation operation;
+        switch (event.type) {
+            case DID_IT:
+                report.didIts++;
+                operation = new AlarmOperation(
+                        AlarmOutboxEntry.OPERATION_DID_IT, event.scheduleId, event.scheduleId, displaying.occurrence);
+                break;
+            case SNOOZE:
+                report.snoozes++;
+                operation = new AlarmOperation(AlarmOutboxEntry.OPERATION_SNOOZE, event.scheduleId, null, null);
+                break;
+            case DISMISS:
+                report.dismissals++;
+                operation = new AlarmOperation(AlarmOutboxEntry.OPERATION_DISMISSED, event.scheduleId, null, null);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type: " + event.type);
+        }
+
+        if (random.nextDouble() < processDeathShare) {
+            // recorded, but the process dies before applying it; left for the next drain
+            outbox.add(operation);
+            report.processDeaths++;
+            notificationBackend.processDeath();
+            alarms = newAlarms();
+            return;
+        }
+        alarms.submit(operation);
+    }
+
+    private void afterStep() {
+        List<FakeNotificationBackend.Post> posts = notificationBackend.getPosts();
+        for (; seenPosts < posts.size(); seenPosts++) {
+            FakeNotificationBackend.Post post = posts.get(seenPosts);
+            updateMaxGap(post.scheduleId, post.postedAt);
+            lastPostedAt.put(post.scheduleId, post.postedAt);
+            offMillisAtLastPost.put(post.scheduleId, report.offMillis);
+            react(post);
+        }
+        // per-schedule alarms set for the same time go off one after the other
+        if (on && !scheduleAlarmDueNow()) {
+            checkInvariants();
+        }
+    }
+
+    private boolean scheduleAlarmDueNow() {
+        FakeAlarmBackend.ScheduleAlarm first = alarmBackend.getFirstScheduleAlarm();
+        return first != null && first.triggerAtMillis <= clock.now();
+    }
+
+    private void react(FakeNotificationBackend.Post post) {
+        double choice = random.nextDouble();
+        EventType type;
+        if (choice < didItShare) {
+            type = EventType.DID_IT;
+        } else if (choice < didItShare + snoozeShare) {
+            type = EventType.SNOOZE;
+        } else if (choice < didItShare + snoozeShare + dismissShare) {
+            type = EventType.DISMISS;
+        } else {
+            return;
+        }
+        long time = post.postedAt + (long) (random.nextDouble() * MAX_REACTION_MILLIS);
+        schedule(new Event(time, type, post.scheduleId, post.postedAt));
+    }
+
+    private void updateMaxGap(long scheduleId, long postedAt) {
+        // time the device was off does not count, missed alarms are shown on boot
+        long gap = postedAt - lastPostedAt.get(scheduleId) - (report.offMillis - offMillisAtLastPost.get(scheduleId));
+        report.maxGapMillis = Math.max(report.maxGapMillis, gap);
+    }
+
+    private void checkInvariants() {
+        long now = clock.now();
+        Long earliest = singleAlarm ? store.earliest() : null;
+        Long intended = alarmBackend.getTriggerAtMillis() == null
+                ? null
+                : alarmBackend.getWindowStartMillis();
+        if (earliest == null ? intended != null : !earliest.equals(intended)
+                || alarmBackend.getWindowLengthMillis() != alarmWindowMillis) {
+            throw new AssertionError(String.format(Locale.ROOT,
+                    "At %d: system alarm set for %s with window %d, earliest next alarm is %s",
+                    now, intended, alarmBackend.getWindowLengthMillis(), earliest));
+        }
+        for (AlarmSchedule schedule : store.getAll()) {
+            Long nextAlarmMillis = schedule.getNextAlarmMillis();
+            FakeAlarmBackend.ScheduleAlarm scheduleAlarm = alarmBackend.getScheduleAlarm(schedule.getScheduleId());
+            if (!singleAlarm && (scheduleAlarm == null || !Long.valueOf(scheduleAlarm.occurrence).equals(nextAlarmMillis)
+                    || scheduleAlarm.windowLengthMillis != alarmWindowMillis)) {
+                throw new AssertionError(String.format(Locale.ROOT,
+                        "At %d: schedule %d has next alarm %s, its system alarm is for %s",
+                        now, schedule.getScheduleId(), nextAlarmMillis, scheduleAlarm == null ? null : scheduleAlarm.occurrence));
+            }
+            if (scheduleAlarm != null && scheduleAlarm.triggerAtMillis < scheduleAlarm.occurrence) {
+                throw new AssertionError(String.format(Locale.ROOT,
+                        "At %d: schedule %d has a system alarm at %d, before its occurrence %d",
+                        now, schedule.getScheduleId(), scheduleAlarm.triggerAtMillis, scheduleAlarm.occurrence));
+            }
+            if (singleAlarm && scheduleAlarm != null) {
+                throw new AssertionError(String.format(Locale.ROOT,
+                        "At %d: schedule %d has a system alarm of its own", now, schedule.getScheduleId()));
+            }
+            // a windowed alarm may be delivered up to its whole window late
+            if (nextAlarmMillis == null || nextAlarmMillis <= now - alarmWindowMillis) {
+                throw new AssertionError(String.format(Locale.ROOT,
+                        "At %d: schedule %d has next alarm %s", now, schedule.getScheduleId(), nextAlarmMillis));
+            }
+        }
+    }
+
+    private void schedule(Event event) {
+        event.sequence = eventSequence++;
+        events.add(event);
+    }
+
+    private enum EventType {
+        DID_IT, SNOOZE, DISMISS, REBOOT, BOOT, TIME_ZONE_CHANGE, EDIT, RESCHEDULE
+    }
+
+    private static class Event implements Comparable<Event> {
+        final long time;
+        final EventType type;
+        final long scheduleId;
+        // identifies the notification the user reacts to
+        final long postedAt;
+        int sequence;
+
+        Event(long time, EventType type, long scheduleId) {
+            this(time, type, scheduleId, 0);
+        }
+
+        Event(long time, EventType type, long scheduleId, long postedAt) {
+            this.time = time;
+            this.type = type;
+            this.scheduleId = scheduleId;
+            this.postedAt = postedAt;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Integer.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * What happened in a run, and what it cost.
+     */
+    public static class Report {
+        public long simulatedMillis;
+        public long realMillis;
+        public int alarmsFired;
+        public int dbQueries;
+        public int dbWrites;
+        /** Queries and writes made when the system alarm went off, not counting those of user reactions. */
+        public int dbOpsOnAlarm;
+        public int alarmRegistrations;
+        public int notificationPosts;
+        public int alertingPosts;
+        /** Posts of per-schedule alarms from a notification prepared in the same process. */
+        public int preparedPosts;
+        public int summaryPosts;
+        public int didIts;
+        public int sessionsRecorded;
+        /** Sessions recorded under a key that was used before. */
+        public int duplicateSessions;
+        /** Sessions the recorder failed to record, see {@link #withFailingRecorder}. */
+        public int failedSessions;
+        public int snoozes;
+        public int dismissals;
+        public int reboots;
+        public int timeZoneChanges;
+        public int processDeaths;
+        /** Queries that read all schedules, as opposed to the due ones or a single one. */
+        public int fullScans;
+        /** Operations still in the outbox at the end. */
+        public int pendingOperations;
+        public int edits;
+        /** Debounced rescheduling runs, each one for all edits before it. */
+        public int reschedulePasses;
+        /** Explicit resets, at the start and on time zone changes. */
+        public int resets;
+        /** Queries and writes made by the resets. */
+        public int resetCalls;
+        /** Queries and writes the resets would have made schedule by schedule, see {@link PerScheduleReset}. */
+        public int perScheduleResetCalls;
+        public long offMillis;
+        /** Longest time a schedule went without a notification, not counting time the device was off. */
+        public long maxGapMillis;
+
+        public double dbOpsPerAlarm() {
+            return (double) dbOpsOnAlarm / alarmsFired;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d days in %d ms: %d alarms fired, %.2f db operations per alarm (%d queries and %d writes "
+                            + "overall), %d alarm registrations, %d notification posts (%d alerting, %d prepared, "
+                            + "%d summaries), %d did it, %d snoozed, %d dismissed, %d reboots, %d time zone changes, "
+                            + "%d process deaths, %d full scans, %d operations pending, %d sessions recorded, "
+                            + "%d duplicate sessions, %d failed sessions, %d edits in %d reschedule passes, "
+                            + "%d resets with %d provider calls (%d schedule by schedule), longest gap %.1f days",
+                    TimeUnit.MILLISECONDS.toDays(simulatedMillis), realMillis, alarmsFired, dbOpsPerAlarm(), dbQueries,
+                    dbWrites, alarmRegistrations, notificationPosts, alertingPosts, preparedPosts, summaryPosts,
+                    didIts, snoozes, dismissals, reboots, timeZoneChanges, processDeaths, fullScans, pendingOperations,
+                    sessionsRecorded, duplicateSessions, failedSessions, edits, reschedulePasses, resets, resetCalls,
+                    perScheduleResetCalls, (double) maxGapMillis / DAY);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.alarm;
+
+import com.lambdasoup.quickfit.model.DayOfWeek;
+import com.lambdasoup.quickfit.model.DaysOfWeek;
+import com.lambdasoup.quickfit.model.Recurrence;
+import com.lambdasoup.quickfit.util.NextOccurrences;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays weeks to months of schedules through {@link Alarms} with {@link AlarmSimulator}. The simulation reports are
+ * only printed with {@code ./gradlew test -Pquickfit.benchmark}.
+ */
+public class AlarmSimulatorTest {
+    private static final long START = 1451606400000L; // 2016-01-01T00:00Z
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long WEEK = TimeUnit.DAYS.toMillis(7);
+    private static final TimeZone BERLIN = TimeZone.getTimeZone("Europe/Berlin");
+
+    @Test
+    public void everyOccurrenceIsNotifiedOnTime() {
+        AlarmSimulator simulator = new AlarmSimulator(START, BERLIN, 1).withUser(0.6, 0, 0.2);
+        addRandomSchedules(simulator, 20, 2);
+
+        AlarmSimulator.Report report = simulator.run(26 * WEEK);
+        printReport(report);
+
+        // across both DST transitions of the year
+        assertAllOccurrencesNotified(simulator, AlarmSimulator.TOLERANCE_MILLIS, 0, START + 26 * WEEK);
+        assertEquals(0, report.duplicateSessions);
+    }
+
+    @Test
+    public void windowedAlarmsBatchWakeupsAndKeepOccurrences() {
+        long window = TimeUnit.MINUTES.toMillis(30);
+        AlarmSimulator exact = new AlarmSimulator(START, BERLIN, 6).withUser(0.6, 0, 0.2);
+        addRandomSchedules(exact, 40, 6);
+        AlarmSimulator windowed = new AlarmSimulator(START, BERLIN, 6).withUser(0.6, 0, 0.2).withAlarmWindow(window);
+        addRandomSchedules(windowed, 40, 6);
+
+        AlarmSimulator.Report exactReport = exact.run(26 * WEEK);
+        AlarmSimulator.Report windowedReport = windowed.run(26 * WEEK);
+        printReport(exactReport);
+        printReport(windowedReport);
+
+        // delivered up to the window late, early only when shown along with an alarm within the coalescing tolerance,
+        // but each notification is for the intended occurrence
+        assertAllOccurrencesNotified(windowed, AlarmSimulator.TOLERANCE_MILLIS, window, START + 26 * WEEK - window);
+        assertTrue(windowedReport.alarmsFired < exactReport.alarmsFired);
+        assertEquals(0, windowedReport.duplicateSessions);
+    }
+
+    @Test
+    public void perScheduleAlarmsNotifyEveryOccurrence() {
+        long window = TimeUnit.MINUTES.toMillis(30);
+        AlarmSimulator exact = new AlarmSimulator(START, BERLIN, 19).withUser(0.6, 0, 0.2).withPerScheduleAlarms();
+        addRandomSchedules(exact, 20, 19);
+        AlarmSimulator windowed = new AlarmSimulator(START, BERLIN, 19).withUser(0.6, 0, 0.2).withPerScheduleAlarms()
+                .withAlarmWindow(window);
+        addRandomSchedules(windowed, 20, 19);
+
+        AlarmSimulator.Report exactReport = exact.run(26 * WEEK);
+        AlarmSimulator.Report windowedReport = windowed.run(26 * WEEK);
+
+        // each alarm shows its own schedule, right when it goes off
+        assertAllOccurrencesNotified(exact, 0, 0, START + 26 * WEEK);
+        assertAllOccurrencesNotified(windowed, AlarmSimulator.TOLERANCE_MILLIS, window, START + 26 * WEEK - window);
+        assertEquals(exactReport.toString(), exactReport.alarmsFired, exactReport.notificationPosts);
+        // with no process deaths, all prepared when the alarm was set
+        assertEquals(exactReport.toString(), exactReport.alarmsFired, exactReport.preparedPosts);
+        assertEquals(0, exactReport.duplicateSessions);
+        assertEquals(0, windowedReport.duplicateSessions);
+    }
+
+    @Test
+    public void perScheduleAlarmsSurviveRebootsAndTimeZoneChanges() {
+        AlarmSimulator simulator = new AlarmSimulator(START, BERLIN, 23)
+                .withPerScheduleAlarms()
+                .withUser(0.5, 0.2, 0.1)
+                .withReboots(0.2, 2 * DAY)
+                .withProcessDeaths(0.1)
+                .withTimeZoneChanges(0.05, BERLIN, TimeZone.getTimeZone("Asia/Kolkata"));
+        addRandomSchedules(simulator, 20, 23);
+
+        AlarmSimulator.Report report = simulator.run(52 * WEEK);
+
+        assertTrue(report.reboots > 0);
+        assertTrue(report.timeZoneChanges > 0);
+        assertEquals(report.toString(), 0, report.duplicateSessions);
+        assertTrue(report.toString(), report.maxGapMillis <= WEEK + AlarmSimulator.SNOOZE_MILLIS + DAY);
+    }
+
+    @Test
+    public void coalescedSchedulesShareAlarmAndAlert() {
+        for (AlarmSimulator simulator : new AlarmSimulator[]{
+                new AlarmSimulator(START, BERLIN, 2),
+                new AlarmSimulator(START, BERLIN, 2).withPerScheduleAlarms()}) {
+            for (long scheduleId = 1; scheduleId <= 10; scheduleId++) {
+                simulator.addSchedule(scheduleId, DaysOfWeek.of(DayOfWeek.MONDAY), 18, 0);
+            }
+            simulator.addSchedule(11, DaysOfWeek.of(DayOfWeek.MONDAY), 18, 1);
+
+            AlarmSimulator.Report report = simulator.run(8 * WEEK);
+            printReport(report);
+
+            // per-schedule alarms, too: the first one to go off shows the others and moves their alarms on
+            assertEquals(report.toString(), 8, report.alarmsFired);
+            assertEquals(report.toString(), 8 * 11, report.notificationPosts);
+            assertEquals(report.toString(), 8, report.alertingPosts);
+        }
+    }
+
+    @Test
+    public void constantCostPerAlarm() {
+        AlarmSimulator simulator = new AlarmSimulator(START, BERLIN, 3).withUser(0.5, 0.2, 0.2);
+        addRandomSchedules(simulator, 50, 3);
+
+        AlarmSimulator.Report report = simulator.run(13 * WEEK);
+        printReport(report);
+
+        // one query for the due schedules, one batch, one query for the summary, one for the next alarm
+        assertTrue(report.toString(), report.dbOpsPerAlarm() <= 4);
+        // one registration per alarm and per reaction at most, never one per schedule
+        assertTrue(report.toString(),
+                report.alarmRegistrations <= 1 + report.alarmsFired + report.snoozes + report.didIts + report.dismissals);
+    }
+
+    @Test
+    public void resetTakesFewerProviderCallsThanScheduleBySchedule() {
+        AlarmSimulator simulator = new AlarmSimulator(START, BERLIN, 17)
+                .withUser(0.5, 0.2, 0.2)
+                .withTimeZoneChanges(0.2, BERLIN, TimeZone.getTimeZone("America/New_York"));
+        addRandomSchedules(simulator, 50, 17);
+
+        AlarmSimulator.Report report = simulator.run(13 * WEEK);
+        printReport(report);
+
+        assertTrue(report.toString(), report.resets > 1);
+        // the reset at the start prepares all 50 schedules with a query and an update each
+        assertTrue(report.toString(), report.perScheduleResetCalls >= 1 + 2 * 50 + 1);
+        // a constant number per reset: the edited ones, all schedules, one batch, the summary and the next alarm
+        assertTrue(report.toString(), report.resetCalls <= 6 * report.resets);
+        assertTrue(report.toString(), report.resetCalls < report.perScheduleResetCalls);
+    }
+
+    @Test
+    public void snoozedNotificationComesBack() {
+        AlarmSimulator simulator = new AlarmSimulator(START, BERLIN, 4).withUser(0, 1, 0);
+        // half an hour after the start
+        simulator.addSchedule(1, DaysOfWeek.of(DayOfWeek.FRIDAY), 1, 30);
+
+        AlarmSimulator.Report report = simulator.run(2 * DAY);
+
+        // snoozed every time, so it comes back every hour after a reaction of up to half an hour; the last one may
+        // still be snoozed at the end
+        assertTrue(report.toString(), report.snoozes >= 2);
+        assertTrue(report.toString(), report.notificationPosts - report.snoozes <= 1);
+        assertTrue(report.toString(), report.notificationPosts >= report.snoozes);
+        assertTrue(report.toString(), report.maxGapMillis <= AlarmSimulator.SNOOZE_MILLIS + TimeUnit.MINUTES.toMillis(30));
+    }
+
+    @Test
+    public void survivesRebootsAndTimeZoneChanges() {
+        AlarmSimulator simulator = new AlarmSimulator(START, BERLIN, 5)
+                .withUser(0.5, 0.2, 0.1)
+                .withReboots(0.2, 2 * DAY)
+                .withTimeZoneChanges(
+                        0.05,
+                        BERLIN,
+                        TimeZone.getTimeZone("America/New_York"),
+                        TimeZone.getTimeZone("Asia/Kolkata"),
+                        TimeZone.getTimeZone("Australia/Sydney")
+                );
+        addRandomSchedules(simulator, 20, 5);
+
+        AlarmSimulator.Report report = simulator.run(52 * WEEK);
+        printReport(report);
+
+        assertTrue(report.reboots > 0);
+        assertTrue(report.timeZoneChanges > 0);
+        assertEquals(report.toString(), 0, report.duplicateSessions);
+        // a week, plus a snooze, plus the largest jump between the time zones
+        assertTrue(report.toString(), report.maxGapMillis <= WEEK + AlarmSimulator.SNOOZE_MILLIS + DAY);
+    }
+
+    @Test
+    public void rebootsReplayOutboxInsteadOfRescanning() {
+        AlarmSimulator simulator = new AlarmSimulator(START, BERLIN, 7)
+                .withUser(0.6, 0.2, 0.1)
+                .withReboots(0.2, DAY)
+                .withProcessDeaths(0.2);
+        addRandomSchedules(simulator, 20, 7);
+
+        AlarmSimulator.Report report = simulator.run(26 * WEEK);
+        printReport(report);
+
+        assertTrue(report.reboots > 0);
+        assertTrue(report.processDeaths > 0);
+        // only the reset at the start reads all schedules; recovery reads the due and the displaying ones
+        assertEquals(report.toString(), 1, report.fullScans);
+        // each "did it" is recorded once, unless still waiting in the outbox at the end
+        assertEquals(report.toString(), 0, report.duplicateSessions);
+        assertTrue(report.toString(), report.sessionsRecorded <= report.didIts);
+        assertTrue(report.toString(), report.sessionsRecorded + report.pendingOperations >= report.didIts);
+    }
+
+    @Test
+    public void editBurstsAreRescheduledInOnePass() {
+        AlarmSimulator simulator = new AlarmSimulator(START, BERLIN, 11)
+                .withEditBursts(0.3, 5);
+        addRandomSchedules(simulator, 20, 11);
+
+        AlarmSimulator.Report report = simulator.run(26 * WEEK);
+        printReport(report);
+
+        assertTrue(report.edits > 0);
+        assertEquals(report.toString(), report.edits, 5 * report.reschedulePasses);
+        assertEquals(report.toString(), 1, report.fullScans);
+        NextOccurrences nextOccurrences = new NextOccurrences(BERLIN);
+        for (AlarmSchedule schedule : simulator.getStore().getAll()) {
+            assertFalse(simulator.getStore().needsReschedule(schedule.getScheduleId()));
+            long nextAlarmMillis = schedule.getNextAlarmMillis();
+            assertEquals("schedule " + schedule.getScheduleId(), nextAlarmMillis, nextOccurrences.getNextOccurrence(
+                    nextAlarmMillis - 1, schedule.getRecurrence(), schedule.getHour(), schedule.getMinute()));
+        }
+    }
+
+    @Test
+    public void multiDaySchedulesNotifyOnEachDay() {
+        AlarmSimulator simulator = new AlarmSimulator(START, BERLIN, 13)
+                .withUser(0.6, 0, 0.2);
+        simulator.addSchedule(1, DaysOfWeek.of(
+                DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY, DayOfWeek.FRIDAY), 7, 0);
+        simulator.addSchedule(2, DaysOfWeek.fromMask(DaysOfWeek.ALL), 18, 30);
+        simulator.addSchedule(3, DaysOfWeek.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY), 10, 0);
+
+        AlarmSimulator.Report report = simulator.run(8 * WEEK);
+        printReport(report);
+
+        assertAllOccurrencesNotified(simulator, AlarmSimulator.TOLERANCE_MILLIS, 0, START + 8 * WEEK);
+        assertEquals(report.toString(), 8 * (5 + 7 + 2), report.notificationPosts);
+    }
+
+    @Test
+    public void intervalSchedulesNotifyOnTheirDays() {
+        long startDay = Recurrence.toDay(START, BERLIN);
+        long weekStart = Recurrence.startOfWeek(startDay, DayOfWeek.MONDAY);
+        for (AlarmSimulator simulator : new AlarmSimulator[]{
+                new AlarmSimulator(START, BERLIN, 19).withUser(0.6, 0, 0.2),
+                new AlarmSimulator(START, BERLIN, 19).withUser(0.6, 0, 0.2).withPerScheduleAlarms()}) {
+            simulator.addSchedule(1, Recurrence.everyWeeks(
+                    2, DaysOfWeek.of(DayOfWeek.MONDAY, DayOfWeek.THURSDAY), weekStart), 7, 0);
+            simulator.addSchedule(2, Recurrence.everyDays(3, startDay), 18, 30);
+            simulator.addSchedule(3, Recurrence.everyWeeks(4, DaysOfWeek.of(DayOfWeek.SUNDAY), weekStart + 7), 10, 0);
+
+            // across the change to daylight saving time
+            AlarmSimulator.Report report = simulator.run(14 * WEEK);
+            printReport(report);
+
+            assertAllOccurrencesNotified(simulator, AlarmSimulator.TOLERANCE_MILLIS, 0, START + 14 * WEEK);
+            // two days in 7 of the 14 weeks, every third of the 98 days from the first, 4 of the 14 Sundays
+            assertEquals(report.toString(), 7 * 2 + 33 + 4, report.notificationPosts);
+        }
+    }
+
+    /**
+     * Asserts that every occurrence of every schedule up to {@code until} was notified exactly once, no more than
+     * {@code early} before and {@code late} after it.
+     */
+    @Test
+    public void failingRecorderDoesNotBlockOutbox() {
+        AlarmSimulator simulator = new AlarmSimulator(START, BERLIN, 23)
+                .withUser(0.7, 0, 0.2)
+                .withFailingRecorder(0.3);
+        addRandomSchedules(simulator, 20, 23);
+
+        AlarmSimulator.Report report = simulator.run(8 * WEEK);
+        printReport(report);
+
+        assertTrue(report.toString(), report.failedSessions > 0);
+        // each failed did-it is dropped from the outbox, the ones after it are still applied
+        assertEquals(report.toString(), report.didIts, report.sessionsRecorded + report.failedSessions);
+        assertEquals(report.toString(), 0, report.pendingOperations);
+        assertAllOccurrencesNotified(simulator, AlarmSimulator.TOLERANCE_MILLIS, 0, START + 8 * WEEK);
+    }
+
+    private static void assertAllOccurrencesNotified(AlarmSimulator simulator, long early, long late, long until) {
+        NextOccurrences occurrences = new NextOccurrences(BERLIN);
+        for (AlarmSchedule schedule : simulator.getStore().getAll()) {
+            List<Long> expected = new ArrayList<>();
+            long occurrence = occurrences.getNextOccurrence(
+                    START + early, schedule.getRecurrence(), schedule.getHour(), schedule.getMinute());
+            while (occurrence <= until) {
+                expected.add(occurrence);
+                occurrence = occurrences.getNextOccurrence(
+                        occurrence, schedule.getRecurrence(), schedule.getHour(), schedule.getMinute());
+            }
+            List<Long> notified = new ArrayList<>();
+            for (FakeNotificationBackend.Post post : simulator.getNotificationBackend().getPosts()) {
+                if (post.scheduleId == schedule.getScheduleId() && post.occurrence <= until) {
+                    notified.add(post.occurrence);
+                    assertTrue(post.postedAt >= post.occurrence - early);
+                    assertTrue(post.postedAt <= post.occurrence + late);
+                }
+            }
+            assertEquals("schedule " + schedule.getScheduleId(), expected, notified);
+        }
+    }
+
+    private static void printReport(AlarmSimulator.Report report) {
+        if (Boolean.getBoolean("quickfit.benchmark")) {
+            System.out.println(report);
+        }
+    }
+
+    private static void addRandomSchedules(AlarmSimulator simulator, int count, long seed) {
+        Random random = new Random(seed);
+        for (long scheduleId = 1; scheduleId <= count; scheduleId++) {
+            simulator.addSchedule(
+                    scheduleId,
+                    DaysOfWeek.of(DayOfWeek.values()[random.nextInt(7)]),
+                    random.nextInt(24),
+                    random.nextInt(60)
+            );
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.alarm;
+
+import com.lambdasoup.quickfit.model.DayOfWeek;
+import com.lambdasoup.quickfit.model.DaysOfWeek;
+import com.lambdasoup.quickfit.model.Recurrence;
+import com.lambdasoup.quickfit.persist.FakeClock;
+import com.lambdasoup.quickfit.persist.QuickFitContract.AlarmOutboxEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for how {@link Alarms} drains its {@link AlarmOutbox}.
+ */
+public class AlarmsOutboxTest {
+    private static final long NOW = 1467370800000L;
+
+    private final FakeClock clock = new FakeClock(NOW);
+    private final InMemoryAlarmStore store = new InMemoryAlarmStore();
+    private final InMemoryAlarmOutbox outbox = new InMemoryAlarmOutbox();
+
+    private SessionRecorder sessionRecorder = (workoutId, occurrence) -> {
+    };
+    private Alarms alarms;
+
+    @Before
+    public void setUp() {
+        store.add(1, Recurrence.weekly(DaysOfWeek.of(DayOfWeek.MONDAY)), 18, 0);
+        store.add(2, Recurrence.weekly(DaysOfWeek.of(DayOfWeek.TUESDAY)), 18, 0);
+        alarms = new Alarms(
+                store,
+                outbox,
+                new FakeAlarmBackend(new Random(0)),
+                new FakeNotificationBackend(clock),
+                (workoutId, occurrence) -> sessionRecorder.record(workoutId, occurrence),
+                clock::now,
+                clock::now,
+                () -> TimeZone.getTimeZone("Europe/Berlin"),
+                TimeUnit.SECONDS.toMillis(60),
+                () -> TimeUnit.HOURS.toMillis(1),
+                () -> 0L,
+                () -> false,
+                new AlertGate()
+        );
+        alarms.resetAlarms();
+    }
+
+    @Test
+    public void submitDrainsOnlyItsOwnSchedule() {
+        // left behind by a process that died
+        outbox.add(new AlarmOperation(AlarmOutboxEntry.OPERATION_SNOOZE, 2, null, null));
+
+        alarms.submit(new AlarmOperation(AlarmOutboxEntry.OPERATION_DISMISSED, 1, null, null));
+
+        assertEquals(1, outbox.size());
+        assertEquals(2, outbox.readAll().get(0).getOperation().getScheduleId());
+
+        alarms.drainOutbox();
+
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void submitsOfDifferentSchedulesDoNotWaitForEachOther() throws InterruptedException {
+        CountDownLatch recording = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        sessionRecorder = (workoutId, occurrence) -> {
+            recording.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Thread didIt = new Thread(() ->
+                alarms.submit(new AlarmOperation(AlarmOutboxEntry.OPERATION_DID_IT, 1, 1L, NOW)));
+        didIt.start();
+        assertTrue(recording.await(5, TimeUnit.SECONDS));
+
+        // while schedule 1 is still busy recording its session
+        Thread snooze = new Thread(() ->
+                alarms.submit(new AlarmOperation(AlarmOutboxEntry.OPERATION_SNOOZE, 2, null, null)));
+        snooze.start();
+        snooze.join(TimeUnit.SECONDS.toMillis(2));
+        boolean waited = snooze.isAlive();
+
+        release.countDown();
+        didIt.join();
+        snooze.join();
+        assertFalse(waited);
+        assertEquals(0, outbox.size());
+    }
+}
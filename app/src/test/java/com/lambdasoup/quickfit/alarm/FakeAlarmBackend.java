@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.alarm;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Stand-in for the system alarms: remembers the one alarm and the per-schedule alarms that are set, forgets them on
+ * reboot and counts registrations. Delivers windowed alarms at a random time within the window.
+ */
+public class FakeAlarmBackend implements AlarmBackend {
+    private final Random random;
+
+    private Long triggerAtMillis;
+    private long windowStartMillis;
+    private long windowLengthMillis;
+
+    private final Map<Long, ScheduleAlarm> scheduleAlarms = new TreeMap<>();
+
+    private int registrations;
+    private int cancellations;
+    private int scheduleCancellations;
+
+    public FakeAlarmBackend(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public void setExact(long triggerAtMillis) {
+        registrations++;
+        this.triggerAtMillis = triggerAtMillis;
+        windowStartMillis = triggerAtMillis;
+        windowLengthMillis = 0;
+    }
+
+    @Override
+    public void setWindow(long windowStartMillis, long windowLengthMillis) {
+        registrations++;
+        this.windowStartMillis = windowStartMillis;
+        this.windowLengthMillis = windowLengthMillis;
+        triggerAtMillis = windowStartMillis + (long) (random.nextDouble() * windowLengthMillis);
+    }
+
+    @Override
+    public void cancel() {
+        cancellations++;
+        triggerAtMillis = null;
+    }
+
+    @Override
+    public void setExactForSchedule(long scheduleId, WorkoutNotificationData workoutData, long triggerAtMillis) {
+        registrations++;
+        scheduleAlarms.put(scheduleId, new ScheduleAlarm(scheduleId, workoutData, triggerAtMillis, triggerAtMillis, 0));
+    }
+
+    @Override
+    public void setWindowForSchedule(long scheduleId, WorkoutNotificationData workoutData, long occurrence,
+                                     long windowStartMillis, long windowLengthMillis) {
+        registrations++;
+        scheduleAlarms.put(scheduleId, new ScheduleAlarm(scheduleId, workoutData, occurrence,
+                windowStartMillis + (long) (random.nextDouble() * windowLengthMillis), windowLengthMillis));
+    }
+
+    @Override
+    public void cancelForSchedule(long scheduleId) {
+        scheduleCancellations++;
+        scheduleAlarms.remove(scheduleId);
+    }
+
+    /**
+     * When the alarm goes off, or null if none is set. Might be in the past, then it goes off right away.
+     */
+    public Long getTriggerAtMillis() {
+        return triggerAtMillis;
+    }
+
+    /**
+     * Start of the window of the alarm that is set; the exact time for exact alarms.
+     */
+    public long getWindowStartMillis() {
+        return windowStartMillis;
+    }
+
+    /**
+     * Length of the window of the alarm that is set; 0 for exact alarms.
+     */
+    public long getWindowLengthMillis() {
+        return windowLengthMillis;
+    }
+
+    /**
+     * The per-schedule alarm that goes off first, or null if none is set.
+     */
+    public ScheduleAlarm getFirstScheduleAlarm() {
+        ScheduleAlarm first = null;
+        for (ScheduleAlarm alarm : scheduleAlarms.values()) {
+            if (first == null || alarm.triggerAtMillis < first.triggerAtMillis) {
+                first = alarm;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * The per-schedule alarm of the schedule, or null if none is set.
+     */
+    public ScheduleAlarm getScheduleAlarm(long scheduleId) {
+        return scheduleAlarms.get(scheduleId);
+    }
+
+    /**
+     * The alarm goes off; it is not set anymore.
+     */
+    public void fire() {
+        triggerAtMillis = null;
+    }
+
+    /**
+     * The per-schedule alarm goes off; it is not set anymore.
+     */
+    public void fire(ScheduleAlarm alarm) {
+        scheduleAlarms.remove(alarm.scheduleId);
+    }
+
+    public void reboot() {
+        triggerAtMillis = null;
+        scheduleAlarms.clear();
+    }
+
+    public int getRegistrations() {
+        return registrations;
+    }
+
+    public int getCancellations() {
+        return cancellations;
+    }
+
+    public int getScheduleCancellations() {
+        return scheduleCancellations;
+    }
+
+    public static class ScheduleAlarm {
+        public final long scheduleId;
+        public final WorkoutNotificationData workoutData;
+        /** The occurrence the alarm is for, at the start of its window. */
+        public final long occurrence;
+        public final long triggerAtMillis;
+        public final long windowLengthMillis;
+
+        ScheduleAlarm(long scheduleId, WorkoutNotificationData workoutData, long occurrence, long triggerAtMillis,
+                      long windowLengthMillis) {
+            this.scheduleId = scheduleId;
+            this.workoutData = workoutData;
+            this.occurrence = occurrence;
+            this.triggerAtMillis = triggerAtMillis;
+            this.windowLengthMillis = windowLengthMillis;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.alarm;
+
+import com.lambdasoup.quickfit.persist.FakeClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stand-in for the notification manager: keeps the notifications that are displaying, forgets them on reboot and
+ * records every post. Also keeps what was prepared, for as long as the process lives.
+ */
+public class FakeNotificationBackend implements NotificationBackend {
+    private final FakeClock clock;
+    private final Map<Long, Post> displaying = new HashMap<>();
+    private final List<Post> posts = new ArrayList<>();
+    private final Map<Long, Long> preparedOccurrences = new HashMap<>();
+
+    private int alertingPosts;
+    private int summaryPosts;
+    private int prepared;
+    private int preparedPosts;
+
+    public FakeNotificationBackend(FakeClock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public void post(long scheduleId, WorkoutNotificationData workoutData, long occurrence, boolean alert) {
+        Post post = new Post(scheduleId, occurrence, clock.now());
+        posts.add(post);
+        displaying.put(scheduleId, post);
+        if (alert) {
+            alertingPosts++;
+        }
+    }
+
+    @Override
+    public boolean postPrepared(long scheduleId, WorkoutNotificationData workoutData, long occurrence, boolean alert) {
+        Long preparedOccurrence = preparedOccurrences.get(scheduleId);
+        if (preparedOccurrence == null || preparedOccurrence != occurrence) {
+            return false;
+        }
+        preparedPosts++;
+        post(scheduleId, workoutData, occurrence, alert);
+        return true;
+    }
+
+    @Override
+    public void cancel(long scheduleId) {
+        displaying.remove(scheduleId);
+    }
+
+    @Override
+    public void postSummary(List<WorkoutNotificationData> displaying) {
+        summaryPosts++;
+    }
+
+    @Override
+    public void cancelSummary() {
+    }
+
+    @Override
+    public void prepare(long scheduleId, WorkoutNotificationData workoutData, long occurrence) {
+        prepared++;
+        preparedOccurrences.put(scheduleId, occurrence);
+    }
+
+    @Override
+    public void invalidate(long scheduleId) {
+        preparedOccurrences.remove(scheduleId);
+    }
+
+    /**
+     * The notification displaying for the schedule, or null.
+     */
+    public Post getDisplaying(long scheduleId) {
+        return displaying.get(scheduleId);
+    }
+
+    public void reboot() {
+        displaying.clear();
+        processDeath();
+    }
+
+    /**
+     * Nothing prepared survives the process.
+     */
+    public void processDeath() {
+        preparedOccurrences.clear();
+    }
+
+    public List<Post> getPosts() {
+        return posts;
+    }
+
+    public int getAlertingPosts() {
+        return alertingPosts;
+    }
+
+    public int getSummaryPosts() {
+        return summaryPosts;
+    }
+
+    public int getPrepared() {
+        return prepared;
+    }
+
+    /**
+     * Posts made by {@link #postPrepared}.
+     */
+    public int getPreparedPosts() {
+        return preparedPosts;
+    }
+
+    public static class Post {
+        public final long scheduleId;
+        public final long occurrence;
+        public final long postedAt;
+
+        Post(long scheduleId, long occurrence, long postedAt) {
+            this.scheduleId = scheduleId;
+            this.occurrence = occurrence;
+            this.postedAt = postedAt;
+        }
+    }
+}
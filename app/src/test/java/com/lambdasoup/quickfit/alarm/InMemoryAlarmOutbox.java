@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.alarm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link AlarmOutbox} on a plain list; survives anything the simulated process does, like the database would.
+ */
+public class InMemoryAlarmOutbox implements AlarmOutbox {
+    private final List<OutboxEntry> entries = new ArrayList<>();
+    private long nextId = 1;
+
+    private int queries;
+    private int writes;
+
+    @Override
+    public void add(AlarmOperation operation) {
+        writes++;
+        entries.add(new OutboxEntry(nextId++, operation));
+    }
+
+    @Override
+    public List<OutboxEntry> readAll() {
+        queries++;
+        return new ArrayList<>(entries);
+    }
+
+    @Override
+    public List<OutboxEntry> readForSchedule(long scheduleId) {
+        queries++;
+        List<OutboxEntry> result = new ArrayList<>();
+        for (OutboxEntry entry : entries) {
+            if (entry.getOperation().getScheduleId() == scheduleId) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void remove(long entryId) {
+        writes++;
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).getId() == entryId) {
+                entries.remove(i);
+                return;
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    public int getWrites() {
+        return writes;
+    }
+}
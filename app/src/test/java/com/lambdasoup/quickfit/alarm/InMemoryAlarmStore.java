@@ -0,0 +1,293 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.alarm;
+
+import com.lambdasoup.quickfit.model.Recurrence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.lambdasoup.quickfit.persist.QuickFitContract.ScheduleEntry.CURRENT_STATE_ACKNOWLEDGED;
+import static com.lambdasoup.quickfit.persist.QuickFitContract.ScheduleEntry.CURRENT_STATE_DISPLAYING;
+
+/**
+ * {@link AlarmStore} on a plain map, counting queries and writes the way the content provider would execute them.
+ */
+public class InMemoryAlarmStore implements AlarmStore {
+    private final TreeMap<Long, AlarmSchedule> schedules = new TreeMap<>();
+    private final Set<Long> needsReschedule = new HashSet<>();
+
+    private String timeZoneId;
+
+    private int queries;
+    private int writes;
+    private int fullScans;
+
+    /**
+     * Adds a new schedule that has not been scheduled yet, for a workout with the same id. Like the insert trigger,
+     * marks it for rescheduling.
+     */
+    public void add(long scheduleId, Recurrence recurrence, int hour, int minute) {
+        schedules.put(scheduleId, new AlarmSchedule(
+                scheduleId,
+                recurrence,
+                hour,
+                minute,
+                null,
+                CURRENT_STATE_ACKNOWLEDGED,
+                new WorkoutNotificationData(scheduleId, "running", null, 30)
+        ));
+        needsReschedule.add(scheduleId);
+    }
+
+    /**
+     * Changes recurrence and time of the schedule the way the schedule editor does, keeping its next alarm. Like the update
+     * trigger, marks it for rescheduling if anything changed.
+     */
+    public void edit(long scheduleId, Recurrence recurrence, int hour, int minute) {
+        writes++;
+        AlarmSchedule schedule = schedules.get(scheduleId);
+        if (schedule.getRecurrence().equals(recurrence) && schedule.getHour() == hour && schedule.getMinute() == minute) {
+            return;
+        }
+        schedules.put(scheduleId, schedule.copy(
+                scheduleId,
+                recurrence,
+                hour,
+                minute,
+                schedule.getNextAlarmMillis(),
+                schedule.getCurrentState(),
+                schedule.getWorkoutData()
+        ));
+        needsReschedule.add(scheduleId);
+    }
+
+    /**
+     * A store with the same schedules, with nothing counted yet.
+     */
+    public InMemoryAlarmStore copy() {
+        InMemoryAlarmStore copy = new InMemoryAlarmStore();
+        copy.schedules.putAll(schedules);
+        copy.needsReschedule.addAll(needsReschedule);
+        copy.timeZoneId = timeZoneId;
+        return copy;
+    }
+
+    public boolean needsReschedule(long scheduleId) {
+        return needsReschedule.contains(scheduleId);
+    }
+
+    public AlarmSchedule get(long scheduleId) {
+        return schedules.get(scheduleId);
+    }
+
+    public Collection<AlarmSchedule> getAll() {
+        return schedules.values();
+    }
+
+    @Override
+    public List<AlarmSchedule> readDue(long dueUntil) {
+        queries++;
+        List<AlarmSchedule> due = new ArrayList<>();
+        for (AlarmSchedule schedule : schedules.values()) {
+            if (schedule.getNextAlarmMillis() != null && schedule.getNextAlarmMillis() <= dueUntil) {
+                due.add(schedule);
+            }
+        }
+        return due;
+    }
+
+    @Override
+    public List<AlarmSchedule> readDueOrDisplaying(long dueUntil) {
+        queries++;
+        List<AlarmSchedule> read = new ArrayList<>();
+        for (AlarmSchedule schedule : schedules.values()) {
+            if ((schedule.getNextAlarmMillis() != null && schedule.getNextAlarmMillis() <= dueUntil)
+                    || schedule.getCurrentState().equals(CURRENT_STATE_DISPLAYING)) {
+                read.add(schedule);
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public List<AlarmSchedule> readAll() {
+        queries++;
+        fullScans++;
+        return new ArrayList<>(schedules.values());
+    }
+
+    @Override
+    public List<AlarmSchedule> readNeedsReschedule() {
+        queries++;
+        List<AlarmSchedule> read = new ArrayList<>();
+        for (long scheduleId : needsReschedule) {
+            read.add(schedules.get(scheduleId));
+        }
+        return read;
+    }
+
+    @Override
+    public AlarmSchedule read(long scheduleId) {
+        queries++;
+        return schedules.get(scheduleId);
+    }
+
+    @Override
+    public boolean transition(AlarmTransition transition) {
+        writes++;
+        return apply(transition);
+    }
+
+    @Override
+    public Set<Long> transitionAll(List<AlarmTransition> transitions) {
+        writes++;
+        Set<Long> lostRaces = new HashSet<>();
+        for (AlarmTransition transition : transitions) {
+            if (!apply(transition)) {
+                lostRaces.add(transition.getScheduleId());
+            }
+        }
+        return lostRaces;
+    }
+
+    @Override
+    public Set<Long> rescheduleAll(List<Reschedule> reschedules) {
+        writes++;
+        Set<Long> lostRaces = new HashSet<>();
+        for (Reschedule reschedule : reschedules) {
+            AlarmSchedule read = reschedule.getSchedule();
+            AlarmSchedule schedule = schedules.get(read.getScheduleId());
+            if (schedule == null
+                    || !schedule.getCurrentState().equals(read.getCurrentState())
+                    || !schedule.getRecurrence().equals(read.getRecurrence())
+                    || schedule.getHour() != read.getHour()
+                    || schedule.getMinute() != read.getMinute()) {
+                lostRaces.add(read.getScheduleId());
+                continue;
+            }
+            schedules.put(schedule.getScheduleId(), schedule.copy(
+                    schedule.getScheduleId(),
+                    schedule.getRecurrence(),
+                    schedule.getHour(),
+                    schedule.getMinute(),
+                    reschedule.getNextAlarmMillis(),
+                    CURRENT_STATE_ACKNOWLEDGED,
+                    schedule.getWorkoutData()
+            ));
+            needsReschedule.remove(schedule.getScheduleId());
+        }
+        return lostRaces;
+    }
+
+    private boolean apply(AlarmTransition transition) {
+        AlarmSchedule schedule = schedules.get(transition.getScheduleId());
+        if (schedule == null || !schedule.getCurrentState().equals(transition.getExpectedState())) {
+            return false;
+        }
+        schedules.put(schedule.getScheduleId(), schedule.copy(
+                schedule.getScheduleId(),
+                schedule.getRecurrence(),
+                schedule.getHour(),
+                schedule.getMinute(),
+                transition.getNextAlarmMillis(),
+                transition.getNewState(),
+                schedule.getWorkoutData()
+        ));
+        return true;
+    }
+
+    @Override
+    public boolean setState(long scheduleId, String expectedState, String newState) {
+        writes++;
+        AlarmSchedule schedule = schedules.get(scheduleId);
+        if (schedule == null || !schedule.getCurrentState().equals(expectedState)) {
+            return false;
+        }
+        schedules.put(scheduleId, schedule.copy(
+                scheduleId,
+                schedule.getRecurrence(),
+                schedule.getHour(),
+                schedule.getMinute(),
+                schedule.getNextAlarmMillis(),
+                newState,
+                schedule.getWorkoutData()
+        ));
+        return true;
+    }
+
+    @Override
+    public List<WorkoutNotificationData> readDisplaying() {
+        queries++;
+        List<WorkoutNotificationData> displaying = new ArrayList<>();
+        for (AlarmSchedule schedule : schedules.values()) {
+            if (schedule.getCurrentState().equals(CURRENT_STATE_DISPLAYING)) {
+                displaying.add(schedule.getWorkoutData());
+            }
+        }
+        return displaying;
+    }
+
+    @Override
+    public Long earliestNextAlarmMillis() {
+        queries++;
+        return earliest();
+    }
+
+    @Override
+    public String readTimeZoneId() {
+        return timeZoneId;
+    }
+
+    @Override
+    public void writeTimeZoneId(String timeZoneId) {
+        this.timeZoneId = timeZoneId;
+    }
+
+    /**
+     * Like {@link #earliestNextAlarmMillis()}, without counting as a query.
+     */
+    public Long earliest() {
+        Long earliest = null;
+        for (AlarmSchedule schedule : schedules.values()) {
+            Long nextAlarmMillis = schedule.getNextAlarmMillis();
+            if (nextAlarmMillis != null && (earliest == null || nextAlarmMillis < earliest)) {
+                earliest = nextAlarmMillis;
+            }
+        }
+        return earliest;
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    public int getWrites() {
+        return writes;
+    }
+
+    /**
+     * Queries that read all schedules.
+     */
+    public int getFullScans() {
+        return fullScans;
+    }
+}
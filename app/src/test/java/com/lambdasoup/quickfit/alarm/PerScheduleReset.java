@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.alarm;
+
+import com.lambdasoup.quickfit.util.NextOccurrences;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How {@link Alarms#resetAlarms()} used to restore the schedules before reconciling them in one batch: one query for
+ * all schedules, then, for each schedule that needed a new alert, a query for its row and an update of its own,
+ * followed by the query for setting the system alarm. Replayed on a copy of a store, so that the provider calls of
+ * both can be compared on the same schedules.
+ */
+final class PerScheduleReset {
+
+    private PerScheduleReset() {
+    }
+
+    /**
+     * @return the queries and writes the schedule by schedule loop makes on {@code store}
+     */
+    static int countCalls(InMemoryAlarmStore store, NextOccurrences nextOccurrences, long dueUntil) {
+        Map<Long, AlarmSchedule> schedules = new HashMap<>();
+        List<ReconcileRow> rows = new ArrayList<>();
+        for (AlarmSchedule schedule : store.readAll()) {
+            schedules.put(schedule.getScheduleId(), schedule);
+            rows.add(new ReconcileRow(schedule.getScheduleId(), schedule.getNextAlarmMillis(), schedule.getCurrentState()));
+        }
+
+        List<ReconcileAction> actions = AlarmReconciler.INSTANCE.plan(rows, dueUntil, scheduleId -> {
+            AlarmSchedule schedule = schedules.get(scheduleId);
+            return nextOccurrences.getNextOccurrence(dueUntil, schedule.getRecurrence(), schedule.getHour(), schedule.getMinute());
+        });
+        for (ReconcileAction action : actions) {
+            if (action.getNewState() == null) {
+                continue;
+            }
+            // prepareNextAlert read the row again before writing it
+            AlarmSchedule schedule = store.read(action.getScheduleId());
+            store.transition(new AlarmTransition(
+                    action.getScheduleId(), schedule.getCurrentState(), action.getAlarmMillis(), action.getNewState()));
+        }
+        store.earliestNextAlarmMillis();
+
+        return store.getQueries() + store.getWrites();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+import static com.lambdasoup.quickfit.model.DayOfWeek.FRIDAY;
+import static com.lambdasoup.quickfit.model.DayOfWeek.MONDAY;
+import static com.lambdasoup.quickfit.model.DayOfWeek.SATURDAY;
+import static com.lambdasoup.quickfit.model.DayOfWeek.SUNDAY;
+import static com.lambdasoup.quickfit.model.DayOfWeek.TUESDAY;
+import static com.lambdasoup.quickfit.model.DayOfWeek.WEDNESDAY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DaysOfWeek}
+ */
+public class DaysOfWeekTest {
+
+    @Test
+    public void mask_sundayIsLowestBit() {
+        assertEquals(1, DaysOfWeek.of(SUNDAY).getMask());
+        assertEquals(2, DaysOfWeek.of(MONDAY).getMask());
+        assertEquals(64, DaysOfWeek.of(SATURDAY).getMask());
+        assertEquals(DaysOfWeek.ALL, DaysOfWeek.of(DayOfWeek.values()).getMask());
+    }
+
+    @Test
+    public void fromMask_roundTrips() {
+        for (int mask = 0; mask <= DaysOfWeek.ALL; mask++) {
+            assertEquals(mask, DaysOfWeek.fromMask(mask).getMask());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromMask_rejectsOtherBits() {
+        DaysOfWeek.fromMask(0x80);
+    }
+
+    @Test
+    public void withAndWithout() {
+        DaysOfWeek days = DaysOfWeek.NONE.with(MONDAY).with(FRIDAY).with(MONDAY);
+        assertEquals(DaysOfWeek.of(MONDAY, FRIDAY), days);
+        assertEquals(2, days.size());
+        assertTrue(days.contains(FRIDAY));
+        assertFalse(days.contains(TUESDAY));
+
+        assertEquals(DaysOfWeek.of(FRIDAY), days.without(MONDAY).without(TUESDAY));
+        assertTrue(days.without(MONDAY).without(FRIDAY).isEmpty());
+    }
+
+    @Test
+    public void inOrder_followsWeek() {
+        DaysOfWeek days = DaysOfWeek.of(SUNDAY, WEDNESDAY, MONDAY);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setFirstDayOfWeek(Calendar.MONDAY);
+        assertEquals(Arrays.asList(MONDAY, WEDNESDAY, SUNDAY), days.inOrder(DayOfWeek.getWeek(calendar)));
+
+        calendar.setFirstDayOfWeek(Calendar.SUNDAY);
+        assertEquals(Arrays.asList(SUNDAY, MONDAY, WEDNESDAY), days.inOrder(DayOfWeek.getWeek(calendar)));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.model;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static com.lambdasoup.quickfit.model.DayOfWeek.MONDAY;
+import static com.lambdasoup.quickfit.model.DayOfWeek.SUNDAY;
+import static com.lambdasoup.quickfit.model.DayOfWeek.TUESDAY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Recurrence}
+ */
+public class RecurrenceTest {
+
+    // Thursday
+    private static final long EPOCH = 0;
+    // Monday 2016-06-06
+    private static final long JUNE_6_2016 = 16958;
+
+    @Test
+    public void of_everyDayIsWeeklyOnAllDays() {
+        assertEquals(Recurrence.weekly(DaysOfWeek.fromMask(DaysOfWeek.ALL)),
+                Recurrence.of(DaysOfWeek.of(MONDAY), Recurrence.Unit.DAYS, 1, JUNE_6_2016));
+    }
+
+    @Test
+    public void of_daysIgnoreDaysOfWeek() {
+        assertEquals(Recurrence.everyDays(3, JUNE_6_2016),
+                Recurrence.of(DaysOfWeek.of(MONDAY), Recurrence.Unit.DAYS, 3, JUNE_6_2016));
+    }
+
+    @Test
+    public void of_weeklyIgnoresFromDay() {
+        assertEquals(Recurrence.weekly(DaysOfWeek.of(MONDAY)),
+                Recurrence.of(DaysOfWeek.of(MONDAY), Recurrence.Unit.WEEKS, 1, JUNE_6_2016));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_noInterval() {
+        Recurrence.of(DaysOfWeek.of(MONDAY), Recurrence.Unit.WEEKS, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_noDaysOfWeek() {
+        Recurrence.of(DaysOfWeek.NONE, Recurrence.Unit.WEEKS, 2, 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void withDaysOfWeek_notForDays() {
+        Recurrence.everyDays(2, 0).withDaysOfWeek(DaysOfWeek.of(MONDAY));
+    }
+
+    @Test
+    public void calendarDayOfWeek_sameAsCalendar() {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        for (long day = -800; day < 800; day++) {
+            calendar.setTimeInMillis(day * 24 * 60 * 60 * 1000);
+            assertEquals(String.valueOf(day), calendar.get(Calendar.DAY_OF_WEEK), Recurrence.calendarDayOfWeek(day));
+        }
+    }
+
+    @Test
+    public void startOfWeek() {
+        assertEquals(EPOCH - 3, Recurrence.startOfWeek(EPOCH, MONDAY));
+        assertEquals(EPOCH - 4, Recurrence.startOfWeek(EPOCH, SUNDAY));
+        assertEquals(JUNE_6_2016, Recurrence.startOfWeek(JUNE_6_2016, MONDAY));
+        assertEquals(JUNE_6_2016, Recurrence.startOfWeek(JUNE_6_2016 + 6, MONDAY));
+        assertEquals(JUNE_6_2016 + 6, Recurrence.startOfWeek(JUNE_6_2016 + 6, SUNDAY));
+    }
+
+    @Test
+    public void toDay_localDate() {
+        // 2016-06-06 22:30 in UTC is already June 7th in Berlin
+        long instant = (JUNE_6_2016 * 24 + 22) * 60 * 60 * 1000 + 30 * 60 * 1000;
+        assertEquals(JUNE_6_2016, Recurrence.toDay(instant, TimeZone.getTimeZone("UTC")));
+        assertEquals(JUNE_6_2016 + 1, Recurrence.toDay(instant, TimeZone.getTimeZone("Europe/Berlin")));
+        // before 1970
+        assertEquals(-1, Recurrence.toDay(-1, TimeZone.getTimeZone("UTC")));
+    }
+
+    @Test
+    public void occursOn_everyDays_countsFromFromDay() {
+        Recurrence everyThirdDay = Recurrence.everyDays(3, JUNE_6_2016);
+        assertTrue(everyThirdDay.occursOn(JUNE_6_2016));
+        assertFalse(everyThirdDay.occursOn(JUNE_6_2016 + 1));
+        assertFalse(everyThirdDay.occursOn(JUNE_6_2016 + 2));
+        assertTrue(everyThirdDay.occursOn(JUNE_6_2016 + 3));
+        // before, too
+        assertTrue(everyThirdDay.occursOn(JUNE_6_2016 - 3));
+        assertFalse(everyThirdDay.occursOn(JUNE_6_2016 - 1));
+    }
+
+    @Test
+    public void occursOn_everyWeeks_daysInActiveWeeks() {
+        Recurrence everyOtherTuesday = Recurrence.everyWeeks(2, DaysOfWeek.of(TUESDAY), JUNE_6_2016);
+        assertFalse(everyOtherTuesday.occursOn(JUNE_6_2016));
+        assertTrue(everyOtherTuesday.occursOn(JUNE_6_2016 + 1));
+        assertFalse(everyOtherTuesday.occursOn(JUNE_6_2016 + 8));
+        assertTrue(everyOtherTuesday.occursOn(JUNE_6_2016 + 15));
+        assertTrue(everyOtherTuesday.occursOn(JUNE_6_2016 - 13));
+        assertFalse(everyOtherTuesday.occursOn(JUNE_6_2016 - 6));
+    }
+
+    @Test
+    public void occursOn_weekly() {
+        Recurrence mondays = Recurrence.weekly(DaysOfWeek.of(MONDAY));
+        for (long day = JUNE_6_2016; day < JUNE_6_2016 + 21; day++) {
+            assertEquals(String.valueOf(day), (day - JUNE_6_2016) % 7 == 0, mondays.occursOn(day));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.persist;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Local stand-in for Google Fit. Simulates latency by advancing a {@link FakeClock}, fails a configurable share of
+ * insertions and rejects insertions beyond a rate limit. Keeps sessions by identifier, like Fit does.
+ */
+public class FakeSessionSink implements SessionSink {
+    private final FakeClock clock;
+    private final Map<String, PendingSession> sessions = new HashMap<>();
+
+    private long latencyMillis;
+    private double failureRate;
+    private Random random = new Random(0);
+    private boolean failAfterInsert;
+    private boolean rejectDuplicates;
+    private int rateLimitCalls = Integer.MAX_VALUE;
+    private long rateLimitWindowMillis;
+    private int hangAfterCalls = Integer.MAX_VALUE;
+    private int dieAfterCalls = Integer.MAX_VALUE;
+
+    private int calls;
+    private long windowStart;
+    private int callsInWindow;
+
+    private int insertCalls;
+    private int duplicateInserts;
+
+    public FakeSessionSink(FakeClock clock) {
+        this.clock = clock;
+    }
+
+    public FakeSessionSink withLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * Fails the given share of insertions, drawn from a seeded random source.
+     */
+    public FakeSessionSink withFailureRate(double failureRate, long seed) {
+        this.failureRate = failureRate;
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Failing insertions still store the session, as if the response got lost on the way back.
+     */
+    public FakeSessionSink withFailureAfterInsert() {
+        this.failAfterInsert = true;
+        return this;
+    }
+
+    /**
+     * Rejects insertions of identifiers that are present already, instead of replacing the session.
+     */
+    public FakeSessionSink withDuplicateRejection() {
+        this.rejectDuplicates = true;
+        return this;
+    }
+
+    /**
+     * Rejects all calls beyond the given number per window.
+     */
+    public FakeSessionSink withRateLimit(int calls, long windowMillis) {
+        this.rateLimitCalls = calls;
+        this.rateLimitWindowMillis = windowMillis;
+        return this;
+    }
+
+    /**
+     * Never answers calls beyond the given number; they take up their whole timeout.
+     */
+    public FakeSessionSink withHangAfter(int calls) {
+        this.hangAfterCalls = calls;
+        return this;
+    }
+
+    /**
+     * Kills the sync run on the call after the given number, as if the process died while waiting for the answer.
+     */
+    public FakeSessionSink withProcessDeathAfter(int calls) {
+        this.dieAfterCalls = calls;
+        return this;
+    }
+
+    @Override
+    public void insert(PendingSession session, long timeoutMillis)
+            throws TimeoutException, SessionAlreadyPresentException {
+        insertCalls++;
+        call(timeoutMillis);
+        if (rejectDuplicates && sessions.containsKey(session.getIdentifier())) {
+            throw new SessionAlreadyPresentException(session.getIdentifier(), null);
+        }
+        boolean failing = random.nextDouble() < failureRate;
+        if (failing && !failAfterInsert) {
+            throw new IllegalStateException("simulated failure");
+        }
+        if (sessions.put(session.getIdentifier(), session) != null) {
+            duplicateInserts++;
+        }
+        if (failing) {
+            throw new IllegalStateException("simulated lost response");
+        }
+    }
+
+    private void call(long timeoutMillis) throws TimeoutException {
+        calls++;
+        if (calls > dieAfterCalls) {
+            throw new ProcessDeath();
+        }
+        if (calls > hangAfterCalls || latencyMillis > timeoutMillis) {
+            clock.advance(timeoutMillis);
+            throw new TimeoutException("simulated hang");
+        }
+        clock.advance(latencyMillis);
+        if (clock.now() - windowStart >= rateLimitWindowMillis) {
+            windowStart = clock.now();
+            callsInWindow = 0;
+        }
+        callsInWindow++;
+        if (callsInWindow > rateLimitCalls) {
+            throw new IllegalStateException("simulated rate limit");
+        }
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public boolean hasSession(String identifier) {
+        return sessions.containsKey(identifier);
+    }
+
+    public int getInsertCalls() {
+        return insertCalls;
+    }
+
+    /**
+     * Insertions of sessions that were present already; Fit would have overwritten them.
+     */
+    public int getDuplicateInserts() {
+        return duplicateInserts;
+    }
+
+    /**
+     * Not an {@link Exception}, so that the syncer cannot handle it.
+     */
+    public static class ProcessDeath extends Error {
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.lambdasoup.quickfit.persist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local stand-in for the Google Fit session history. Counts reads and remembers the longest interval read, and can be
+ * told to fail a given read.
+ */
+public class FakeSessionSource implements SessionSource {
+    private final List<RemoteSession> sessions = new ArrayList<>();
+
+    private int reads;
+    private long longestInterval;
+    private int failingRead = -1;
+
+    public RemoteSession add(String identifier, long startTime, long endTime) {
+        RemoteSession session = new RemoteSession(identifier, "running", startTime, endTime, null, "com.example");
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * The read with the given index, counting from 0, throws.
+     */
+    public void failRead(int index) {
+        failingRead = index;
+    }
+
+    @Override
+    public List<RemoteSession> read(long startTime, long endTime) {
+        if (reads++ == failingRead) {
+            throw new IllegalStateException("simulated failure");
+        }
+        longestInterval = Math.max(longestInterval, endTime - startTime);
+
+        List<RemoteSession> result = new ArrayList<>();
+        for (RemoteSession session : sessions) {
+            if (session.getStartTime() < endTime && session.getEndTime() > startTime) {
+                result.add(session);
+            }
+        }
+        return result;
+    }
+
+    public int getReads() {
+        return reads;
+    }
+
+    public long getLongestInterval() {
+        return longestInterval;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.lambdasoup.quickfit.persist;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests for {@link IdempotencyKey}.
+ */
+public class IdempotencyKeyTest {
+    private static final long WINDOW = 60000;
+    private static final long TRIGGER = 1467370800000L;
+
+    @Test
+    public void sameWithinWindow() {
+        assertEquals(
+                IdempotencyKey.INSTANCE.of(1, IdempotencyKey.SOURCE_LIST, TRIGGER, WINDOW),
+                IdempotencyKey.INSTANCE.of(1, IdempotencyKey.SOURCE_LIST, TRIGGER + WINDOW - 1, WINDOW));
+    }
+
+    @Test
+    public void differentInNextWindow() {
+        assertNotEquals(
+                IdempotencyKey.INSTANCE.of(1, IdempotencyKey.SOURCE_LIST, TRIGGER, WINDOW),
+                IdempotencyKey.INSTANCE.of(1, IdempotencyKey.SOURCE_LIST, TRIGGER + WINDOW, WINDOW));
+    }
+
+    @Test
+    public void differentPerWorkoutAndSource() {
+        String key = IdempotencyKey.INSTANCE.of(1, IdempotencyKey.SOURCE_LIST, TRIGGER, WINDOW);
+        assertNotEquals(key, IdempotencyKey.INSTANCE.of(2, IdempotencyKey.SOURCE_LIST, TRIGGER, WINDOW));
+        assertNotEquals(key, IdempotencyKey.INSTANCE.of(1, IdempotencyKey.SOURCE_ALARM, TRIGGER, WINDOW));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowMustBePositive() {
+        IdempotencyKey.INSTANCE.of(1, IdempotencyKey.SOURCE_LIST, TRIGGER, 0);
+    }
+}
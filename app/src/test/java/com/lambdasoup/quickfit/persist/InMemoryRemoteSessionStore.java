@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.lambdasoup.quickfit.persist;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link RemoteSessionStore} on a plain map.
+ */
+public class InMemoryRemoteSessionStore implements RemoteSessionStore {
+    private final Map<String, RemoteSession> sessions = new HashMap<>();
+    private Long watermark;
+
+    @Override
+    public void upsert(List<RemoteSession> sessions) {
+        for (RemoteSession session : sessions) {
+            this.sessions.put(session.getIdentifier(), session);
+        }
+    }
+
+    @Override
+    public Long readWatermark() {
+        return watermark;
+    }
+
+    @Override
+    public void saveWatermark(long watermark) {
+        this.watermark = watermark;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public RemoteSession get(String identifier) {
+        return sessions.get(identifier);
+    }
+}
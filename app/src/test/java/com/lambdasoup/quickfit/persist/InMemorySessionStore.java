@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.persist;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * {@link PendingSessionStore} on plain maps, counting reads and writes so that write amplification can be measured.
+ */
+public class InMemorySessionStore implements PendingSessionStore {
+    private final TreeMap<Long, Row> rows = new TreeMap<>();
+    private long checkpoint;
+
+    private int pageReads;
+    private int rowWrites;
+    private int checkpointWrites;
+
+    /**
+     * Adds a new session with the given id, starting at the given time.
+     */
+    public PendingSession add(long id, long startTime) {
+        PendingSession session = new PendingSession(id, "running", startTime, startTime + 60000, null, null, 0, "session-" + id);
+        rows.put(id, new Row(session));
+        return session;
+    }
+
+    public void addAll(int count, long startTime) {
+        for (long id = 1; id <= count; id++) {
+            add(id, startTime + id * 60000);
+        }
+    }
+
+    @Override
+    public List<PendingSession> readPage(long afterId, long now, int limit) {
+        pageReads++;
+        List<PendingSession> page = new ArrayList<>(limit);
+        for (Row row : rows.tailMap(afterId, false).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            if (row.status == QuickFitContract.SessionEntry.SessionStatus.NEW
+                    && (row.nextAttemptMillis == null || row.nextAttemptMillis <= now)) {
+                page.add(row.toPendingSession());
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public void markSynced(long sessionId) {
+        rowWrites++;
+        rows.get(sessionId).status = QuickFitContract.SessionEntry.SessionStatus.SYNCED;
+    }
+
+    @Override
+    public void recordFailure(long sessionId, int attemptCount, String lastError, Long nextAttemptMillis) {
+        rowWrites++;
+        Row row = rows.get(sessionId);
+        row.attemptCount = attemptCount;
+        row.lastError = lastError;
+        row.nextAttemptMillis = nextAttemptMillis;
+        if (nextAttemptMillis == null) {
+            row.status = QuickFitContract.SessionEntry.SessionStatus.QUARANTINED;
+        }
+    }
+
+    @Override
+    public Long earliestNextAttemptAfter(long now) {
+        Long earliest = null;
+        for (Row row : rows.values()) {
+            if (row.status == QuickFitContract.SessionEntry.SessionStatus.NEW && row.nextAttemptMillis != null
+                    && row.nextAttemptMillis > now && (earliest == null || row.nextAttemptMillis < earliest)) {
+                earliest = row.nextAttemptMillis;
+            }
+        }
+        return earliest;
+    }
+
+    @Override
+    public long readCheckpoint() {
+        return checkpoint;
+    }
+
+    @Override
+    public void saveCheckpoint(long sessionId) {
+        checkpointWrites++;
+        checkpoint = sessionId;
+    }
+
+    @Override
+    public void clearCheckpoint() {
+        checkpointWrites++;
+        checkpoint = 0;
+    }
+
+    public QuickFitContract.SessionEntry.SessionStatus getStatus(long sessionId) {
+        return rows.get(sessionId).status;
+    }
+
+    public int getAttemptCount(long sessionId) {
+        return rows.get(sessionId).attemptCount;
+    }
+
+    public String getLastError(long sessionId) {
+        return rows.get(sessionId).lastError;
+    }
+
+    public int count(QuickFitContract.SessionEntry.SessionStatus status) {
+        int count = 0;
+        for (Row row : rows.values()) {
+            if (row.status == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getPageReads() {
+        return pageReads;
+    }
+
+    public int getRowWrites() {
+        return rowWrites;
+    }
+
+    public int getCheckpointWrites() {
+        return checkpointWrites;
+    }
+
+    private static class Row {
+        final PendingSession session;
+        QuickFitContract.SessionEntry.SessionStatus status = QuickFitContract.SessionEntry.SessionStatus.NEW;
+        int attemptCount;
+        String lastError;
+        Long nextAttemptMillis;
+
+        Row(PendingSession session) {
+            this.session = session;
+        }
+
+        PendingSession toPendingSession() {
+            return new PendingSession(session.getId(), session.getActivityType(), session.getStartTime(), session.getEndTime(),
+                    session.getName(), session.getCalories(), attemptCount, session.getIdentifier());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.lambdasoup.quickfit.persist;
+
+import com.lambdasoup.quickfit.model.DaysOfWeek;
+import com.lambdasoup.quickfit.model.Recurrence;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import kotlin.sequences.Sequence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ScheduleBackfill}.
+ */
+public class ScheduleBackfillTest {
+    private static final TimeZone BERLIN = TimeZone.getTimeZone("Europe/Berlin");
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void weeklyOccurrencesInRange() {
+        BackfillSchedule tuesdayEvening = new BackfillSchedule(1, days(Calendar.TUESDAY), 18, 30);
+
+        // Monday 2016-06-06 to Monday 2016-07-04
+        List<BackfillOccurrence> occurrences = occurrences(
+                Collections.singletonList(tuesdayEvening), HOUR, time(2016, 6, 6, 0, 0), time(2016, 7, 4, 0, 0));
+
+        assertEquals(4, occurrences.size());
+        assertEquals(time(2016, 6, 7, 18, 30), occurrences.get(0).getStartTime());
+        assertEquals(time(2016, 6, 7, 19, 30), occurrences.get(0).getEndTime());
+        assertEquals(time(2016, 6, 28, 18, 30), occurrences.get(3).getStartTime());
+    }
+
+    @Test
+    public void occurrencesOrderedAcrossSchedules() {
+        List<BackfillOccurrence> occurrences = occurrences(
+                Arrays.asList(
+                        new BackfillSchedule(1, days(Calendar.THURSDAY), 7, 0),
+                        new BackfillSchedule(2, days(Calendar.TUESDAY), 18, 30),
+                        new BackfillSchedule(3, days(Calendar.TUESDAY), 6, 0)
+                ),
+                HOUR,
+                time(2016, 6, 6, 0, 0),
+                time(2016, 6, 13, 0, 0)
+        );
+
+        assertEquals(3, occurrences.size());
+        assertEquals(3, occurrences.get(0).getScheduleId());
+        assertEquals(2, occurrences.get(1).getScheduleId());
+        assertEquals(1, occurrences.get(2).getScheduleId());
+    }
+
+    @Test
+    public void occurrencesOnEachDayOfSchedule() {
+        BackfillSchedule weekdayMornings = new BackfillSchedule(1,
+                days(Calendar.MONDAY, Calendar.TUESDAY, Calendar.WEDNESDAY, Calendar.THURSDAY, Calendar.FRIDAY), 7, 0);
+
+        // Monday 2016-06-06 to Monday 2016-06-13
+        List<BackfillOccurrence> occurrences = occurrences(
+                Collections.singletonList(weekdayMornings), HOUR, time(2016, 6, 6, 0, 0), time(2016, 6, 13, 0, 0));
+
+        assertEquals(5, occurrences.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(time(2016, 6, 6 + i, 7, 0), occurrences.get(i).getStartTime());
+        }
+    }
+
+    @Test
+    public void onlyOccurrencesFullyInRange() {
+        BackfillSchedule tuesdayEvening = new BackfillSchedule(1, days(Calendar.TUESDAY), 18, 30);
+
+        // starts before the range, and ends after it
+        assertTrue(occurrences(Collections.singletonList(tuesdayEvening), HOUR,
+                time(2016, 6, 7, 18, 31), time(2016, 6, 14, 19, 0)).isEmpty());
+        // exactly the occurrence
+        assertEquals(1, occurrences(Collections.singletonList(tuesdayEvening), HOUR,
+                time(2016, 6, 7, 18, 30), time(2016, 6, 7, 19, 30)).size());
+    }
+
+    @Test
+    public void keepsWallClockTimeAcrossDaylightSavingTime() {
+        BackfillSchedule sundayMorning = new BackfillSchedule(1, days(Calendar.SUNDAY), 10, 0);
+
+        // DST started 2016-03-27 and ended 2016-10-30 in Berlin
+        List<BackfillOccurrence> spring = occurrences(Collections.singletonList(sundayMorning), HOUR,
+                time(2016, 3, 20, 0, 0), time(2016, 3, 28, 0, 0));
+        assertEquals(2, spring.size());
+        assertEquals(7 * 24 * HOUR - HOUR, spring.get(1).getStartTime() - spring.get(0).getStartTime());
+        assertEquals(time(2016, 3, 27, 10, 0), spring.get(1).getStartTime());
+
+        List<BackfillOccurrence> autumn = occurrences(Collections.singletonList(sundayMorning), HOUR,
+                time(2016, 10, 23, 0, 0), time(2016, 10, 31, 0, 0));
+        assertEquals(2, autumn.size());
+        assertEquals(7 * 24 * HOUR + HOUR, autumn.get(1).getStartTime() - autumn.get(0).getStartTime());
+    }
+
+    @Test
+    public void skippedHourMovesForward() {
+        BackfillSchedule sundayNight = new BackfillSchedule(1, days(Calendar.SUNDAY), 2, 30);
+
+        List<BackfillOccurrence> occurrences = occurrences(Collections.singletonList(sundayNight), HOUR,
+                time(2016, 3, 27, 0, 0), time(2016, 3, 28, 0, 0));
+
+        assertEquals(1, occurrences.size());
+        assertEquals(time(2016, 3, 27, 3, 30), occurrences.get(0).getStartTime());
+    }
+
+    @Test
+    public void isLazy() {
+        BackfillSchedule daily = new BackfillSchedule(1, days(Calendar.MONDAY), 12, 0);
+
+        // a hundred years would take a while to expand eagerly
+        Sequence<BackfillOccurrence> occurrences = ScheduleBackfill.INSTANCE.occurrences(
+                Collections.singletonList(daily), HOUR, time(2000, 1, 1, 0, 0), time(2100, 1, 1, 0, 0), BERLIN);
+        Iterator<BackfillOccurrence> iterator = occurrences.iterator();
+        assertTrue(iterator.hasNext());
+        assertEquals(time(2000, 1, 3, 12, 0), iterator.next().getStartTime());
+    }
+
+    @Test
+    public void everyOtherWeekSkipsInactiveWeeks() {
+        // from the week of Monday 2016-06-06
+        long fromDay = Recurrence.toDay(time(2016, 6, 6, 0, 0), BERLIN);
+        BackfillSchedule tuesdayEvening = new BackfillSchedule(1,
+                Recurrence.everyWeeks(2, days(Calendar.TUESDAY).getDaysOfWeek(), fromDay), 18, 30);
+
+        // Monday 2016-06-06 to Monday 2016-07-04
+        List<BackfillOccurrence> occurrences = occurrences(
+                Collections.singletonList(tuesdayEvening), HOUR, time(2016, 6, 6, 0, 0), time(2016, 7, 4, 0, 0));
+
+        assertEquals(2, occurrences.size());
+        assertEquals(time(2016, 6, 7, 18, 30), occurrences.get(0).getStartTime());
+        assertEquals(time(2016, 6, 21, 18, 30), occurrences.get(1).getStartTime());
+    }
+
+    @Test
+    public void everyThirdDayCountsFromItsFirstDay() {
+        // from Wednesday 2016-06-08
+        BackfillSchedule everyThirdDay = new BackfillSchedule(1,
+                Recurrence.everyDays(3, Recurrence.toDay(time(2016, 6, 8, 12, 0), BERLIN)), 7, 0);
+
+        // Monday 2016-06-06 to Monday 2016-06-20
+        List<BackfillOccurrence> occurrences = occurrences(
+                Collections.singletonList(everyThirdDay), HOUR, time(2016, 6, 6, 0, 0), time(2016, 6, 20, 0, 0));
+
+        assertEquals(4, occurrences.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(time(2016, 6, 8 + 3 * i, 7, 0), occurrences.get(i).getStartTime());
+        }
+    }
+
+    @Test
+    public void emptyRange() {
+        BackfillSchedule daily = new BackfillSchedule(1, days(Calendar.MONDAY), 12, 0);
+        assertTrue(occurrences(Collections.singletonList(daily), HOUR,
+                time(2016, 6, 13, 0, 0), time(2016, 6, 6, 0, 0)).isEmpty());
+        assertFalse(occurrences(Collections.singletonList(daily), HOUR,
+                time(2016, 6, 6, 0, 0), time(2016, 6, 13, 0, 0)).isEmpty());
+    }
+
+    private static Recurrence days(int... calendarDaysOfWeek) {
+        int mask = 0;
+        for (int dayOfWeek : calendarDaysOfWeek) {
+            mask |= 1 << (dayOfWeek - 1);
+        }
+        return Recurrence.weekly(DaysOfWeek.fromMask(mask));
+    }
+
+    private static List<BackfillOccurrence> occurrences(List<BackfillSchedule> schedules, long duration, long from, long to) {
+        List<BackfillOccurrence> result = new ArrayList<>();
+        Iterator<BackfillOccurrence> iterator = ScheduleBackfill.INSTANCE.occurrences(schedules, duration, from, to, BERLIN).iterator();
+        while (iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    private static long time(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(BERLIN);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.lambdasoup.quickfit.persist;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link SessionImporter}, against {@link FakeSessionSource}.
+ */
+public class SessionImporterTest {
+    private static final long NOW = 1467370800000L;
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long WINDOW = 7 * DAY;
+    private static final long OVERLAP = DAY;
+    private static final long INITIAL_HISTORY = 30 * DAY;
+
+    private FakeClock clock;
+    private FakeSessionSource source;
+    private InMemoryRemoteSessionStore store;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock(NOW);
+        source = new FakeSessionSource();
+        store = new InMemoryRemoteSessionStore();
+    }
+
+    private ImportResult runImport() {
+        return new SessionImporter(source, store, clock::now, WINDOW, OVERLAP, INITIAL_HISTORY).importHistory();
+    }
+
+    @Test
+    public void firstImportReadsInitialHistoryInWindows() {
+        source.add("old", NOW - 40 * DAY, NOW - 40 * DAY + 3600000);
+        source.add("a", NOW - 20 * DAY, NOW - 20 * DAY + 3600000);
+        source.add("b", NOW - DAY, NOW - DAY + 3600000);
+
+        ImportResult result = runImport();
+
+        assertEquals(5, result.getWindows());
+        assertEquals(5, source.getReads());
+        assertTrue(source.getLongestInterval() <= WINDOW);
+        assertEquals(2, store.size());
+        assertNull(store.get("old"));
+        assertEquals(Long.valueOf(NOW), store.readWatermark());
+    }
+
+    @Test
+    public void nextImportOnlyReadsSinceWatermark() {
+        runImport();
+        int readsBefore = source.getReads();
+
+        clock.advance(2 * DAY);
+        source.add("c", NOW + DAY, NOW + DAY + 3600000);
+        ImportResult result = runImport();
+
+        // two days since the watermark plus one day overlap fit into one window
+        assertEquals(1, result.getWindows());
+        assertEquals(readsBefore + 1, source.getReads());
+        assertEquals(1, store.size());
+        assertEquals(Long.valueOf(NOW + 2 * DAY), store.readWatermark());
+    }
+
+    @Test
+    public void lateSessionsWithinOverlapAreFound() {
+        runImport();
+
+        // shows up after the import, but starts before the watermark
+        source.add("late", NOW - 3600000, NOW - 1800000);
+        clock.advance(3600000);
+        runImport();
+
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void mergesByIdentifier() {
+        source.add("a", NOW - 2 * DAY, NOW - 2 * DAY + 3600000);
+        runImport();
+
+        // the overlap and window boundaries read it again
+        clock.advance(DAY);
+        runImport();
+
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void sessionSpanningWindowBoundaryStoredOnce() {
+        long boundary = NOW - INITIAL_HISTORY + WINDOW;
+        source.add("spanning", boundary - 1800000, boundary + 1800000);
+
+        ImportResult result = runImport();
+
+        // read by both windows, stored once
+        assertEquals(2, result.getSessions());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void failedImportResumesAtLastWindow() {
+        source.add("a", NOW - 20 * DAY, NOW - 20 * DAY + 3600000);
+        source.failRead(2);
+
+        try {
+            runImport();
+            fail("expected failure");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals(Long.valueOf(NOW - INITIAL_HISTORY + 2 * WINDOW), store.readWatermark());
+
+        ImportResult result = runImport();
+        // one day overlap before the watermark makes the first resumed window reach back
+        assertEquals(3, result.getWindows());
+        assertEquals(Long.valueOf(NOW), store.readWatermark());
+        assertEquals(1, store.size());
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.persist;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SessionRetryPolicy}.
+ */
+public class SessionRetryPolicyTest {
+    private static final long NOW = 1467370800000L;
+
+    @Test
+    public void nextAttemptMillis_firstFailure() {
+        assertEquals(NOW + TimeUnit.MINUTES.toMillis(5), SessionRetryPolicy.nextAttemptMillis(NOW, 1));
+    }
+
+    @Test
+    public void nextAttemptMillis_doubles() {
+        assertEquals(NOW + TimeUnit.MINUTES.toMillis(10), SessionRetryPolicy.nextAttemptMillis(NOW, 2));
+        assertEquals(NOW + TimeUnit.MINUTES.toMillis(20), SessionRetryPolicy.nextAttemptMillis(NOW, 3));
+        assertEquals(NOW + TimeUnit.MINUTES.toMillis(640), SessionRetryPolicy.nextAttemptMillis(NOW, 8));
+    }
+
+    @Test
+    public void nextAttemptMillis_capped() {
+        assertEquals(NOW + TimeUnit.HOURS.toMillis(24), SessionRetryPolicy.nextAttemptMillis(NOW, 10));
+        assertEquals(NOW + TimeUnit.HOURS.toMillis(24), SessionRetryPolicy.nextAttemptMillis(NOW, 64));
+        assertEquals(NOW + TimeUnit.HOURS.toMillis(24), SessionRetryPolicy.nextAttemptMillis(NOW, Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nextAttemptMillis_noFailure() {
+        SessionRetryPolicy.nextAttemptMillis(NOW, 0);
+    }
+
+    @Test
+    public void isQuarantined() {
+        assertFalse(SessionRetryPolicy.isQuarantined(1));
+        assertFalse(SessionRetryPolicy.isQuarantined(SessionRetryPolicy.MAX_ATTEMPTS - 1));
+        assertTrue(SessionRetryPolicy.isQuarantined(SessionRetryPolicy.MAX_ATTEMPTS));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.persist;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Throughput of the sync pipeline for backlogs of 1 to 100k sessions, against {@link FakeSessionSink} with simulated
+ * latency and failures. Only runs with {@code ./gradlew test -Pquickfit.benchmark}.
+ * <p>
+ * Reports sessions per second of simulated time (dominated by sink latency) and of actual pipeline overhead, the
+ * number of retries and the database writes per session.
+ */
+public class SessionSyncBenchmark {
+    private static final long NOW = 1467370800000L;
+    private static final int PAGE_SIZE = 50;
+    private static final long TIME_BUDGET = TimeUnit.MINUTES.toMillis(8);
+    private static final long LATENCY = 200;
+    private static final double FAILURE_RATE = 0.02;
+    private static final int[] BACKLOGS = {1, 10, 100, 1000, 10000, 100000};
+
+    @Before
+    public void setUp() {
+        assumeTrue(Boolean.getBoolean("quickfit.benchmark"));
+    }
+
+    @Test
+    public void drainBacklog() {
+        System.out.println("backlog\truns\tsimulated/s\tpipeline/s\tretries\tquarantined\twrites/session\tpage reads");
+        for (int backlog : BACKLOGS) {
+            FakeClock clock = new FakeClock(NOW);
+            InMemorySessionStore store = new InMemorySessionStore();
+            store.addAll(backlog, NOW);
+            FakeSessionSink sink = new FakeSessionSink(clock).withLatency(LATENCY).withFailureRate(FAILURE_RATE, backlog);
+            SessionSyncer syncer = new SessionSyncer(store, sink, clock::now, clock::now, PAGE_SIZE, TIME_BUDGET);
+
+            int runs = 0;
+            int retries = 0;
+            int quarantined = 0;
+            long nanos = 0;
+            while (store.count(QuickFitContract.SessionEntry.SessionStatus.NEW) > 0) {
+                long start = System.nanoTime();
+                SyncResult result = syncer.sync();
+                nanos += System.nanoTime() - start;
+                runs++;
+                retries += result.getRetried();
+                quarantined += result.getQuarantined();
+
+                // like WorkManager would: retry right away, or wait for the deferred sync
+                Long next = result.getEarliestNextAttempt();
+                if (!result.getBudgetExhausted() && next != null) {
+                    clock.advance(next - clock.now());
+                }
+            }
+            long simulatedMillis = clock.now() - NOW;
+
+            assertEquals(backlog, sink.getSessionCount());
+            assertEquals(0, sink.getDuplicateInserts());
+            System.out.println(String.format(Locale.ROOT, "%d\t%d\t%.1f\t%.0f\t%d\t%d\t%.3f\t%d",
+                    backlog,
+                    runs,
+                    backlog * 1000.0 / simulatedMillis,
+                    backlog * 1e9 / nanos,
+                    retries,
+                    quarantined,
+                    (double) (store.getRowWrites() + store.getCheckpointWrites()) / backlog,
+                    store.getPageReads()));
+        }
+    }
+}
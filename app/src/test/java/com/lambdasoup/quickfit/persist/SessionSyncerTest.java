@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.persist;
+
+import com.lambdasoup.quickfit.persist.QuickFitContract.SessionEntry.SessionStatus;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link SessionSyncer}, against {@link FakeSessionSink}.
+ */
+public class SessionSyncerTest {
+    private static final long NOW = 1467370800000L;
+    private static final int PAGE_SIZE = 10;
+    private static final long TIME_BUDGET = TimeUnit.MINUTES.toMillis(8);
+
+    private FakeClock clock;
+    private InMemorySessionStore store;
+    private FakeSessionSink sink;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock(NOW);
+        store = new InMemorySessionStore();
+        sink = new FakeSessionSink(clock);
+    }
+
+    private SyncResult sync() {
+        return new SessionSyncer(store, sink, clock::now, clock::now, PAGE_SIZE, TIME_BUDGET).sync();
+    }
+
+    @Test
+    public void uploadsAllPages() {
+        store.addAll(25, NOW);
+
+        SyncResult result = sync();
+
+        assertEquals(25, result.getUploaded());
+        assertEquals(25, sink.getSessionCount());
+        assertEquals(25, store.count(SessionStatus.SYNCED));
+        assertFalse(result.getBudgetExhausted());
+        // three full or partial pages, one empty page to notice the end
+        assertEquals(4, store.getPageReads());
+        assertEquals(0, store.readCheckpoint());
+    }
+
+    @Test
+    public void marksEachSessionSyncedRightAfterUpload() {
+        store.addAll(5, NOW);
+        sink.withProcessDeathAfter(3);
+
+        try {
+            sync();
+            fail();
+        } catch (FakeSessionSink.ProcessDeath expected) {
+            // the run died on the fourth session; the three before it are not uploaded again
+        }
+
+        assertEquals(3, store.count(SessionStatus.SYNCED));
+        assertEquals(3, store.getRowWrites());
+    }
+
+    @Test
+    public void failedSessionBacksOff() {
+        store.addAll(1, NOW);
+        sink.withFailureRate(1, 0);
+
+        SyncResult result = sync();
+
+        assertEquals(1, result.getFailed());
+        assertEquals(SessionStatus.NEW, store.getStatus(1));
+        assertEquals(1, store.getAttemptCount(1));
+        assertEquals("java.lang.IllegalStateException: simulated failure", store.getLastError(1));
+        assertEquals(Long.valueOf(SessionRetryPolicy.nextAttemptMillis(NOW, 1)), result.getEarliestNextAttempt());
+
+        // not eligible again before the backoff is over
+        SyncResult second = sync();
+        assertEquals(0, sink.getInsertCalls() - 1);
+        assertEquals(0, second.getRetried());
+    }
+
+    @Test
+    public void retriedAfterBackoff() {
+        store.addAll(1, NOW);
+        sink.withFailureRate(1, 0);
+        sync();
+
+        sink.withFailureRate(0, 0);
+        clock.advance(TimeUnit.MINUTES.toMillis(5));
+        SyncResult result = sync();
+
+        assertEquals(1, result.getRetried());
+        assertEquals(1, result.getUploaded());
+        assertEquals(SessionStatus.SYNCED, store.getStatus(1));
+        assertNull(result.getEarliestNextAttempt());
+    }
+
+    @Test
+    public void quarantinedAfterMaxAttempts() {
+        store.addAll(1, NOW);
+        sink.withFailureRate(1, 0);
+
+        for (int i = 0; i < SessionRetryPolicy.MAX_ATTEMPTS; i++) {
+            sync();
+            clock.advance(TimeUnit.DAYS.toMillis(1));
+        }
+
+        assertEquals(SessionStatus.QUARANTINED, store.getStatus(1));
+        assertEquals(SessionRetryPolicy.MAX_ATTEMPTS, sink.getInsertCalls());
+
+        sync();
+        assertEquals(SessionRetryPolicy.MAX_ATTEMPTS, sink.getInsertCalls());
+    }
+
+    @Test
+    public void lostResponseIsRetriedWithoutDuplicating() {
+        store.addAll(1, NOW);
+        sink.withFailureRate(1, 0).withFailureAfterInsert();
+        sync();
+
+        sink.withFailureRate(0, 0);
+        clock.advance(TimeUnit.MINUTES.toMillis(5));
+        SyncResult result = sync();
+
+        assertEquals(1, result.getUploaded());
+        assertEquals(SessionStatus.SYNCED, store.getStatus(1));
+        assertEquals(1, sink.getSessionCount());
+    }
+
+    @Test
+    public void rejectedDuplicateCountsAsUploaded() throws Exception {
+        PendingSession session = store.add(1, NOW);
+        sink.withDuplicateRejection().insert(session, TIME_BUDGET);
+
+        SyncResult result = sync();
+
+        assertEquals(1, result.getAlreadyPresent());
+        assertEquals(0, result.getFailed());
+        assertEquals(SessionStatus.SYNCED, store.getStatus(1));
+        assertEquals(1, sink.getSessionCount());
+    }
+
+    @Test
+    public void interruptedRunDoesNotDuplicate() throws Exception {
+        // uploaded, but the process died before marking it as synced
+        PendingSession session = store.add(1, NOW);
+        sink.insert(session, TIME_BUDGET);
+
+        sync();
+
+        assertEquals(1, sink.getSessionCount());
+        assertEquals(SessionStatus.SYNCED, store.getStatus(1));
+    }
+
+    @Test
+    public void stopsAtTimeBudgetAndResumes() {
+        store.addAll(30, NOW);
+        sink.withLatency(TimeUnit.MINUTES.toMillis(1));
+
+        SyncResult first = sync();
+
+        assertTrue(first.getBudgetExhausted());
+        assertEquals(8, first.getUploaded());
+        assertEquals(8, store.readCheckpoint());
+
+        SyncResult second = sync();
+        assertEquals(8, second.getUploaded());
+        assertEquals(16, store.readCheckpoint());
+        assertEquals(16, sink.getInsertCalls());
+    }
+
+    @Test
+    public void hangingSinkStopsWithinTimeBudget() {
+        store.addAll(5, NOW);
+        sink.withLatency(TimeUnit.SECONDS.toMillis(1)).withHangAfter(2);
+
+        SyncResult result = sync();
+
+        assertTrue(result.getBudgetExhausted());
+        assertEquals(2, result.getUploaded());
+        assertEquals(NOW + TIME_BUDGET, clock.now());
+        assertEquals(Integer.valueOf(1), result.getFailureCauses().get("TimeoutException"));
+        // the hanging session is neither failed nor skipped, the next run starts with it
+        assertEquals(SessionStatus.NEW, store.getStatus(3));
+        assertEquals(0, store.getAttemptCount(3));
+        assertEquals(2, store.readCheckpoint());
+    }
+
+    @Test
+    public void rateLimitedSessionsBackOff() {
+        store.addAll(5, NOW);
+        sink.withRateLimit(3, TimeUnit.MINUTES.toMillis(1));
+
+        SyncResult result = sync();
+
+        assertEquals(3, result.getUploaded());
+        assertEquals(2, result.getFailed());
+        assertEquals(Long.valueOf(SessionRetryPolicy.nextAttemptMillis(NOW, 1)), result.getEarliestNextAttempt());
+    }
+
+    @Test
+    public void emptyStore() {
+        SyncResult result = sync();
+
+        assertEquals(0, result.getUploaded());
+        assertEquals(0, sink.getInsertCalls());
+        assertNull(result.getEarliestNextAttempt());
+    }
+}
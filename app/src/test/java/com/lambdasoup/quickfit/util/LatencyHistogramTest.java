@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void empty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void smallValuesExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.add(0);
+        histogram.add(1);
+        histogram.add(2);
+        histogram.add(3);
+        assertEquals(0, histogram.getPercentile(25));
+        assertEquals(1, histogram.getPercentile(50));
+        assertEquals(3, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void singleValueIsExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.add(1234);
+        // capped by the max, not the bucket bound
+        assertEquals(1234, histogram.getPercentile(50));
+        assertEquals(1234, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void percentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.add(value);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertWithinError(500, histogram.getPercentile(50));
+        assertWithinError(900, histogram.getPercentile(90));
+        assertWithinError(990, histogram.getPercentile(99));
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (int bucket = 1; bucket < 100; bucket++) {
+            long lowerBound = LatencyHistogram.upperBoundOf(bucket - 1) + 1;
+            assertEquals(bucket, LatencyHistogram.bucketOf(lowerBound));
+            assertEquals(bucket, LatencyHistogram.bucketOf(LatencyHistogram.upperBoundOf(bucket)));
+        }
+    }
+
+    @Test
+    public void largestValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.add(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeValue() {
+        new LatencyHistogram().add(-1);
+    }
+
+    @Test
+    public void decayHalvesCounts() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 10; i++) {
+            histogram.add(1);
+        }
+        histogram.add(3);
+        histogram.add(1000);
+
+        histogram.decay();
+
+        assertEquals(5, histogram.getCount());
+        assertEquals(1, histogram.getPercentile(100));
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test
+    public void decayToEmptyResetsMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.add(1000);
+
+        histogram.decay();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void encodeRoundTrip() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.add(0);
+        histogram.add(7);
+        histogram.add(7);
+        histogram.add(123456);
+
+        LatencyHistogram decoded = LatencyHistogram.decode(histogram.encode());
+
+        assertEquals(histogram.encode(), decoded.encode());
+        assertEquals(4, decoded.getCount());
+        assertEquals(123456, decoded.getMax());
+        assertEquals(histogram.getPercentile(50), decoded.getPercentile(50));
+    }
+
+    @Test
+    public void encodeEmpty() {
+        LatencyHistogram decoded = LatencyHistogram.decode(new LatencyHistogram().encode());
+
+        assertEquals(0, decoded.getCount());
+        assertEquals(0, decoded.getMax());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeGarbage() {
+        LatencyHistogram.decode("12;x:3");
+    }
+
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue("expected " + expected + " got " + actual, actual >= expected && actual <= expected * 1.25);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.util;
+
+import com.lambdasoup.quickfit.model.DayOfWeek;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Time and allocation per call of {@link NextOccurrences} against the Calendar based implementation it replaced, for
+ * instants spread over a year. Only runs with {@code ./gradlew test -Pquickfit.benchmark}.
+ */
+public class NextOccurrencesBenchmark {
+    private static final long FROM = 1451606400000L; // 2016-01-01T00:00Z
+    private static final long STEP = TimeUnit.MINUTES.toMillis(17);
+    private static final int STEPS_PER_YEAR = (int) (TimeUnit.DAYS.toMillis(365) / STEP);
+    private static final int CALLS = 1_000_000;
+    private static final int ROUNDS = 5;
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Europe/Berlin");
+
+    private interface Implementation {
+        long getNextOccurrence(long now, DayOfWeek dayOfWeek, int hour, int minute);
+    }
+
+    private long sink;
+
+    @Before
+    public void setUp() {
+        assumeTrue(Boolean.getBoolean("quickfit.benchmark"));
+    }
+
+    @Test
+    public void getNextOccurrence() {
+        NextOccurrences occurrences = new NextOccurrences(TIME_ZONE);
+        Implementation calendar = (now, dayOfWeek, hour, minute) ->
+                NextOccurrencesTest.reference(TIME_ZONE, now, dayOfWeek, hour, minute);
+
+        System.out.println("implementation\tns/call\tbytes/call");
+        for (int round = 0; round < ROUNDS; round++) {
+            // the first rounds are warmup
+            report("calendar", calendar);
+            report("arithmetic", occurrences::getNextOccurrence);
+        }
+        System.out.println(sink);
+    }
+
+    private void report(String name, Implementation implementation) {
+        DayOfWeek[] days = DayOfWeek.values();
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            sink += implementation.getNextOccurrence(FROM + (i % STEPS_PER_YEAR) * STEP, days[i % days.length], i % 24, i % 60);
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = allocatedBytes() - bytesBefore;
+        System.out.println(String.format(Locale.ROOT, "%s\t%.1f\t%.1f", name, (double) nanos / CALLS, (double) bytes / CALLS));
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.util;
+
+import com.lambdasoup.quickfit.model.DayOfWeek;
+import com.lambdasoup.quickfit.model.DaysOfWeek;
+import com.lambdasoup.quickfit.model.Recurrence;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link NextOccurrences}.
+ */
+public class NextOccurrencesTest {
+
+    private static final TimeZone BERLIN = TimeZone.getTimeZone("Europe/Berlin");
+    private static final NextOccurrences BERLIN_OCCURRENCES = new NextOccurrences(BERLIN);
+    private static final long JULY_FIRST_2016 = berlin(2016, Calendar.JULY, 1, 13, 0); // Friday
+
+    // with DST shifts of 30 minutes, at midnight, and offsets that are not whole hours
+    private static final String[] ZONES = {
+            "UTC", "Europe/Berlin", "America/New_York", "America/Sao_Paulo", "Australia/Lord_Howe", "Asia/Kolkata",
+            "Pacific/Chatham"
+    };
+    private static final int[][] TIMES = {{0, 0}, {0, 30}, {1, 30}, {2, 0}, {2, 30}, {3, 0}, {13, 0}, {23, 59}};
+
+    private static long berlin(int year, int month, int day, int hour, int minute) {
+        Calendar cal = Calendar.getInstance(BERLIN);
+        cal.set(year, month, day, hour, minute, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * The Calendar based implementation this replaced, in the given zone.
+     */
+    static long reference(TimeZone timeZone, long now, DayOfWeek dayOfWeek, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(now);
+
+        calendar.set(Calendar.HOUR_OF_DAY, hour);
+        calendar.set(Calendar.MINUTE, minute);
+
+        if (calendar.getTimeInMillis() <= now) {
+            calendar.add(Calendar.DATE, 1);
+        }
+
+        while (calendar.get(Calendar.DAY_OF_WEEK) != dayOfWeek.calendarConst) {
+            calendar.add(Calendar.DATE, 1);
+        }
+
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void testGetNextOccurrence_laterToday() throws Exception {
+        assertEquals(berlin(2016, Calendar.JULY, 1, 14, 0), BERLIN_OCCURRENCES.getNextOccurrence(JULY_FIRST_2016, DayOfWeek.FRIDAY, 14, 0));
+    }
+
+    @Test
+    public void testGetNextOccurrence_tomorrow() throws Exception {
+        assertEquals(berlin(2016, Calendar.JULY, 2, 9, 0), BERLIN_OCCURRENCES.getNextOccurrence(JULY_FIRST_2016, DayOfWeek.SATURDAY, 9, 0));
+    }
+
+    @Test
+    public void testGetNextOccurrence_overmorrow() throws Exception {
+        assertEquals(berlin(2016, Calendar.JULY, 3, 9, 0), BERLIN_OCCURRENCES.getNextOccurrence(JULY_FIRST_2016, DayOfWeek.SUNDAY, 9, 0));
+    }
+
+    @Test
+    public void testGetNextOccurrence_earlierToday() throws Exception {
+        assertEquals(berlin(2016, Calendar.JULY, 8, 9, 0), BERLIN_OCCURRENCES.getNextOccurrence(JULY_FIRST_2016, DayOfWeek.FRIDAY, 9, 0));
+    }
+
+    @Test
+    public void testGetNextOccurrence_now() throws Exception {
+        assertEquals(berlin(2016, Calendar.JULY, 8, 13, 0), BERLIN_OCCURRENCES.getNextOccurrence(JULY_FIRST_2016, DayOfWeek.FRIDAY, 13, 0));
+    }
+
+    @Test
+    public void testGetNextOccurrence_springForward() throws Exception {
+        long now = berlin(2016, Calendar.MARCH, 26, 13, 0); // Saturday
+        assertEquals(berlin(2016, Calendar.MARCH, 28, 13, 0), BERLIN_OCCURRENCES.getNextOccurrence(now, DayOfWeek.MONDAY, 13, 0));
+    }
+
+    @Test
+    public void testGetNextOccurrence_nextMonth() throws Exception {
+        long now = berlin(2016, Calendar.JULY, 29, 13, 0); // Friday
+        assertEquals(berlin(2016, Calendar.AUGUST, 1, 13, 0), BERLIN_OCCURRENCES.getNextOccurrence(now, DayOfWeek.MONDAY, 13, 0));
+    }
+
+    @Test
+    public void testGetNextOccurrence_fallBack() throws Exception {
+        long now = berlin(2016, Calendar.OCTOBER, 29, 13, 0); // Saturday
+        assertEquals(berlin(2016, Calendar.NOVEMBER, 1, 13, 0), BERLIN_OCCURRENCES.getNextOccurrence(now, DayOfWeek.TUESDAY, 13, 0));
+    }
+
+    @Test
+    public void testGetNextOccurrence_fullMinute() throws Exception {
+        long now = JULY_FIRST_2016 + 37123;
+        assertEquals(berlin(2016, Calendar.JULY, 1, 14, 0), BERLIN_OCCURRENCES.getNextOccurrence(now, DayOfWeek.FRIDAY, 14, 0));
+    }
+
+    @Test
+    public void testGetNextOccurrence_gapTakesOffsetBefore() throws Exception {
+        long now = berlin(2016, Calendar.MARCH, 26, 13, 0); // Saturday; clocks go from 02:00 to 03:00 on Sunday
+        assertEquals(berlin(2016, Calendar.MARCH, 27, 3, 30), BERLIN_OCCURRENCES.getNextOccurrence(now, DayOfWeek.SUNDAY, 2, 30));
+    }
+
+    @Test
+    public void testGetNextOccurrence_overlapOnlyFirst() throws Exception {
+        long now = berlin(2016, Calendar.OCTOBER, 29, 13, 0); // Saturday; clocks go from 03:00 back to 02:00 on Sunday
+        long first = berlin(2016, Calendar.OCTOBER, 30, 1, 30) + TimeUnit.HOURS.toMillis(1);
+        assertEquals(first, BERLIN_OCCURRENCES.getNextOccurrence(now, DayOfWeek.SUNDAY, 2, 30));
+        // not again an hour later
+        assertEquals(first + TimeUnit.DAYS.toMillis(7) + TimeUnit.HOURS.toMillis(1),
+                BERLIN_OCCURRENCES.getNextOccurrence(first, DayOfWeek.SUNDAY, 2, 30));
+    }
+
+    @Test
+    public void testGetOffset_sameAsTimeZone() throws Exception {
+        long from = berlin(2015, Calendar.JANUARY, 1, 0, 0);
+        long to = berlin(2021, Calendar.JANUARY, 1, 0, 0);
+        long step = TimeUnit.SECONDS.toMillis(7919);
+
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            NextOccurrences occurrences = new NextOccurrences(timeZone);
+            for (long instant = from; instant < to; instant += step) {
+                assertEquals(zone + " " + instant, timeZone.getOffset(instant), occurrences.getOffset(instant));
+                // right at and before a transition, too
+                long transition = instant - instant % TimeUnit.HOURS.toMillis(1);
+                assertEquals(zone + " " + transition, timeZone.getOffset(transition), occurrences.getOffset(transition));
+                assertEquals(zone + " " + (transition - 1), timeZone.getOffset(transition - 1), occurrences.getOffset(transition - 1));
+            }
+        }
+    }
+
+    /**
+     * Compares with the Calendar based implementation over six years, in zones with different kinds of DST, for wall
+     * times around typical transition times.
+     * <p>
+     * Both agree wherever the wall time happens exactly once, and the week up to it has no DST transition. Where it
+     * happens twice, this takes the first time and the Calendar based implementation the second one. Where it is
+     * skipped, the Calendar based implementation depends on how it got there and lands on either side of the gap; this
+     * is always shifted forward by the gap. And after passing a skipped wall time on its way, the Calendar based
+     * implementation stays off by the gap on the following days, too.
+     */
+    @Test
+    public void testGetNextOccurrence_sameAsCalendar() throws Exception {
+        long from = berlin(2015, Calendar.JANUARY, 1, 0, 0);
+        long to = berlin(2021, Calendar.JANUARY, 1, 0, 0);
+        long step = TimeUnit.MINUTES.toMillis(61);
+        long week = TimeUnit.DAYS.toMillis(7);
+        DayOfWeek[] days = DayOfWeek.values();
+
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            NextOccurrences occurrences = new NextOccurrences(timeZone);
+            int comparisons = 0;
+            int differences = 0;
+            int i = 0;
+            for (long now = from; now < to; now += step, i++) {
+                DayOfWeek dayOfWeek = days[i % days.length];
+                for (int[] time : TIMES) {
+                    long expected = reference(timeZone, now, dayOfWeek, time[0], time[1]);
+                    long actual = occurrences.getNextOccurrence(now, dayOfWeek, time[0], time[1]);
+                    comparisons++;
+                    if (actual == expected) {
+                        continue;
+                    }
+                    differences++;
+
+                    String message = zone + " now=" + now + " " + dayOfWeek + " " + time[0] + ":" + time[1];
+                    long shift = Math.max(
+                            Math.abs(timeZone.getOffset(actual + week) - timeZone.getOffset(actual - week)),
+                            Math.abs(timeZone.getOffset(expected + week) - timeZone.getOffset(expected - week))
+                    );
+                    assertTrue(message, shift > 0);
+                    assertTrue(message, actual > now);
+                    assertEquals(message, dayOfWeek.calendarConst, calendarDayOfWeek(timeZone, actual));
+
+                    long minuteOfDay = time[0] * 60 + time[1];
+                    long actualMinuteOfDay = minuteOfDay(timeZone, actual);
+                    assertTrue(message, actualMinuteOfDay == minuteOfDay
+                            // skipped
+                            || actualMinuteOfDay == minuteOfDay + TimeUnit.MILLISECONDS.toMinutes(shift));
+
+                    assertTrue(message, Math.abs(actual - expected) <= shift
+                            // happened twice, and the first time has passed already
+                            || actual - expected == week);
+                }
+            }
+            // only around transitions
+            assertTrue(zone + " " + differences + "/" + comparisons, differences < comparisons / 100);
+        }
+    }
+
+    @Test
+    public void testGetNextOccurrence_daysOfWeek_laterToday() throws Exception {
+        DaysOfWeek days = DaysOfWeek.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY, DayOfWeek.FRIDAY);
+        assertEquals(berlin(2016, Calendar.JULY, 1, 14, 0), BERLIN_OCCURRENCES.getNextOccurrence(JULY_FIRST_2016, days, 14, 0));
+    }
+
+    @Test
+    public void testGetNextOccurrence_daysOfWeek_nextDayInMask() throws Exception {
+        DaysOfWeek days = DaysOfWeek.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY, DayOfWeek.FRIDAY);
+        assertEquals(berlin(2016, Calendar.JULY, 4, 12, 0), BERLIN_OCCURRENCES.getNextOccurrence(JULY_FIRST_2016, days, 12, 0));
+    }
+
+    @Test
+    public void testGetNextOccurrence_daysOfWeek_onlyTodayNextWeek() throws Exception {
+        DaysOfWeek days = DaysOfWeek.of(DayOfWeek.FRIDAY);
+        assertEquals(berlin(2016, Calendar.JULY, 8, 12, 0), BERLIN_OCCURRENCES.getNextOccurrence(JULY_FIRST_2016, days, 12, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetNextOccurrence_daysOfWeek_none() throws Exception {
+        BERLIN_OCCURRENCES.getNextOccurrence(JULY_FIRST_2016, DaysOfWeek.NONE, 12, 0);
+    }
+
+    /**
+     * A set of days occurs on the earliest of the next occurrences of its single days, for all masks.
+     */
+    @Test
+    public void testGetNextOccurrence_daysOfWeek_earliestOfSingleDays() throws Exception {
+        long from = berlin(2016, Calendar.JANUARY, 1, 0, 0);
+        long to = berlin(2018, Calendar.JANUARY, 1, 0, 0);
+        long step = TimeUnit.MINUTES.toMillis(6 * 61);
+
+        for (String zone : ZONES) {
+            NextOccurrences occurrences = new NextOccurrences(TimeZone.getTimeZone(zone));
+            int mask = 1;
+            for (long now = from; now < to; now += step) {
+                DaysOfWeek days = DaysOfWeek.fromMask(mask);
+                for (int[] time : TIMES) {
+                    long expected = Long.MAX_VALUE;
+                    for (DayOfWeek day : DayOfWeek.values()) {
+                        if (days.contains(day)) {
+                            expected = Math.min(expected, occurrences.getNextOccurrence(now, day, time[0], time[1]));
+                        }
+                    }
+                    assertEquals(zone + " now=" + now + " " + days + " " + time[0] + ":" + time[1],
+                            expected, occurrences.getNextOccurrence(now, days, time[0], time[1]));
+                }
+                mask = mask % DaysOfWeek.ALL + 1;
+            }
+        }
+    }
+
+    /**
+     * A recurrence occurs on the first daily occurrence that falls on one of its days, walking day by day.
+     */
+    @Test
+    public void testGetNextOccurrence_recurrence_firstMatchingDay() throws Exception {
+        long from = berlin(2016, Calendar.JANUARY, 1, 0, 0);
+        long to = berlin(2018, Calendar.JANUARY, 1, 0, 0);
+        long step = TimeUnit.MINUTES.toMillis(6 * 61);
+        DaysOfWeek all = DaysOfWeek.fromMask(DaysOfWeek.ALL);
+
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            NextOccurrences occurrences = new NextOccurrences(timeZone);
+            long fromDay = Recurrence.toDay(from, timeZone);
+            Recurrence[] recurrences = {
+                    Recurrence.everyDays(2, fromDay),
+                    Recurrence.everyDays(5, fromDay + 3),
+                    Recurrence.everyWeeks(2, DaysOfWeek.of(DayOfWeek.MONDAY, DayOfWeek.SUNDAY),
+                            Recurrence.startOfWeek(fromDay, DayOfWeek.MONDAY)),
+                    Recurrence.everyWeeks(3, DaysOfWeek.of(DayOfWeek.WEDNESDAY),
+                            Recurrence.startOfWeek(fromDay + 10, DayOfWeek.SUNDAY)),
+                    Recurrence.weekly(DaysOfWeek.of(DayOfWeek.FRIDAY)),
+            };
+            int i = 0;
+            for (long now = from; now < to; now += step, i++) {
+                Recurrence recurrence = recurrences[i % recurrences.length];
+                for (int[] time : TIMES) {
+                    long expected = now;
+                    do {
+                        expected = occurrences.getNextOccurrence(expected, all, time[0], time[1]);
+                    } while (!recurrence.occursOn(Recurrence.toDay(expected, timeZone)));
+                    assertEquals(zone + " now=" + now + " " + recurrence + " " + time[0] + ":" + time[1],
+                            expected, occurrences.getNextOccurrence(now, recurrence, time[0], time[1]));
+                }
+            }
+        }
+    }
+
+    private static int calendarDayOfWeek(TimeZone timeZone, long instant) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(instant);
+        return calendar.get(Calendar.DAY_OF_WEEK);
+    }
+
+    private static long minuteOfDay(TimeZone timeZone, long instant) {
+        long localMinutes = TimeUnit.MILLISECONDS.toMinutes(instant + timeZone.getOffset(instant));
+        return ((localMinutes % (24 * 60)) + 24 * 60) % (24 * 60);
+    }
+}
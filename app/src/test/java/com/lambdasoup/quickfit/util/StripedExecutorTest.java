@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import timber.log.Timber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link StripedExecutor}.
+ */
+public class StripedExecutorTest {
+    private ExecutorService pool;
+    private StripedExecutor executor;
+    private final List<Throwable> logged = Collections.synchronizedList(new ArrayList<>());
+    private final Timber.Tree tree = new Timber.Tree() {
+        @Override
+        protected void log(int priority, @Nullable String tag, @NonNull String message, @Nullable Throwable t) {
+            if (t != null) {
+                logged.add(t);
+            }
+        }
+    };
+
+    @Before
+    public void setUp() {
+        Timber.plant(tree);
+        pool = Executors.newFixedThreadPool(4);
+        executor = new StripedExecutor(pool);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        Timber.uproot(tree);
+    }
+
+    @Test
+    public void sameKeyInOrderOneAtATime() throws Exception {
+        int tasks = 1000;
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(tasks);
+
+        for (int i = 0; i < tasks; i++) {
+            int task = i;
+            executor.execute(1, () -> {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                order.add(task);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        for (int i = 0; i < tasks; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void differentKeysInParallel() throws Exception {
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+
+        executor.execute(1, () -> {
+            try {
+                // only returns if the other key gets to run meanwhile
+                if (secondStarted.await(10, TimeUnit.SECONDS)) {
+                    done.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(2, () -> {
+            secondStarted.countDown();
+            done.countDown();
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failedTaskDoesNotBlockKey() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("failing on purpose");
+
+        executor.execute(1, () -> {
+            throw failure;
+        });
+        executor.execute(1, done::countDown);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, logged.size());
+        assertSame(failure, logged.get(0));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Juliane Lehmann <jl@lambdasoup.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.lambdasoup.quickfit.util;
+
+import com.lambdasoup.quickfit.persist.FakeClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link WakeLockAccounting}.
+ */
+public class WakeLockAccountingTest {
+    private static final long TIMEOUT = 30000;
+
+    private FakeClock clock;
+    private WakeLockAccounting accounting;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock(1000);
+        accounting = new WakeLockAccounting(clock::now);
+    }
+
+    @Test
+    public void holdTimes() {
+        long first = accounting.acquired("alarm", TIMEOUT);
+        clock.advance(100);
+        accounting.released(first);
+        long second = accounting.acquired("alarm", TIMEOUT);
+        clock.advance(300);
+        accounting.released(second);
+
+        TagSnapshot snapshot = accounting.snapshot().get(0);
+        assertEquals("alarm", snapshot.getTag());
+        assertEquals(2, snapshot.getCount());
+        assertEquals(400, snapshot.getTotalHeldMillis());
+        assertEquals(300, snapshot.getMax());
+        assertEquals(0, snapshot.getTimeouts());
+    }
+
+    @Test
+    public void byTag() {
+        accounting.released(accounting.acquired("a", TIMEOUT));
+        accounting.released(accounting.acquired("b", TIMEOUT));
+
+        List<TagSnapshot> snapshot = accounting.snapshot();
+        assertEquals(2, snapshot.size());
+        assertEquals("a", snapshot.get(0).getTag());
+        assertEquals("b", snapshot.get(1).getTag());
+    }
+
+    @Test
+    public void lateReleaseCountsAsTimeout() {
+        long token = accounting.acquired("alarm", TIMEOUT);
+        clock.advance(TIMEOUT + 5000);
+        accounting.released(token);
+
+        TagSnapshot snapshot = accounting.snapshot().get(0);
+        assertEquals(1, snapshot.getTimeouts());
+        // the system let go at the timeout
+        assertEquals(TIMEOUT, snapshot.getTotalHeldMillis());
+    }
+
+    @Test
+    public void neverReleasedExpires() {
+        accounting.acquired("alarm", TIMEOUT);
+        clock.advance(TIMEOUT);
+
+        TagSnapshot snapshot = accounting.snapshot().get(0);
+        assertEquals(1, snapshot.getCount());
+        assertEquals(1, snapshot.getTimeouts());
+    }
+
+    @Test
+    public void releaseAfterExpiryIsNotCountedTwice() {
+        long token = accounting.acquired("alarm", TIMEOUT);
+        clock.advance(TIMEOUT);
+        accounting.snapshot();
+        accounting.released(token);
+
+        assertEquals(1, accounting.snapshot().get(0).getCount());
+    }
+
+    @Test
+    public void orphaned() {
+        accounting.orphaned("alarm");
+
+        TagSnapshot snapshot = accounting.snapshot().get(0);
+        assertEquals(0, snapshot.getCount());
+        assertEquals(1, snapshot.getOrphaned());
+    }
+
+    @Test
+    public void boundedTags() {
+        for (int i = 0; i < 2 * WakeLockAccounting.MAX_TAGS; i++) {
+            accounting.released(accounting.acquired("tag" + i, TIMEOUT));
+        }
+
+        List<TagSnapshot> snapshot = accounting.snapshot();
+        assertEquals(WakeLockAccounting.MAX_TAGS, snapshot.size());
+        TagSnapshot other = snapshot.get(snapshot.size() - 1);
+        assertEquals(WakeLockAccounting.TAG_OTHER, other.getTag());
+        assertEquals(WakeLockAccounting.MAX_TAGS + 1, other.getCount());
+    }
+}
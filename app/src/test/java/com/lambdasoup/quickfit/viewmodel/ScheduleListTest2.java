@@ -17,6 +17,7 @@
 package com.lambdasoup.quickfit.viewmodel;
 
 import com.lambdasoup.quickfit.model.DayOfWeek;
+import com.lambdasoup.quickfit.model.DaysOfWeek;
 
 import org.junit.After;
 import org.junit.Before;
@@ -37,13 +38,13 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
  * Tests {@link ScheduleList}, in particular the swapping algorithm.
  */
 public class ScheduleListTest2 {
-    private static final ScheduleItem ID_1_OLD = new ScheduleItem(1L, DayOfWeek.TUESDAY, "18:30", 18, 30);
-    private static final ScheduleItem ID_5_OLD = new ScheduleItem(5L, DayOfWeek.SATURDAY, "15:00", 15, 0);
-    private static final ScheduleItem ID_8_OLD = new ScheduleItem(8L, DayOfWeek.FRIDAY, "16:58", 16, 58);
+    private static final ScheduleItem ID_1_OLD = new ScheduleItem(1L, DaysOfWeek.of(DayOfWeek.TUESDAY), "18:30", 18, 30);
+    private static final ScheduleItem ID_5_OLD = new ScheduleItem(5L, DaysOfWeek.of(DayOfWeek.SATURDAY), "15:00", 15, 0);
+    private static final ScheduleItem ID_8_OLD = new ScheduleItem(8L, DaysOfWeek.of(DayOfWeek.FRIDAY), "16:58", 16, 58);
 
-    private static final ScheduleItem ID_2_NEW = new ScheduleItem(2L, DayOfWeek.MONDAY, "12:00", 12, 0);
-    private static final ScheduleItem ID_3_NEW = new ScheduleItem(3L, DayOfWeek.WEDNESDAY, "13:00", 13, 0);
-    private static final ScheduleItem ID_4_NEW = new ScheduleItem(4L, DayOfWeek.FRIDAY, "16:55", 16, 55);
+    private static final ScheduleItem ID_2_NEW = new ScheduleItem(2L, DaysOfWeek.of(DayOfWeek.MONDAY), "12:00", 12, 0);
+    private static final ScheduleItem ID_3_NEW = new ScheduleItem(3L, DaysOfWeek.of(DayOfWeek.WEDNESDAY), "13:00", 13, 0);
+    private static final ScheduleItem ID_4_NEW = new ScheduleItem(4L, DaysOfWeek.of(DayOfWeek.FRIDAY), "16:55", 16, 55);
 
     private static final ScheduleItem[] OLD_LIST = {
             ID_1_OLD,